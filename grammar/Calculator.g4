@@ -1,3 +1,7 @@
+// Reference grammar for the calculator. It is implemented by the hand-written parser in
+// net.darmo_creations.build_utils.calculator.Parser, no code is generated from this file.
+// The ANTLR parser under src/test, used as a reference by the parser tests, was generated from the original
+// version of this grammar: without formulas, conditionals, aggregates and multiple assignments.
 // Only direct left recursion is allowed: https://stackoverflow.com/a/41183746/3779986
 grammar Calculator;
 
@@ -7,6 +11,7 @@ LPAREN: '(';
 RPAREN: ')';
 COMMA : ',';
 ASSIGN: ':=';
+FORMULA: '::=';
 
 PLUS  : '+';
 MINUS : '-';
@@ -34,8 +39,12 @@ NUMBER: [0-9]+'.'?[0-9]*;
 
 start: statement EOF;
 
+// In multiple assignments, all values are computed before any variable is assigned. The parser checks that
+// there are as many values as variables and that no variable is assigned twice.
 statement: exp                    # Expression
          | var=ID ASSIGN expr=exp # VariableDef
+         | vars+=ID (COMMA vars+=ID)+ ASSIGN exprs+=exp (COMMA exprs+=exp)+ # MultiAssign
+         | var=ID FORMULA expr=exp # FormulaDef
          | fname=ID LPAREN ID (COMMA ID)* RPAREN ASSIGN expr=exp # FunctionDef
          ;
 
@@ -47,7 +56,16 @@ exp: LPAREN expr=exp RPAREN                        # Parentheses
    | left=exp operator=(EQUAL | NEQUAL | GT | GE | LT | LE) right=exp # Operator
    | left=exp operator=AND right=exp               # Operator
    | left=exp operator=OR right=exp                # Operator
-   | name=ID LPAREN exp (COMMA exp)* RPAREN        # Function
+   // 'if' and aggregate names are not reserved, they are only keywords in calls with the right number
+   // of arguments, see Parser.isKeywordCall. Other calls are function calls, functions whose definitions
+   // would clash with these calls are rejected.
+   | {_input.LT(1).getText().equals("if")}?
+     ID LPAREN cond=exp COMMA ifTrue=exp COMMA ifFalse=exp RPAREN # Conditional
+   | {_input.LT(1).getText().matches("sum|prod|solve")}?
+     aggregate=ID LPAREN var=ID COMMA exp COMMA exp COMMA exp RPAREN # Aggregate
+   | {_input.LT(1).getText().equals("integrate")}?
+     aggregate=ID LPAREN var=ID COMMA exp COMMA exp COMMA exp COMMA exp RPAREN # Aggregate
+   | fname=ID LPAREN exp (COMMA exp)* RPAREN       # Function
    | ID                                            # Variable
    | NUMBER                                        # Number
    | value=(TRUE | FALSE)                          # Boolean
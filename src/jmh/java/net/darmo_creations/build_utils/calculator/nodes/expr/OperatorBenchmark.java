@@ -0,0 +1,65 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.Parser;
+import net.darmo_creations.build_utils.calculator.nodes.ExpressionStatement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the evaluation of operator nodes through their primitive fields with the former implementation,
+ * which streamed the operands’ values into a list of boxed doubles before applying the operator.
+ * <p>
+ * Run with {@code ./gradlew jmh}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OperatorBenchmark {
+  /**
+   * An expression of twelve operators without constant subtrees, so that the optimizer leaves it as is.
+   */
+  private static final String EXPRESSION = "(a + b) * (c - d) / (e + 1) - a * b + c ^ 2 % e > -d";
+
+  private net.darmo_creations.build_utils.calculator.Scope scope;
+  private Node node;
+
+  @Setup
+  public void setup() {
+    this.scope = new net.darmo_creations.build_utils.calculator.Scope(100);
+    String[] names = {"a", "b", "c", "d", "e"};
+    for (int i = 0; i < names.length; i++) {
+      this.scope.setVariable(names[i], i + 1.5);
+    }
+    this.node = ((ExpressionStatement) Parser.parse(EXPRESSION)).getNode();
+  }
+
+  @Benchmark
+  public double primitive() {
+    return this.node.evaluate(this.scope);
+  }
+
+  @Benchmark
+  public double boxed() {
+    return evaluateBoxed(this.node, this.scope);
+  }
+
+  /**
+   * Evaluate a tree like operators did before they had primitive evaluation paths.
+   */
+  private static double evaluateBoxed(final Node node, final net.darmo_creations.build_utils.calculator.Scope scope) {
+    if (node instanceof BiOperatorNode b) {
+      List<Double> values = b.getOperands().stream().map(n -> evaluateBoxed(n, scope)).collect(Collectors.toList());
+      return b.evaluateImpl(values.get(0), values.get(1));
+    } else if (node instanceof UnaryOperatorNode u) {
+      List<Double> values = u.getOperands().stream().map(n -> evaluateBoxed(n, scope)).collect(Collectors.toList());
+      return u.evaluateImpl(values.get(0));
+    }
+    return node.evaluate(scope);
+  }
+}
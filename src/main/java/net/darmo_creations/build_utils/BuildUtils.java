@@ -2,6 +2,8 @@ package net.darmo_creations.build_utils;
 
 import net.darmo_creations.build_utils.blocks.IModBlock;
 import net.darmo_creations.build_utils.blocks.ModBlocks;
+import net.darmo_creations.build_utils.calculator.BuiltinFunction;
+import net.darmo_creations.build_utils.calculator.BuiltinRegistry;
 import net.darmo_creations.build_utils.calculator.CalculatorsManager;
 import net.darmo_creations.build_utils.commands.CalculatorCommand;
 import net.darmo_creations.build_utils.commands.ToDoListCommand;
@@ -28,11 +30,13 @@ import net.minecraftforge.client.event.RenderGameOverlayEvent;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.RegistryEvent;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
+import net.minecraftforge.fml.event.lifecycle.InterModProcessEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import net.minecraftforge.network.NetworkRegistry;
 import net.minecraftforge.network.simple.SimpleChannel;
@@ -95,6 +99,7 @@ public class BuildUtils {
   public BuildUtils() {
     IEventBus modEventBus = FMLJavaModLoadingContext.get().getModEventBus();
     modEventBus.addListener(this::setup);
+    modEventBus.addListener(this::processIMC);
     BLOCK_ENTITIES_REGISTER.register(modEventBus);
     MinecraftForge.EVENT_BUS.register(this);
   }
@@ -109,6 +114,25 @@ public class BuildUtils {
     );
   }
 
+  /**
+   * Register the builtin calculator functions sent by other mods then freeze the registry.
+   */
+  private void processIMC(final InterModProcessEvent event) {
+    event.getIMCStream(BuiltinRegistry.REGISTER_FUNCTION_IMC_METHOD::equals).forEach(message -> {
+      if (message.messageSupplier().get() instanceof BuiltinFunction function) {
+        try {
+          BuiltinRegistry.registerFunction(function);
+          LOGGER.info("Registered builtin calculator function {} from mod {}", function.getName(), message.senderModId());
+        } catch (IllegalArgumentException e) {
+          LOGGER.error("Could not register builtin calculator function from mod {}: {}", message.senderModId(), e.getMessage());
+        }
+      } else {
+        LOGGER.error("Invalid builtin calculator function sent by mod {}", message.senderModId());
+      }
+    });
+    BuiltinRegistry.freeze();
+  }
+
   /**
    * Forge-related events.
    */
@@ -126,6 +150,13 @@ public class BuildUtils {
       ToDoListCommand.register(event.getDispatcher());
     }
 
+    @SubscribeEvent
+    public static void onServerTick(final TickEvent.ServerTickEvent event) {
+      if (event.phase == TickEvent.Phase.END && CALCULATORS_MANAGER != null) {
+        CALCULATORS_MANAGER.updateFormulas();
+      }
+    }
+
     @SubscribeEvent
     public static void onWorldLoad(WorldEvent.Load event) {
       LevelAccessor world = event.getWorld();
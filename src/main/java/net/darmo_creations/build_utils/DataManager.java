@@ -9,6 +9,7 @@ import net.minecraft.world.level.saveddata.SavedData;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * A {@link DataManager} manages a global and per-player data objects.
@@ -46,6 +47,16 @@ public abstract class DataManager<T extends ManagedData<T>> extends SavedData {
     return this.globalData;
   }
 
+  /**
+   * Apply an action to the global data object then to each player’s data object.
+   *
+   * @param action The action to apply.
+   */
+  public void forEachData(final Consumer<T> action) {
+    action.accept(this.globalData);
+    this.playerData.values().forEach(action);
+  }
+
   /**
    * Alias of {@link #setDirty()} for retro-compatibility.
    */
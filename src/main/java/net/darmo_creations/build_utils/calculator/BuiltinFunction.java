@@ -1,33 +1,350 @@
 package net.darmo_creations.build_utils.calculator;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.function.UnaryOperator;
 
 /**
  * Builtin functions are predefined functions common to all calculator instances.
+ * <p>
+ * They are implemented by primitive Java functions that take their arguments directly,
+ * unary and binary functions can be applied without any array or scope by callers
+ * that already know the number of arguments, see {@link #apply(double)} and {@link #apply(double, double)}.
+ * <p>
+ * Each function declares whether it is pure, i.e. whether it always returns the same result for the same arguments
+ * without side effects, and its estimated cost. Only pure functions may be called by memoized user functions
+ * and have their calls shared by the {@link CommonSubexpressionEliminator}. Calls are never folded
+ * by the {@link Optimizer} as the function may be shadowed by a user function defined afterwards.
+ * Calls consume their cost as fuel.
+ * <p>
+ * Functions may be given an interval extension that bounds their values over intervals of arguments,
+ * see {@link #applyInterval(Interval...)}. Without one, only pure functions of points have bounded values.
  */
 public class BuiltinFunction extends Function {
-  private final java.util.function.Function<Scope, Double> function;
+  private final int arity;
+  private final boolean pure;
+  private final int cost;
+  private final DoubleUnaryOperator unaryFunction;
+  private final DoubleBinaryOperator binaryFunction;
+  private final ToDoubleFunction<double[]> function;
+  private final IntervalExtension intervalFunction;
 
   /**
-   * Create a builtin function.
+   * Create a pure unary builtin function with a cost of 1.
    *
-   * @param name           Function’s name.
-   * @param parameterNames Function’s parameter names.
-   * @param function       The Java function.
+   * @param name     Function’s name.
+   * @param function The Java function.
    */
-  public BuiltinFunction(final String name, final List<String> parameterNames,
-                         final java.util.function.Function<Scope, Double> function) {
+  public BuiltinFunction(final String name, final DoubleUnaryOperator function) {
+    this(name, true, 1, function);
+  }
+
+  /**
+   * Create a unary builtin function.
+   *
+   * @param name     Function’s name.
+   * @param pure     Whether the function is pure.
+   * @param cost     Estimated cost of each call, at least 1.
+   * @param function The Java function.
+   * @throws IllegalArgumentException If the cost is less than 1.
+   */
+  public BuiltinFunction(final String name, final boolean pure, final int cost, final DoubleUnaryOperator function) {
+    this(name, Collections.singletonList("_x_"), pure, cost, function, null, null, null);
+  }
+
+  /**
+   * Create a pure unary builtin function with a cost of 1 and an interval extension.
+   *
+   * @param name             Function’s name.
+   * @param function         The Java function.
+   * @param intervalFunction Bounds the function’s values over an interval.
+   */
+  public BuiltinFunction(final String name, final DoubleUnaryOperator function,
+                         final UnaryOperator<Interval> intervalFunction) {
+    this(name, true, 1, function, intervalFunction);
+  }
+
+  /**
+   * Create a unary builtin function with an interval extension.
+   *
+   * @param name             Function’s name.
+   * @param pure             Whether the function is pure.
+   * @param cost             Estimated cost of each call, at least 1.
+   * @param function         The Java function.
+   * @param intervalFunction Bounds the function’s values over an interval.
+   * @throws IllegalArgumentException If the cost is less than 1.
+   */
+  public BuiltinFunction(final String name, final boolean pure, final int cost, final DoubleUnaryOperator function,
+                         final UnaryOperator<Interval> intervalFunction) {
+    this(name, Collections.singletonList("_x_"), pure, cost, function, null, null,
+        x -> intervalFunction.apply(x[0]));
+  }
+
+  /**
+   * Create a pure binary builtin function with a cost of 1.
+   *
+   * @param name     Function’s name.
+   * @param function The Java function.
+   */
+  public BuiltinFunction(final String name, final DoubleBinaryOperator function) {
+    this(name, true, 1, function);
+  }
+
+  /**
+   * Create a binary builtin function.
+   *
+   * @param name     Function’s name.
+   * @param pure     Whether the function is pure.
+   * @param cost     Estimated cost of each call, at least 1.
+   * @param function The Java function.
+   * @throws IllegalArgumentException If the cost is less than 1.
+   */
+  public BuiltinFunction(final String name, final boolean pure, final int cost, final DoubleBinaryOperator function) {
+    this(name, parameterNames(2), pure, cost, null, function, null, null);
+  }
+
+  /**
+   * Create a pure binary builtin function with a cost of 1 and an interval extension.
+   *
+   * @param name             Function’s name.
+   * @param function         The Java function.
+   * @param intervalFunction Bounds the function’s values over intervals.
+   */
+  public BuiltinFunction(final String name, final DoubleBinaryOperator function,
+                         final BinaryOperator<Interval> intervalFunction) {
+    this(name, true, 1, function, intervalFunction);
+  }
+
+  /**
+   * Create a binary builtin function with an interval extension.
+   *
+   * @param name             Function’s name.
+   * @param pure             Whether the function is pure.
+   * @param cost             Estimated cost of each call, at least 1.
+   * @param function         The Java function.
+   * @param intervalFunction Bounds the function’s values over intervals.
+   * @throws IllegalArgumentException If the cost is less than 1.
+   */
+  public BuiltinFunction(final String name, final boolean pure, final int cost, final DoubleBinaryOperator function,
+                         final BinaryOperator<Interval> intervalFunction) {
+    this(name, parameterNames(2), pure, cost, null, function, null,
+        x -> intervalFunction.apply(x[0], x[1]));
+  }
+
+  /**
+   * Create a pure builtin function with an arbitrary number of parameters and a cost of 1.
+   *
+   * @param name     Function’s name.
+   * @param arity    Function’s number of parameters.
+   * @param function The Java function, it receives an array containing the value of each parameter.
+   */
+  public BuiltinFunction(final String name, final int arity, final ToDoubleFunction<double[]> function) {
+    this(name, arity, true, 1, function);
+  }
+
+  /**
+   * Create a builtin function with an arbitrary number of parameters.
+   *
+   * @param name     Function’s name.
+   * @param arity    Function’s number of parameters.
+   * @param pure     Whether the function is pure.
+   * @param cost     Estimated cost of each call, at least 1.
+   * @param function The Java function, it receives an array containing the value of each parameter.
+   * @throws IllegalArgumentException If the cost is less than 1.
+   */
+  public BuiltinFunction(final String name, final int arity, final boolean pure, final int cost,
+                         final ToDoubleFunction<double[]> function) {
+    this(name, parameterNames(arity), pure, cost, null, null, function, null);
+  }
+
+  /**
+   * Create a pure builtin function with an arbitrary number of parameters, a cost of 1 and an interval extension.
+   *
+   * @param name             Function’s name.
+   * @param arity            Function’s number of parameters.
+   * @param function         The Java function, it receives an array containing the value of each parameter.
+   * @param intervalFunction Bounds the function’s values over intervals.
+   */
+  public BuiltinFunction(final String name, final int arity, final ToDoubleFunction<double[]> function,
+                         final IntervalExtension intervalFunction) {
+    this(name, arity, true, 1, function, intervalFunction);
+  }
+
+  /**
+   * Create a builtin function with an arbitrary number of parameters and an interval extension.
+   *
+   * @param name             Function’s name.
+   * @param arity            Function’s number of parameters.
+   * @param pure             Whether the function is pure.
+   * @param cost             Estimated cost of each call, at least 1.
+   * @param function         The Java function, it receives an array containing the value of each parameter.
+   * @param intervalFunction Bounds the function’s values over intervals.
+   * @throws IllegalArgumentException If the cost is less than 1.
+   */
+  public BuiltinFunction(final String name, final int arity, final boolean pure, final int cost,
+                         final ToDoubleFunction<double[]> function, final IntervalExtension intervalFunction) {
+    this(name, parameterNames(arity), pure, cost, null, null, function, intervalFunction);
+  }
+
+  private BuiltinFunction(final String name, final List<String> parameterNames, final boolean pure, final int cost,
+                          final DoubleUnaryOperator unaryFunction, final DoubleBinaryOperator binaryFunction,
+                          final ToDoubleFunction<double[]> function, final IntervalExtension intervalFunction) {
     super(name, parameterNames);
+    if (cost < 1) {
+      throw new IllegalArgumentException("cost must be at least 1, got " + cost);
+    }
+    this.arity = parameterNames.size();
+    this.pure = pure;
+    this.cost = cost;
+    this.unaryFunction = unaryFunction;
+    this.binaryFunction = binaryFunction;
     this.function = function;
+    this.intervalFunction = intervalFunction;
+  }
+
+  private static List<String> parameterNames(final int arity) {
+    List<String> names = new ArrayList<>();
+    for (int i = 1; i <= arity; i++) {
+      names.add(String.format("_x%d_", i));
+    }
+    return names;
+  }
+
+  /**
+   * Return the number of parameters of this function.
+   */
+  public int getArity() {
+    return this.arity;
+  }
+
+  /**
+   * Indicate whether this function always returns the same result for the same arguments, without side effects.
+   */
+  public boolean isPure() {
+    return this.pure;
   }
 
+  /**
+   * Return the estimated cost of each call, consumed as fuel.
+   */
   @Override
-  protected double evaluateImpl(final Scope scope) {
-    return this.function.apply(scope);
+  public int getCost() {
+    return this.cost;
+  }
+
+  /**
+   * Indicate whether this function is implemented by a {@link DoubleUnaryOperator}.
+   */
+  public boolean isUnary() {
+    return this.unaryFunction != null;
+  }
+
+  /**
+   * Indicate whether this function is implemented by a {@link DoubleBinaryOperator}.
+   */
+  public boolean isBinary() {
+    return this.binaryFunction != null;
+  }
+
+  /**
+   * Apply this function to a single argument.
+   *
+   * @param x The argument.
+   * @return The result.
+   * @throws IllegalStateException If this function is not unary.
+   */
+  public double apply(final double x) {
+    if (this.unaryFunction == null) {
+      throw new IllegalStateException(this.getName() + " is not unary");
+    }
+    return this.unaryFunction.applyAsDouble(x);
+  }
+
+  /**
+   * Apply this function to two arguments.
+   *
+   * @param x1 The first argument.
+   * @param x2 The second argument.
+   * @return The result.
+   * @throws IllegalStateException If this function is not binary.
+   */
+  public double apply(final double x1, final double x2) {
+    if (this.binaryFunction == null) {
+      throw new IllegalStateException(this.getName() + " is not binary");
+    }
+    return this.binaryFunction.applyAsDouble(x1, x2);
+  }
+
+  /**
+   * Bound the values of this function over the given intervals. Functions without an interval extension
+   * only have bounded values if they are pure and all arguments are points.
+   *
+   * @param arguments Bounds of each argument, there must be as many as parameters.
+   * @return The bounds of the function’s values.
+   */
+  public Interval applyInterval(final Interval... arguments) {
+    if (this.intervalFunction != null) {
+      return this.intervalFunction.apply(arguments);
+    }
+    if (!this.pure) {
+      return Interval.ENTIRE_OR_NAN;
+    }
+    double[] values = new double[arguments.length];
+    for (int i = 0; i < values.length; i++) {
+      if (!arguments[i].isPoint()) {
+        return Interval.ENTIRE_OR_NAN;
+      }
+      values[i] = arguments[i].getLo();
+    }
+    if (this.unaryFunction != null) {
+      return Interval.point(this.unaryFunction.applyAsDouble(values[0]));
+    } else if (this.binaryFunction != null) {
+      return Interval.point(this.binaryFunction.applyAsDouble(values[0], values[1]));
+    }
+    return Interval.point(this.function.applyAsDouble(values));
+  }
+
+  @Override
+  protected Interval evaluateIntervalImpl(final Scope scope, final Interval[] arguments) {
+    return this.applyInterval(arguments);
+  }
+
+  @Override
+  protected double evaluateImpl(final Scope scope, final CallStack stack) {
+    if (this.unaryFunction != null) {
+      return this.unaryFunction.applyAsDouble(stack.getLocal(0));
+    } else if (this.binaryFunction != null) {
+      return this.binaryFunction.applyAsDouble(stack.getLocal(0), stack.getLocal(1));
+    }
+    double[] arguments = new double[this.arity];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = stack.getLocal(i);
+    }
+    return this.function.applyAsDouble(arguments);
   }
 
   @Override
   public String toString() {
     return String.format("%s(%s) -> <builtin>", this.getName(), String.join(", ", this.getParameterNames()));
   }
+
+  /**
+   * Bounds the values of a builtin function over intervals of arguments, see {@link Interval}
+   * for the guarantees bounds must provide.
+   */
+  @FunctionalInterface
+  public interface IntervalExtension {
+    /**
+     * Bound the values of the function.
+     *
+     * @param arguments Bounds of each argument.
+     * @return The bounds of the function’s values.
+     */
+    Interval apply(Interval[] arguments);
+  }
 }
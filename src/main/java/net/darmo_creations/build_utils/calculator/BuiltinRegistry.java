@@ -0,0 +1,183 @@
+package net.darmo_creations.build_utils.calculator;
+
+import java.util.*;
+
+/**
+ * Process-wide table of builtin constants and functions, shared by all {@link Scope}s.
+ * <p>
+ * Builtins are stored in arrays and addressed by their index, names are mapped to indices
+ * by immutable maps. Other mods may register functions while mods are loading,
+ * see {@link #registerFunction(BuiltinFunction)}, then the table is frozen and never modified afterwards.
+ * Registering a function replaces the whole table, it can thus be read from any thread.
+ */
+public final class BuiltinRegistry {
+  /**
+   * Method of the InterModComms messages that register builtin functions, their payload must be
+   * a {@link BuiltinFunction}. Messages must be sent during the {@code InterModEnqueueEvent}:
+   * <pre>
+   * InterModComms.sendTo("build_utils", BuiltinRegistry.REGISTER_FUNCTION_IMC_METHOD,
+   *     () -&gt; new BuiltinFunction("smoothstep", 3, true, 2, x -&gt; ...));
+   * </pre>
+   */
+  public static final String REGISTER_FUNCTION_IMC_METHOD = "register_builtin_function";
+
+  private static final String[] CONSTANT_NAMES;
+  private static final Scope.VariableReference[] CONSTANTS;
+  private static final Map<String, Integer> CONSTANT_INDICES;
+  private static volatile FunctionTable functionTable;
+  private static boolean frozen;
+
+  static {
+    Map<String, Double> constants = new LinkedHashMap<>();
+    constants.put("pi", Math.PI);
+
+    BuiltinFunction[] functions = {
+        new BuiltinFunction("floor", Math::floor, x -> x.mapIncreasing(Math::floor)),
+        new BuiltinFunction("ceil", Math::ceil, x -> x.mapIncreasing(Math::ceil)),
+        new BuiltinFunction("sqrt", Math::sqrt, Interval::sqrt),
+        new BuiltinFunction("cbrt", Math::cbrt, x -> x.mapIncreasing(Math::cbrt)),
+        new BuiltinFunction("exp", Math::exp, x -> x.mapIncreasing(Math::exp)),
+        new BuiltinFunction("cos", Math::cos, Interval::cos),
+        new BuiltinFunction("sin", Math::sin, Interval::sin),
+        new BuiltinFunction("tan", Math::tan, Interval::tan),
+        new BuiltinFunction("acos", Math::acos, Interval::acos),
+        new BuiltinFunction("asin", Math::asin, Interval::asin),
+        new BuiltinFunction("atan", Math::atan, x -> x.mapIncreasing(Math::atan)),
+        new BuiltinFunction("atan2", Math::atan2, Interval::atan2),
+        new BuiltinFunction("log", Math::log, Interval::log),
+        new BuiltinFunction("log10", Math::log10, Interval::log10),
+        new BuiltinFunction("abs", Math::abs, Interval::abs),
+        new BuiltinFunction("degrees", Math::toDegrees, x -> x.mapIncreasing(Math::toDegrees)),
+        new BuiltinFunction("radians", Math::toRadians, x -> x.mapIncreasing(Math::toRadians)),
+        new BuiltinFunction("round", x -> (double) Math.round(x), Interval::round),
+        new BuiltinFunction("sign", Math::signum, x -> x.mapIncreasing(Math::signum)),
+        new BuiltinFunction("max", Math::max, Interval::max),
+        new BuiltinFunction("min", Math::min, Interval::min),
+        new BuiltinFunction("hypot", Math::hypot, Interval::hypot),
+        new BuiltinFunction("clamp", 3, x -> Math.max(x[1], Math.min(x[2], x[0])), x -> x[1].max(x[2].min(x[0]))),
+        new BuiltinFunction("lerp", 3, x -> x[0] + (x[1] - x[0]) * x[2], x -> x[0].add(x[1].subtract(x[0]).multiply(x[2]))),
+    };
+
+    CONSTANT_NAMES = constants.keySet().toArray(new String[0]);
+    CONSTANTS = new Scope.VariableReference[CONSTANT_NAMES.length];
+    Map<String, Integer> constantIndices = new HashMap<>();
+    for (int i = 0; i < CONSTANT_NAMES.length; i++) {
+      CONSTANTS[i] = new Scope.VariableReference(constants.get(CONSTANT_NAMES[i]));
+      constantIndices.put(CONSTANT_NAMES[i], i);
+    }
+    CONSTANT_INDICES = Map.copyOf(constantIndices);
+
+    functionTable = new FunctionTable(functions);
+  }
+
+  /**
+   * Register a builtin function. Functions can only be registered while mods are loading.
+   *
+   * @param function The function.
+   * @throws IllegalStateException    If the registry has been frozen.
+   * @throws IllegalArgumentException If a builtin function with the same name already exists.
+   */
+  public static synchronized void registerFunction(final BuiltinFunction function) {
+    if (frozen) {
+      throw new IllegalStateException("builtin functions registry is frozen");
+    }
+    FunctionTable table = functionTable;
+    if (table.indices.containsKey(function.getName())) {
+      throw new IllegalArgumentException(String.format("builtin function %s already exists", function.getName()));
+    }
+    BuiltinFunction[] functions = Arrays.copyOf(table.functions, table.functions.length + 1);
+    functions[functions.length - 1] = function;
+    functionTable = new FunctionTable(functions);
+  }
+
+  /**
+   * Prevent any further function registration.
+   */
+  public static synchronized void freeze() {
+    frozen = true;
+  }
+
+  /**
+   * Return the index of the builtin constant with the given name.
+   *
+   * @param name Constant’s name.
+   * @return Constant’s index or -1 if there is no constant with this name.
+   */
+  public static int getConstantIndex(final String name) {
+    return CONSTANT_INDICES.getOrDefault(name, -1);
+  }
+
+  /**
+   * Return a reference to the builtin constant at the given index.
+   *
+   * @param index Constant’s index.
+   * @return A reference to the constant, its value never changes.
+   */
+  public static Scope.VariableReference getConstant(final int index) {
+    return CONSTANTS[index];
+  }
+
+  /**
+   * Return the name of the builtin constant at the given index.
+   *
+   * @param index Constant’s index.
+   * @return Constant’s name.
+   */
+  public static String getConstantName(final int index) {
+    return CONSTANT_NAMES[index];
+  }
+
+  /**
+   * Return the number of builtin constants.
+   */
+  public static int getConstantsCount() {
+    return CONSTANTS.length;
+  }
+
+  /**
+   * Return the index of the builtin function with the given name.
+   *
+   * @param name Function’s name.
+   * @return Function’s index or -1 if there is no function with this name.
+   */
+  public static int getFunctionIndex(final String name) {
+    return functionTable.indices.getOrDefault(name, -1);
+  }
+
+  /**
+   * Return the builtin function at the given index.
+   *
+   * @param index Function’s index.
+   * @return The function.
+   */
+  public static BuiltinFunction getFunction(final int index) {
+    return functionTable.functions[index];
+  }
+
+  /**
+   * Return the number of builtin functions.
+   */
+  public static int getFunctionsCount() {
+    return functionTable.functions.length;
+  }
+
+  /**
+   * Builtin functions and the mapping of their names to their indices.
+   */
+  private static class FunctionTable {
+    final BuiltinFunction[] functions;
+    final Map<String, Integer> indices;
+
+    FunctionTable(final BuiltinFunction[] functions) {
+      this.functions = functions;
+      Map<String, Integer> indices = new HashMap<>();
+      for (int i = 0; i < functions.length; i++) {
+        indices.put(functions[i].getName(), i);
+      }
+      this.indices = Map.copyOf(indices);
+    }
+  }
+
+  private BuiltinRegistry() {
+  }
+}
@@ -4,23 +4,51 @@ import net.darmo_creations.build_utils.DataManager;
 import net.darmo_creations.build_utils.ManagedData;
 import net.darmo_creations.build_utils.calculator.exceptions.*;
 import net.darmo_creations.build_utils.calculator.nodes.StatementResult;
+import net.darmo_creations.build_utils.calculator.nodes.expr.Node;
 import net.minecraft.nbt.CompoundTag;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * A calculator that can parse and evaluate simple mathematical expressions and declare variables and functions.
+ * <p>
+ * Calculators are not thread-safe and must only be used from the server thread. Expressions may however
+ * be evaluated on a shared pool of worker threads against snapshots of the calculator, see {@link #evaluateAsync(String, Executor)}.
  */
 public class Calculator implements ManagedData<Calculator> {
   public static final int MAX_VARS_PER_PLAYER = 100;
+  /**
+   * Number of worker threads evaluating expressions asynchronously.
+   */
+  public static final int WORKER_THREADS = 2;
+  /**
+   * Maximum number of asynchronous evaluations waiting for a worker thread.
+   */
+  public static final int MAX_QUEUED_EVALUATIONS = 32;
 
   private static final String SCOPE_KEY = "Scope";
+  private static final String LIBRARY_KEY = "Library";
+  private static final ExecutorService WORKERS = createWorkers();
 
   private DataManager<Calculator> manager;
   private Scope scope;
+  /**
+   * Call stacks of the asynchronous evaluations in progress, used to cancel them.
+   */
+  private final Set<CallStack> pendingEvaluations = ConcurrentHashMap.newKeySet();
+  /**
+   * Asynchronous evaluations waiting for the last statement to be committed. Only accessed by the owner thread.
+   */
+  private final Set<CompletableFuture<?>> queuedEvaluations = new HashSet<>();
+  /**
+   * Result of the last statement evaluated asynchronously, completed once its changes have been committed.
+   * Only accessed by the owner thread.
+   */
+  private CompletableFuture<?> lastStatement = CompletableFuture.completedFuture(null);
 
   /**
    * Create a calculator.
@@ -36,6 +64,13 @@ public class Calculator implements ManagedData<Calculator> {
     return this.scope.getVariables();
   }
 
+  /**
+   * Return a mapping of all formula variables to their expression.
+   */
+  public Map<String, Node> getFormulas() {
+    return this.scope.getFormulas();
+  }
+
   /**
    * Return a mapping of all builtin constants.
    */
@@ -44,10 +79,24 @@ public class Calculator implements ManagedData<Calculator> {
   }
 
   /**
-   * Return a list of all user-defined functions.
+   * Return a list of all user-defined functions, including those of the imported library
+   * that are not overridden by this calculator.
    */
   public List<Function> getFunctions() {
-    return new ArrayList<>(this.scope.getFunctions().values());
+    Map<String, Function> functions = new HashMap<>();
+    this.scope.getLibrary().ifPresent(library -> functions.putAll(library.getFunctions()));
+    functions.putAll(this.scope.getFunctions());
+    return new ArrayList<>(functions.values());
+  }
+
+  /**
+   * Return the memoization cache of the given user function for this calculator’s function definitions.
+   *
+   * @param function A function returned by {@link #getFunctions()}.
+   * @return The cache or an empty optional if the function is not pure and is thus never memoized.
+   */
+  public Optional<LRUCache<?, Double>> getMemoCache(final UserFunction function) {
+    return function.getMemoCache(this.scope);
   }
 
   /**
@@ -59,6 +108,7 @@ public class Calculator implements ManagedData<Calculator> {
 
   /**
    * Evaluate an expression then return its result.
+   * Pending formula recomputations are performed beforehand so that the expression sees up-to-date values.
    *
    * @param expression The expression to parse and evaluate.
    * @return A {@link StatementResult} object containing the status and value of the execution.
@@ -66,11 +116,289 @@ public class Calculator implements ManagedData<Calculator> {
    */
   public StatementResult evaluate(final String expression)
       throws SyntaxErrorException, ArithmeticException, EvaluationException {
+    this.scope.updateFormulas();
     StatementResult execute = Parser.parse(expression).execute(this.scope);
     this.manager.markDirty();
     return execute;
   }
 
+  /**
+   * Evaluate a unary function for each of the given values.
+   * Unlike {@link #evaluate(String)}, the function cannot modify the calculator. Pending formula recomputations
+   * are performed beforehand though, and mark the calculator as modified if any formula’s value changed,
+   * see {@link #updateFormulas()}.
+   *
+   * @param name   Function’s name.
+   * @param values Values of the parameter.
+   * @return The result for each value, in the same order.
+   * @throws UndefinedFunctionException If no function with this name exists.
+   * @throws InvalidFunctionArguments   If the function does not take exactly one parameter.
+   * @throws ArithmeticException        If any math error occurs.
+   * @see Function#evaluateAll(Scope, double[])
+   */
+  public double[] evaluateFunction(final String name, final double[] values)
+      throws UndefinedFunctionException, InvalidFunctionArguments, ArithmeticException, EvaluationException {
+    this.updateFormulas();
+    return this.scope.getFunction(name).evaluateAll(this.scope, values);
+  }
+
+  /**
+   * Evaluate a binary function for each (x, z) pair of the given grid.
+   * Unlike {@link #evaluate(String)}, the function cannot modify the calculator. Pending formula recomputations
+   * are performed beforehand though, and mark the calculator as modified if any formula’s value changed,
+   * see {@link #updateFormulas()}.
+   *
+   * @param name Function’s name.
+   * @param xs   Values of the first parameter.
+   * @param zs   Values of the second parameter.
+   * @return The results in row-major order, see {@link Function#evaluateGrid(Scope, double[], double[])}.
+   * @throws UndefinedFunctionException If no function with this name exists.
+   * @throws InvalidFunctionArguments   If the function does not take exactly two parameters.
+   * @throws ArithmeticException        If any math error occurs.
+   */
+  public double[] evaluateFunction(final String name, final double[] xs, final double[] zs)
+      throws UndefinedFunctionException, InvalidFunctionArguments, ArithmeticException, EvaluationException {
+    this.updateFormulas();
+    return this.scope.getFunction(name).evaluateGrid(this.scope, xs, zs);
+  }
+
+  /**
+   * Bound the values of a function over the given intervals, e.g. to skip whole regions where it has no root.
+   * Unlike {@link #evaluate(String)}, the function cannot modify the calculator. Pending formula recomputations
+   * are performed beforehand though, and mark the calculator as modified if any formula’s value changed,
+   * see {@link #updateFormulas()}.
+   *
+   * @param name      Function’s name.
+   * @param arguments Bounds of each parameter.
+   * @return The bounds of the function’s values, see {@link Function#evaluateInterval(Scope, Interval...)}.
+   * @throws UndefinedFunctionException If no function with this name exists.
+   * @throws InvalidFunctionArguments   If the number of arguments does not match the function’s.
+   */
+  public Interval evaluateFunctionInterval(final String name, final Interval... arguments)
+      throws UndefinedFunctionException, InvalidFunctionArguments, EvaluationException {
+    this.updateFormulas();
+    return this.scope.getFunction(name).evaluateInterval(this.scope, arguments);
+  }
+
+  /**
+   * Evaluate an expression on a worker thread against a snapshot of this calculator.
+   * Changes made by the expression are committed back to this calculator by the given executor,
+   * which must run tasks on the thread that owns this calculator. If a variable or function written by the expression
+   * has been modified since the snapshot was taken, the evaluation fails and none of its changes are applied.
+   * <p>
+   * Statements are evaluated one after another in the order this method is called: each one takes its snapshot
+   * once the previous one has been committed or has failed, and thus sees its changes. Callbacks registered
+   * on the returned future with the owner executor run before the next statement takes its snapshot.
+   * <p>
+   * This method must be called from the thread that owns this calculator. The returned future may complete
+   * exceptionally on the worker thread, callers should thus use the executor to handle its result.
+   * Cancelling the future stops the evaluation at the next function call.
+   *
+   * @param expression The expression to parse and evaluate.
+   * @param owner      Executor that runs tasks on the thread that owns this calculator.
+   * @return A future completed with the status and value of the execution once its changes have been committed,
+   * or with the {@link SyntaxErrorException}, {@link EvaluationException} or {@link ArithmeticException} that occured.
+   * It completes with a {@link RejectedExecutionException} if too many evaluations are in progress when its turn comes.
+   * @throws RejectedExecutionException If too many evaluations are already queued.
+   * @see Scope#commit(Scope)
+   */
+  public CompletableFuture<StatementResult> evaluateAsync(final String expression, final Executor owner) {
+    return this.enqueue(owner, true, snapshot -> Parser.parse(expression).execute(snapshot));
+  }
+
+  /**
+   * Evaluate a unary function for each of the given values on a worker thread,
+   * against a snapshot of this calculator taken once pending statements have been committed,
+   * see {@link #evaluateAsync(String, Executor)}. This method must be called from the thread that owns this calculator.
+   *
+   * @param name   Function’s name.
+   * @param values Values of the parameter.
+   * @param owner  Executor that runs tasks on the thread that owns this calculator.
+   * @return A future completed with the result for each value,
+   * or with the error that occured, see {@link #evaluateFunction(String, double[])}.
+   * @throws RejectedExecutionException If too many evaluations are already queued.
+   */
+  public CompletableFuture<double[]> evaluateFunctionAsync(final String name, final double[] values, final Executor owner) {
+    return this.enqueue(owner, false, snapshot -> snapshot.getFunction(name).evaluateAll(snapshot, values));
+  }
+
+  /**
+   * Evaluate a binary function for a range of the (x, z) pairs of the given grid on a worker thread,
+   * against a snapshot of this calculator taken once pending statements have been committed,
+   * see {@link #evaluateAsync(String, Executor)}. This method must be called from the thread that owns this calculator.
+   *
+   * @param name  Function’s name.
+   * @param xs    Values of the first parameter.
+   * @param zs    Values of the second parameter.
+   * @param start Index of the first pair to evaluate, in row-major order.
+   * @param end   Index of the pair after the last one to evaluate.
+   * @param owner Executor that runs tasks on the thread that owns this calculator.
+   * @return A future completed with the results of the pairs in the range,
+   * or with the error that occured, see {@link Function#evaluateGrid(Scope, double[], double[], int, int)}.
+   * @throws RejectedExecutionException If too many evaluations are already queued.
+   */
+  public CompletableFuture<double[]> evaluateFunctionAsync(final String name, final double[] xs, final double[] zs,
+                                                           final int start, final int end, final Executor owner) {
+    return this.enqueue(owner, false, snapshot -> snapshot.getFunction(name).evaluateGrid(snapshot, xs, zs, start, end));
+  }
+
+  /**
+   * Queue an asynchronous evaluation that starts on the owner thread once the last statement has been committed
+   * or has failed. The start is two owner tasks away from the completion of the last statement, callbacks
+   * that the caller registered on its future with the owner executor thus run first.
+   *
+   * @param owner      Executor that runs tasks on the thread that owns this calculator.
+   * @param statement  Whether the evaluation is a statement whose changes are committed, later evaluations wait for it.
+   * @param evaluation The evaluation to run against a snapshot.
+   * @return A future completed with the result of the evaluation, after its changes have been committed.
+   * @throws RejectedExecutionException If too many evaluations are already queued.
+   */
+  private <T> CompletableFuture<T> enqueue(final Executor owner, final boolean statement,
+                                           final SnapshotEvaluation<T> evaluation) {
+    if (this.queuedEvaluations.size() >= MAX_QUEUED_EVALUATIONS) {
+      throw new RejectedExecutionException("too many queued evaluations");
+    }
+    CompletableFuture<T> future = new CompletableFuture<>();
+    this.queuedEvaluations.add(future);
+    CompletableFuture<?> previous = this.lastStatement;
+    if (statement) {
+      this.lastStatement = future;
+    }
+    previous.handleAsync((result, error) -> null, owner).thenRunAsync(() -> {
+      // Cancelled while queued
+      if (!this.queuedEvaluations.remove(future) || future.isDone()) {
+        return;
+      }
+      // Server thread, limited to the fuel left for formulas in this tick
+      if (this.manager instanceof CalculatorsManager m) {
+        m.updateFormulas(this);
+      } else {
+        this.updateFormulas();
+      }
+      Scope scope = this.scope;
+      Scope snapshot = scope.snapshot();
+      cancelOnCancellation(future, snapshot);
+      CompletableFuture<T> result;
+      try {
+        result = this.runAsync(snapshot, () -> evaluation.evaluate(snapshot));
+      } catch (RejectedExecutionException e) {
+        future.completeExceptionally(e);
+        return;
+      }
+      if (statement) {
+        result = result.thenApplyAsync(value -> {
+          if (snapshot.getCallStack().isCancelled()) {
+            throw new EvaluationCancelledException();
+          }
+          scope.commit(snapshot);
+          this.manager.markDirty();
+          return value;
+        }, owner);
+      }
+      result.whenComplete((value, error) -> {
+        if (error != null) {
+          future.completeExceptionally(error);
+        } else {
+          future.complete(value);
+        }
+      });
+    }, owner);
+    return future;
+  }
+
+  /**
+   * Run an evaluation against a snapshot on a worker thread. The evaluation can be cancelled
+   * by {@link #cancelEvaluations()} until it completes.
+   *
+   * @param snapshot   The snapshot the task evaluates against.
+   * @param evaluation The evaluation to run.
+   * @return A future completed on the worker thread with the result of the evaluation.
+   * @throws RejectedExecutionException If too many evaluations are already in progress.
+   */
+  private <T> CompletableFuture<T> runAsync(final Scope snapshot, final Supplier<T> evaluation) {
+    CallStack stack = snapshot.getCallStack();
+    this.pendingEvaluations.add(stack);
+    try {
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          if (stack.isCancelled()) {
+            throw new EvaluationCancelledException();
+          }
+          return evaluation.get();
+        } finally {
+          this.pendingEvaluations.remove(stack);
+        }
+      }, WORKERS);
+    } catch (RejectedExecutionException e) {
+      this.pendingEvaluations.remove(stack);
+      throw e;
+    }
+  }
+
+  /**
+   * Cancel the evaluation against the given snapshot when the given future is cancelled.
+   *
+   * @return The future.
+   */
+  private static <T> CompletableFuture<T> cancelOnCancellation(final CompletableFuture<T> future, final Scope snapshot) {
+    future.whenComplete((result, error) -> {
+      if (future.isCancelled()) {
+        snapshot.getCallStack().cancel();
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Cancel all asynchronous evaluations of this calculator that are in progress, waiting for a worker thread
+   * or waiting for previous statements. They stop at their next function call and their changes are not committed.
+   * This method must be called from the thread that owns this calculator.
+   *
+   * @return The number of cancelled evaluations.
+   */
+  public int cancelEvaluations() {
+    int count = 0;
+    for (CompletableFuture<?> future : this.queuedEvaluations) {
+      if (future.completeExceptionally(new EvaluationCancelledException())) {
+        count++;
+      }
+    }
+    this.queuedEvaluations.clear();
+    for (CallStack stack : this.pendingEvaluations) {
+      if (this.pendingEvaluations.remove(stack)) {
+        stack.cancel();
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Recompute all formula variables whose dependencies changed since the last update.
+   */
+  public void updateFormulas() {
+    if (this.scope.updateFormulas()) {
+      this.manager.markDirty();
+    }
+  }
+
+  /**
+   * Recompute the formula variables whose dependencies changed since the last update, consuming at most
+   * the given amount of fuel. Formulas left over are recomputed by the next update.
+   * Called once per server tick so that several changes are handled in a single pass, see {@link CalculatorsManager#updateFormulas()}.
+   *
+   * @param maxFuel The maximum amount of fuel to consume.
+   * @return The amount of fuel consumed.
+   */
+  int updateFormulas(final int maxFuel) {
+    int fuel = this.scope.updateFormulas(maxFuel);
+    if (fuel < 0) {
+      return 0;
+    }
+    this.manager.markDirty();
+    return fuel;
+  }
+
   /**
    * Set the value of a variable.
    *
@@ -86,6 +414,23 @@ public class Calculator implements ManagedData<Calculator> {
     return oldValue;
   }
 
+  /**
+   * Apply several variable and function writes at once. The writes made by the given action are buffered
+   * in a {@link Transaction} then applied in a single step: quotas are checked once and the calculator
+   * is marked as modified once. If the action throws, no write is applied.
+   *
+   * @param action Action that performs the writes.
+   * @throws MaxDefinitionsException If the writes would exceed the quota of definitions, none of them is applied.
+   */
+  public void batch(final Consumer<Transaction> action) throws MaxDefinitionsException {
+    Transaction transaction = new Transaction();
+    action.accept(transaction);
+    if (!transaction.isEmpty()) {
+      this.scope.apply(transaction);
+      this.manager.markDirty();
+    }
+  }
+
   /**
    * Delete the variable that has the given name.
    *
@@ -108,16 +453,118 @@ public class Calculator implements ManagedData<Calculator> {
    * @param name Name of the function.
    * @return The function.
    * @throws UndefinedVariableException              If no function with this name exists.
+   * @throws LibraryFunctionDeletionAttemptException If the function is only defined by the imported library.
    * @throws BuiltinFunctionDeletionAttemptException If the identifier corresponds to a builtin function.
    */
   @SuppressWarnings("UnusedReturnValue")
   public Function deleteFunction(String name)
-      throws UndefinedVariableException, BuiltinFunctionDeletionAttemptException {
+      throws UndefinedVariableException, LibraryFunctionDeletionAttemptException, BuiltinFunctionDeletionAttemptException {
     Function function = this.scope.deleteFunction(name);
     this.manager.markDirty();
     return function;
   }
 
+  /**
+   * Return the library imported by this calculator.
+   */
+  public Optional<FunctionLibrary> getLibrary() {
+    return this.scope.getLibrary();
+  }
+
+  /**
+   * Import a library, replacing the current one if any. Functions defined by this calculator
+   * override the library’s functions with the same names.
+   *
+   * @param library The library.
+   */
+  public void importLibrary(final FunctionLibrary library) {
+    this.scope.importLibrary(Objects.requireNonNull(library));
+    this.manager.markDirty();
+  }
+
+  /**
+   * Remove the imported library, its functions are no longer visible.
+   *
+   * @return True if a library was imported, false otherwise.
+   */
+  public boolean removeLibrary() {
+    if (this.scope.getLibrary().isEmpty()) {
+      return false;
+    }
+    this.scope.importLibrary(null);
+    this.manager.markDirty();
+    return true;
+  }
+
+  /**
+   * Create a library from the functions of this calculator, including those of its imported library.
+   *
+   * @param name Library’s name.
+   * @return The library.
+   */
+  public FunctionLibrary exportLibrary(final String name) {
+    return this.scope.exportLibrary(name);
+  }
+
+  /**
+   * Called when a library is published. If this calculator imports a library with the same name,
+   * the new library replaces it.
+   *
+   * @param library The published library.
+   */
+  void libraryPublished(final FunctionLibrary library) {
+    if (this.scope.getLibrary().filter(l -> l.getName().equals(library.getName())).isPresent()) {
+      this.scope.importLibrary(library);
+    }
+  }
+
+  /**
+   * Called when a library is deleted. If this calculator imports it, it is removed.
+   *
+   * @param name Name of the deleted library.
+   */
+  void libraryDeleted(final String name) {
+    if (this.scope.getLibrary().filter(l -> l.getName().equals(name)).isPresent()) {
+      this.scope.importLibrary(null);
+    }
+  }
+
+  /**
+   * Return the maximum function call depth of this calculator.
+   */
+  public int getMaxCallDepth() {
+    return this.scope.getMaxCallDepth();
+  }
+
+  /**
+   * Set the maximum function call depth of this calculator.
+   *
+   * @param maxCallDepth The maximum depth.
+   * @throws IllegalArgumentException If the value is not between 1 and {@link Scope#MAX_ALLOWED_CALL_DEPTH}.
+   */
+  public void setMaxCallDepth(final int maxCallDepth) {
+    this.scope.setMaxCallDepth(maxCallDepth);
+    this.manager.markDirty();
+  }
+
+  /**
+   * Return the amount of fuel available to each evaluation of this calculator.
+   */
+  public int getFuelBudget() {
+    return this.scope.getFuelBudget();
+  }
+
+  /**
+   * Set the amount of fuel available to each evaluation of this calculator.
+   *
+   * @param fuelBudget The budget.
+   * @throws IllegalArgumentException If the value is not between 1 and {@link Scope#MAX_ALLOWED_FUEL}.
+   */
+  public void setFuelBudget(final int fuelBudget) {
+    this.scope.setFuelBudget(fuelBudget);
+    this.manager.markDirty();
+  }
+
   /**
    * Reset the context of this calculator, i.e. delete all user-defined variables and functions.
    */
@@ -130,6 +577,8 @@ public class Calculator implements ManagedData<Calculator> {
   public CompoundTag writeToNBT() {
     CompoundTag tag = new CompoundTag();
     tag.put(SCOPE_KEY, this.scope.writeToNBT());
+    // Libraries are saved once by the manager
+    this.scope.getLibrary().ifPresent(library -> tag.putString(LIBRARY_KEY, library.getName()));
     return tag;
   }
 
@@ -137,10 +586,37 @@ public class Calculator implements ManagedData<Calculator> {
   public void readFromNBT(CompoundTag tag) {
     this.scope = new Scope(MAX_VARS_PER_PLAYER);
     this.scope.readFromNBT(tag.getCompound(SCOPE_KEY));
+    if (tag.contains(LIBRARY_KEY) && this.manager instanceof CalculatorsManager m) {
+      m.getLibrary(tag.getString(LIBRARY_KEY)).ifPresent(this.scope::importLibrary);
+    }
   }
 
   @Override
   public void setManager(DataManager<Calculator> manager) {
     this.manager = manager;
   }
+
+  /**
+   * Create the bounded pool of daemon threads used for asynchronous evaluations.
+   * Idle threads are stopped after a while.
+   */
+  private static ExecutorService createWorkers() {
+    AtomicInteger count = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(MAX_QUEUED_EVALUATIONS), runnable -> {
+      Thread thread = new Thread(runnable, "Calculator Worker #" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * An evaluation run against a snapshot of a calculator.
+   */
+  @FunctionalInterface
+  private interface SnapshotEvaluation<T> {
+    T evaluate(Scope snapshot);
+  }
 }
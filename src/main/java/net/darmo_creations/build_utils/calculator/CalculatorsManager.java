@@ -2,14 +2,33 @@ package net.darmo_creations.build_utils.calculator;
 
 import net.darmo_creations.build_utils.DataManager;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
 
+import java.util.*;
+
 /**
  * Manager for global and per-player {@link Calculator} instances.
+ * <p>
+ * The functions of the global calculator can be published as named {@link FunctionLibrary}s
+ * that player calculators import. Each library is saved once, calculators only store the name of their library.
  */
 public class CalculatorsManager extends DataManager<Calculator> {
   public static final String DATA_NAME = "calculators";
 
+  private static final String LIBRARIES_KEY = "Libraries";
+
+  private final Map<String, FunctionLibrary> libraries = new HashMap<>();
+  /**
+   * Fuel left for formula recomputations until the next tick, see {@link Scope#FORMULAS_FUEL_PER_TICK}.
+   */
+  private int formulasFuel = Scope.FORMULAS_FUEL_PER_TICK;
+  /**
+   * Index of the calculator whose formulas are recomputed first on the next tick.
+   */
+  private int firstCalculator;
+
   /**
    * Load a calculator manager from the given tag.
    *
@@ -22,6 +41,101 @@ public class CalculatorsManager extends DataManager<Calculator> {
     return m;
   }
 
+  /**
+   * Recompute the pending formula variables of all calculators. Called once per server tick.
+   * <p>
+   * Recomputations of all calculators share {@link Scope#FORMULAS_FUEL_PER_TICK} fuel per tick,
+   * formulas left over are recomputed on later ticks. Calculators take turns being updated first
+   * so that each eventually gets the whole amount.
+   */
+  public void updateFormulas() {
+    this.formulasFuel = Scope.FORMULAS_FUEL_PER_TICK;
+    List<Calculator> calculators = new ArrayList<>();
+    this.forEachData(calculators::add);
+    int first = this.firstCalculator++ % calculators.size();
+    for (int i = 0; i < calculators.size() && this.formulasFuel > 0; i++) {
+      this.updateFormulas(calculators.get((first + i) % calculators.size()));
+    }
+    this.firstCalculator %= calculators.size();
+  }
+
+  /**
+   * Recompute the pending formula variables of a calculator with the fuel left until the next tick.
+   *
+   * @param calculator A calculator of this manager.
+   */
+  void updateFormulas(final Calculator calculator) {
+    this.formulasFuel -= calculator.updateFormulas(this.formulasFuel);
+  }
+
+  /**
+   * Publish the functions of the global calculator as a library. If a library with the same name already exists,
+   * it is replaced, including in the calculators that import it.
+   *
+   * @param name Library’s name.
+   * @return The published library.
+   */
+  public FunctionLibrary publishLibrary(final String name) {
+    FunctionLibrary library = this.getGlobalData().exportLibrary(name);
+    this.libraries.put(name, library);
+    this.forEachData(calculator -> calculator.libraryPublished(library));
+    this.markDirty();
+    return library;
+  }
+
+  /**
+   * Delete a library. Calculators that import it no longer see its functions.
+   *
+   * @param name Library’s name.
+   * @return True if the library existed, false otherwise.
+   */
+  public boolean deleteLibrary(final String name) {
+    if (this.libraries.remove(name) == null) {
+      return false;
+    }
+    this.forEachData(calculator -> calculator.libraryDeleted(name));
+    this.markDirty();
+    return true;
+  }
+
+  /**
+   * Return the library with the given name.
+   */
+  public Optional<FunctionLibrary> getLibrary(final String name) {
+    return Optional.ofNullable(this.libraries.get(name));
+  }
+
+  /**
+   * Return the names of all libraries, sorted.
+   */
+  public List<String> getLibraryNames() {
+    List<String> names = new ArrayList<>(this.libraries.keySet());
+    Collections.sort(names);
+    return names;
+  }
+
+  @Override
+  public CompoundTag save(CompoundTag tag) {
+    super.save(tag);
+    ListTag list = new ListTag();
+    this.libraries.values().forEach(library -> list.add(library.writeToNBT()));
+    tag.put(LIBRARIES_KEY, list);
+    return tag;
+  }
+
+  /**
+   * Read libraries before calculators, which look up the library they import by name.
+   */
+  @Override
+  protected void read(final CompoundTag tag) {
+    this.libraries.clear();
+    for (Tag item : tag.getList(LIBRARIES_KEY, new CompoundTag().getId())) {
+      FunctionLibrary library = new FunctionLibrary((CompoundTag) item);
+      this.libraries.put(library.getName(), library);
+    }
+    super.read(tag);
+  }
+
   @Override
   protected Calculator getDefaultDataValue() {
     return new Calculator();
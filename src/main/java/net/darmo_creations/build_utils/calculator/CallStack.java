@@ -0,0 +1,289 @@
+package net.darmo_creations.build_utils.calculator;
+
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationCancelledException;
+import net.darmo_creations.build_utils.calculator.exceptions.OutOfFuelException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The call stack of a global {@link Scope}. Function arguments and locals are stored in frames
+ * of a single growable {@code double} array, a frame’s slots being addressed relatively to the frame pointer.
+ * <p>
+ * A frame is built by pushing the arguments of a call then entered by {@link Function#call(Scope, int, int)},
+ * which releases it when the function returns.
+ * <p>
+ * The call depth is tracked as a counter along with the function of each entered frame,
+ * the names of the called functions are only gathered when a trace is requested, see {@link #getTrace()}.
+ * <p>
+ * The cost of evaluations is bounded by a fuel budget: each function call consumes the cost of the called function
+ * and the evaluation fails once the budget is exhausted. Fuel is restored by {@link #refuel()} at the start of each
+ * top-level evaluation. Evaluations may also be cancelled from another thread, see {@link #cancel()}.
+ */
+public final class CallStack {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private double[] slots = new double[INITIAL_CAPACITY];
+  /**
+   * The function of each entered frame, indexed by depth.
+   */
+  private Function[] functions = new Function[INITIAL_CAPACITY];
+  /**
+   * Index of the first slot of the current frame.
+   */
+  private int framePointer;
+  /**
+   * Index of the first free slot.
+   */
+  private int stackPointer;
+  /**
+   * Number of frames that are currently entered.
+   */
+  private int depth;
+  private int maxDepth = Scope.MAX_CALL_DEPTH;
+  private int fuelBudget = Scope.DEFAULT_FUEL;
+  /**
+   * Fuel left for the current evaluation.
+   */
+  private int fuel = Scope.DEFAULT_FUEL;
+  private volatile boolean cancelled;
+
+  /**
+   * Return the index of the first free slot. Values pushed from now on will be part of a frame starting at this index.
+   */
+  public int getStackPointer() {
+    return this.stackPointer;
+  }
+
+  /**
+   * Return the number of function calls that are currently being evaluated.
+   */
+  public int getDepth() {
+    return this.depth;
+  }
+
+  /**
+   * Return the maximum number of nested function calls.
+   */
+  public int getMaxDepth() {
+    return this.maxDepth;
+  }
+
+  /**
+   * Set the maximum number of nested function calls.
+   *
+   * @param maxDepth The maximum depth.
+   * @throws IllegalArgumentException If the value is not between 1 and {@link Scope#MAX_ALLOWED_CALL_DEPTH}.
+   */
+  public void setMaxDepth(final int maxDepth) {
+    if (maxDepth < 1 || maxDepth > Scope.MAX_ALLOWED_CALL_DEPTH) {
+      throw new IllegalArgumentException("max depth must be between 1 and " + Scope.MAX_ALLOWED_CALL_DEPTH);
+    }
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * Return the amount of fuel available to each top-level evaluation.
+   */
+  public int getFuelBudget() {
+    return this.fuelBudget;
+  }
+
+  /**
+   * Set the amount of fuel available to each top-level evaluation. Takes effect on the next {@link #refuel()}.
+   *
+   * @param fuelBudget The budget.
+   * @throws IllegalArgumentException If the value is not between 1 and {@link Scope#MAX_ALLOWED_FUEL}.
+   */
+  public void setFuelBudget(final int fuelBudget) {
+    if (fuelBudget < 1 || fuelBudget > Scope.MAX_ALLOWED_FUEL) {
+      throw new IllegalArgumentException("fuel budget must be between 1 and " + Scope.MAX_ALLOWED_FUEL);
+    }
+    this.fuelBudget = fuelBudget;
+  }
+
+  /**
+   * Return the fuel left for the current evaluation.
+   */
+  public int getFuel() {
+    return this.fuel;
+  }
+
+  /**
+   * Restore the full fuel budget if no function is being evaluated.
+   * Called at the start of each top-level evaluation, nested calls keep consuming the current fuel.
+   */
+  public void refuel() {
+    this.refuel(this.fuelBudget);
+  }
+
+  /**
+   * Restore at most the given amount of fuel, up to the fuel budget, if no function is being evaluated.
+   *
+   * @param maxFuel The maximum amount of fuel to restore.
+   */
+  public void refuel(final int maxFuel) {
+    if (this.depth == 0) {
+      this.fuel = Math.max(0, Math.min(this.fuelBudget, maxFuel));
+    }
+  }
+
+  /**
+   * Consume some fuel.
+   *
+   * @param cost The amount of fuel to consume.
+   * @throws OutOfFuelException           If there is not enough fuel left.
+   * @throws EvaluationCancelledException If evaluations have been cancelled.
+   */
+  public void consume(final int cost) throws OutOfFuelException, EvaluationCancelledException {
+    if (this.cancelled) {
+      throw new EvaluationCancelledException();
+    }
+    if ((this.fuel -= cost) < 0) {
+      this.fuel = 0;
+      throw new OutOfFuelException(this.fuelBudget);
+    }
+  }
+
+  /**
+   * Cancel the current evaluation and all later ones. Evaluations stop at the next function call.
+   * This method may be called from any thread, it is intended for stacks of evaluations that run
+   * on another thread, see {@link Scope#snapshot()}.
+   */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * Indicate whether evaluations using this stack have been cancelled.
+   */
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  /**
+   * Return the names of the functions that are currently being evaluated, from the outermost to the innermost.
+   */
+  public List<String> getTrace() {
+    List<String> trace = new ArrayList<>(this.depth);
+    for (int i = 0; i < this.depth; i++) {
+      trace.add(this.functions[i].getName());
+    }
+    return trace;
+  }
+
+  /**
+   * Push a value on top of this stack.
+   *
+   * @param value The value.
+   */
+  public void push(final double value) {
+    if (this.stackPointer == this.slots.length) {
+      this.slots = Arrays.copyOf(this.slots, 2 * this.slots.length);
+    }
+    this.slots[this.stackPointer++] = value;
+  }
+
+  /**
+   * Return the value of a slot of the current frame.
+   *
+   * @param slot Slot’s index relative to the current frame.
+   * @return The value.
+   */
+  public double getLocal(final int slot) {
+    return this.slots[this.framePointer + slot];
+  }
+
+  /**
+   * Set the value of a slot of the current frame.
+   *
+   * @param slot  Slot’s index relative to the current frame.
+   * @param value The value.
+   */
+  public void setLocal(final int slot, final double value) {
+    this.slots[this.framePointer + slot] = value;
+  }
+
+  /**
+   * Make the frame starting at the given index the current one.
+   *
+   * @param function The called function.
+   * @param frame    Index of the frame’s first slot.
+   * @param size     Number of slots of the frame, slots that have not been pushed are set to 0.
+   * @return The frame pointer of the caller, to be passed to {@link #leave(int, int)}.
+   */
+  int enter(final Function function, final int frame, final int size) {
+    while (this.stackPointer < frame + size) {
+      this.push(0);
+    }
+    if (this.depth == this.functions.length) {
+      this.functions = Arrays.copyOf(this.functions, 2 * this.functions.length);
+    }
+    this.functions[this.depth++] = function;
+    int callerFrame = this.framePointer;
+    this.framePointer = frame;
+    return callerFrame;
+  }
+
+  /**
+   * Restore the caller’s frame and release the given one.
+   *
+   * @param callerFrame The value returned by {@link #enter(Function, int, int)}.
+   * @param frame       Index of the frame to release.
+   */
+  void leave(final int callerFrame, final int frame) {
+    this.framePointer = callerFrame;
+    this.stackPointer = frame;
+    this.functions[--this.depth] = null;
+  }
+
+  /**
+   * Make the block starting at the given index the current frame. Unlike {@link #enter(Function, int, int)},
+   * no function is called: the call depth is not changed. Used by expressions that bind local variables.
+   *
+   * @param frame Index of the block’s first slot.
+   * @param size  Number of slots of the block, slots that have not been pushed are set to 0.
+   * @return The frame pointer of the enclosing frame, to be passed to {@link #leaveBlock(int, int)}.
+   */
+  public int enterBlock(final int frame, final int size) {
+    while (this.stackPointer < frame + size) {
+      this.push(0);
+    }
+    int callerFrame = this.framePointer;
+    this.framePointer = frame;
+    return callerFrame;
+  }
+
+  /**
+   * Restore the enclosing frame and release the given block.
+   *
+   * @param callerFrame The value returned by {@link #enterBlock(int, int)}.
+   * @param frame       Index of the block to release.
+   */
+  public void leaveBlock(final int callerFrame, final int frame) {
+    this.framePointer = callerFrame;
+    this.stackPointer = frame;
+  }
+
+  /**
+   * Extend the current frame to the given size, new slots are set to 0.
+   * Must only be called while no value has been pushed on top of the current frame.
+   *
+   * @param size The new number of slots of the current frame, smaller sizes are ignored.
+   */
+  public void growFrame(final int size) {
+    while (this.stackPointer < this.framePointer + size) {
+      this.push(0);
+    }
+  }
+
+  /**
+   * Release the slots starting at the given index without entering them.
+   *
+   * @param frame Index of the first slot to release.
+   */
+  public void release(final int frame) {
+    this.stackPointer = frame;
+  }
+}
@@ -0,0 +1,140 @@
+package net.darmo_creations.build_utils.calculator;
+
+import net.darmo_creations.build_utils.calculator.nodes.expr.*;
+
+import java.util.*;
+
+/**
+ * Shares the subexpressions that occur several times in a function’s body.
+ * <p>
+ * The body is first hash-consed into a DAG: structurally equal subtrees are replaced by a single instance.
+ * Subexpressions that occur more than once are then wrapped in {@link SharedNode}s, all occurrences
+ * of a subexpression sharing the same frame slots so that it is evaluated at most once per call.
+ * Only the outermost repeated subexpressions are shared, their own operands being evaluated once anyway.
+ * <p>
+ * As a shared subexpression is evaluated by its first evaluated occurrence, exceptions are thrown at the same point
+ * as in the original tree. Subexpressions are only shared if their value cannot change during a call:
+ * they must not call functions other than pure builtins nor contain aggregates or inlined calls
+ * or read their variables.
+ * Calls are resolved by name, a user function shadowing a pure builtin is thus assumed to be pure too.
+ */
+public final class CommonSubexpressionEliminator {
+  /**
+   * Share the repeated subexpressions of a function’s body.
+   *
+   * @param node            The resolved body.
+   * @param parametersCount Number of parameters of the function, that are the first slots of its frame.
+   * @param firstSlot       Index of the first frame slot available for shared subexpressions.
+   * @return The body with shared subexpressions, or the given body if no subexpression is repeated.
+   */
+  public static Node eliminate(final Node node, final int parametersCount, final int firstSlot) {
+    return new CommonSubexpressionEliminator(parametersCount, firstSlot).eliminate(node);
+  }
+
+  private final int parametersCount;
+  private int nextSlot;
+  /**
+   * Whether the value of each subexpression cannot change during a call, keyed by identity
+   * as the tree has been hash-consed.
+   */
+  private final Map<Node, Boolean> invariants = new IdentityHashMap<>();
+  private final Map<Node, Integer> occurrences = new IdentityHashMap<>();
+  private final Map<Node, Node> rebuilt = new IdentityHashMap<>();
+
+  private CommonSubexpressionEliminator(final int parametersCount, final int firstSlot) {
+    this.parametersCount = parametersCount;
+    this.nextSlot = firstSlot;
+  }
+
+  private Node eliminate(final Node node) {
+    Map<Node, Node> canonical = new HashMap<>();
+    Node dag = node.transform(n -> {
+      Node existing = canonical.putIfAbsent(n, n);
+      return existing != null ? existing : n;
+    });
+    this.count(dag);
+    if (this.occurrences.values().stream().noneMatch(count -> count > 1)) {
+      return node;
+    }
+    return this.rebuild(dag);
+  }
+
+  /**
+   * Count the occurrences of shareable subexpressions. The operands of an occurrence that is not the first one
+   * are not visited as they will not be evaluated.
+   */
+  private void count(final Node node) {
+    boolean shareable = this.isShareable(node);
+    if (shareable && this.occurrences.merge(node, 1, Integer::sum) > 1) {
+      return;
+    }
+    if (node instanceof FunctionNode f) {
+      f.getOperands().forEach(this::count);
+    }
+  }
+
+  /**
+   * Indicate whether the given subexpression can be shared. Leaves are cheap enough to be evaluated again.
+   */
+  private boolean isShareable(final Node node) {
+    return node instanceof FunctionNode && this.isInvariant(node);
+  }
+
+  /**
+   * Indicate whether the value of the given subexpression cannot change during a call.
+   */
+  private boolean isInvariant(final Node node) {
+    Boolean invariant = this.invariants.get(node);
+    if (invariant != null) {
+      return invariant;
+    }
+    if (node instanceof ParameterNode p) {
+      invariant = p.getSlot() < this.parametersCount;
+    } else if (node instanceof AggregateNode || node instanceof InlineNode) {
+      invariant = false;
+    } else if (node instanceof FunctionNode f) {
+      invariant = (node instanceof OperatorNode || node.getID() == FunctionNode.ID && isPureBuiltin(f.getName()))
+          && f.getOperands().stream().allMatch(this::isInvariant);
+    } else {
+      // Numbers and global variables
+      invariant = true;
+    }
+    this.invariants.put(node, invariant);
+    return invariant;
+  }
+
+  private static boolean isPureBuiltin(final String name) {
+    int index = BuiltinRegistry.getFunctionIndex(name);
+    return index >= 0 && BuiltinRegistry.getFunction(index).isPure();
+  }
+
+  /**
+   * Rebuild the tree, wrapping repeated subexpressions in {@link SharedNode}s.
+   */
+  private Node rebuild(final Node node) {
+    Node result = this.rebuilt.get(node);
+    if (result != null) {
+      return result;
+    }
+    result = node;
+    if (node instanceof FunctionNode f) {
+      List<Node> operands = f.getOperands();
+      boolean changed = false;
+      for (int i = 0; i < operands.size(); i++) {
+        Node operand = operands.get(i);
+        Node newOperand = this.rebuild(operand);
+        changed |= newOperand != operand;
+        operands.set(i, newOperand);
+      }
+      if (changed) {
+        result = f.withOperands(operands);
+      }
+    }
+    if (this.occurrences.getOrDefault(node, 0) > 1) {
+      result = new SharedNode(result, this.nextSlot);
+      this.nextSlot += 2;
+    }
+    this.rebuilt.put(node, result);
+    return result;
+  }
+}
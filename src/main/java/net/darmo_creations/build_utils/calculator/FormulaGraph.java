@@ -0,0 +1,342 @@
+package net.darmo_creations.build_utils.calculator;
+
+import net.darmo_creations.build_utils.calculator.exceptions.CircularFormulaException;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
+import net.darmo_creations.build_utils.calculator.exceptions.OutOfFuelException;
+import net.darmo_creations.build_utils.calculator.exceptions.UndefinedFunctionException;
+import net.darmo_creations.build_utils.calculator.nodes.expr.FunctionNode;
+import net.darmo_creations.build_utils.calculator.nodes.expr.Node;
+import net.darmo_creations.build_utils.calculator.nodes.expr.ParameterNode;
+import net.darmo_creations.build_utils.calculator.nodes.expr.VariableNode;
+
+import java.util.*;
+
+/**
+ * Dependency graph of the formula variables of a {@link Scope}.
+ * <p>
+ * A formula variable keeps the expression it was defined with and is recomputed whenever one of the
+ * variables it depends on changes, like a spreadsheet cell. Dependencies are the variables read by the expression
+ * and by the user functions it calls, directly or not. Changes are not propagated immediately:
+ * they mark the dependent formulas as dirty and {@link #update(int)} recomputes all dirty formulas and those that
+ * depend on them at once, each exactly once and in topological order. Updates may be given less fuel than
+ * the scope’s budget, formulas left over when it runs out are recomputed by the next update.
+ * <p>
+ * Formulas that depend on themselves are rejected when defined. Cycles introduced afterwards by function
+ * redefinitions are detected when updating and the formulas involved keep their last value,
+ * as do formulas whose evaluation fails.
+ */
+public final class FormulaGraph {
+  private final Scope scope;
+  /**
+   * Formulas indexed by the name of their variable, in definition order.
+   */
+  private final Map<String, Formula> formulas = new LinkedHashMap<>();
+  /**
+   * Maps variable names to the formulas that depend on them.
+   */
+  private final Map<String, Set<Formula>> dependents = new HashMap<>();
+  private final Set<Formula> dirty = new HashSet<>();
+  /**
+   * Version of the scope’s function definitions dependencies were computed against.
+   */
+  private int functionsVersion;
+
+  /**
+   * Create an empty graph.
+   *
+   * @param scope The scope formulas are evaluated in.
+   */
+  FormulaGraph(final Scope scope) {
+    this.scope = scope;
+    this.functionsVersion = scope.getFunctionsVersion();
+  }
+
+  /**
+   * Create a copy of the given graph, to be restored by {@link #restore(FormulaGraph)}.
+   * Formulas themselves are shared.
+   *
+   * @param graph The graph to copy.
+   */
+  FormulaGraph(final FormulaGraph graph) {
+    this.scope = graph.scope;
+    this.restore(graph);
+  }
+
+  /**
+   * Replace the state of this graph by that of the given copy.
+   *
+   * @param graph A copy of this graph.
+   */
+  void restore(final FormulaGraph graph) {
+    this.formulas.clear();
+    this.formulas.putAll(graph.formulas);
+    this.dependents.clear();
+    graph.dependents.forEach((name, formulas) -> this.dependents.put(name, new LinkedHashSet<>(formulas)));
+    this.dirty.clear();
+    this.dirty.addAll(graph.dirty);
+    this.functionsVersion = graph.functionsVersion;
+  }
+
+  /**
+   * Indicate whether the given variable is a formula variable.
+   *
+   * @param name Variable’s name.
+   */
+  public boolean isFormula(final String name) {
+    return this.formulas.containsKey(name);
+  }
+
+  /**
+   * Return a mapping of all formula variables to their expression.
+   */
+  public Map<String, Node> getFormulas() {
+    Map<String, Node> formulas = new LinkedHashMap<>();
+    this.formulas.forEach((name, formula) -> formulas.put(name, formula.node));
+    return formulas;
+  }
+
+  /**
+   * Define a formula, replacing any previous formula for the same variable.
+   * The variable itself is not modified.
+   *
+   * @param name Variable’s name.
+   * @param node Formula’s expression.
+   * @throws CircularFormulaException If the formula depends on its own variable.
+   */
+  void define(final String name, final Node node) throws CircularFormulaException {
+    Formula formula = new Formula(name, node);
+    this.analyze(formula);
+    if (this.dependsOn(formula, name, new HashSet<>())) {
+      throw new CircularFormulaException(name);
+    }
+    this.remove(name);
+    this.formulas.put(name, formula);
+    this.index(formula);
+  }
+
+  /**
+   * Remove the formula of the given variable, if any. The variable becomes a plain variable.
+   *
+   * @param name Variable’s name.
+   */
+  void remove(final String name) {
+    Formula formula = this.formulas.remove(name);
+    if (formula != null) {
+      this.unindex(formula);
+      this.dirty.remove(formula);
+    }
+  }
+
+  /**
+   * Remove all formulas.
+   */
+  void clear() {
+    this.formulas.clear();
+    this.dependents.clear();
+    this.dirty.clear();
+  }
+
+  /**
+   * Mark all formulas that directly depend on the given variable as dirty.
+   *
+   * @param name Name of the variable that was set or deleted.
+   */
+  void variableChanged(final String name) {
+    Set<Formula> formulas = this.dependents.get(name);
+    if (formulas != null) {
+      this.dirty.addAll(formulas);
+    }
+  }
+
+  /**
+   * Recompute all dirty formulas and the formulas that depend on them. Formulas that call user functions
+   * are also recomputed if any function has been defined or deleted since the last update.
+   * <p>
+   * All recomputations share the scope’s fuel budget, capped to the given amount. If a formula runs out of fuel
+   * after other formulas consumed part of it or because of the cap, it and the formulas that were not recomputed yet
+   * are left for the next update. Formulas that run out of fuel despite the full budget, or the full
+   * {@link Scope#FORMULAS_FUEL_PER_TICK} if lower, keep their value.
+   *
+   * @param maxFuel The maximum amount of fuel to consume.
+   * @return True if at least one formula was recomputed or left for the next update.
+   */
+  boolean update(final int maxFuel) {
+    int version = this.scope.getFunctionsVersion();
+    if (version != this.functionsVersion) {
+      this.functionsVersion = version;
+      // Dependencies through functions may have changed
+      this.dependents.clear();
+      for (Formula formula : this.formulas.values()) {
+        this.analyze(formula);
+        this.index(formula);
+        if (!formula.functions.isEmpty()) {
+          this.dirty.add(formula);
+        }
+      }
+    }
+    if (this.dirty.isEmpty()) {
+      return false;
+    }
+    // All recomputations share a single fuel budget
+    CallStack stack = this.scope.getCallStack();
+    stack.refuel(maxFuel);
+    int fullFuel = Math.min(stack.getFuelBudget(), Scope.FORMULAS_FUEL_PER_TICK);
+
+    // Gather all formulas that transitively depend on dirty ones
+    Set<Formula> affected = new HashSet<>();
+    Deque<Formula> queue = new ArrayDeque<>(this.dirty);
+    this.dirty.clear();
+    while (!queue.isEmpty()) {
+      Formula formula = queue.poll();
+      if (affected.add(formula)) {
+        queue.addAll(this.dependents.getOrDefault(formula.name, Collections.emptySet()));
+      }
+    }
+
+    // Kahn’s algorithm restricted to affected formulas, in definition order
+    Map<Formula, Integer> inDegrees = new HashMap<>();
+    Deque<Formula> ready = new ArrayDeque<>();
+    for (Formula formula : this.formulas.values()) {
+      if (affected.contains(formula)) {
+        int inDegree = 0;
+        for (String variable : formula.variables) {
+          Formula dependency = this.formulas.get(variable);
+          if (dependency != null && affected.contains(dependency)) {
+            inDegree++;
+          }
+        }
+        inDegrees.put(formula, inDegree);
+        if (inDegree == 0) {
+          ready.add(formula);
+        }
+      }
+    }
+    while (!ready.isEmpty()) {
+      Formula formula = ready.poll();
+      if (!this.evaluate(formula, fullFuel)) {
+        // Formulas waiting for this one or for ready ones are gathered again from them
+        this.dirty.add(formula);
+        this.dirty.addAll(ready);
+        break;
+      }
+      for (Formula dependent : this.dependents.getOrDefault(formula.name, Collections.emptySet())) {
+        Integer inDegree = inDegrees.get(dependent);
+        if (inDegree != null && inDegree > 0 && inDegrees.merge(dependent, -1, Integer::sum) == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    // Formulas that were never ready are part of a cycle and keep their value
+    return true;
+  }
+
+  /**
+   * Evaluate a formula and store its value, the previous value is kept if the evaluation fails.
+   *
+   * @param formula  The formula to evaluate.
+   * @param fullFuel Fuel below which running out of fuel is not considered a failure of the formula.
+   * @return False if the formula ran out of fuel with less than the given amount available, true otherwise.
+   */
+  private boolean evaluate(final Formula formula, final int fullFuel) {
+    int fuel = this.scope.getCallStack().getFuel();
+    double value;
+    try {
+      value = formula.node.evaluate(this.scope);
+    } catch (OutOfFuelException e) {
+      return fuel >= fullFuel;
+    } catch (EvaluationException | ArithmeticException e) {
+      return true;
+    }
+    this.scope.setFormulaValue(formula.name, value);
+    return true;
+  }
+
+  /**
+   * Compute the dependencies of a formula against the current function definitions.
+   */
+  private void analyze(final Formula formula) {
+    formula.variables.clear();
+    formula.functions.clear();
+    Set<String> functionsToVisit = new HashSet<>();
+    formula.node.transform(n -> {
+      if (n instanceof FunctionNode f && n.getID() == FunctionNode.ID) {
+        functionsToVisit.add(f.getName());
+      } else if (n instanceof VariableNode v && !(n instanceof ParameterNode)) {
+        formula.variables.add(v.getName());
+      }
+      return n;
+    });
+    Deque<String> queue = new ArrayDeque<>(functionsToVisit);
+    while (!queue.isEmpty()) {
+      String name = queue.poll();
+      Function function;
+      try {
+        function = this.scope.getFunction(name);
+      } catch (UndefinedFunctionException e) {
+        continue;
+      }
+      if (function instanceof UserFunction f && formula.functions.add(name)) {
+        formula.variables.addAll(f.getReadVariables());
+        queue.addAll(f.getCalledFunctions());
+      }
+    }
+  }
+
+  /**
+   * Indicate whether a formula depends on the given variable, directly or through other formulas.
+   */
+  private boolean dependsOn(final Formula formula, final String name, final Set<Formula> visited) {
+    if (!visited.add(formula)) {
+      return false;
+    }
+    for (String variable : formula.variables) {
+      if (variable.equals(name)) {
+        return true;
+      }
+      Formula dependency = this.formulas.get(variable);
+      if (dependency != null && this.dependsOn(dependency, name, visited)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void index(final Formula formula) {
+    for (String variable : formula.variables) {
+      this.dependents.computeIfAbsent(variable, k -> new LinkedHashSet<>()).add(formula);
+    }
+  }
+
+  private void unindex(final Formula formula) {
+    for (String variable : formula.variables) {
+      Set<Formula> formulas = this.dependents.get(variable);
+      if (formulas != null) {
+        formulas.remove(formula);
+        if (formulas.isEmpty()) {
+          this.dependents.remove(variable);
+        }
+      }
+    }
+  }
+
+  /**
+   * A formula variable along with its dependencies.
+   */
+  private static class Formula {
+    final String name;
+    final Node node;
+    /**
+     * Names of the variables this formula depends on.
+     */
+    final Set<String> variables = new HashSet<>();
+    /**
+     * Names of the user functions this formula calls, directly or not.
+     */
+    final Set<String> functions = new HashSet<>();
+
+    Formula(final String name, final Node node) {
+      this.name = name;
+      this.node = node;
+    }
+  }
+}
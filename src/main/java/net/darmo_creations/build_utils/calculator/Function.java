@@ -1,7 +1,9 @@
 package net.darmo_creations.build_utils.calculator;
 
+import net.darmo_creations.build_utils.calculator.compiler.CompiledFunction;
 import net.darmo_creations.build_utils.calculator.exceptions.InvalidFunctionArguments;
 import net.darmo_creations.build_utils.calculator.exceptions.MaxDepthReachedException;
+import net.darmo_creations.build_utils.calculator.exceptions.OutOfFuelException;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.StringTag;
@@ -59,9 +61,6 @@ public abstract class Function {
 
   /**
    * Evaluates this function in the given scope with the given parameter values.
-   * <p>
-   * A new scope is stacked before evaluating the function and unstacked afterwards.
-   * This scope contains variables corresponding to the function’s arguments.
    *
    * @param scope      Context the function has to use.
    * @param parameters Values for each parameters.
@@ -69,28 +68,288 @@ public abstract class Function {
    * @throws InvalidFunctionArguments If the number of parameter values does not match
    *                                  the number of parameters of this function.
    * @throws MaxDepthReachedException If the maximum call depth has been reached.
+   * @throws OutOfFuelException       If the evaluation exhausts its fuel budget.
+   * @see #evaluate(Scope, double...)
    */
   public double evaluate(final Scope scope, final List<Double> parameters) {
-    if (parameters.size() != this.parameterNames.size()) {
-      throw new InvalidFunctionArguments(this.name, this.parameterNames.size(), parameters.size());
+    return this.evaluate(scope, parameters.stream().mapToDouble(Double::doubleValue).toArray());
+  }
+
+  /**
+   * Evaluates this function in the given scope with the given parameter values.
+   * <p>
+   * The values are pushed onto the scope’s {@link CallStack} as a new frame then the function is called.
+   * If no function is being evaluated, this starts a new evaluation with a full fuel budget.
+   *
+   * @param scope      Context the function has to use.
+   * @param parameters Values for each parameters.
+   * @return The result of the function.
+   * @throws InvalidFunctionArguments If the number of parameter values does not match
+   *                                  the number of parameters of this function.
+   * @throws MaxDepthReachedException If the maximum call depth has been reached.
+   * @throws OutOfFuelException       If the evaluation exhausts its fuel budget.
+   * @see #call(Scope, int, int)
+   */
+  public double evaluate(final Scope scope, final double... parameters) {
+    CallStack stack = scope.getCallStack();
+    stack.refuel();
+    int frame = stack.getStackPointer();
+    for (double parameter : parameters) {
+      stack.push(parameter);
+    }
+    return this.call(scope, frame, parameters.length);
+  }
+
+  /**
+   * Calls this function with the arguments that have been pushed onto the scope’s {@link CallStack}
+   * starting at the given frame index. The frame is entered before evaluating the function
+   * and released afterwards, even if an exception is thrown. The call consumes {@link #getCost()} fuel.
+   *
+   * @param scope          Context the function has to use.
+   * @param frame          Index of the first argument in the call stack.
+   * @param argumentsCount Number of arguments that were pushed.
+   * @return The result of the function.
+   * @throws InvalidFunctionArguments If the number of arguments does not match
+   *                                  the number of parameters of this function.
+   * @throws MaxDepthReachedException If the maximum call depth has been reached.
+   * @throws OutOfFuelException       If the evaluation exhausts its fuel budget.
+   */
+  public double call(final Scope scope, final int frame, final int argumentsCount) {
+    CallStack stack = scope.getCallStack();
+    if (argumentsCount != this.parameterNames.size()) {
+      stack.release(frame);
+      throw new InvalidFunctionArguments(this.name, this.parameterNames.size(), argumentsCount);
+    }
+    this.checkCall(stack, frame);
+    int callerFrame = stack.enter(this, frame, this.getFrameSize());
+    try {
+      return this.evaluateImpl(scope, stack);
+    } finally {
+      stack.leave(callerFrame, frame);
     }
-    if (scope.getStackTrace().size() > Scope.MAX_CALL_DEPTH) {
-      throw new MaxDepthReachedException(Scope.MAX_CALL_DEPTH);
+  }
+
+  /**
+   * Evaluates this function over intervals: the result contains the value returned by
+   * {@link #evaluate(Scope, double...)} for any arguments taken in the given intervals, evaluations that fail excepted.
+   * If no function is being evaluated, this starts a new evaluation with a full fuel budget.
+   *
+   * @param scope     Context the function has to use.
+   * @param arguments Bounds of each parameter.
+   * @return The bounds of the function’s values.
+   * @throws InvalidFunctionArguments If the number of arguments does not match
+   *                                  the number of parameters of this function.
+   * @throws OutOfFuelException       If the evaluation exhausts its fuel budget.
+   * @see Interval
+   */
+  public Interval evaluateInterval(final Scope scope, final Interval... arguments) {
+    scope.getCallStack().refuel();
+    return this.callInterval(scope, arguments);
+  }
+
+  /**
+   * Calls this function over intervals. The call consumes {@link #getCost()} fuel and counts towards
+   * the maximum call depth like {@link #call(Scope, int, int)} but no slot is pushed onto the call stack.
+   * Bounds of recursive calls may need more calls than any evaluation they stand for, calls made at
+   * the maximum depth are thus not evaluated and may return any value.
+   *
+   * @param scope     Context the function has to use.
+   * @param arguments Bounds of each parameter.
+   * @return The bounds of the function’s values.
+   * @throws InvalidFunctionArguments If the number of arguments does not match
+   *                                  the number of parameters of this function.
+   * @throws OutOfFuelException       If the evaluation exhausts its fuel budget.
+   */
+  public Interval callInterval(final Scope scope, final Interval[] arguments) {
+    if (arguments.length != this.parameterNames.size()) {
+      throw new InvalidFunctionArguments(this.name, this.parameterNames.size(), arguments.length);
     }
-    Scope newScope = new Scope(this.name, scope.getGlobalScope(), scope);
-    for (int i = 0; i < this.parameterNames.size(); i++) {
-      newScope.setVariable(this.parameterNames.get(i), parameters.get(i));
+    CallStack stack = scope.getCallStack();
+    if (stack.getDepth() >= stack.getMaxDepth()) {
+      return Interval.ENTIRE_OR_NAN;
     }
-    return this.evaluateImpl(newScope);
+    stack.consume(this.getCost());
+    int frame = stack.getStackPointer();
+    int callerFrame = stack.enter(this, frame, 0);
+    try {
+      return this.evaluateIntervalImpl(scope, arguments);
+    } finally {
+      stack.leave(callerFrame, frame);
+    }
+  }
+
+  /**
+   * Evaluates this function for each of the given values. The function must take a single parameter.
+   * <p>
+   * A single frame is entered for the whole batch and the code returned by {@link #getBatchEvaluator(Scope)}
+   * is applied once per value, sparing the per-call overhead of {@link #evaluate(Scope, double...)}.
+   * The whole batch is a single evaluation, each value consumes {@link #getCost()} fuel.
+   *
+   * @param scope  Context the function has to use.
+   * @param values Values of the parameter.
+   * @return The result of the function for each value, in the same order.
+   * @throws InvalidFunctionArguments If this function does not take exactly one parameter.
+   * @throws MaxDepthReachedException If the maximum call depth has been reached.
+   * @throws OutOfFuelException       If the evaluation exhausts its fuel budget.
+   */
+  public double[] evaluateAll(final Scope scope, final double[] values) {
+    if (this.parameterNames.size() != 1) {
+      throw new InvalidFunctionArguments(this.name, this.parameterNames.size(), 1);
+    }
+    return this.evaluateBatch(scope, values.length, (stack, i) -> stack.setLocal(0, values[i]));
+  }
+
+  /**
+   * Evaluates this function for each (x, z) pair of the given grid. The function must take two parameters.
+   *
+   * @param scope Context the function has to use.
+   * @param xs    Values of the first parameter.
+   * @param zs    Values of the second parameter.
+   * @return The results in row-major order: the result for {@code xs[i]} and {@code zs[j]}
+   * is at index {@code i * zs.length + j}.
+   * @throws InvalidFunctionArguments If this function does not take exactly two parameters.
+   * @throws MaxDepthReachedException If the maximum call depth has been reached.
+   * @throws OutOfFuelException       If the evaluation exhausts its fuel budget.
+   * @see #evaluateAll(Scope, double[])
+   */
+  public double[] evaluateGrid(final Scope scope, final double[] xs, final double[] zs) {
+    return this.evaluateGrid(scope, xs, zs, 0, xs.length * zs.length);
+  }
+
+  /**
+   * Evaluates this function for a range of the cells of the given grid, in row-major order.
+   * The function must take two parameters.
+   *
+   * @param scope Context the function has to use.
+   * @param xs    Values of the first parameter.
+   * @param zs    Values of the second parameter.
+   * @param start Index of the first cell to evaluate, in row-major order.
+   * @param end   Index of the cell after the last one to evaluate.
+   * @return The results of the cells, the result of cell {@code start + k} is at index {@code k}.
+   * @throws InvalidFunctionArguments If this function does not take exactly two parameters.
+   * @throws MaxDepthReachedException If the maximum call depth has been reached.
+   * @throws OutOfFuelException       If the evaluation exhausts its fuel budget.
+   * @see #evaluateGrid(Scope, double[], double[])
+   */
+  public double[] evaluateGrid(final Scope scope, final double[] xs, final double[] zs, final int start, final int end) {
+    if (this.parameterNames.size() != 2) {
+      throw new InvalidFunctionArguments(this.name, this.parameterNames.size(), 2);
+    }
+    return this.evaluateBatch(scope, end - start, (stack, i) -> {
+      stack.setLocal(0, xs[(start + i) / zs.length]);
+      stack.setLocal(1, zs[(start + i) % zs.length]);
+    });
+  }
+
+  /**
+   * Enter a frame then evaluate the function the given number of times.
+   *
+   * @param scope     Context the function has to use.
+   * @param count     Number of evaluations.
+   * @param arguments Sets the arguments of each evaluation in the current frame.
+   * @return The results of each evaluation.
+   */
+  private double[] evaluateBatch(final Scope scope, final int count, final BatchArguments arguments) {
+    double[] results = new double[count];
+    if (count == 0) {
+      return results;
+    }
+    CallStack stack = scope.getCallStack();
+    stack.refuel();
+    int frame = stack.getStackPointer();
+    this.checkCall(stack, frame);
+    int callerFrame = stack.enter(this, frame, this.getFrameSize());
+    try {
+      CompiledFunction evaluator = this.getBatchEvaluator(scope);
+      int cost = this.getCost();
+      for (int i = 0; i < count; i++) {
+        if (i > 0) {
+          // The first evaluation was paid for when checking the call
+          stack.consume(cost);
+        }
+        arguments.set(stack, i);
+        results[i] = evaluator.apply(scope, stack);
+      }
+    } finally {
+      stack.leave(callerFrame, frame);
+    }
+    return results;
+  }
+
+  /**
+   * Consume the fuel of a call, the given frame is released if the call cannot be performed.
+   *
+   * @throws MaxDepthReachedException If the maximum call depth has been reached.
+   * @throws OutOfFuelException       If the evaluation exhausts its fuel budget.
+   */
+  private void checkCall(final CallStack stack, final int frame) {
+    if (stack.getDepth() >= stack.getMaxDepth()) {
+      // Gather the trace before releasing anything
+      MaxDepthReachedException exception = new MaxDepthReachedException(stack.getMaxDepth(), stack.getTrace());
+      stack.release(frame);
+      throw exception;
+    }
+    try {
+      stack.consume(this.getCost());
+    } catch (RuntimeException e) {
+      stack.release(frame);
+      throw e;
+    }
+  }
+
+  /**
+   * Return the amount of fuel consumed by each call to this function. Defaults to 1.
+   */
+  protected int getCost() {
+    return 1;
+  }
+
+  /**
+   * Return the code used by {@link #evaluateAll(Scope, double[])} and {@link #evaluateGrid(Scope, double[], double[])}
+   * to evaluate this function once its frame has been entered. Defaults to {@link #evaluateImpl(Scope, CallStack)}.
+   *
+   * @param scope Context the function has to use.
+   */
+  protected CompiledFunction getBatchEvaluator(final Scope scope) {
+    return this::evaluateImpl;
+  }
+
+  /**
+   * Return the number of call stack slots this function needs. The first slots hold the arguments.
+   */
+  protected int getFrameSize() {
+    return this.parameterNames.size();
   }
 
   /**
    * Evaluates the function with the given scope.
    *
-   * @param scope Function’s scope.
+   * @param scope Context the function has to use.
+   * @param stack The call stack, its current frame holds the values for each parameters
+   *              in the same order as the parameter names.
    * @return The result of the function.
    */
-  protected abstract double evaluateImpl(final Scope scope);
+  protected abstract double evaluateImpl(final Scope scope, final CallStack stack);
+
+  /**
+   * Evaluates the function over intervals. Defaults to bounds that contain all values,
+   * subclasses should return tighter bounds.
+   *
+   * @param scope     Context the function has to use.
+   * @param arguments Bounds of each parameter, in the same order as the parameter names.
+   * @return The bounds of the function’s values.
+   */
+  protected Interval evaluateIntervalImpl(final Scope scope, final Interval[] arguments) {
+    return Interval.ENTIRE_OR_NAN;
+  }
+
+  /**
+   * Sets the arguments of an evaluation of a batch.
+   */
+  @FunctionalInterface
+  private interface BatchArguments {
+    void set(CallStack stack, int index);
+  }
 
   /**
    * Serializes this function into an NBT tag.
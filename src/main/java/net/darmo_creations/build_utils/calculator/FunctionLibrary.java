@@ -0,0 +1,112 @@
+package net.darmo_creations.build_utils.calculator;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable set of user functions that can be imported by several scopes without being copied,
+ * see {@link Scope#importLibrary(FunctionLibrary)}.
+ * <p>
+ * Libraries are snapshots of the functions of a scope. Function objects are shared by the library and all scopes
+ * that import it, and so are their deserialized bodies, compiled code and memoized results.
+ * Scopes that import a library without defining functions of their own have the library’s functions version,
+ * caches keyed by that version are thus valid for all of them.
+ */
+public final class FunctionLibrary {
+  private static final String NAME_KEY = "Name";
+  private static final String FUNCTIONS_KEY = "Functions";
+
+  private final String name;
+  private final Map<String, Function> functions;
+  /**
+   * Version of the function definitions of scopes that only import this library, see {@link Scope#getFunctionsVersion()}.
+   */
+  private final int version;
+  /**
+   * The serialized library, null until the library is first saved if it was not read from NBT.
+   */
+  private CompoundTag serialized;
+
+  /**
+   * Create a library.
+   *
+   * @param name      Library’s name.
+   * @param functions Library’s functions, keyed by name. The map is copied.
+   * @param version   Version of the function definitions of scopes that only import this library.
+   */
+  FunctionLibrary(final String name, final Map<String, Function> functions, final int version) {
+    this.name = Objects.requireNonNull(name);
+    this.functions = Collections.unmodifiableMap(new HashMap<>(functions));
+    this.version = version;
+  }
+
+  /**
+   * Create a library from an NBT tag. Functions are deserialized lazily, see {@link UserFunction}.
+   *
+   * @param tag The tag to deserialize, it is kept and must not be modified afterwards.
+   */
+  public FunctionLibrary(final CompoundTag tag) {
+    this.name = tag.getString(NAME_KEY);
+    Map<String, Function> functions = new HashMap<>();
+    for (Tag item : tag.getList(FUNCTIONS_KEY, new CompoundTag().getId())) {
+      UserFunction function = new UserFunction((CompoundTag) item);
+      functions.put(function.getName(), function);
+    }
+    this.functions = Collections.unmodifiableMap(functions);
+    this.version = Scope.newFunctionsVersion();
+    this.serialized = tag;
+  }
+
+  /**
+   * Return the name of this library.
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Return an unmodifiable mapping of the functions of this library.
+   */
+  public Map<String, Function> getFunctions() {
+    return this.functions;
+  }
+
+  /**
+   * Return the function with the given name.
+   *
+   * @param name Function’s name.
+   * @return The function or null if this library does not define it.
+   */
+  public Function getFunction(final String name) {
+    return this.functions.get(name);
+  }
+
+  /**
+   * Return the version of the function definitions of scopes that only import this library.
+   */
+  int getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Serialize this library. As libraries never change, the tag is computed once and returned by subsequent calls,
+   * it must thus not be modified.
+   */
+  public CompoundTag writeToNBT() {
+    if (this.serialized == null) {
+      CompoundTag tag = new CompoundTag();
+      tag.putString(NAME_KEY, this.name);
+      ListTag functions = new ListTag();
+      this.functions.values().forEach(function -> functions.add(function.writeToNBT()));
+      tag.put(FUNCTIONS_KEY, functions);
+      this.serialized = tag;
+    }
+    return this.serialized;
+  }
+}
@@ -0,0 +1,179 @@
+package net.darmo_creations.build_utils.calculator;
+
+import net.darmo_creations.build_utils.calculator.exceptions.UndefinedFunctionException;
+import net.darmo_creations.build_utils.calculator.nodes.expr.*;
+
+import java.util.*;
+
+/**
+ * Inlines calls to small user functions into the body of a user function and replaces calls
+ * with constant arguments by calls to specializations of the callee.
+ * <p>
+ * An inlined call is replaced by an {@link InlineNode}: the callee’s resolved body is relocated into the caller’s
+ * frame, its parameters being replaced by constant and parameter arguments or by slots storing the other arguments,
+ * then simplified by the {@link Optimizer} and inlined recursively. Functions that call themselves directly,
+ * functions already being inlined and functions containing aggregates are never inlined,
+ * the total size of inlined bodies is bounded. Inlined calls bypass the memoization of the callee.
+ * <p>
+ * Calls are resolved once, the functions that have been inlined or specialized are gathered in
+ * {@link #getDependencies()}: the result is only valid as long as these names resolve to the same functions.
+ */
+final class Inliner {
+  /**
+   * Maximum cost of an inlined function.
+   */
+  static final int MAX_INLINED_COST = 24;
+  /**
+   * Maximum total cost of the functions inlined in a body.
+   */
+  static final int MAX_TOTAL_COST = 256;
+
+  private final Scope scope;
+  private final boolean specialize;
+  /**
+   * Functions whose bodies are being inlined, starting with the caller.
+   */
+  private final Set<UserFunction> callers = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final Map<String, Function> dependencies = new HashMap<>();
+  private int nextSlot;
+  private int inlinedCost;
+
+  /**
+   * Create an inliner for the given function.
+   *
+   * @param scope      The global scope, used to resolve calls.
+   * @param caller     The function whose body is inlined.
+   * @param firstSlot  Index of the first slot of the caller’s frame that is not used by its body.
+   * @param specialize Whether calls with constant arguments may be specialized.
+   */
+  Inliner(final Scope scope, final UserFunction caller, final int firstSlot, final boolean specialize) {
+    this.scope = scope;
+    this.specialize = specialize;
+    this.callers.add(caller);
+    this.nextSlot = firstSlot;
+  }
+
+  /**
+   * Return the number of slots of the caller’s frame used by the inlined body.
+   */
+  int getFrameSize() {
+    return this.nextSlot;
+  }
+
+  /**
+   * Return the functions that have been inlined or specialized, keyed by the name they were resolved from.
+   */
+  Map<String, Function> getDependencies() {
+    return this.dependencies;
+  }
+
+  /**
+   * Inline the calls of the given resolved body.
+   *
+   * @param node The resolved body.
+   * @return The inlined body, or the given body if no call was inlined or specialized.
+   */
+  Node inline(final Node node) {
+    if (!(node instanceof FunctionNode f)) {
+      return node;
+    }
+    List<Node> operands = f.getOperands();
+    boolean changed = false;
+    for (int i = 0; i < operands.size(); i++) {
+      Node operand = operands.get(i);
+      Node inlined = this.inline(operand);
+      changed |= inlined != operand;
+      operands.set(i, inlined);
+    }
+    if (node.getID() == FunctionNode.ID) {
+      Function function;
+      try {
+        function = this.scope.getFunction(f.getName());
+      } catch (UndefinedFunctionException e) {
+        function = null;
+      }
+      if (function instanceof UserFunction callee && callee.getParameterNames().size() == operands.size()) {
+        Node inlined = this.inlineCall(callee, operands);
+        if (inlined == null) {
+          inlined = this.specializeCall(callee, operands);
+        }
+        if (inlined != null) {
+          this.dependencies.put(f.getName(), callee);
+          return inlined;
+        }
+      }
+    }
+    return changed ? f.withOperands(operands) : node;
+  }
+
+  /**
+   * Inline a call to the given function.
+   *
+   * @return The inlined call or null if the function cannot be inlined.
+   */
+  private Node inlineCall(final UserFunction callee, final List<Node> operands) {
+    int cost = callee.getCost();
+    // The cost of aggregates does not depend on their size, they are better left to memoization
+    if (cost > MAX_INLINED_COST || this.inlinedCost + cost > MAX_TOTAL_COST || callee.getLocalsCount() != 0
+        || this.callers.contains(callee) || callee.getCalledFunctions().contains(callee.getName())) {
+      return null;
+    }
+    Node body;
+    try {
+      body = callee.getResolvedBody();
+    } catch (IllegalArgumentException e) {
+      // Invalid serialized body, the call will fail when evaluated
+      return null;
+    }
+    List<String> parameterNames = callee.getParameterNames();
+    List<Node> parameters = new ArrayList<>(operands.size());
+    List<Node> arguments = new ArrayList<>();
+    int slot = this.nextSlot;
+    for (int i = 0; i < operands.size(); i++) {
+      Node operand = operands.get(i);
+      // Constants and parameters can be read again at no cost, other arguments are evaluated once
+      if (operand instanceof NumberNode || operand instanceof ParameterNode) {
+        parameters.add(operand);
+      } else {
+        parameters.add(new ParameterNode(parameterNames.get(i), slot + arguments.size()));
+        arguments.add(operand);
+      }
+    }
+    this.nextSlot = slot + arguments.size() + callee.getLocalsCount();
+    this.inlinedCost += cost;
+    this.callers.add(callee);
+    Node inlined = this.inline(Optimizer.optimize(ParameterNode.relocate(body, parameters, slot + arguments.size())));
+    this.callers.remove(callee);
+    int sourceSize = 1 + operands.stream().mapToInt(Node::getSourceSize).sum();
+    return new InlineNode(callee.getName(), cost, sourceSize, slot, arguments, inlined);
+  }
+
+  /**
+   * Replace a call to the given function with some constant arguments by a call to a specialization.
+   *
+   * @return The specialized call or null if no argument is constant or specializations are disabled.
+   */
+  private Node specializeCall(final UserFunction callee, final List<Node> operands) {
+    if (!this.specialize || operands.stream().noneMatch(o -> o instanceof NumberNode)) {
+      return null;
+    }
+    List<Double> constants = new ArrayList<>(operands.size());
+    List<Node> arguments = new ArrayList<>();
+    for (Node operand : operands) {
+      if (operand instanceof NumberNode n) {
+        constants.add(n.getValue());
+      } else {
+        constants.add(null);
+        arguments.add(operand);
+      }
+    }
+    UserFunction specialization;
+    try {
+      specialization = callee.specialize(constants);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    int sourceSize = 1 + operands.stream().mapToInt(Node::getSourceSize).sum();
+    return new DirectCallNode(specialization, sourceSize, arguments);
+  }
+}
@@ -0,0 +1,659 @@
+package net.darmo_creations.build_utils.calculator;
+
+import net.darmo_creations.build_utils.Utils;
+
+import java.util.Locale;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An immutable set of doubles made of a closed range {@code [lo, hi]}, possibly empty, and possibly NaN.
+ * Intervals bound the values of an expression over a whole region instead of evaluating it at each point,
+ * see {@link Function#evaluateInterval(Scope, Interval...)}.
+ * <p>
+ * Operations return conservative bounds: the result of an operation contains the value computed
+ * by the corresponding double operation for any operands taken in the operand intervals, unless the operation fails.
+ * NaN is tracked as comparisons and conditionals turn it into regular values. An interval that contains no value
+ * thus stands for operations that fail for all operands.
+ * <p>
+ * Bounds are not rounded outwards as the calculator evaluates expressions with the same double operations:
+ * IEEE 754 operations are correctly rounded and the {@link Math} functions used by builtins are semi-monotonic,
+ * the values computed at the bounds of a range where a function is monotonic thus bound all values computed inside.
+ * Bounds may be infinite, infinities are then part of the range. Ranges contain both signed zeros
+ * as soon as they contain 0.
+ */
+public final class Interval {
+  /**
+   * The interval that contains no value.
+   */
+  public static final Interval EMPTY = new Interval(Double.NaN, Double.NaN, false);
+  /**
+   * The interval that only contains NaN.
+   */
+  public static final Interval NAN = new Interval(Double.NaN, Double.NaN, true);
+  /**
+   * The interval that contains all values but NaN.
+   */
+  public static final Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false);
+  /**
+   * The interval that contains all values.
+   */
+  public static final Interval ENTIRE_OR_NAN = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true);
+
+  private static final Interval ZERO = new Interval(0, 0, false);
+  private static final Interval ONE = new Interval(1, 1, false);
+  private static final Interval BOOLEAN = new Interval(0, 1, false);
+  private static final Interval UNIT = new Interval(-1, 1, false);
+  private static final Interval NON_NEGATIVE = new Interval(0, Double.POSITIVE_INFINITY, false);
+
+  private final double lo;
+  private final double hi;
+  private final boolean nan;
+
+  private Interval(final double lo, final double hi, final boolean nan) {
+    this.lo = lo;
+    this.hi = hi;
+    this.nan = nan;
+  }
+
+  /**
+   * Return the interval with the given bounds.
+   *
+   * @param lo Lower bound.
+   * @param hi Upper bound.
+   * @return The interval, it does not contain NaN.
+   * @throws IllegalArgumentException If a bound is NaN or the lower bound is greater than the upper bound.
+   */
+  public static Interval of(final double lo, final double hi) {
+    if (!(lo <= hi)) {
+      throw new IllegalArgumentException(String.format(Locale.ENGLISH, "invalid interval bounds: %f, %f", lo, hi));
+    }
+    return new Interval(lo, hi, false);
+  }
+
+  /**
+   * Return the interval that only contains the given value.
+   *
+   * @param value The value, may be NaN.
+   * @return The interval.
+   */
+  public static Interval point(final double value) {
+    return Double.isNaN(value) ? NAN : new Interval(value, value, false);
+  }
+
+  /**
+   * Return the interval with the given range, NaN bounds standing for values that could not be bounded.
+   */
+  private static Interval bounds(final double lo, final double hi, final boolean nan) {
+    return new Interval(Double.isNaN(lo) ? Double.NEGATIVE_INFINITY : lo, Double.isNaN(hi) ? Double.POSITIVE_INFINITY : hi, nan);
+  }
+
+  /**
+   * Return the interval with an empty range that contains NaN if the argument is true.
+   */
+  private static Interval noRange(final boolean nan) {
+    return nan ? NAN : EMPTY;
+  }
+
+  /**
+   * Return the lower bound of the range, NaN if the range is empty.
+   */
+  public double getLo() {
+    return this.lo;
+  }
+
+  /**
+   * Return the upper bound of the range, NaN if the range is empty.
+   */
+  public double getHi() {
+    return this.hi;
+  }
+
+  /**
+   * Indicate whether this interval contains NaN.
+   */
+  public boolean mayBeNaN() {
+    return this.nan;
+  }
+
+  /**
+   * Indicate whether the range of this interval contains at least one value.
+   */
+  public boolean hasRange() {
+    return !Double.isNaN(this.lo);
+  }
+
+  /**
+   * Indicate whether this interval contains no value, NaN included.
+   */
+  public boolean isEmpty() {
+    return !this.hasRange() && !this.nan;
+  }
+
+  /**
+   * Indicate whether this interval contains a single value, signed zeros excepted.
+   */
+  public boolean isPoint() {
+    return this.lo == this.hi && !this.nan;
+  }
+
+  /**
+   * Indicate whether this interval contains the given value, which may be NaN.
+   */
+  public boolean contains(final double value) {
+    return Double.isNaN(value) ? this.nan : this.lo <= value && value <= this.hi;
+  }
+
+  /**
+   * Indicate whether this interval contains 0.
+   */
+  public boolean canBeZero() {
+    return this.lo <= 0 && this.hi >= 0;
+  }
+
+  /**
+   * Indicate whether this interval contains a value that is not 0, NaN included.
+   */
+  public boolean canBeNonZero() {
+    return this.nan || this.hasRange() && !(this.lo == 0 && this.hi == 0);
+  }
+
+  /**
+   * Indicate whether the range of this interval contains an infinity.
+   */
+  private boolean hasInfiniteBound() {
+    return Double.isInfinite(this.lo) || Double.isInfinite(this.hi);
+  }
+
+  /**
+   * Return the smallest interval that contains both this interval and the given one.
+   */
+  public Interval hull(final Interval other) {
+    boolean nan = this.nan || other.nan;
+    if (!this.hasRange()) {
+      return other.withNaN(nan);
+    } else if (!other.hasRange()) {
+      return this.withNaN(nan);
+    }
+    return new Interval(Math.min(this.lo, other.lo), Math.max(this.hi, other.hi), nan);
+  }
+
+  /**
+   * Return the values contained in both this interval and the given one.
+   */
+  public Interval intersect(final Interval other) {
+    double lo = Math.max(this.lo, other.lo);
+    double hi = Math.min(this.hi, other.hi);
+    boolean nan = this.nan && other.nan;
+    return lo <= hi ? new Interval(lo, hi, nan) : noRange(nan);
+  }
+
+  /**
+   * Return this interval with or without NaN.
+   */
+  public Interval withNaN(final boolean nan) {
+    if (nan == this.nan) {
+      return this;
+    }
+    return this.hasRange() ? new Interval(this.lo, this.hi, nan) : noRange(nan);
+  }
+
+  /**
+   * Apply a non-decreasing function to the bounds of this interval.
+   *
+   * @param f The function, it must map NaN to NaN and only NaN.
+   * @return The interval of the function’s values.
+   */
+  public Interval mapIncreasing(final DoubleUnaryOperator f) {
+    if (!this.hasRange()) {
+      return this;
+    }
+    return bounds(f.applyAsDouble(this.lo), f.applyAsDouble(this.hi), this.nan);
+  }
+
+  /**
+   * Apply a non-increasing function to the bounds of this interval.
+   *
+   * @param f The function, it must map NaN to NaN and only NaN.
+   * @return The interval of the function’s values.
+   */
+  public Interval mapDecreasing(final DoubleUnaryOperator f) {
+    if (!this.hasRange()) {
+      return this;
+    }
+    return bounds(f.applyAsDouble(this.hi), f.applyAsDouble(this.lo), this.nan);
+  }
+
+  /**
+   * Return the bounds of {@code -x}.
+   */
+  public Interval negate() {
+    return this.hasRange() ? new Interval(-this.hi, -this.lo, this.nan) : this;
+  }
+
+  /**
+   * Return the bounds of {@code x + y}. Opposite infinities add up to NaN.
+   */
+  public Interval add(final Interval other) {
+    boolean nan = this.nan || other.nan
+        || this.lo == Double.NEGATIVE_INFINITY && other.hi == Double.POSITIVE_INFINITY
+        || this.hi == Double.POSITIVE_INFINITY && other.lo == Double.NEGATIVE_INFINITY;
+    if (!this.hasRange() || !other.hasRange()) {
+      return noRange(nan);
+    }
+    return bounds(this.lo + other.lo, this.hi + other.hi, nan);
+  }
+
+  /**
+   * Return the bounds of {@code x - y}. Infinities of the same sign subtract to NaN.
+   */
+  public Interval subtract(final Interval other) {
+    return this.add(other.negate());
+  }
+
+  /**
+   * Return the bounds of {@code x * y}. 0 times an infinity is NaN.
+   */
+  public Interval multiply(final Interval other) {
+    boolean nan = this.nan || other.nan
+        || this.canBeZero() && other.hasInfiniteBound() || other.canBeZero() && this.hasInfiniteBound();
+    if (!this.hasRange() || !other.hasRange()) {
+      return noRange(nan);
+    }
+    return corners(this.lo, this.hi, other.lo, other.hi, (x, y) -> x * y).withNaN(nan);
+  }
+
+  /**
+   * Return the bounds of {@code x / y}. Division by 0 fails, zero divisors are thus ignored.
+   * An infinity divided by an infinity is NaN.
+   */
+  public Interval divide(final Interval other) {
+    boolean nan = this.nan || other.nan || this.hasInfiniteBound() && other.hasInfiniteBound();
+    Interval result = noRange(nan);
+    if (!this.hasRange() || !other.hasRange()) {
+      return result;
+    }
+    // Doubles are discrete, the divisors closest to 0 are ±MIN_VALUE
+    if (other.lo < 0) {
+      result = result.hull(corners(this.lo, this.hi, other.lo, Math.min(other.hi, -Double.MIN_VALUE), (x, y) -> x / y));
+    }
+    if (other.hi > 0) {
+      result = result.hull(corners(this.lo, this.hi, Math.max(other.lo, Double.MIN_VALUE), other.hi, (x, y) -> x / y));
+    }
+    return result;
+  }
+
+  /**
+   * Return the bounds of {@code x % y} as computed by {@link Utils#trueModulo(double, double)},
+   * whose result has the sign of y. A modulo by 0 fails, zero divisors are thus ignored.
+   * The modulo of or by an infinity is NaN.
+   */
+  public Interval modulo(final Interval other) {
+    if (this.isPoint() && other.isPoint()) {
+      return other.lo == 0 ? EMPTY : point(Utils.trueModulo(this.lo, other.lo));
+    }
+    boolean nan = this.nan || other.nan || this.hasInfiniteBound() || other.hasInfiniteBound();
+    if (!this.hasRange() || !other.hasRange() || other.lo == 0 && other.hi == 0) {
+      return noRange(nan);
+    }
+    return new Interval(Math.min(other.lo, 0), Math.max(other.hi, 0), nan);
+  }
+
+  /**
+   * Return the bounds of {@code x ^ y} as computed by {@link Math#pow(double, double)}.
+   * Negative bases only have values for integer exponents, ±1 raised to an infinity is NaN
+   * and any value raised to 0 is 1, NaN included.
+   */
+  public Interval power(final Interval exponent) {
+    boolean integer = exponent.isPoint() && exponent.lo == Math.rint(exponent.lo) && !Double.isInfinite(exponent.lo);
+    boolean nan = this.nan && exponent.canBeNonZero() || exponent.nan
+        || this.lo < 0 && !integer
+        || (this.contains(1) || this.contains(-1)) && exponent.hasInfiniteBound();
+    Interval result = noRange(nan);
+    if (this.nan && exponent.canBeZero()) {
+      result = result.hull(ONE);
+    }
+    if (!this.hasRange() || !exponent.hasRange()) {
+      return result;
+    }
+    if (integer) {
+      return result.hull(this.integerPower(exponent.lo));
+    }
+    if (this.hi >= 0) {
+      result = result.hull(powerNonNegative(Math.max(this.lo, 0), this.hi, exponent));
+    }
+    // Negative bases and -0 have values of either sign for odd exponents
+    if (this.lo <= 0 && Math.ceil(exponent.lo) <= exponent.hi) {
+      Interval magnitude = powerNonNegative(Math.max(-this.hi, 0), -this.lo, exponent);
+      result = result.hull(new Interval(-magnitude.hi, magnitude.hi, magnitude.nan));
+    }
+    return result;
+  }
+
+  /**
+   * Return the bounds of {@code x ^ n} for an integer n, ignoring NaN.
+   */
+  private Interval integerPower(final double n) {
+    if (n == 0) {
+      return ONE;
+    }
+    Interval base = this.withNaN(false);
+    boolean even = n % 2 == 0;
+    if (n > 0) {
+      return even ? base.abs().mapIncreasing(x -> Math.pow(x, n)) : base.mapIncreasing(x -> Math.pow(x, n));
+    } else if (even) {
+      return base.abs().mapDecreasing(x -> Math.pow(x, n));
+    } else if (!base.canBeZero()) {
+      return base.mapDecreasing(x -> Math.pow(x, n));
+    }
+    // Poles of both signs at ±0
+    return ENTIRE;
+  }
+
+  /**
+   * Return the bounds of {@code x ^ y} for x in [lo, hi], both being non-negative.
+   * Math.pow is monotonic in each operand for non-negative bases, extrema are thus reached at the corners.
+   */
+  private static Interval powerNonNegative(final double lo, final double hi, final Interval exponent) {
+    double[] values = {
+        Math.pow(lo, exponent.lo), Math.pow(lo, exponent.hi), Math.pow(hi, exponent.lo), Math.pow(hi, exponent.hi),
+    };
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    for (double value : values) {
+      if (Double.isNaN(value)) {
+        // 1 ^ ±infinity, any non-negative value can be reached nearby
+        return NON_NEGATIVE.withNaN(true);
+      }
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    return new Interval(min, max, false);
+  }
+
+  /**
+   * Return the bounds of a binary operation that is monotonic in each operand, the direction depending
+   * on the other operand: extrema are reached at the corners of the operands’ rectangle.
+   * Corners whose value is NaN, such as 0 * infinity, stand for products of large and small values,
+   * any value between 0 and the other corners can be reached nearby. The result does not contain NaN.
+   */
+  private static Interval corners(final double lo1, final double hi1, final double lo2, final double hi2,
+                                  final DoubleBinaryOperator operator) {
+    double[] values = {
+        operator.applyAsDouble(lo1, lo2), operator.applyAsDouble(lo1, hi2),
+        operator.applyAsDouble(hi1, lo2), operator.applyAsDouble(hi1, hi2),
+    };
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    for (double value : values) {
+      if (Double.isNaN(value)) {
+        value = 0;
+      }
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    return new Interval(min, max, false);
+  }
+
+  /**
+   * Return the bounds of {@code |x|}.
+   */
+  public Interval abs() {
+    if (!this.hasRange() || this.lo >= 0) {
+      return this;
+    } else if (this.hi <= 0) {
+      return new Interval(-this.hi, -this.lo, this.nan);
+    }
+    return new Interval(0, Math.max(-this.lo, this.hi), this.nan);
+  }
+
+  /**
+   * Return the bounds of {@code min(x, y)}.
+   */
+  public Interval min(final Interval other) {
+    boolean nan = this.nan || other.nan;
+    if (!this.hasRange() || !other.hasRange()) {
+      return noRange(nan);
+    }
+    return new Interval(Math.min(this.lo, other.lo), Math.min(this.hi, other.hi), nan);
+  }
+
+  /**
+   * Return the bounds of {@code max(x, y)}.
+   */
+  public Interval max(final Interval other) {
+    boolean nan = this.nan || other.nan;
+    if (!this.hasRange() || !other.hasRange()) {
+      return noRange(nan);
+    }
+    return new Interval(Math.max(this.lo, other.lo), Math.max(this.hi, other.hi), nan);
+  }
+
+  /**
+   * Return the bounds of {@code round(x)}, NaN being rounded to 0.
+   */
+  public Interval round() {
+    Interval result = this.withNaN(false).mapIncreasing(x -> (double) Math.round(x));
+    return this.nan ? result.hull(ZERO) : result;
+  }
+
+  /**
+   * Return the bounds of a function defined on the given domain, and NaN outside of it.
+   */
+  private Interval mapIncreasingOn(final Interval domain, final DoubleUnaryOperator f) {
+    boolean nan = this.nan || this.hasRange() && (this.lo < domain.lo || this.hi > domain.hi);
+    return this.intersect(domain).mapIncreasing(f).withNaN(nan);
+  }
+
+  /**
+   * Return the bounds of {@code sqrt(x)}, negative values having no square root.
+   */
+  public Interval sqrt() {
+    return this.mapIncreasingOn(NON_NEGATIVE, Math::sqrt);
+  }
+
+  /**
+   * Return the bounds of {@code log(x)}, negative values having no logarithm.
+   */
+  public Interval log() {
+    return this.mapIncreasingOn(NON_NEGATIVE, Math::log);
+  }
+
+  /**
+   * Return the bounds of {@code log10(x)}, negative values having no logarithm.
+   */
+  public Interval log10() {
+    return this.mapIncreasingOn(NON_NEGATIVE, Math::log10);
+  }
+
+  /**
+   * Return the bounds of {@code asin(x)}, defined on [-1, 1].
+   */
+  public Interval asin() {
+    return this.mapIncreasingOn(UNIT, Math::asin);
+  }
+
+  /**
+   * Return the bounds of {@code acos(x)}, defined on [-1, 1].
+   */
+  public Interval acos() {
+    // acos(x) = -(-acos(x)), the latter being increasing
+    return this.mapIncreasingOn(UNIT, x -> -Math.acos(x)).negate();
+  }
+
+  /**
+   * Return the bounds of {@code sin(x)}, infinities having no sine.
+   */
+  public Interval sin() {
+    return this.periodic(Math::sin, Math.PI / 2);
+  }
+
+  /**
+   * Return the bounds of {@code cos(x)}, infinities having no cosine.
+   */
+  public Interval cos() {
+    return this.periodic(Math::cos, 0);
+  }
+
+  /**
+   * Return the bounds of a function of period 2π with values in [-1, 1] that is monotonic between its extrema.
+   *
+   * @param f       The function.
+   * @param maximum Abscissa of one of its maxima, minima being π further.
+   */
+  private Interval periodic(final DoubleUnaryOperator f, final double maximum) {
+    boolean nan = this.nan || this.hasInfiniteBound();
+    if (!this.hasRange()) {
+      return this;
+    }
+    if (!(this.hi - this.lo < 2 * Math.PI)) {
+      return UNIT.withNaN(nan);
+    }
+    double a = f.applyAsDouble(this.lo);
+    double b = f.applyAsDouble(this.hi);
+    double lo = this.containsPeriodically(maximum + Math.PI, 2 * Math.PI) ? -1 : Math.min(a, b);
+    double hi = this.containsPeriodically(maximum, 2 * Math.PI) ? 1 : Math.max(a, b);
+    return new Interval(lo, hi, nan);
+  }
+
+  /**
+   * Return the bounds of {@code tan(x)}, infinities having no tangent.
+   * Ranges that contain a pole have unbounded values.
+   */
+  public Interval tan() {
+    boolean nan = this.nan || this.hasInfiniteBound();
+    if (!this.hasRange()) {
+      return this;
+    }
+    if (!(this.hi - this.lo < Math.PI) || this.containsPeriodically(Math.PI / 2, Math.PI)) {
+      return ENTIRE.withNaN(nan);
+    }
+    return this.mapIncreasing(Math::tan);
+  }
+
+  /**
+   * Indicate whether the range may contain a point {@code x + k * period}. As Math.PI is not exactly π,
+   * the range is widened by a margin proportional to the magnitude of its bounds: points that are not found
+   * are far enough from the bounds for the function to be monotonic over the whole range.
+   */
+  private boolean containsPeriodically(final double x, final double period) {
+    double margin = 1e-9 * Math.max(1, Math.max(Math.abs(this.lo), Math.abs(this.hi)));
+    double k = Math.ceil((this.lo - margin - x) / period);
+    return x + k * period <= this.hi + margin;
+  }
+
+  /**
+   * Return the bounds of {@code atan2(y, x)}.
+   *
+   * @param y Bounds of the ordinate.
+   * @param x Bounds of the abscissa.
+   */
+  public static Interval atan2(final Interval y, final Interval x) {
+    boolean nan = y.nan || x.nan;
+    if (!y.hasRange() || !x.hasRange()) {
+      return noRange(nan);
+    }
+    // Away from the branch cut along the negative abscissas, atan2 is monotonic in each operand
+    if (x.lo > 0 || y.lo > 0 || y.hi < 0) {
+      return corners(y.lo, y.hi, x.lo, x.hi, Math::atan2).withNaN(nan);
+    }
+    return new Interval(-Math.PI, Math.PI, nan);
+  }
+
+  /**
+   * Return the bounds of {@code hypot(x, y)}, that increases with the magnitudes of its operands.
+   * The hypotenuse of an infinity and NaN is infinite.
+   */
+  public Interval hypot(final Interval other) {
+    Interval result = noRange(this.nan || other.nan);
+    if (this.nan && other.hasInfiniteBound() || other.nan && this.hasInfiniteBound()) {
+      result = result.hull(point(Double.POSITIVE_INFINITY));
+    }
+    if (!this.hasRange() || !other.hasRange()) {
+      return result;
+    }
+    Interval x = this.abs();
+    Interval y = other.abs();
+    return result.hull(new Interval(Math.hypot(x.lo, y.lo), Math.hypot(x.hi, y.hi), false));
+  }
+
+  /**
+   * Return the bounds of a boolean value, 1 standing for true and 0 for false.
+   *
+   * @param canBeTrue  Whether the value is true for some operands.
+   * @param canBeFalse Whether the value is false for some operands.
+   */
+  public static Interval truth(final boolean canBeTrue, final boolean canBeFalse) {
+    if (canBeTrue) {
+      return canBeFalse ? BOOLEAN : ONE;
+    }
+    return canBeFalse ? ZERO : EMPTY;
+  }
+
+  /**
+   * Return the bounds of {@code x < y}, false if an operand is NaN.
+   */
+  public Interval lessThan(final Interval other) {
+    if (this.isEmpty() || other.isEmpty()) {
+      return EMPTY;
+    }
+    boolean ranges = this.hasRange() && other.hasRange();
+    return truth(ranges && this.lo < other.hi, this.nan || other.nan || ranges && this.hi >= other.lo);
+  }
+
+  /**
+   * Return the bounds of {@code x <= y}, false if an operand is NaN.
+   */
+  public Interval lessThanOrEqualTo(final Interval other) {
+    if (this.isEmpty() || other.isEmpty()) {
+      return EMPTY;
+    }
+    boolean ranges = this.hasRange() && other.hasRange();
+    return truth(ranges && this.lo <= other.hi, this.nan || other.nan || ranges && this.hi > other.lo);
+  }
+
+  /**
+   * Return the bounds of {@code x == y}, false if an operand is NaN.
+   */
+  public Interval equalTo(final Interval other) {
+    if (this.isEmpty() || other.isEmpty()) {
+      return EMPTY;
+    }
+    boolean ranges = this.hasRange() && other.hasRange();
+    boolean sameValue = this.isPoint() && other.isPoint() && this.lo == other.lo;
+    return truth(ranges && this.lo <= other.hi && other.lo <= this.hi, !sameValue);
+  }
+
+  /**
+   * Return the bounds of {@code !x}, 1 if x is 0, 0 otherwise.
+   */
+  public Interval not() {
+    return truth(this.canBeZero(), this.canBeNonZero());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+    Interval that = (Interval) o;
+    return Double.compare(this.lo, that.lo) == 0 && Double.compare(this.hi, that.hi) == 0 && this.nan == that.nan;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * Double.hashCode(this.lo) + Double.hashCode(this.hi)) + Boolean.hashCode(this.nan);
+  }
+
+  @Override
+  public String toString() {
+    if (!this.hasRange()) {
+      return this.nan ? "NaN" : "empty";
+    }
+    String range = String.format(Locale.ENGLISH, "[%s, %s]", this.lo, this.hi);
+    return this.nan ? range + " or NaN" : range;
+  }
+}
@@ -0,0 +1,119 @@
+package net.darmo_creations.build_utils.calculator;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A thread-safe cache with a bounded size that evicts its least recently used entries first.
+ * It keeps track of the number of hits, misses and evictions.
+ *
+ * @param <K> Type of keys.
+ * @param <V> Type of values.
+ */
+public class LRUCache<K, V> {
+  private final int capacity;
+  private final Map<K, V> entries;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Create an empty cache.
+   *
+   * @param capacity Maximum number of entries.
+   */
+  public LRUCache(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be > 0");
+    }
+    this.capacity = capacity;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        if (this.size() > LRUCache.this.capacity) {
+          LRUCache.this.evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Return the value associated to the given key and mark it as the most recently used.
+   *
+   * @param key The key.
+   * @return The value or an empty optional if the key is not in this cache.
+   */
+  public synchronized Optional<V> get(final K key) {
+    V value = this.entries.get(key);
+    if (value != null) {
+      this.hits++;
+    } else {
+      this.misses++;
+    }
+    return Optional.ofNullable(value);
+  }
+
+  /**
+   * Associate a value to the given key. If the cache is full, the least recently used entry is evicted.
+   *
+   * @param key   The key.
+   * @param value The value.
+   */
+  public synchronized void put(final K key, final V value) {
+    this.entries.put(key, value);
+  }
+
+  /**
+   * Remove all entries from this cache. Counters are not reset.
+   */
+  public synchronized void clear() {
+    this.entries.clear();
+  }
+
+  /**
+   * Return the current number of entries.
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Return the maximum number of entries.
+   */
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * Return the number of successful lookups.
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Return the number of failed lookups.
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Return the number of entries that were evicted to make room for new ones.
+   */
+  public synchronized long getEvictions() {
+    return this.evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    long total = this.hits + this.misses;
+    return String.format(Locale.ENGLISH, "%d/%d entries, %d hits, %d misses, %d evictions (%.1f%% hit rate)",
+        this.entries.size(), this.capacity, this.hits, this.misses, this.evictions,
+        total == 0 ? 0.0 : 100.0 * this.hits / total);
+  }
+}
@@ -0,0 +1,192 @@
+package net.darmo_creations.build_utils.calculator;
+
+import net.darmo_creations.build_utils.calculator.nodes.expr.*;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Simplifies {@link Node} trees by folding constant subtrees and applying algebraic identities.
+ * <p>
+ * Simplifications never change the result of an evaluation, IEEE 754 special values included:
+ * only identities that hold for every double are applied (e.g. {@code x * 1} but not {@code x + 0},
+ * which differs for {@code -0.0}), subtrees that would throw an exception (e.g. {@code 1 / 0}) are left as is,
+ * and subtrees are only removed if their evaluation cannot throw.
+ * <p>
+ * Builtin constants and functions are never folded as they may be shadowed by variables or functions
+ * defined after the tree has been simplified.
+ */
+public final class Optimizer {
+  /**
+   * Simplify an expression independently of any scope.
+   * Only operators applied to constants are folded.
+   *
+   * @param node The tree to simplify.
+   * @return The simplified tree.
+   */
+  public static Node optimize(final Node node) {
+    return new Optimizer(Collections.emptyList()).optimizeTree(node);
+  }
+
+  /**
+   * Simplify the body of a function.
+   *
+   * @param parameterNames Function’s parameter names, variables with these names are known not to throw.
+   * @param body           Function’s body.
+   * @return The simplified body.
+   */
+  public static Node optimizeFunction(final List<String> parameterNames, final Node body) {
+    return new Optimizer(parameterNames).optimizeTree(body);
+  }
+
+  private final List<String> parameterNames;
+
+  private Optimizer(final List<String> parameterNames) {
+    this.parameterNames = parameterNames;
+  }
+
+  private Node optimizeTree(final Node node) {
+    return node.transform(this::simplify);
+  }
+
+  /**
+   * Simplify a node whose operands have already been simplified.
+   */
+  private Node simplify(final Node node) {
+    if (node instanceof UnaryOperatorNode u) {
+      return this.simplifyUnaryOperator(u);
+    } else if (node instanceof BiOperatorNode b) {
+      return this.simplifyBinaryOperator(b);
+    } else if (node instanceof ConditionalNode c) {
+      return this.simplifyConditional(c);
+    }
+    return node;
+  }
+
+  private Node simplifyUnaryOperator(final UnaryOperatorNode node) {
+    Node operand = node.getOperand();
+    if (operand instanceof NumberNode) {
+      return fold(node);
+    }
+    // --x = x
+    if (node.getID() == MinusOperatorNode.ID && operand.getID() == MinusOperatorNode.ID) {
+      return ((UnaryOperatorNode) operand).getOperand();
+    }
+    return node;
+  }
+
+  private Node simplifyBinaryOperator(final BiOperatorNode node) {
+    Node left = node.getLeft();
+    Node right = node.getRight();
+    if (left instanceof NumberNode && right instanceof NumberNode) {
+      return fold(node);
+    }
+    switch (node.getID()) {
+      case AdditionOperatorNode.ID -> {
+        // x + -0 = x, x + 0 is not simplified as -0 + 0 = 0
+        if (isNegativeZero(right)) {
+          return left;
+        }
+      }
+      case SubtractionOperatorNode.ID -> {
+        // x - 0 = x, also true for -0 - 0 = -0
+        if (isPositiveZero(right)) {
+          return left;
+        }
+      }
+      case MultiplicationOperatorNode.ID -> {
+        if (isOne(right)) {
+          return left;
+        } else if (isOne(left)) {
+          return right;
+        }
+      }
+      case DivisionOperatorNode.ID -> {
+        if (isOne(right)) {
+          return left;
+        }
+      }
+      case PowerOperatorNode.ID -> {
+        // x ^ 1 = x, x ^ 0 = 1 even for NaN
+        if (isOne(right)) {
+          return left;
+        } else if (isZero(right) && !this.mayThrow(left)) {
+          return new NumberNode(1);
+        }
+      }
+      // The right operand is never evaluated if the left one decides the result
+      case AndOperatorNode.ID -> {
+        if (left instanceof NumberNode n) {
+          return n.getValue() != 0 ? right : new NumberNode(0);
+        }
+      }
+      case OrOperatorNode.ID -> {
+        if (left instanceof NumberNode n) {
+          return n.getValue() == 0 ? right : left;
+        }
+      }
+      default -> {
+      }
+    }
+    return node;
+  }
+
+  private Node simplifyConditional(final ConditionalNode node) {
+    // Only the selected branch would be evaluated
+    if (node.getCondition() instanceof NumberNode n) {
+      return n.getValue() != 0 ? node.getIfTrue() : node.getIfFalse();
+    }
+    return node;
+  }
+
+  /**
+   * Indicate whether evaluating the given simplified node may throw an exception.
+   * Function calls, aggregates, global variables, divisions and modulos may throw,
+   * parameters and constants may not.
+   */
+  private boolean mayThrow(final Node node) {
+    if (node instanceof NumberNode) {
+      return false;
+    } else if (node instanceof VariableNode v) {
+      return !(node instanceof ParameterNode) && !this.parameterNames.contains(v.getName());
+    } else if (node instanceof UnaryOperatorNode u) {
+      return this.mayThrow(u.getOperand());
+    } else if (node instanceof BiOperatorNode b) {
+      return node.getID() == DivisionOperatorNode.ID || node.getID() == ModuloOperatorNode.ID
+          || this.mayThrow(b.getLeft()) || this.mayThrow(b.getRight());
+    } else if (node instanceof ConditionalNode c) {
+      return this.mayThrow(c.getCondition()) || this.mayThrow(c.getIfTrue()) || this.mayThrow(c.getIfFalse());
+    }
+    return true;
+  }
+
+  /**
+   * Evaluate an operator whose operands are all numbers.
+   *
+   * @return A number node or the operator itself if its evaluation throws an exception.
+   */
+  private static Node fold(final OperatorNode node) {
+    try {
+      // Operands are constants, no scope is needed
+      return new NumberNode(node.evaluate(null));
+    } catch (ArithmeticException e) {
+      return node;
+    }
+  }
+
+  private static boolean isZero(final Node node) {
+    return node instanceof NumberNode n && n.getValue() == 0;
+  }
+
+  private static boolean isPositiveZero(final Node node) {
+    return node instanceof NumberNode n && Double.doubleToRawLongBits(n.getValue()) == 0L;
+  }
+
+  private static boolean isNegativeZero(final Node node) {
+    return node instanceof NumberNode n && Double.doubleToRawLongBits(n.getValue()) == Double.doubleToRawLongBits(-0.0);
+  }
+
+  private static boolean isOne(final Node node) {
+    return node instanceof NumberNode n && n.getValue() == 1;
+  }
+}
@@ -1,53 +1,555 @@
 package net.darmo_creations.build_utils.calculator;
 
-import net.darmo_creations.build_utils.calculator.antlr4_parser.CalculatorLexer;
-import net.darmo_creations.build_utils.calculator.antlr4_parser.CalculatorParser;
 import net.darmo_creations.build_utils.calculator.exceptions.SyntaxErrorException;
+import net.darmo_creations.build_utils.calculator.nodes.AssignVariableStatement;
+import net.darmo_creations.build_utils.calculator.nodes.AssignVariablesStatement;
+import net.darmo_creations.build_utils.calculator.nodes.DefineFormulaStatement;
+import net.darmo_creations.build_utils.calculator.nodes.DefineFunctionStatement;
+import net.darmo_creations.build_utils.calculator.nodes.ExpressionStatement;
 import net.darmo_creations.build_utils.calculator.nodes.Statement;
-import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.atn.ATNConfigSet;
-import org.antlr.v4.runtime.dfa.DFA;
+import net.darmo_creations.build_utils.calculator.nodes.expr.*;
 
-import java.util.BitSet;
+import java.util.*;
+import java.util.function.BiFunction;
 
 /**
  * The parser for the calculator. Handles raw expression parsing by constructing a statement and expression tree.
+ * <p>
+ * This is a hand-written single-pass Pratt parser implementing the grammar defined in {@code grammar/Calculator.g4}.
+ * Operator precedences, from highest to lowest:
+ * <li>unary -, + and !
+ * <li>^
+ * <li>*, / and %
+ * <li>binary + and -
+ * <li>=, !=, &gt;, &gt;=, &lt; and &lt;=
+ * <li>&amp;
+ * <li>|
+ * <p>
+ * All binary operators are left-associative.
  */
 public class Parser {
   /**
-   * Parses the given expression.
+   * Maps unary operator symbols to the corresponding {@link Node} provider.
+   */
+  public static final Map<String, java.util.function.Function<Node, OperatorNode>> UNARY_OPERATORS = new HashMap<>();
+  /**
+   * Maps binary operator symbols to the corresponding {@link Node} provider.
+   */
+  public static final Map<String, BiFunction<Node, Node, OperatorNode>> BINARY_OPERATORS = new HashMap<>();
+  /**
+   * Maps aggregate names to the corresponding {@link Node} provider. Aggregate names are not reserved,
+   * see {@link #isKeywordCall(String, int)}.
+   */
+  public static final Map<String, BiFunction<String, List<Node>, AggregateNode>> AGGREGATES = new HashMap<>();
+  /**
+   * Maps aggregate names to their number of operands, the variable excluded.
+   */
+  private static final Map<String, Integer> AGGREGATE_ARITIES = new HashMap<>();
+  /**
+   * Name of the conditional operator.
+   */
+  private static final String IF = "if";
+
+  static {
+    UNARY_OPERATORS.put("-", MinusOperatorNode::new);
+    UNARY_OPERATORS.put("!", NotOperatorNode::new);
+
+    BINARY_OPERATORS.put("*", MultiplicationOperatorNode::new);
+    BINARY_OPERATORS.put("/", DivisionOperatorNode::new);
+    BINARY_OPERATORS.put("%", ModuloOperatorNode::new);
+    BINARY_OPERATORS.put("+", AdditionOperatorNode::new);
+    BINARY_OPERATORS.put("-", SubtractionOperatorNode::new);
+    BINARY_OPERATORS.put("^", PowerOperatorNode::new);
+    BINARY_OPERATORS.put("&", AndOperatorNode::new);
+    BINARY_OPERATORS.put("|", OrOperatorNode::new);
+    BINARY_OPERATORS.put("=", EqualToOperatorNode::new);
+    BINARY_OPERATORS.put("!=", NotEqualToOperatorNode::new);
+    BINARY_OPERATORS.put(">", GreaterThanOperatorNode::new);
+    BINARY_OPERATORS.put(">=", GreaterThanOrEqualToOperatorNode::new);
+    BINARY_OPERATORS.put("<", LessThanOperatorNode::new);
+    BINARY_OPERATORS.put("<=", LessThanOrEqualToOperatorNode::new);
+
+    AGGREGATES.put("sum", SumNode::new);
+    AGGREGATES.put("prod", ProductNode::new);
+    AGGREGATES.put("integrate", IntegralNode::new);
+    AGGREGATES.put("solve", SolveNode::new);
+    AGGREGATE_ARITIES.put("sum", 3);
+    AGGREGATE_ARITIES.put("prod", 3);
+    AGGREGATE_ARITIES.put("integrate", 4);
+    AGGREGATE_ARITIES.put("solve", 3);
+  }
+
+  /**
+   * Maximum number of parsed statements kept in {@link #CACHE}.
+   */
+  public static final int CACHE_SIZE = 512;
+
+  /**
+   * Cache of parsed statements, shared by all {@link Calculator} instances and the threads evaluating against them.
+   * Trees are never modified once parsed, but {@link FunctionNode}s and {@link VariableNode}s cache their last
+   * resolution and function nodes their hash code in mutable fields. Sharing them is safe only because resolutions
+   * are immutable objects with final fields, published through a single field write and checked against the scope
+   * being evaluated before use, and because racing threads compute the same hash code.
+   */
+  private static final LRUCache<String, Statement> CACHE = new LRUCache<>(CACHE_SIZE);
+
+  /**
+   * Precedence passed to operands of unary operators. It is higher than that of any binary operator
+   * so that unary operators only apply to the directly following operand: -a^b is parsed as (-a)^b.
+   */
+  private static final int UNARY_OPERAND_PRECEDENCE = 11;
+
+  /**
+   * Parses the given expression. Results are cached, expressions that fail to parse are not.
+   * Expressions of assignments and expression statements are simplified by {@link Optimizer#optimize(Node)}.
    *
    * @param expression The expression to parse.
    * @return The corresponding statement.
    * @throws SyntaxErrorException If any syntax error was encountered.
    */
   public static Statement parse(final String expression) throws SyntaxErrorException {
-    CalculatorLexer lexer = new CalculatorLexer(CharStreams.fromString(expression));
-    CalculatorParser parser = new CalculatorParser(new CommonTokenStream(lexer));
-    ErrorListener errorListener = new ErrorListener();
-    parser.addErrorListener(errorListener);
-    return new StatementVisitor().visit(parser.start());
+    Optional<Statement> cached = CACHE.get(expression);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    Statement statement = new Parser(expression, true).parseStart();
+    CACHE.put(expression, statement);
+    return statement;
+  }
+
+  /**
+   * Parses the given expression without simplifying it. Results are not cached.
+   * Used to test the parser on its own.
+   *
+   * @param expression The expression to parse.
+   * @return The corresponding statement, its expressions are as written.
+   * @throws SyntaxErrorException If any syntax error was encountered.
+   */
+  static Statement parseUnoptimized(final String expression) throws SyntaxErrorException {
+    return new Parser(expression, false).parseStart();
+  }
+
+  /**
+   * Indicate whether calls to a function with the given name and number of arguments may be parsed
+   * as a conditional or an aggregate. Such calls are a conditional if the name is {@code if} and there are
+   * 3 arguments, or an aggregate if the name is that of an aggregate, the number of arguments is that
+   * of the aggregate’s operands plus one and the first argument is a name. These names may otherwise be used
+   * for variables and functions.
+   *
+   * @param name           A function’s name.
+   * @param argumentsCount The number of arguments.
+   */
+  public static boolean isKeywordCall(final String name, final int argumentsCount) {
+    Integer arity = AGGREGATE_ARITIES.get(name);
+    return name.equals(IF) && argumentsCount == 3 || arity != null && argumentsCount == arity + 1;
+  }
+
+  /**
+   * Return the cache of parsed statements.
+   */
+  public static LRUCache<String, Statement> getCache() {
+    return CACHE;
+  }
+
+  private final String expression;
+  /**
+   * Whether expressions of assignments and expression statements are simplified.
+   */
+  private final boolean optimize;
+  /**
+   * Index of the first character after the current token.
+   */
+  private int position;
+  private Token token;
+  private int tokenStart;
+
+  /**
+   * Create a parser for the given expression. The first token is read immediately.
+   *
+   * @param expression The expression to parse.
+   * @param optimize   Whether to simplify expressions of assignments and expression statements.
+   */
+  private Parser(final String expression, final boolean optimize) {
+    this.expression = Objects.requireNonNull(expression);
+    this.optimize = optimize;
+    this.position = 0;
+    this.nextToken();
+  }
+
+  /**
+   * start: statement EOF
+   */
+  private Statement parseStart() {
+    Statement statement = this.parseStatement();
+    if (this.token != Token.EOF) {
+      throw this.error("extraneous input");
+    }
+    return statement;
+  }
+
+  /**
+   * statement: exp | ID ASSIGN exp | ID (COMMA ID)+ ASSIGN exp (COMMA exp)+ | ID FORMULA exp
+   * | ID LPAREN ID (COMMA ID)* RPAREN ASSIGN exp
+   */
+  private Statement parseStatement() {
+    if (this.token == Token.ID) {
+      int start = this.tokenStart;
+      int end = this.position;
+      String name = this.tokenText();
+      this.nextToken();
+      if (this.token == Token.ASSIGN) {
+        this.nextToken();
+        return new AssignVariableStatement(name, this.parseOptimizedExpression());
+      }
+      if (this.token == Token.COMMA) {
+        return this.parseMultipleAssignment(name);
+      }
+      if (this.token == Token.FORMULA) {
+        this.nextToken();
+        return new DefineFormulaStatement(name, this.parseOptimizedExpression());
+      }
+      if (this.token == Token.LPAREN) {
+        Optional<List<String>> parameters = this.tryParseParameters();
+        if (parameters.isPresent()) {
+          if (isKeywordCall(name, parameters.get().size())) {
+            throw new SyntaxErrorException(String.format("function %s cannot have %d parameters at %d: '%s'",
+                name, parameters.get().size(), start, name));
+          }
+          return new DefineFunctionStatement(name, parameters.get(), this.parseExpression(0));
+        }
+      }
+      // Not a definition, backtrack to the identifier
+      this.reset(start, end, Token.ID);
+    }
+    return new ExpressionStatement(this.parseOptimizedExpression());
+  }
+
+  /**
+   * Parse an expression then simplify it if this parser optimizes expressions.
+   */
+  private Node parseOptimizedExpression() {
+    Node node = this.parseExpression(0);
+    return this.optimize ? Optimizer.optimize(node) : node;
   }
 
   /**
-   * Simple error listener to throw syntax errors instead of just logging them.
+   * Parse the rest of an assignment to several variables, the current token being the comma after the first name.
+   *
+   * @param firstName Name of the first variable.
+   * @return The statement.
+   * @throws SyntaxErrorException If a variable is assigned twice or the numbers of variables and expressions differ.
+   */
+  private Statement parseMultipleAssignment(final String firstName) {
+    List<String> names = new ArrayList<>();
+    names.add(firstName);
+    while (this.token == Token.COMMA) {
+      this.nextToken();
+      if (this.token != Token.ID) {
+        throw this.error("expected " + Token.ID);
+      }
+      if (names.contains(this.tokenText())) {
+        throw this.error("variable assigned twice");
+      }
+      names.add(this.tokenText());
+      this.nextToken();
+    }
+    this.expect(Token.ASSIGN);
+    List<Node> values = new ArrayList<>();
+    values.add(this.parseOptimizedExpression());
+    while (this.token == Token.COMMA) {
+      this.nextToken();
+      values.add(this.parseOptimizedExpression());
+    }
+    if (values.size() != names.size()) {
+      throw this.error(String.format("expected %d values", names.size()));
+    }
+    return new AssignVariablesStatement(names, values);
+  }
+
+  /**
+   * Attempt to read a function’s parameter list followed by the assignment operator.
+   * The current token must be the opening parenthesis. If the list is malformed or not followed
+   * by the assignment operator, the current token is left in an unspecified position.
+   *
+   * @return The parameter names or an empty optional if the tokens do not form a function definition.
+   */
+  private Optional<List<String>> tryParseParameters() {
+    List<String> parameters = new ArrayList<>();
+    do {
+      this.nextToken();
+      if (this.token != Token.ID) {
+        return Optional.empty();
+      }
+      parameters.add(this.tokenText());
+      this.nextToken();
+    } while (this.token == Token.COMMA);
+    if (this.token != Token.RPAREN) {
+      return Optional.empty();
+    }
+    this.nextToken();
+    if (this.token != Token.ASSIGN) {
+      return Optional.empty();
+    }
+    this.nextToken();
+    return Optional.of(parameters);
+  }
+
+  /**
+   * Parse an expression whose binary operators all have a precedence greater than or equal to the given one.
+   *
+   * @param minPrecedence The minimum precedence.
+   * @return The expression’s tree.
+   */
+  private Node parseExpression(final int minPrecedence) {
+    Node left = this.parsePrefix();
+    while (this.token.precedence >= minPrecedence) {
+      Token operator = this.token;
+      this.nextToken();
+      // All operators are left-associative
+      Node right = this.parseExpression(operator.precedence + 1);
+      left = BINARY_OPERATORS.get(operator.symbol).apply(left, right);
+    }
+    return left;
+  }
+
+  /**
+   * Parse a unary operator, a parenthesized expression, a function call, a conditional, an aggregate,
+   * a variable, a number or a boolean.
+   */
+  private Node parsePrefix() {
+    switch (this.token) {
+      case PLUS -> {
+        this.nextToken();
+        return this.parseExpression(UNARY_OPERAND_PRECEDENCE);
+      }
+      case MINUS, NOT -> {
+        String operator = this.token.symbol;
+        this.nextToken();
+        return UNARY_OPERATORS.get(operator).apply(this.parseExpression(UNARY_OPERAND_PRECEDENCE));
+      }
+      case LPAREN -> {
+        this.nextToken();
+        Node node = this.parseExpression(0);
+        this.expect(Token.RPAREN);
+        return node;
+      }
+      case ID -> {
+        String name = this.tokenText();
+        this.nextToken();
+        if (this.token != Token.LPAREN) {
+          return new VariableNode(name);
+        }
+        List<Node> arguments = new ArrayList<>();
+        do {
+          this.nextToken();
+          arguments.add(this.parseExpression(0));
+        } while (this.token == Token.COMMA);
+        this.expect(Token.RPAREN);
+        return this.createCall(name, arguments);
+      }
+      case NUMBER -> {
+        double value = Double.parseDouble(this.tokenText());
+        this.nextToken();
+        return new NumberNode(value);
+      }
+      case TRUE, FALSE -> {
+        double value = this.token == Token.TRUE ? 1 : 0;
+        this.nextToken();
+        return new NumberNode(value);
+      }
+      default -> throw this.error("unexpected input");
+    }
+  }
+
+  /**
+   * Create the node for a call, which may be a conditional or an aggregate, see {@link #isKeywordCall(String, int)}.
+   *
+   * @param name      Called name.
+   * @param arguments Call’s arguments.
+   */
+  private Node createCall(final String name, final List<Node> arguments) {
+    if (isKeywordCall(name, arguments.size())) {
+      if (name.equals(IF)) {
+        return new ConditionalNode(arguments.get(0), arguments.get(1), arguments.get(2));
+      }
+      // Parameter nodes are never created by the parser
+      if (arguments.get(0).getClass() == VariableNode.class) {
+        String variable = ((VariableNode) arguments.get(0)).getName();
+        return AGGREGATES.get(name).apply(variable, arguments.subList(1, arguments.size()));
+      }
+    }
+    return new FunctionNode(name, arguments);
+  }
+
+  /**
+   * Check that the current token is of the given type then move to the next one.
+   *
+   * @throws SyntaxErrorException If the current token is not of the expected type.
    */
-  private static class ErrorListener implements ANTLRErrorListener {
-    @Override
-    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-      throw new SyntaxErrorException(msg);
+  private void expect(final Token expected) throws SyntaxErrorException {
+    if (this.token != expected) {
+      throw this.error("expected " + expected);
     }
+    this.nextToken();
+  }
 
-    @Override
-    public void reportAmbiguity(org.antlr.v4.runtime.Parser recognizer, DFA dfa, int startIndex, int stopIndex, boolean exact, BitSet ambigAlts, ATNConfigSet configs) {
+  /**
+   * Create a syntax error exception for the current token.
+   *
+   * @param message Error message.
+   */
+  private SyntaxErrorException error(final String message) {
+    String text = this.token == Token.EOF ? "<EOF>" : this.tokenText();
+    return new SyntaxErrorException(String.format("%s at %d: '%s'", message, this.tokenStart, text));
+  }
+
+  /**
+   * Return the text of the current token.
+   */
+  private String tokenText() {
+    return this.expression.substring(this.tokenStart, this.position);
+  }
+
+  /**
+   * Go back to a previously read token.
+   *
+   * @param start Token’s start index.
+   * @param end   Index of the character following the token.
+   * @param token Token’s type.
+   */
+  private void reset(final int start, final int end, final Token token) {
+    this.tokenStart = start;
+    this.position = end;
+    this.token = token;
+  }
+
+  /**
+   * Read the next token, skipping whitespace.
+   *
+   * @throws SyntaxErrorException If an unexpected character is encountered.
+   */
+  private void nextToken() throws SyntaxErrorException {
+    String s = this.expression;
+    int length = s.length();
+    int i = this.position;
+    while (i < length && isWhitespace(s.charAt(i))) {
+      i++;
+    }
+    this.tokenStart = i;
+    if (i == length) {
+      this.position = i;
+      this.token = Token.EOF;
+      return;
     }
+    char c = s.charAt(i);
+    char next = i + 1 < length ? s.charAt(i + 1) : '\0';
+    Token token;
+    int end = i + 1;
+    switch (c) {
+      case '(' -> token = Token.LPAREN;
+      case ')' -> token = Token.RPAREN;
+      case ',' -> token = Token.COMMA;
+      case '+' -> token = Token.PLUS;
+      case '-' -> token = Token.MINUS;
+      case '*' -> token = Token.MUL;
+      case '/' -> token = Token.DIV;
+      case '%' -> token = Token.MOD;
+      case '^' -> token = Token.POWER;
+      case '=' -> token = Token.EQUAL;
+      case '&' -> token = Token.AND;
+      case '|' -> token = Token.OR;
+      case ':' -> {
+        if (next == ':' && i + 2 < length && s.charAt(i + 2) == '=') {
+          token = Token.FORMULA;
+          end += 2;
+        } else if (next == '=') {
+          token = Token.ASSIGN;
+          end++;
+        } else {
+          throw new SyntaxErrorException(String.format("token recognition error at %d: '%c'", i, c));
+        }
+      }
+      case '!' -> {
+        token = next == '=' ? Token.NEQUAL : Token.NOT;
+        end += next == '=' ? 1 : 0;
+      }
+      case '>' -> {
+        token = next == '=' ? Token.GE : Token.GT;
+        end += next == '=' ? 1 : 0;
+      }
+      case '<' -> {
+        token = next == '=' ? Token.LE : Token.LT;
+        end += next == '=' ? 1 : 0;
+      }
+      default -> {
+        if (isDigit(c)) {
+          token = Token.NUMBER;
+          while (end < length && isDigit(s.charAt(end))) {
+            end++;
+          }
+          if (end < length && s.charAt(end) == '.') {
+            end++;
+            while (end < length && isDigit(s.charAt(end))) {
+              end++;
+            }
+          }
+        } else if (isIdentifierStart(c)) {
+          while (end < length && isIdentifierPart(s.charAt(end))) {
+            end++;
+          }
+          if (s.startsWith("true", i) && end - i == 4) {
+            token = Token.TRUE;
+          } else if (s.startsWith("false", i) && end - i == 5) {
+            token = Token.FALSE;
+          } else {
+            token = Token.ID;
+          }
+        } else {
+          throw new SyntaxErrorException(String.format("token recognition error at %d: '%c'", i, c));
+        }
+      }
+    }
+    this.token = token;
+    this.position = end;
+  }
+
+  private static boolean isWhitespace(final char c) {
+    return c == ' ' || c == '\n' || c == '\t';
+  }
+
+  private static boolean isDigit(final char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isIdentifierStart(final char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+  }
+
+  private static boolean isIdentifierPart(final char c) {
+    return isIdentifierStart(c) || isDigit(c);
+  }
+
+  /**
+   * Enumeration of all token types. Binary operators hold their symbol and precedence,
+   * other tokens have a negative precedence.
+   */
+  private enum Token {
+    LPAREN, RPAREN, COMMA, ASSIGN, FORMULA,
+    PLUS("+", 8), MINUS("-", 8), MUL("*", 9), DIV("/", 9), MOD("%", 9), POWER("^", 10),
+    EQUAL("=", 7), NEQUAL("!=", 7), GT(">", 7), GE(">=", 7), LT("<", 7), LE("<=", 7),
+    NOT("!", -1), AND("&", 6), OR("|", 5),
+    TRUE, FALSE, ID, NUMBER, EOF;
+
+    private final String symbol;
+    private final int precedence;
 
-    @Override
-    public void reportAttemptingFullContext(org.antlr.v4.runtime.Parser recognizer, DFA dfa, int startIndex, int stopIndex, BitSet conflictingAlts, ATNConfigSet configs) {
+    Token() {
+      this(null, -1);
     }
 
-    @Override
-    public void reportContextSensitivity(org.antlr.v4.runtime.Parser recognizer, DFA dfa, int startIndex, int stopIndex, int prediction, ATNConfigSet configs) {
+    Token(final String symbol, final int precedence) {
+      this.symbol = symbol;
+      this.precedence = precedence;
     }
   }
 }
@@ -1,19 +1,50 @@
 package net.darmo_creations.build_utils.calculator;
 
+import net.darmo_creations.build_utils.BuildUtils;
 import net.darmo_creations.build_utils.NBTSerializable;
 import net.darmo_creations.build_utils.calculator.exceptions.*;
+import net.darmo_creations.build_utils.calculator.nodes.expr.Node;
+import net.darmo_creations.build_utils.calculator.nodes.expr.NodeNBTHelper;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
- * The scope holds the definitions of builtin constants and functions,
- * and user-defined variables and functions.
+ * The scope holds the definitions of user-defined variables and functions.
+ * Builtin constants and functions are shared by all scopes, see {@link BuiltinRegistry}.
+ * <p>
+ * A global scope may also import a {@link FunctionLibrary}, whose functions are visible unless the scope defines
+ * functions with the same names. Library functions are not copied and do not count towards the quota of definitions,
+ * defining a function with the name of a library function overrides it in this scope only.
+ * <p>
+ * Scopes are not thread-safe. To evaluate expressions on another thread, take a {@link #snapshot()}
+ * of the global scope, evaluate against it then {@link #commit(Scope)} it back on the owning thread.
  */
 public class Scope implements NBTSerializable {
+  /**
+   * Default maximum function call depth.
+   */
   public static final int MAX_CALL_DEPTH = 100;
+  /**
+   * Upper bound for the maximum function call depth of any scope.
+   */
+  public static final int MAX_ALLOWED_CALL_DEPTH = 1000;
+  /**
+   * Default amount of fuel available to each evaluation, see {@link CallStack}.
+   */
+  public static final int DEFAULT_FUEL = 1_000_000;
+  /**
+   * Upper bound for the fuel budget of any scope.
+   */
+  public static final int MAX_ALLOWED_FUEL = 100_000_000;
+  /**
+   * Amount of fuel that formula recomputations may consume per server tick, all scopes included.
+   */
+  public static final int FORMULAS_FUEL_PER_TICK = 1_000_000;
 
   private static final String VARIABLES_KEY = "Variables";
   private static final String VARIABLE_NAME_KEY = "Name";
@@ -21,13 +52,58 @@ public class Scope implements NBTSerializable {
   private static final String FUNCTIONS_KEY = "Functions";
   private static final String FUNCTION_NAME_KEY = "Name";
   private static final String FUNCTION_EXPRESSION_KEY = "Expression";
+  private static final String MAX_CALL_DEPTH_KEY = "MaxCallDepth";
+  private static final String FUEL_BUDGET_KEY = "FuelBudget";
+  private static final String FORMULAS_KEY = "Formulas";
+  private static final String FORMULA_NAME_KEY = "Name";
+  private static final String FORMULA_NODE_KEY = "Node";
+
+  /**
+   * Source of function definitions versions, shared by all scopes so that versions are never reused.
+   */
+  private static final AtomicInteger FUNCTIONS_VERSIONS = new AtomicInteger();
 
   private final String name;
   private final int maxAllowedDefinitions;
-  private final Map<String, Double> builtinConstants;
-  private final Map<String, Double> variables;
-  private final Map<String, Function> builtinFunctions;
+  private final Map<String, VariableReference> variables;
   private final Map<String, Function> functions;
+  /**
+   * The imported library, may be null.
+   */
+  private FunctionLibrary library;
+  /**
+   * Incremented whenever the set of variables defined in this scope changes.
+   */
+  private int variablesVersion;
+  /**
+   * Replaced by a new unique version whenever the set of functions defined in this scope changes.
+   */
+  private int functionsVersion = FUNCTIONS_VERSIONS.incrementAndGet();
+  private final CallStack callStack;
+  private final FormulaGraph formulas;
+  /**
+   * Incremented on each write through the public API. Each written name is stamped with the new count
+   * to detect conflicting writes when committing snapshots.
+   */
+  private long modificationsCount;
+  /**
+   * Value of {@link #modificationsCount} when this scope was last reset or deserialized.
+   */
+  private long resetModification;
+  private final Map<String, Long> variableModifications = new HashMap<>();
+  private final Map<String, Long> functionModifications = new HashMap<>();
+  /**
+   * The scope this scope is a snapshot of, null if it is not a snapshot.
+   */
+  private final Scope origin;
+  /**
+   * Value of the origin’s {@link #modificationsCount} when this snapshot was taken.
+   */
+  private final long baseModification;
+  /**
+   * Writes to replay on the origin when this snapshot is committed, null if it is not a snapshot.
+   */
+  private final List<Write> writes;
 
   @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
   private final Optional<Scope> globalScope;
@@ -49,9 +125,11 @@ public class Scope implements NBTSerializable {
     this.parentScope = Optional.empty();
     this.variables = new HashMap<>();
     this.functions = new HashMap<>();
-    this.builtinConstants = new HashMap<>();
-    this.builtinFunctions = new HashMap<>();
-    this.initBuiltins();
+    this.callStack = new CallStack();
+    this.formulas = new FormulaGraph(this);
+    this.origin = null;
+    this.baseModification = 0;
+    this.writes = null;
   }
 
   /**
@@ -71,8 +149,36 @@ public class Scope implements NBTSerializable {
     this.parentScope = Optional.of(parentScope);
     this.variables = new HashMap<>();
     this.functions = new HashMap<>();
-    this.builtinConstants = new HashMap<>();
-    this.builtinFunctions = new HashMap<>();
+    this.callStack = globalScope.getCallStack();
+    this.formulas = new FormulaGraph(this);
+    this.origin = null;
+    this.baseModification = 0;
+    this.writes = null;
+  }
+
+  /**
+   * Create a snapshot of a global scope.
+   *
+   * @param origin The scope to copy.
+   */
+  private Scope(final Scope origin) {
+    this.name = origin.name;
+    this.maxAllowedDefinitions = origin.maxAllowedDefinitions;
+    this.globalScope = Optional.empty();
+    this.parentScope = Optional.empty();
+    this.variables = new HashMap<>();
+    origin.variables.forEach((name, reference) -> this.variables.put(name, new VariableReference(reference.value)));
+    this.functions = new HashMap<>(origin.functions);
+    this.library = origin.library;
+    // Same definitions, caches keyed by this version are shared with the origin
+    this.functionsVersion = origin.functionsVersion;
+    this.callStack = new CallStack();
+    this.callStack.setMaxDepth(origin.getMaxCallDepth());
+    this.callStack.setFuelBudget(origin.getFuelBudget());
+    this.formulas = new FormulaGraph(this);
+    this.origin = origin;
+    this.baseModification = origin.modificationsCount;
+    this.writes = new ArrayList<>();
   }
 
   /**
@@ -104,58 +210,81 @@ public class Scope implements NBTSerializable {
   }
 
   /**
-   * Initialize the builtin constants and functions.
-   */
-  private void initBuiltins() {
-    this.builtinConstants.put("pi", Math.PI);
-
-    BuiltinFunction[] functions = {
-        new BuiltinFunction("floor", Collections.singletonList("_x_"),
-            values -> Math.floor(values.getVariable("_x_"))),
-        new BuiltinFunction("ceil", Collections.singletonList("_x_"),
-            values -> Math.ceil(values.getVariable("_x_"))),
-        new BuiltinFunction("sqrt", Collections.singletonList("_x_"),
-            values -> Math.sqrt(values.getVariable("_x_"))),
-        new BuiltinFunction("cbrt", Collections.singletonList("_x_"),
-            values -> Math.cbrt(values.getVariable("_x_"))),
-        new BuiltinFunction("exp", Collections.singletonList("_x_"),
-            values -> Math.exp(values.getVariable("_x_"))),
-        new BuiltinFunction("cos", Collections.singletonList("_x_"),
-            values -> Math.cos(values.getVariable("_x_"))),
-        new BuiltinFunction("sin", Collections.singletonList("_x_"),
-            values -> Math.sin(values.getVariable("_x_"))),
-        new BuiltinFunction("tan", Collections.singletonList("_x_"),
-            values -> Math.tan(values.getVariable("_x_"))),
-        new BuiltinFunction("acos", Collections.singletonList("_x_"),
-            values -> Math.acos(values.getVariable("_x_"))),
-        new BuiltinFunction("asin", Collections.singletonList("_x_"),
-            values -> Math.asin(values.getVariable("_x_"))),
-        new BuiltinFunction("atan", Collections.singletonList("_x_"),
-            values -> Math.atan(values.getVariable("_x_"))),
-        new BuiltinFunction("atan2", Arrays.asList("_x1_", "_x2_"),
-            values -> Math.atan2(values.getVariable("_x1_"), values.getVariable("_x2_"))),
-        new BuiltinFunction("log", Collections.singletonList("_x_"),
-            values -> Math.log(values.getVariable("_x_"))),
-        new BuiltinFunction("log10", Collections.singletonList("_x_"),
-            values -> Math.log10(values.getVariable("_x_"))),
-        new BuiltinFunction("abs", Collections.singletonList("_x_"),
-            values -> Math.abs(values.getVariable("_x_"))),
-        new BuiltinFunction("degrees", Collections.singletonList("_x_"),
-            values -> Math.toDegrees(values.getVariable("_x_"))),
-        new BuiltinFunction("radians", Collections.singletonList("_x_"),
-            values -> Math.toRadians(values.getVariable("_x_"))),
-        new BuiltinFunction("round", Collections.singletonList("_x_"),
-            values -> (double) Math.round(values.getVariable("_x_"))),
-        new BuiltinFunction("sign", Collections.singletonList("_x_"),
-            values -> Math.signum(values.getVariable("_x_"))),
-        new BuiltinFunction("max", Arrays.asList("_x1_", "_x2_"),
-            values -> Math.max(values.getVariable("_x1_"), values.getVariable("_x2_"))),
-        new BuiltinFunction("min", Arrays.asList("_x1_", "_x2_"),
-            values -> Math.min(values.getVariable("_x1_"), values.getVariable("_x2_"))),
-    };
-    for (BuiltinFunction f : functions) {
-      this.builtinFunctions.put(f.getName(), f);
-    }
+   * Return the call stack used to evaluate functions. It is shared by all scopes with the same global scope.
+   */
+  public CallStack getCallStack() {
+    return this.callStack;
+  }
+
+  /**
+   * Return the maximum function call depth.
+   */
+  public int getMaxCallDepth() {
+    return this.callStack.getMaxDepth();
+  }
+
+  /**
+   * Set the maximum function call depth. It is shared by all scopes with the same global scope.
+   *
+   * @param maxCallDepth The maximum depth.
+   * @throws IllegalArgumentException If the value is not between 1 and {@link #MAX_ALLOWED_CALL_DEPTH}.
+   */
+  public void setMaxCallDepth(final int maxCallDepth) {
+    this.callStack.setMaxDepth(maxCallDepth);
+  }
+
+  /**
+   * Return the amount of fuel available to each evaluation.
+   */
+  public int getFuelBudget() {
+    return this.callStack.getFuelBudget();
+  }
+
+  /**
+   * Set the amount of fuel available to each evaluation. It is shared by all scopes with the same global scope.
+   *
+   * @param fuelBudget The budget.
+   * @throws IllegalArgumentException If the value is not between 1 and {@link #MAX_ALLOWED_FUEL}.
+   */
+  public void setFuelBudget(final int fuelBudget) {
+    this.callStack.setFuelBudget(fuelBudget);
+  }
+
+  /**
+   * Return the current version of this scope’s variable definitions.
+   * It changes whenever a variable is defined or deleted or the scope is reset or deserialized
+   * but not when the value of an existing variable changes, as it is held by its {@link VariableReference}.
+   */
+  public int getVariablesVersion() {
+    return this.variablesVersion;
+  }
+
+  /**
+   * Return the current version of this scope’s function definitions.
+   * It changes whenever a function is defined or deleted or the scope is reset or deserialized,
+   * objects that depend on resolved functions may use it to detect when they become stale.
+   * Versions are unique across all scopes except snapshots, which share the version of their origin
+   * until their own function definitions change.
+   */
+  public int getFunctionsVersion() {
+    return this.functionsVersion;
+  }
+
+  /**
+   * Return a new unique functions version.
+   */
+  static int newFunctionsVersion() {
+    return FUNCTIONS_VERSIONS.incrementAndGet();
+  }
+
+  /**
+   * Update the functions version after the set of functions visible in this scope changed.
+   * Scopes whose only functions are those of a library share the library’s version.
+   */
+  private void functionsChanged() {
+    this.functionsVersion = this.functions.isEmpty() && this.library != null
+        ? this.library.getVersion()
+        : newFunctionsVersion();
   }
 
   /**
@@ -166,7 +295,7 @@ public class Scope implements NBTSerializable {
    * @return True if a user-defined variable or a builtin constant with this name exists.
    */
   public boolean variableExists(final String name, boolean checkGlobalScope) {
-    return this.variables.containsKey(name) || this.builtinConstants.containsKey(name)
+    return this.variables.containsKey(name) || BuiltinRegistry.getConstantIndex(name) >= 0
         || checkGlobalScope && this.globalScope.map(s -> s.variableExists(name, false)).orElse(false);
   }
 
@@ -178,19 +307,36 @@ public class Scope implements NBTSerializable {
    * @throws UndefinedVariableException If no variable nor constant with this name exist.
    */
   public double getVariable(final String name) throws UndefinedVariableException {
-    if (this.variables.containsKey(name)) {
-      return this.variables.get(name);
+    return this.resolveVariable(name).getValue();
+  }
+
+  /**
+   * Return a reference to the variable or constant with the given name.
+   * The reference reflects all later changes to the variable’s value
+   * until the variable is deleted, see {@link #getVariablesVersion()}.
+   *
+   * @param name Variable/constant’s name.
+   * @return A reference to the variable/constant.
+   * @throws UndefinedVariableException If no variable nor constant with this name exist.
+   */
+  public VariableReference resolveVariable(final String name) throws UndefinedVariableException {
+    VariableReference reference = this.variables.get(name);
+    if (reference != null) {
+      return reference;
     } else if (this.globalScope.isPresent()) {
-      return this.globalScope.get().getVariable(name);
-    } else if (this.builtinConstants.containsKey(name)) {
-      return this.builtinConstants.get(name);
+      return this.globalScope.get().resolveVariable(name);
+    }
+    int index = BuiltinRegistry.getConstantIndex(name);
+    if (index >= 0) {
+      return BuiltinRegistry.getConstant(index);
     } else {
       throw new UndefinedVariableException(name);
     }
   }
 
   /**
-   * Set the value of a variable.
+   * Set the value of a variable. If the variable is a formula variable, it becomes a plain variable.
+   * Formulas that depend on the variable are marked for recomputation, see {@link #updateFormulas()}.
    *
    * @param name  Variable’s name.
    * @param value Variable’s value.
@@ -199,11 +345,135 @@ public class Scope implements NBTSerializable {
    */
   @SuppressWarnings("UnusedReturnValue")
   public Optional<Double> setVariable(String name, double value) throws MaxDefinitionsException {
+    this.checkVariablesQuota(name);
+    this.formulas.remove(name);
+    this.modified(this.variableModifications, name, s -> s.setVariable(name, value));
+    return this.putVariable(name, value);
+  }
+
+  /**
+   * Apply all writes of a transaction at once. Quotas are checked once for the whole transaction beforehand,
+   * no write is applied if they would be exceeded and the transaction can still be modified.
+   * Functions versions change once for all function writes. If this scope is a snapshot, the transaction is applied at once to the origin when committed.
+   *
+   * @param transaction The transaction to apply.
+   * @throws MaxDefinitionsException If applying the transaction would exceed the quota of variables or functions.
+   */
+  public void apply(final Transaction transaction) throws MaxDefinitionsException {
+    Map<String, Double> variables = transaction.getVariables();
+    Map<String, Function> functions = transaction.getFunctions();
+    long newVariables = variables.keySet().stream().filter(name -> !this.variables.containsKey(name)).count();
+    long newFunctions = functions.keySet().stream().filter(name -> !this.functions.containsKey(name)).count();
+    if (this.variables.size() + newVariables > this.maxAllowedDefinitions
+        || this.functions.size() + newFunctions > this.maxAllowedDefinitions) {
+      throw new MaxDefinitionsException(this.maxAllowedDefinitions);
+    }
+    transaction.markApplied();
+    // Every name is stamped for conflict detection but only the first write replays the whole transaction
+    Consumer<Scope> replay = s -> s.apply(transaction);
+    for (Map.Entry<String, Double> entry : variables.entrySet()) {
+      this.formulas.remove(entry.getKey());
+      this.modified(this.variableModifications, entry.getKey(), replay);
+      replay = s -> {};
+      this.putVariable(entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<String, Function> entry : functions.entrySet()) {
+      this.modified(this.functionModifications, entry.getKey(), replay);
+      replay = s -> {};
+      this.functions.put(entry.getKey(), entry.getValue());
+    }
+    if (!functions.isEmpty()) {
+      this.functionsChanged();
+    }
+  }
+
+  /**
+   * Define a formula variable. The expression is evaluated immediately then again whenever
+   * a variable it depends on changes, see {@link FormulaGraph}.
+   *
+   * @param name Variable’s name.
+   * @param node Formula’s expression.
+   * @return The current value of the formula.
+   * @throws MaxDefinitionsException  If the maximum quota of variables definitions has been reached.
+   * @throws CircularFormulaException If the expression depends on the variable itself.
+   * @throws EvaluationException      If an error occured during {@link Node} evaluation.
+   * @throws ArithmeticException      If a math error occured.
+   */
+  public double setFormula(final String name, final Node node)
+      throws MaxDefinitionsException, CircularFormulaException, EvaluationException, ArithmeticException {
+    this.checkVariablesQuota(name);
+    double value = node.evaluate(this);
+    this.defineFormula(name, node, value);
+    return value;
+  }
+
+  private void defineFormula(final String name, final Node node, final double value) {
+    this.checkVariablesQuota(name);
+    this.formulas.define(name, node);
+    this.modified(this.variableModifications, name, s -> s.defineFormula(name, node, value));
+    this.putVariable(name, value);
+  }
+
+  /**
+   * Return a mapping of all formula variables defined in this scope to their expression.
+   */
+  public Map<String, Node> getFormulas() {
+    return this.formulas.getFormulas();
+  }
+
+  /**
+   * Recompute all formulas whose dependencies changed since the last call.
+   *
+   * @return True if at least one formula was recomputed.
+   */
+  public boolean updateFormulas() {
+    return this.formulas.update(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Recompute the formulas whose dependencies changed since the last call, consuming at most the given amount
+   * of fuel. Formulas that cannot be recomputed with the fuel left are recomputed by the next call,
+   * see {@link FormulaGraph#update(int)}.
+   *
+   * @param maxFuel The maximum amount of fuel to consume.
+   * @return The amount of fuel consumed, -1 if no formula was recomputed.
+   */
+  public int updateFormulas(final int maxFuel) {
+    int fuel = Math.min(maxFuel, this.getFuelBudget());
+    return this.formulas.update(maxFuel) ? fuel - this.callStack.getFuel() : -1;
+  }
+
+  /**
+   * Store the value computed for a formula without affecting the formula itself nor its dependents.
+   *
+   * @param name  Formula variable’s name.
+   * @param value The new value.
+   */
+  void setFormulaValue(final String name, final double value) {
+    VariableReference reference = this.variables.get(name);
+    if (reference != null) {
+      reference.value = value;
+    }
+  }
+
+  private void checkVariablesQuota(final String name) throws MaxDefinitionsException {
     if (this.variables.size() == this.maxAllowedDefinitions
         && !this.variables.containsKey(name)) {
       throw new MaxDefinitionsException(this.maxAllowedDefinitions);
     }
-    return Optional.ofNullable(this.variables.put(name, value));
+  }
+
+  private Optional<Double> putVariable(final String name, final double value) {
+    this.formulas.variableChanged(name);
+    VariableReference reference = this.variables.get(name);
+    if (reference != null) {
+      double previousValue = reference.value;
+      reference.value = value;
+      return Optional.of(previousValue);
+    }
+    this.variables.put(name, new VariableReference(value));
+    this.variablesVersion++;
+    return Optional.empty();
   }
 
   /**
@@ -222,29 +492,34 @@ public class Scope implements NBTSerializable {
       throw new UndefinedVariableException(name);
     } else if (!this.variableExists(name, false)) {
       throw new OutOfScopeVariableDeletionAttemptException(name);
-    } else if (!this.variables.containsKey(name) && this.builtinConstants.containsKey(name)) {
+    } else if (!this.variables.containsKey(name) && BuiltinRegistry.getConstantIndex(name) >= 0) {
       throw new BuiltinConstantDeletionAttemptException(name);
     }
-    return this.variables.remove(name);
+    this.variablesVersion++;
+    this.formulas.remove(name);
+    this.formulas.variableChanged(name);
+    this.modified(this.variableModifications, name, s -> s.deleteVariable(name));
+    return this.variables.remove(name).getValue();
   }
 
   /**
    * Return a mapping of all variables defined in this scope.
    */
   public Map<String, Double> getVariables() {
-    return new HashMap<>(this.variables);
+    Map<String, Double> variables = new HashMap<>();
+    this.variables.forEach((name, reference) -> variables.put(name, reference.getValue()));
+    return variables;
   }
 
   /**
    * Return a mapping of all builtin constants.
    */
   public Map<String, Double> getBuiltinConstants() {
-    if (this.isGlobal()) {
-      return new HashMap<>(this.builtinConstants);
-    } else {
-      //noinspection OptionalGetWithoutIsPresent
-      return this.globalScope.get().getBuiltinConstants();
+    Map<String, Double> constants = new HashMap<>();
+    for (int i = 0; i < BuiltinRegistry.getConstantsCount(); i++) {
+      constants.put(BuiltinRegistry.getConstantName(i), BuiltinRegistry.getConstant(i).getValue());
     }
+    return constants;
   }
 
   /**
@@ -255,7 +530,8 @@ public class Scope implements NBTSerializable {
    * @return True if a function with this name exists.
    */
   public boolean functionExists(final String name, boolean checkGlobalScope) {
-    return this.functions.containsKey(name) || this.builtinFunctions.containsKey(name)
+    return this.functions.containsKey(name) || this.library != null && this.library.getFunction(name) != null
+        || BuiltinRegistry.getFunctionIndex(name) >= 0
         || checkGlobalScope && this.globalScope.map(s -> s.functionExists(name, false)).orElse(false);
   }
 
@@ -267,22 +543,30 @@ public class Scope implements NBTSerializable {
    * @throws UndefinedFunctionException If no function with this name exists.
    */
   public Function getFunction(final String name) throws UndefinedFunctionException {
-    if (this.functions.containsKey(name)) {
-      return this.functions.get(name);
+    Function function = this.functions.get(name);
+    if (function == null && this.library != null) {
+      function = this.library.getFunction(name);
+    }
+    if (function != null) {
+      return function;
     } else if (this.globalScope.isPresent()) {
       return this.globalScope.get().getFunction(name);
-    } else if (this.builtinFunctions.containsKey(name)) {
-      return this.builtinFunctions.get(name);
+    }
+    int index = BuiltinRegistry.getFunctionIndex(name);
+    if (index >= 0) {
+      return BuiltinRegistry.getFunction(index);
     } else {
       throw new UndefinedFunctionException(name);
     }
   }
 
   /**
-   * Define a function. Overrides any function with the same name previously defined by a user.
+   * Define a function. Overrides any function with the same name previously defined by a user
+   * or imported from a library, the library itself is not modified.
    *
    * @param function The function.
-   * @return The function with the same name that was overwritten by the given function if any.
+   * @return The function with the same name that was overwritten by the given function if any,
+   * library functions excluded.
    * @throws MaxDefinitionsException If the maximum quota of functions definitions has been reached.
    */
   @SuppressWarnings("UnusedReturnValue")
@@ -291,69 +575,207 @@ public class Scope implements NBTSerializable {
         && !this.functions.containsKey(function.getName())) {
       throw new MaxDefinitionsException(this.maxAllowedDefinitions);
     }
-    return Optional.ofNullable(this.functions.put(function.getName(), function));
+    this.modified(this.functionModifications, function.getName(), s -> s.setFunction(function));
+    Optional<Function> previous = Optional.ofNullable(this.functions.put(function.getName(), function));
+    this.functionsChanged();
+    return previous;
   }
 
   /**
-   * Delete the function with the given name.
+   * Delete the function with the given name. If it overrides a library function, the latter becomes visible again.
    *
    * @param name Function’s name.
    * @return The function that was deleted.
    * @throws UndefinedFunctionException                 If no function with this name exists.
    * @throws OutOfScopeFunctionDeletionAttemptException If the function is defined in a parent scope.
+   * @throws LibraryFunctionDeletionAttemptException    If no user-defined function with this name exists
+   *                                                    but the imported library defines one.
    * @throws BuiltinFunctionDeletionAttemptException    If no user-defined function with this name exists but a builtin one does.
    */
   @SuppressWarnings("UnusedReturnValue")
-  public Function deleteFunction(String name)
-      throws UndefinedFunctionException, OutOfScopeFunctionDeletionAttemptException, BuiltinFunctionDeletionAttemptException {
+  public Function deleteFunction(String name) throws UndefinedFunctionException, OutOfScopeFunctionDeletionAttemptException,
+      LibraryFunctionDeletionAttemptException, BuiltinFunctionDeletionAttemptException {
     if (!this.functionExists(name, true)) {
       throw new UndefinedFunctionException(name);
     } else if (!this.functionExists(name, false)) {
       throw new OutOfScopeFunctionDeletionAttemptException(name);
-    } else if (!this.functions.containsKey(name) && this.builtinFunctions.containsKey(name)) {
-      throw new BuiltinConstantDeletionAttemptException(name);
+    } else if (!this.functions.containsKey(name) && this.library != null && this.library.getFunction(name) != null) {
+      throw new LibraryFunctionDeletionAttemptException(name, this.library.getName());
+    } else if (!this.functions.containsKey(name) && BuiltinRegistry.getFunctionIndex(name) >= 0) {
+      throw new BuiltinFunctionDeletionAttemptException(name);
     }
-    return this.functions.remove(name);
+    this.modified(this.functionModifications, name, s -> s.deleteFunction(name));
+    Function function = this.functions.remove(name);
+    this.functionsChanged();
+    return function;
   }
 
   /**
-   * Return a mapping of all user-defined functions.
+   * Return a mapping of all user-defined functions, library functions excluded.
    */
   public Map<String, Function> getFunctions() {
     return new HashMap<>(this.functions);
   }
 
+  /**
+   * Return the imported library.
+   */
+  public Optional<FunctionLibrary> getLibrary() {
+    return Optional.ofNullable(this.library);
+  }
+
+  /**
+   * Import a library, replacing the previously imported one if any. Functions defined in this scope
+   * keep overriding library functions with the same names.
+   *
+   * @param library The library to import, null to only remove the current one.
+   * @throws UnsupportedOperationException If this scope is not a global scope or is a snapshot.
+   */
+  public void importLibrary(final FunctionLibrary library) {
+    if (!this.isGlobal() || this.isSnapshot()) {
+      throw new UnsupportedOperationException("cannot import library in non-global scope");
+    }
+    this.library = library;
+    this.functionsChanged();
+  }
+
+  /**
+   * Create a library from the functions visible in this scope: those defined in this scope
+   * and those of the imported library that are not overridden.
+   *
+   * @param name Library’s name.
+   * @return The library, scopes that import it share this scope’s current functions version.
+   */
+  public FunctionLibrary exportLibrary(final String name) {
+    Map<String, Function> functions = new HashMap<>();
+    if (this.library != null) {
+      functions.putAll(this.library.getFunctions());
+    }
+    functions.putAll(this.functions);
+    // Same functions, hence the same resolutions
+    return new FunctionLibrary(name, functions, this.functionsVersion);
+  }
+
   /**
    * Return a mapping of all builtin functions.
    */
   public Map<String, Function> getBuiltinFunctions() {
-    if (this.isGlobal()) {
-      return new HashMap<>(this.builtinFunctions);
-    } else {
-      //noinspection OptionalGetWithoutIsPresent
-      return this.globalScope.get().getBuiltinFunctions();
+    Map<String, Function> functions = new HashMap<>();
+    for (int i = 0; i < BuiltinRegistry.getFunctionsCount(); i++) {
+      Function function = BuiltinRegistry.getFunction(i);
+      functions.put(function.getName(), function);
     }
+    return functions;
   }
 
   /**
-   * Deletes all variables and functions defined in this scope.
+   * Deletes all variables and functions defined in this scope. The imported library is kept.
+   *
+   * @throws UnsupportedOperationException If this scope is a snapshot.
    */
   public void reset() {
+    if (this.isSnapshot()) {
+      throw new UnsupportedOperationException("cannot reset snapshot");
+    }
     this.variables.clear();
     this.functions.clear();
+    this.formulas.clear();
+    this.variablesVersion++;
+    this.functionsChanged();
+    this.resetModifications();
   }
 
   /**
-   * Return the list of names of all scopes in this stack.
+   * Return a snapshot of this scope. A snapshot is a detached copy of this scope with its own call stack,
+   * it can be evaluated against on another thread while this scope keeps being used.
+   * Changes made to the snapshot are recorded and only applied to this scope by {@link #commit(Scope)}.
+   * Formulas are not copied, their current values are.
+   * <p>
+   * Function objects are shared with this scope, and so are their compiled code and memoized results
+   * as long as the snapshot’s function definitions do not change.
+   *
+   * @return The snapshot.
+   * @throws UnsupportedOperationException If this scope is not a global scope.
    */
-  public List<String> getStackTrace() {
-    List<String> trace;
-    if (!this.parentScope.isPresent()) {
-      trace = new ArrayList<>();
-    } else {
-      trace = this.parentScope.get().getStackTrace();
+  public Scope snapshot() {
+    if (!this.isGlobal()) {
+      throw new UnsupportedOperationException("cannot snapshot non-global scope");
     }
-    trace.add(this.name);
+    return new Scope(this);
+  }
+
+  /**
+   * Indicate whether this scope is a snapshot of another scope, see {@link #snapshot()}.
+   */
+  public boolean isSnapshot() {
+    return this.origin != null;
+  }
+
+  /**
+   * Apply the changes made to a snapshot of this scope, in the order they were made.
+   * <p>
+   * Conflicting changes follow first-writer-wins semantics: if any variable or function written by the snapshot
+   * has been written to this scope since the snapshot was taken, for instance by another committed snapshot,
+   * none of the snapshot’s changes are applied. Formula values computed since are not considered as writes.
+   * Changes are applied all at once: if one of them fails, this scope is restored to its state before the commit.
+   *
+   * @param snapshot A snapshot of this scope.
+   * @throws WriteConflictException   If a variable or function written by the snapshot was modified in the meantime.
+   * @throws MaxDefinitionsException  If the maximum quota of definitions has been reached in the meantime.
+   * @throws CircularFormulaException If a formula defined by the snapshot now depends on its own variable.
+   * @throws IllegalArgumentException If the scope is not a snapshot of this scope.
+   */
+  public void commit(final Scope snapshot)
+      throws WriteConflictException, MaxDefinitionsException, CircularFormulaException {
+    if (snapshot.origin != this) {
+      throw new IllegalArgumentException("scope is not a snapshot of this scope");
+    }
+    for (Write write : snapshot.writes) {
+      if (this.resetModification > snapshot.baseModification
+          || write.modifications(this).getOrDefault(write.name, 0L) > snapshot.baseModification) {
+        throw new WriteConflictException(write.name);
+      }
+    }
+    Backup backup = new Backup(this);
+    try {
+      for (Write write : snapshot.writes) {
+        write.action.accept(this);
+      }
+    } catch (RuntimeException e) {
+      backup.restore(this);
+      throw e;
+    }
+    snapshot.writes.clear();
+  }
+
+  /**
+   * Stamp a name as modified and record the change if this scope is a snapshot.
+   *
+   * @param modifications Stamps of either variables or functions.
+   * @param name          The modified name.
+   * @param action        Action that performs the same change on the origin scope.
+   */
+  private void modified(final Map<String, Long> modifications, final String name, final Consumer<Scope> action) {
+    modifications.put(name, ++this.modificationsCount);
+    if (this.writes != null) {
+      this.writes.add(new Write(modifications == this.functionModifications, name, action));
+    }
+  }
+
+  private void resetModifications() {
+    this.variableModifications.clear();
+    this.functionModifications.clear();
+    this.resetModification = ++this.modificationsCount;
+  }
+
+  /**
+   * Return the name of the global scope followed by the names of the functions that are currently being evaluated.
+   * The list is built from the {@link CallStack} when this method is called.
+   */
+  public List<String> getStackTrace() {
+    List<String> trace = new ArrayList<>();
+    trace.add(this.getGlobalScope().getName());
+    trace.addAll(this.callStack.getTrace());
     return trace;
   }
 
@@ -364,10 +786,10 @@ public class Scope implements NBTSerializable {
     }
     CompoundTag tag = new CompoundTag();
     ListTag variables = new ListTag();
-    for (Map.Entry<String, Double> entry : this.variables.entrySet()) {
+    for (Map.Entry<String, VariableReference> entry : this.variables.entrySet()) {
       CompoundTag item = new CompoundTag();
       item.putString(VARIABLE_NAME_KEY, entry.getKey());
-      item.putDouble(VARIABLE_VALUE_KEY, entry.getValue());
+      item.putDouble(VARIABLE_VALUE_KEY, entry.getValue().getValue());
       variables.add(item);
     }
     tag.put(VARIABLES_KEY, variables);
@@ -379,23 +801,145 @@ public class Scope implements NBTSerializable {
       functions.add(item);
     }
     tag.put(FUNCTIONS_KEY, functions);
+    ListTag formulas = new ListTag();
+    for (Map.Entry<String, Node> entry : this.formulas.getFormulas().entrySet()) {
+      CompoundTag item = new CompoundTag();
+      item.putString(FORMULA_NAME_KEY, entry.getKey());
+      item.put(FORMULA_NODE_KEY, NodeNBTHelper.writeNode(entry.getValue()));
+      formulas.add(item);
+    }
+    tag.put(FORMULAS_KEY, formulas);
+    tag.putInt(MAX_CALL_DEPTH_KEY, this.getMaxCallDepth());
+    tag.putInt(FUEL_BUDGET_KEY, this.getFuelBudget());
     return tag;
   }
 
   @Override
   public void readFromNBT(CompoundTag tag) {
-    if (!this.isGlobal()) {
+    if (!this.isGlobal() || this.isSnapshot()) {
       throw new UnsupportedOperationException("cannot deserialize non-global scope");
     }
     this.variables.clear();
     for (Tag item : tag.getList(VARIABLES_KEY, new CompoundTag().getId())) {
       CompoundTag c = (CompoundTag) item;
-      this.variables.put(c.getString(VARIABLE_NAME_KEY), c.getDouble(VARIABLE_VALUE_KEY));
+      this.variables.put(c.getString(VARIABLE_NAME_KEY), new VariableReference(c.getDouble(VARIABLE_VALUE_KEY)));
     }
+    this.variablesVersion++;
     this.functions.clear();
     for (Tag item : tag.getList(FUNCTIONS_KEY, new CompoundTag().getId())) {
       CompoundTag c = (CompoundTag) item;
-      this.functions.put(c.getString(FUNCTION_NAME_KEY), new UserFunction(c.getCompound(FUNCTION_EXPRESSION_KEY)));
+      UserFunction function = new UserFunction(c.getCompound(FUNCTION_EXPRESSION_KEY));
+      String name = c.getString(FUNCTION_NAME_KEY);
+      // Possibly saved before conditionals and aggregates were added, such names could not be defined since
+      if (Parser.isKeywordCall(name, function.getParameterNames().size())) {
+        BuildUtils.LOGGER.warn("Calculator function {} with {} parameters clashes with a builtin, some calls will not resolve to it",
+            name, function.getParameterNames().size());
+      }
+      this.functions.put(name, function);
+    }
+    // Libraries are saved separately, see FunctionLibrary
+    this.library = null;
+    this.functionsVersion = newFunctionsVersion();
+    this.formulas.clear();
+    for (Tag item : tag.getList(FORMULAS_KEY, new CompoundTag().getId())) {
+      CompoundTag c = (CompoundTag) item;
+      String name = c.getString(FORMULA_NAME_KEY);
+      if (this.variables.containsKey(name)) {
+        try {
+          this.formulas.define(name, NodeNBTHelper.readNode(c.get(FORMULA_NODE_KEY)));
+        } catch (CircularFormulaException e) {
+          // Cycle introduced by a function redefinition, keep the last value as a plain variable
+        }
+      }
+    }
+    if (tag.contains(MAX_CALL_DEPTH_KEY)) {
+      this.setMaxCallDepth(Math.max(1, Math.min(MAX_ALLOWED_CALL_DEPTH, tag.getInt(MAX_CALL_DEPTH_KEY))));
+    }
+    if (tag.contains(FUEL_BUDGET_KEY)) {
+      this.setFuelBudget(Math.max(1, Math.min(MAX_ALLOWED_FUEL, tag.getInt(FUEL_BUDGET_KEY))));
+    }
+    this.resetModifications();
+  }
+
+  /**
+   * The definitions of a scope before a commit, restored if the commit fails.
+   */
+  private static class Backup {
+    /**
+     * References are restored so that those resolved before the commit stay valid.
+     */
+    final Map<String, VariableReference> variables;
+    final Map<String, Double> values = new HashMap<>();
+    final Map<String, Function> functions;
+    final FormulaGraph formulas;
+    final int functionsVersion;
+    final Map<String, Long> variableModifications;
+    final Map<String, Long> functionModifications;
+
+    Backup(final Scope scope) {
+      this.variables = new HashMap<>(scope.variables);
+      this.variables.forEach((name, reference) -> this.values.put(name, reference.value));
+      this.functions = new HashMap<>(scope.functions);
+      this.formulas = new FormulaGraph(scope.formulas);
+      this.functionsVersion = scope.functionsVersion;
+      this.variableModifications = new HashMap<>(scope.variableModifications);
+      this.functionModifications = new HashMap<>(scope.functionModifications);
+    }
+
+    void restore(final Scope scope) {
+      scope.variables.clear();
+      scope.variables.putAll(this.variables);
+      this.variables.forEach((name, reference) -> reference.value = this.values.get(name));
+      scope.functions.clear();
+      scope.functions.putAll(this.functions);
+      scope.formulas.restore(this.formulas);
+      // Function definitions are the same as before, so are resolutions
+      scope.variablesVersion++;
+      scope.functionsVersion = this.functionsVersion;
+      scope.variableModifications.clear();
+      scope.variableModifications.putAll(this.variableModifications);
+      scope.functionModifications.clear();
+      scope.functionModifications.putAll(this.functionModifications);
+    }
+  }
+
+  /**
+   * A change made to a snapshot, to be replayed on its origin.
+   */
+  private static class Write {
+    final boolean function;
+    final String name;
+    final Consumer<Scope> action;
+
+    Write(final boolean function, final String name, final Consumer<Scope> action) {
+      this.function = function;
+      this.name = name;
+      this.action = action;
+    }
+
+    /**
+     * Return the modification stamps of the given scope for this write’s kind of definition.
+     */
+    Map<String, Long> modifications(final Scope scope) {
+      return this.function ? scope.functionModifications : scope.variableModifications;
+    }
+  }
+
+  /**
+   * A mutable holder for the value of a variable or constant, obtained through {@link #resolveVariable(String)}.
+   */
+  public static final class VariableReference {
+    private double value;
+
+    VariableReference(final double value) {
+      this.value = value;
+    }
+
+    /**
+     * Return the current value of the variable.
+     */
+    public double getValue() {
+      return this.value;
     }
   }
 }
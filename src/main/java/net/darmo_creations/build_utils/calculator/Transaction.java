@@ -0,0 +1,81 @@
+package net.darmo_creations.build_utils.calculator;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A set of variable and function writes that are applied to a {@link Scope} at once, see {@link Scope#apply(Transaction)}.
+ * <p>
+ * Writes are buffered until the transaction is applied, the scope is left untouched if the transaction is discarded
+ * or if applying it would exceed a quota of definitions. If a name is written several times, the last write wins.
+ * A transaction cannot be modified once it has been successfully applied,
+ * snapshots apply it again to their origin when committed.
+ */
+public final class Transaction {
+  private final Map<String, Double> variables = new LinkedHashMap<>();
+  private final Map<String, Function> functions = new LinkedHashMap<>();
+  private boolean applied;
+
+  /**
+   * Set the value of a variable when this transaction is applied.
+   *
+   * @param name  Variable’s name.
+   * @param value Variable’s value.
+   * @return This transaction.
+   * @throws IllegalStateException If this transaction has already been applied.
+   */
+  public Transaction setVariable(final String name, final double value) {
+    this.checkNotApplied();
+    this.variables.put(Objects.requireNonNull(name), value);
+    return this;
+  }
+
+  /**
+   * Define a function when this transaction is applied.
+   *
+   * @param function The function.
+   * @return This transaction.
+   * @throws IllegalStateException If this transaction has already been applied.
+   */
+  public Transaction setFunction(final Function function) {
+    this.checkNotApplied();
+    this.functions.put(function.getName(), function);
+    return this;
+  }
+
+  /**
+   * Indicate whether this transaction contains no writes.
+   */
+  public boolean isEmpty() {
+    return this.variables.isEmpty() && this.functions.isEmpty();
+  }
+
+  /**
+   * Return the variable writes in the order they were first made.
+   */
+  Map<String, Double> getVariables() {
+    return Collections.unmodifiableMap(this.variables);
+  }
+
+  /**
+   * Return the function writes in the order they were first made.
+   */
+  Map<String, Function> getFunctions() {
+    return Collections.unmodifiableMap(this.functions);
+  }
+
+  /**
+   * Prevent further writes.
+   */
+  void markApplied() {
+    this.applied = true;
+  }
+
+  private void checkNotApplied() {
+    if (this.applied) {
+      throw new IllegalStateException("transaction already applied");
+    }
+  }
+}
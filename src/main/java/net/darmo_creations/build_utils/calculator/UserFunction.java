@@ -1,19 +1,78 @@
 package net.darmo_creations.build_utils.calculator;
 
+import net.darmo_creations.build_utils.calculator.compiler.CompiledFunction;
+import net.darmo_creations.build_utils.calculator.compiler.FunctionCompiler;
+import net.darmo_creations.build_utils.calculator.exceptions.UndefinedFunctionException;
+import net.darmo_creations.build_utils.calculator.nodes.expr.AggregateNode;
+import net.darmo_creations.build_utils.calculator.nodes.expr.FunctionNode;
 import net.darmo_creations.build_utils.calculator.nodes.expr.Node;
 import net.darmo_creations.build_utils.calculator.nodes.expr.NodeNBTHelper;
+import net.darmo_creations.build_utils.calculator.nodes.expr.NumberNode;
+import net.darmo_creations.build_utils.calculator.nodes.expr.ParameterNode;
+import net.darmo_creations.build_utils.calculator.nodes.expr.SharedNode;
+import net.darmo_creations.build_utils.calculator.nodes.expr.VariableNode;
+import net.minecraft.nbt.ByteArrayTag;
 import net.minecraft.nbt.CompoundTag;
 
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 /**
  * User functions are functions that can be defined by users.
+ * <p>
+ * Results of pure functions are memoized: a function is pure if its body only reads its own parameters
+ * and only calls pure builtin functions and other pure user functions. Pure functions keep their most recently
+ * computed results in a bounded cache keyed by their arguments, the cache is replaced whenever one of the functions
+ * they call, directly or not, is redefined or deleted in the global scope.
+ * <p>
+ * Compiled code and memoized results are tagged with the version of the function definitions they were last used with.
+ * As versions are unique, they are shared by a scope and its snapshots, possibly evaluated on different threads.
+ * When the version changes, they are kept as long as the functions they resolved still resolve to the same functions,
+ * so that library functions shared by scopes with different versions keep them, see {@link FunctionLibrary}.
+ * <p>
+ * Functions read from NBT are kept in their serialized form, their body is only deserialized the first time
+ * the function is used. The serialized form is kept and reused by subsequent saves.
+ * <p>
+ * Subexpressions that occur several times in a body are evaluated once per call, see {@link CommonSubexpressionEliminator}.
+ * <p>
+ * Calls to small user functions are inlined in the evaluated body and calls with constant arguments are replaced
+ * by calls to specializations of the callee, see {@link Inliner}. The inlined body is computed again whenever
+ * one of the inlined or specialized functions is redefined or deleted. Specializations are cached by the function
+ * they specialize, they consume the same fuel as the function itself.
  */
 public class UserFunction extends Function {
+  /**
+   * Number of interpreted calls after which the function is compiled.
+   * The counter is reset whenever compiled code is invalidated.
+   */
+  public static final int COMPILATION_THRESHOLD = 50;
+  /**
+   * Maximum number of results kept by the memoization cache of each pure function.
+   */
+  public static final int MEMO_CACHE_SIZE = 256;
+  /**
+   * Maximum number of specializations kept by each function.
+   */
+  public static final int SPECIALIZATIONS_CACHE_SIZE = 16;
+
   private static final String NODE_KEY = "Node";
 
-  private final Node node;
+  /**
+   * The deserialized body, null until the function is first used.
+   */
+  private volatile Body body;
+  /**
+   * The serialized function, null until the function is first saved if it was not read from NBT.
+   */
+  private volatile CompoundTag serialized;
+  /**
+   * The function this function is a specialization of, null if it is not a specialization.
+   */
+  private final UserFunction generic;
+  private volatile Inlined inlined;
+  private LRUCache<List<Double>, UserFunction> specializations;
+  private int interpretedCalls;
+  private Compilation compilation;
+  private Memoization memoization;
 
   /**
    * Create a function with the given names, parameters and content.
@@ -24,33 +83,635 @@ public class UserFunction extends Function {
    */
   public UserFunction(final String name, final List<String> parameterNames, final Node node) {
     super(name, parameterNames);
-    this.node = Objects.requireNonNull(node);
+    this.body = new Body(Objects.requireNonNull(node), parameterNames);
+    this.generic = null;
+  }
+
+  /**
+   * Create a specialization of the given function.
+   *
+   * @param generic        The specialized function.
+   * @param parameterNames Names of the parameters that have not been replaced by constants.
+   * @param node           The specialized body.
+   */
+  private UserFunction(final UserFunction generic, final List<String> parameterNames, final Node node) {
+    super(generic.getName(), parameterNames);
+    this.body = new Body(node, parameterNames);
+    this.generic = generic;
   }
 
   /**
-   * Create a user function from an NBT tag.
+   * Create a user function from an NBT tag. The body is deserialized when the function is first used,
+   * the tag is kept and must not be modified afterwards.
    *
    * @param tag The tag to deserialize.
    */
   public UserFunction(CompoundTag tag) {
     super(tag);
-    this.node = NodeNBTHelper.getNodeForTag(tag.getCompound(NODE_KEY));
+    this.serialized = tag;
+    this.generic = null;
+  }
+
+  /**
+   * Return the body of this function, deserializing it if needed.
+   *
+   * @throws IllegalArgumentException If the serialized body is invalid.
+   */
+  private Body getBody() {
+    Body body = this.body;
+    if (body == null) {
+      synchronized (this) {
+        body = this.body;
+        if (body == null) {
+          body = new Body(NodeNBTHelper.readNode(this.serialized.get(NODE_KEY)), this.getParameterNames());
+          this.body = body;
+        }
+      }
+    }
+    return body;
+  }
+
+  /**
+   * Return the names of the functions directly called by this function.
+   */
+  public Set<String> getCalledFunctions() {
+    return Collections.unmodifiableSet(this.getBody().calledFunctions);
+  }
+
+  /**
+   * Return the names of the global variables directly read by this function.
+   */
+  public Set<String> getReadVariables() {
+    return Collections.unmodifiableSet(this.getBody().readVariables);
+  }
+
+  /**
+   * Return the body of this function with its parameters and aggregate variables resolved,
+   * before subexpressions are shared.
+   */
+  Node getResolvedBody() {
+    return this.getBody().resolved;
+  }
+
+  /**
+   * Return the number of frame slots used by the variables of the aggregates of this function’s body.
+   */
+  int getLocalsCount() {
+    return this.getBody().sharedSlots - this.getParameterNames().size();
+  }
+
+  /**
+   * Return a specialization of this function for the given constant arguments.
+   * The parameters of the specialization are the parameters of this function whose argument is null.
+   *
+   * @param constants Value of each parameter, null for parameters that are not constant.
+   * @return The specialization, with its body simplified for the given constants.
+   */
+  synchronized UserFunction specialize(final List<Double> constants) {
+    if (this.specializations == null) {
+      this.specializations = new LRUCache<>(SPECIALIZATIONS_CACHE_SIZE);
+    }
+    Optional<UserFunction> cached = this.specializations.get(constants);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    List<String> parameterNames = this.getParameterNames();
+    List<String> remaining = new ArrayList<>();
+    List<Node> parameters = new ArrayList<>(parameterNames.size());
+    for (int i = 0; i < parameterNames.size(); i++) {
+      Double constant = constants.get(i);
+      if (constant != null) {
+        parameters.add(new NumberNode(constant));
+      } else {
+        parameters.add(new ParameterNode(parameterNames.get(i), remaining.size()));
+        remaining.add(parameterNames.get(i));
+      }
+    }
+    Node node = Optimizer.optimize(ParameterNode.relocate(this.getResolvedBody(), parameters, remaining.size()));
+    UserFunction specialization = new UserFunction(this, remaining, node);
+    this.specializations.put(new ArrayList<>(constants), specialization);
+    return specialization;
+  }
+
+  /**
+   * Return the inlined body of this function for the function definitions of the given scope.
+   * The previous inlined body is kept if the functions it depends on have not changed.
+   *
+   * @param globalScope The global scope.
+   * @param version     Current version of the scope’s function definitions.
+   */
+  private Inlined getInlined(final Scope globalScope, final int version) {
+    Inlined inlined = this.inlined;
+    if (inlined != null && inlined.version == version) {
+      return inlined;
+    }
+    Body body = this.getBody();
+    if (inlined != null && inlined.isValid(globalScope)) {
+      inlined = new Inlined(version, inlined);
+    } else {
+      // Specializations are not specialized again
+      Inliner inliner = new Inliner(globalScope, this, body.sharedSlots, this.generic == null);
+      Node node = inliner.inline(body.resolved);
+      if (node == body.resolved) {
+        inlined = new Inlined(version, body.node, body.sharedSlots, body.frameSize, inliner.getDependencies());
+      } else {
+        int firstSlot = inliner.getFrameSize();
+        node = CommonSubexpressionEliminator.eliminate(node, this.getParameterNames().size(), firstSlot);
+        int[] frameSize = {firstSlot};
+        node.transform(n -> {
+          if (n instanceof SharedNode s) {
+            frameSize[0] = Math.max(frameSize[0], s.getSlot() + 2);
+          }
+          return n;
+        });
+        inlined = new Inlined(version, node, firstSlot, frameSize[0], inliner.getDependencies());
+      }
+    }
+    this.inlined = inlined;
+    return inlined;
+  }
+
+  /**
+   * Return the memoization cache of this function for the function definitions of the given scope.
+   *
+   * @param globalScope The global scope.
+   * @return The cache or an empty optional if this function reads global variables or calls an impure function,
+   * directly or not, and is thus never memoized.
+   */
+  public Optional<LRUCache<?, Double>> getMemoCache(final Scope globalScope) {
+    Memoization memoization = this.getMemoization(globalScope, globalScope.getFunctionsVersion());
+    return memoization != null && memoization.pure ? Optional.of(memoization.cache) : Optional.empty();
+  }
+
+  /**
+   * Return the memoization state of this function for the function definitions of the given scope.
+   * The previous state is kept if the functions it calls, directly or not, have not changed.
+   *
+   * @param globalScope The global scope.
+   * @param version     Current version of the scope’s function definitions.
+   * @return The state or null if this function reads global variables.
+   */
+  private Memoization getMemoization(final Scope globalScope, final int version) {
+    if (this.getBody().readsGlobals) {
+      return null;
+    }
+    Memoization memoization = this.memoization;
+    if (memoization == null || memoization.version != version) {
+      if (memoization != null && resolvesSame(globalScope, memoization.callees)) {
+        memoization = new Memoization(version, memoization);
+      } else {
+        Map<String, Function> callees = new HashMap<>();
+        memoization = new Memoization(version, this.callsPureFunctions(globalScope, new HashSet<>(), callees), callees);
+      }
+      this.memoization = memoization;
+    }
+    return memoization;
+  }
+
+  /**
+   * Check whether all functions called by this function, directly or not, are pure.
+   *
+   * @param globalScope The scope to resolve called functions in.
+   * @param visited     Functions that have already been checked or are being checked.
+   * @param callees     Map to add the checked functions to, keyed by the name they were resolved from,
+   *                    null for undefined functions.
+   */
+  private boolean callsPureFunctions(final Scope globalScope, final Set<UserFunction> visited,
+                                     final Map<String, Function> callees) {
+    Body body = this.getBody();
+    if (body.readsGlobals) {
+      return false;
+    }
+    if (!visited.add(this)) {
+      // Recursive calls do not make a function impure
+      return true;
+    }
+    for (String name : body.calledFunctions) {
+      Function function;
+      try {
+        function = globalScope.getFunction(name);
+      } catch (UndefinedFunctionException e) {
+        callees.put(name, null);
+        return false;
+      }
+      callees.put(name, function);
+      if (function instanceof UserFunction f && !f.callsPureFunctions(globalScope, visited, callees)
+          || function instanceof BuiltinFunction b && !b.isPure()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Evaluate this function, results of pure functions are looked up in the memoization cache first.
+   */
+  @Override
+  protected double evaluateImpl(final Scope scope, final CallStack stack) {
+    Scope globalScope = scope.getGlobalScope();
+    Memoization memoization = this.getMemoization(globalScope, globalScope.getFunctionsVersion());
+    if (memoization == null || !memoization.pure) {
+      return this.evaluateBody(scope, stack);
+    }
+    Arguments arguments = new Arguments(stack, this.getParameterNames().size());
+    Optional<Double> result = memoization.cache.get(arguments);
+    if (result.isPresent()) {
+      return result.get();
+    }
+    double value = this.evaluateBody(scope, stack);
+    memoization.cache.put(arguments, value);
+    return value;
   }
 
+  /**
+   * Evaluate the resolved body of this function over intervals. Results are not memoized.
+   */
   @Override
-  protected double evaluateImpl(final Scope scope) {
-    return this.node.evaluate(scope);
+  protected Interval evaluateIntervalImpl(final Scope scope, final Interval[] arguments) {
+    Body body = this.getBody();
+    return body.resolved.evaluateInterval(scope, Arrays.copyOf(arguments, body.sharedSlots));
+  }
+
+  /**
+   * Evaluate the inlined body of this function. Once it has been called {@link #COMPILATION_THRESHOLD} times
+   * with the same function definitions, the body is compiled and compiled code is used until one of the functions
+   * it resolved is redefined or deleted in the global scope.
+   */
+  private double evaluateBody(final Scope scope, final CallStack stack) {
+    Scope globalScope = scope.getGlobalScope();
+    int version = globalScope.getFunctionsVersion();
+    Inlined inlined = this.getInlined(globalScope, version);
+    // Inlined calls use additional slots
+    stack.growFrame(inlined.frameSize);
+    Node node = inlined.node;
+    Compilation compilation = this.getCompilation(globalScope, version, inlined);
+    if (compilation != null) {
+      if (compilation.function != null) {
+        return compilation.function.apply(scope, stack);
+      }
+    } else if (++this.interpretedCalls >= COMPILATION_THRESHOLD && FunctionCompiler.isEnabled()) {
+      // Also cache failures to avoid recompiling on every call
+      this.compilation = this.compile(globalScope, version, inlined);
+    }
+    return node.evaluate(scope);
+  }
+
+  /**
+   * Return the compiled code of this function for the function definitions of the given scope.
+   * The previous compiled code is kept if it was compiled from the given inlined body and the functions
+   * it resolved have not changed, it is discarded otherwise.
+   *
+   * @param globalScope The global scope.
+   * @param version     Current version of the scope’s function definitions.
+   * @param inlined     The current inlined body.
+   * @return The compiled code or null if the body has not been compiled against these definitions yet.
+   */
+  private Compilation getCompilation(final Scope globalScope, final int version, final Inlined inlined) {
+    Compilation compilation = this.compilation;
+    if (compilation == null || compilation.version == version) {
+      return compilation;
+    }
+    if (compilation.node == inlined.node && resolvesSame(globalScope, compilation.callees)) {
+      compilation = new Compilation(version, compilation);
+    } else {
+      // Stale compiled code, called functions may have been redefined
+      compilation = null;
+      this.interpretedCalls = 0;
+    }
+    this.compilation = compilation;
+    return compilation;
   }
 
+  /**
+   * Compile the given inlined body of this function.
+   *
+   * @param globalScope The global scope, used to resolve calls.
+   * @param version     Current version of the scope’s function definitions.
+   * @param inlined     The inlined body to compile.
+   * @return The compiled code, its function is null if the body could not be compiled.
+   */
+  private Compilation compile(final Scope globalScope, final int version, final Inlined inlined) {
+    // Calls are resolved by name by the compiler
+    Map<String, Function> callees = new HashMap<>();
+    inlined.node.transform(n -> {
+      if (n instanceof FunctionNode f && n.getID() == FunctionNode.ID && !callees.containsKey(f.getName())) {
+        Function function;
+        try {
+          function = globalScope.getFunction(f.getName());
+        } catch (UndefinedFunctionException e) {
+          function = null;
+        }
+        callees.put(f.getName(), function);
+      }
+      return n;
+    });
+    CompiledFunction function = FunctionCompiler.compile(this.getParameterNames(), inlined.node, globalScope).orElse(null);
+    return new Compilation(version, inlined.node, callees, function);
+  }
+
+  /**
+   * Return the compiled body, compiling it immediately if it has not been compiled against the current
+   * function definitions yet, or the interpreted body if it cannot be compiled.
+   * Memoization is bypassed as batch arguments are usually all distinct.
+   */
+  @Override
+  protected CompiledFunction getBatchEvaluator(final Scope scope) {
+    CompiledFunction evaluator = this::evaluateBody;
+    Scope globalScope = scope.getGlobalScope();
+    int version = globalScope.getFunctionsVersion();
+    Inlined inlined = this.getInlined(globalScope, version);
+    if (FunctionCompiler.isEnabled()) {
+      Compilation compilation = this.getCompilation(globalScope, version, inlined);
+      if (compilation == null) {
+        compilation = this.compile(globalScope, version, inlined);
+        this.compilation = compilation;
+      }
+      if (compilation.function != null) {
+        evaluator = compilation.function;
+      }
+    }
+    if (inlined.sharedSlots == inlined.frameSize && inlined.frameSize == this.getFrameSize()) {
+      return evaluator;
+    }
+    // The frame is reused for the whole batch, values of shared subexpressions must be computed again
+    CompiledFunction batchEvaluator = evaluator;
+    return (s, stack) -> {
+      stack.growFrame(inlined.frameSize);
+      for (int slot = inlined.sharedSlots; slot < inlined.frameSize; slot += 2) {
+        stack.setLocal(slot, 0);
+      }
+      return batchEvaluator.apply(s, stack);
+    };
+  }
+
+  /**
+   * Return the number of nodes of this function’s body, or of the specialized function’s body
+   * for specializations.
+   */
+  @Override
+  protected int getCost() {
+    return this.generic != null ? this.generic.getCost() : this.getBody().cost;
+  }
+
+  /**
+   * Return the number of slots of this function’s frame: its parameters then the variables of the aggregates
+   * of its body.
+   */
+  @Override
+  protected int getFrameSize() {
+    return this.getBody().frameSize;
+  }
+
+  /**
+   * Serialize this function. As functions never change, the tag is computed once and returned by subsequent calls,
+   * it must thus not be modified. Tags read in the legacy format are converted without keeping the body
+   * of functions that have not been used.
+   */
   @Override
   public CompoundTag writeToNBT() {
-    CompoundTag tag = super.writeToNBT();
-    tag.put(NODE_KEY, this.node.writeToNBT());
+    CompoundTag tag = this.serialized;
+    if (tag == null || !(tag.get(NODE_KEY) instanceof ByteArrayTag)) {
+      Body body = this.body;
+      Node node = body != null ? body.node : NodeNBTHelper.readNode(tag.get(NODE_KEY));
+      tag = super.writeToNBT();
+      tag.put(NODE_KEY, NodeNBTHelper.writeNode(node));
+      this.serialized = tag;
+    }
     return tag;
   }
 
+  /**
+   * The deserialized body of a function along with the results of its analysis.
+   */
+  private static class Body {
+    final Node node;
+    /**
+     * The resolved tree, before subexpressions are shared.
+     */
+    final Node resolved;
+    /**
+     * Names of the functions called by the body.
+     */
+    final Set<String> calledFunctions = new HashSet<>();
+    /**
+     * Names of the global variables read by the body.
+     */
+    final Set<String> readVariables = new HashSet<>();
+    /**
+     * Whether the body reads global variables, in which case results are never memoized.
+     */
+    final boolean readsGlobals;
+    /**
+     * Number of nodes of the body, consumed as fuel by each call.
+     */
+    int cost;
+    /**
+     * Number of slots of the function’s frame.
+     */
+    int frameSize;
+    /**
+     * Index of the first frame slot used by {@link SharedNode}s, they use all slots from this one to the last.
+     */
+    final int sharedSlots;
+
+    /**
+     * Resolve the parameters and aggregate variables of the given tree and share its repeated subexpressions,
+     * then gather the names of the functions called and global variables read by it and compute the {@link #cost}
+     * of calls.
+     *
+     * @param node           The tree.
+     * @param parameterNames Function’s parameter names, in frame slot order.
+     */
+    Body(final Node node, final List<String> parameterNames) {
+      Node resolved = ParameterNode.resolve(node, parameterNames);
+      this.resolved = resolved;
+      int[] sharedSlots = {parameterNames.size()};
+      resolved.transform(n -> {
+        if (n instanceof AggregateNode a) {
+          sharedSlots[0] = Math.max(sharedSlots[0], a.getSlot() + 1);
+        }
+        return n;
+      });
+      this.sharedSlots = sharedSlots[0];
+      this.node = CommonSubexpressionEliminator.eliminate(resolved, parameterNames.size(), this.sharedSlots);
+      this.frameSize = this.sharedSlots;
+      this.node.transform(n -> {
+        if (n instanceof SharedNode s) {
+          this.frameSize = Math.max(this.frameSize, s.getSlot() + 2);
+          // Shared nodes are not part of the source tree
+          return n;
+        }
+        this.cost++;
+        if (n instanceof FunctionNode f && n.getID() == FunctionNode.ID) {
+          this.calledFunctions.add(f.getName());
+        } else if (n instanceof VariableNode v && !(n instanceof ParameterNode)) {
+          this.readVariables.add(v.getName());
+        }
+        return n;
+      });
+      this.readsGlobals = !this.readVariables.isEmpty();
+    }
+  }
+
+  /**
+   * The inlined body of a function along with the functions it depends on.
+   */
+  private static class Inlined {
+    final int version;
+    final Node node;
+    /**
+     * Index of the first frame slot used by {@link SharedNode}s, they use all slots from this one to the last.
+     */
+    final int sharedSlots;
+    /**
+     * Number of slots of the function’s frame, inlined calls included.
+     */
+    final int frameSize;
+    /**
+     * Functions that have been inlined or specialized, keyed by the name they were resolved from.
+     */
+    final Map<String, Function> dependencies;
+
+    Inlined(final int version, final Node node, final int sharedSlots, final int frameSize,
+            final Map<String, Function> dependencies) {
+      this.version = version;
+      this.node = node;
+      this.sharedSlots = sharedSlots;
+      this.frameSize = frameSize;
+      this.dependencies = dependencies;
+    }
+
+    /**
+     * Copy the given inlined body for another version of the function definitions.
+     */
+    Inlined(final int version, final Inlined inlined) {
+      this(version, inlined.node, inlined.sharedSlots, inlined.frameSize, inlined.dependencies);
+    }
+
+    /**
+     * Indicate whether all dependencies still resolve to the same functions in the given scope.
+     */
+    boolean isValid(final Scope globalScope) {
+      return resolvesSame(globalScope, this.dependencies);
+    }
+  }
+
+  /**
+   * Compiled code along with the version of the function definitions it was last used with.
+   */
+  private static class Compilation {
+    final int version;
+    /**
+     * The inlined body that was compiled.
+     */
+    final Node node;
+    /**
+     * Functions called by the compiled body, keyed by the name they were resolved from, null for undefined functions.
+     * Compiled code is only valid as long as these names resolve to the same functions.
+     */
+    final Map<String, Function> callees;
+    /**
+     * Compiled code, null if the function could not be compiled.
+     */
+    final CompiledFunction function;
+
+    Compilation(final int version, final Node node, final Map<String, Function> callees,
+                final CompiledFunction function) {
+      this.version = version;
+      this.node = node;
+      this.callees = callees;
+      this.function = function;
+    }
+
+    /**
+     * Copy the given compiled code for another version of the function definitions.
+     */
+    Compilation(final int version, final Compilation compilation) {
+      this(version, compilation.node, compilation.callees, compilation.function);
+    }
+  }
+
+  /**
+   * Purity and memoized results for a version of the function definitions.
+   */
+  private static class Memoization {
+    final int version;
+    final boolean pure;
+    final LRUCache<Arguments, Double> cache;
+    /**
+     * Functions called directly or not, keyed by the name they were resolved from, null for undefined functions.
+     * Purity and results are only valid as long as these names resolve to the same functions.
+     */
+    final Map<String, Function> callees;
+
+    Memoization(final int version, final boolean pure, final Map<String, Function> callees) {
+      this.version = version;
+      this.pure = pure;
+      this.cache = new LRUCache<>(MEMO_CACHE_SIZE);
+      this.callees = callees;
+    }
+
+    /**
+     * Share the given state with another version of the function definitions.
+     */
+    Memoization(final int version, final Memoization memoization) {
+      this.version = version;
+      this.pure = memoization.pure;
+      this.cache = memoization.cache;
+      this.callees = memoization.callees;
+    }
+  }
+
+  /**
+   * Indicate whether all the given names still resolve to the same functions in the given scope.
+   *
+   * @param globalScope The global scope.
+   * @param functions   Resolved functions keyed by their name, null for names that did not resolve.
+   */
+  private static boolean resolvesSame(final Scope globalScope, final Map<String, Function> functions) {
+    for (Map.Entry<String, Function> entry : functions.entrySet()) {
+      Function function;
+      try {
+        function = globalScope.getFunction(entry.getKey());
+      } catch (UndefinedFunctionException e) {
+        function = null;
+      }
+      if (function != entry.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Arguments of a call, used as memoization cache keys. Values are compared by their bit patterns,
+   * NaN is thus equal to itself and 0 and -0 are distinct.
+   */
+  private static final class Arguments {
+    private final long[] values;
+    private final int hash;
+
+    Arguments(final CallStack stack, final int count) {
+      this.values = new long[count];
+      for (int i = 0; i < count; i++) {
+        this.values[i] = Double.doubleToLongBits(stack.getLocal(i));
+      }
+      this.hash = Arrays.hashCode(this.values);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return this == o || o instanceof Arguments a && Arrays.equals(this.values, a.values);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+  }
+
   @Override
   public String toString() {
-    return String.format("%s(%s) -> %s", this.getName(), String.join(", ", this.getParameterNames()), this.node);
+    return String.format("%s(%s) -> %s", this.getName(), String.join(", ", this.getParameterNames()), this.getBody().node);
   }
 }
@@ -0,0 +1,19 @@
+package net.darmo_creations.build_utils.calculator.compiler;
+
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Scope;
+
+/**
+ * A user function body that has been compiled to JVM bytecode by {@link FunctionCompiler}.
+ */
+@FunctionalInterface
+public interface CompiledFunction {
+  /**
+   * Evaluate the compiled function.
+   *
+   * @param scope Function’s scope, used to look up global variables and call other functions.
+   * @param stack The call stack, its current frame holds the values for each parameters in declaration order.
+   * @return The result of the function.
+   */
+  double apply(Scope scope, CallStack stack);
+}
@@ -0,0 +1,660 @@
+package net.darmo_creations.build_utils.calculator.compiler;
+
+import net.darmo_creations.build_utils.BuildUtils;
+import net.darmo_creations.build_utils.calculator.BuiltinFunction;
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Function;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.UndefinedFunctionException;
+import net.darmo_creations.build_utils.calculator.nodes.expr.*;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.util.*;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Compiles user function bodies into hidden classes implementing {@link CompiledFunction}.
+ * <p>
+ * Functions called by the compiled body are resolved once at compilation time. Calls to builtin functions
+ * that have a {@link Math} equivalent are emitted as direct static calls, other unary and binary builtins
+ * are applied through {@link BuiltinFunction#apply(double)} and {@link BuiltinFunction#apply(double, double)}
+ * after consuming their cost if it is greater than 1, and calls to other functions push their arguments onto the {@link CallStack} and go through
+ * {@link Function#call(Scope, int, int)}. Sums and products are compiled to loops, other aggregates are evaluated
+ * by the interpreter. Shared subexpressions are stored in local variables along with a flag telling
+ * whether they have been evaluated. Inlined calls store their arguments in local variables then emit the callee’s body,
+ * calls to specializations go directly to the specialized function. Compiled code is thus only valid as long as the names
+ * of the called functions resolve to the same functions.
+ * <p>
+ * Compilation is optional, if the bytecode cannot be generated or loaded the compiler disables itself
+ * and functions keep being interpreted.
+ */
+public final class FunctionCompiler {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final String CLASS_NAME = Type.getInternalName(FunctionCompiler.class).replace("FunctionCompiler", "Compiled");
+  private static final String CALLEES_FIELD = "callees";
+  private static final String NODES_FIELD = "nodes";
+  private static final String FUNCTION_DESC = Type.getDescriptor(Function.class);
+  private static final String FUNCTION_ARRAY_DESC = "[" + FUNCTION_DESC;
+  private static final String NODE_ARRAY_DESC = "[" + Type.getDescriptor(Node.class);
+  private static final String SCOPE_NAME = Type.getInternalName(Scope.class);
+  private static final String CALL_STACK_NAME = Type.getInternalName(CallStack.class);
+  private static final String FUNCTION_NAME = Type.getInternalName(Function.class);
+  private static final String NODE_NAME = Type.getInternalName(Node.class);
+  private static final String BUILTIN_FUNCTION_NAME = Type.getInternalName(BuiltinFunction.class);
+  private static final String MATH_NAME = Type.getInternalName(Math.class);
+  /**
+   * Maximum number of nodes in a function body. Bigger bodies are interpreted
+   * to stay well below the JVM’s method size limit.
+   */
+  private static final int MAX_NODES = 2000;
+
+  /**
+   * Maps builtin function names to the equivalent static method in {@link Math}: {name, descriptor}.
+   */
+  private static final Map<String, String[]> INTRINSICS = new HashMap<>();
+
+  static {
+    String unary = "(D)D";
+    String binary = "(DD)D";
+    INTRINSICS.put("floor", new String[]{"floor", unary});
+    INTRINSICS.put("ceil", new String[]{"ceil", unary});
+    INTRINSICS.put("sqrt", new String[]{"sqrt", unary});
+    INTRINSICS.put("cbrt", new String[]{"cbrt", unary});
+    INTRINSICS.put("exp", new String[]{"exp", unary});
+    INTRINSICS.put("cos", new String[]{"cos", unary});
+    INTRINSICS.put("sin", new String[]{"sin", unary});
+    INTRINSICS.put("tan", new String[]{"tan", unary});
+    INTRINSICS.put("acos", new String[]{"acos", unary});
+    INTRINSICS.put("asin", new String[]{"asin", unary});
+    INTRINSICS.put("atan", new String[]{"atan", unary});
+    INTRINSICS.put("atan2", new String[]{"atan2", binary});
+    INTRINSICS.put("log", new String[]{"log", unary});
+    INTRINSICS.put("log10", new String[]{"log10", unary});
+    INTRINSICS.put("abs", new String[]{"abs", unary});
+    INTRINSICS.put("degrees", new String[]{"toDegrees", unary});
+    INTRINSICS.put("radians", new String[]{"toRadians", unary});
+    INTRINSICS.put("round", new String[]{"round", "(D)J"});
+    INTRINSICS.put("sign", new String[]{"signum", unary});
+    INTRINSICS.put("max", new String[]{"max", binary});
+    INTRINSICS.put("min", new String[]{"min", binary});
+    INTRINSICS.put("hypot", new String[]{"hypot", binary});
+  }
+
+  private static volatile boolean enabled = true;
+
+  /**
+   * Indicate whether the compiler is enabled.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enable or disable the compiler. Already compiled functions are not affected.
+   */
+  public static void setEnabled(final boolean enabled) {
+    FunctionCompiler.enabled = enabled;
+  }
+
+  /**
+   * Compile the body of a function.
+   *
+   * @param parameterNames Function’s parameter names.
+   * @param body           Function’s body.
+   * @param scope          Scope used to resolve called functions.
+   * @return The compiled function or an empty optional if the compiler is disabled
+   * or the body cannot be compiled in the given scope.
+   */
+  public static Optional<CompiledFunction> compile(final List<String> parameterNames, final Node body, final Scope scope) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+    try {
+      return new FunctionCompiler(parameterNames, scope).compile(body);
+    } catch (LinkageError | ReflectiveOperationException | RuntimeException e) {
+      // Hidden classes or ASM are not available, fall back to interpretation from now on
+      BuildUtils.LOGGER.warn("Could not compile calculator function, disabling compiler", e);
+      enabled = false;
+      return Optional.empty();
+    }
+  }
+
+  private final List<String> parameterNames;
+  private final Scope scope;
+  private final List<Function> callees;
+  /**
+   * Nodes evaluated by the interpreter.
+   */
+  private final List<Node> nodes;
+  private int nodesCount;
+  /**
+   * Number of frame slots, each slot is copied to a local variable.
+   */
+  private int frameSize;
+  /**
+   * Number of loops being emitted, each one uses its own temporary local variables.
+   */
+  private int loopDepth;
+  private MethodVisitor mv;
+
+  private FunctionCompiler(final List<String> parameterNames, final Scope scope) {
+    this.parameterNames = parameterNames;
+    this.scope = scope;
+    this.callees = new ArrayList<>();
+    this.nodes = new ArrayList<>();
+  }
+
+  private Optional<CompiledFunction> compile(final Node body) throws ReflectiveOperationException {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+      @Override
+      protected String getCommonSuperClass(String type1, String type2) {
+        // Generated code never merges distinct reference types
+        return "java/lang/Object";
+      }
+    };
+    cw.visit(V17, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, CLASS_NAME, null, "java/lang/Object",
+        new String[]{Type.getInternalName(CompiledFunction.class)});
+    cw.visitField(ACC_PRIVATE | ACC_FINAL, CALLEES_FIELD, FUNCTION_ARRAY_DESC, null, null).visitEnd();
+    cw.visitField(ACC_PRIVATE | ACC_FINAL, NODES_FIELD, NODE_ARRAY_DESC, null, null).visitEnd();
+
+    MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + FUNCTION_ARRAY_DESC + NODE_ARRAY_DESC + ")V", null, null);
+    init.visitCode();
+    init.visitVarInsn(ALOAD, 0);
+    init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+    init.visitVarInsn(ALOAD, 0);
+    init.visitVarInsn(ALOAD, 1);
+    init.visitFieldInsn(PUTFIELD, CLASS_NAME, CALLEES_FIELD, FUNCTION_ARRAY_DESC);
+    init.visitVarInsn(ALOAD, 0);
+    init.visitVarInsn(ALOAD, 2);
+    init.visitFieldInsn(PUTFIELD, CLASS_NAME, NODES_FIELD, NODE_ARRAY_DESC);
+    init.visitInsn(RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+
+    this.mv = cw.visitMethod(ACC_PUBLIC, "apply",
+        "(" + Type.getDescriptor(Scope.class) + Type.getDescriptor(CallStack.class) + ")D", null, null);
+    this.mv.visitCode();
+    // Temporary local variables of loops are allocated after the frame slots
+    this.frameSize = this.parameterNames.size();
+    Set<Integer> sharedSlots = new TreeSet<>();
+    body.transform(n -> {
+      if (n instanceof AggregateNode a) {
+        this.frameSize = Math.max(this.frameSize, a.getSlot() + 1);
+      } else if (n instanceof SharedNode sn) {
+        this.frameSize = Math.max(this.frameSize, sn.getSlot() + 2);
+        sharedSlots.add(sn.getSlot());
+      } else if (n instanceof InlineNode i) {
+        this.frameSize = Math.max(this.frameSize, i.getSlot() + i.getArguments().size());
+      }
+      return n;
+    });
+    // Shared subexpressions are not evaluated yet
+    for (int slot : sharedSlots) {
+      this.mv.visitInsn(ICONST_0);
+      this.mv.visitVarInsn(ISTORE, this.parameterSlot(slot));
+      this.mv.visitInsn(DCONST_0);
+      this.mv.visitVarInsn(DSTORE, this.parameterSlot(slot + 1));
+    }
+    // Copy parameters from the frame into local variables
+    for (int i = 0; i < this.parameterNames.size(); i++) {
+      this.mv.visitVarInsn(ALOAD, 2);
+      this.pushInt(i);
+      this.mv.visitMethodInsn(INVOKEVIRTUAL, CALL_STACK_NAME, "getLocal", "(I)D", false);
+      this.mv.visitVarInsn(DSTORE, this.parameterSlot(i));
+    }
+    if (!this.emit(body)) {
+      return Optional.empty();
+    }
+    this.mv.visitInsn(DRETURN);
+    this.mv.visitMaxs(0, 0);
+    this.mv.visitEnd();
+    cw.visitEnd();
+
+    MethodHandles.Lookup lookup = LOOKUP.defineHiddenClass(cw.toByteArray(), true);
+    return Optional.of((CompiledFunction) lookup.lookupClass()
+        .getConstructor(Function[].class, Node[].class)
+        .newInstance(this.callees.toArray(new Function[0]), this.nodes.toArray(new Node[0])));
+  }
+
+  /**
+   * Emit the bytecode that pushes the value of the given node onto the stack.
+   *
+   * @param node The node to compile.
+   * @return False if the node cannot be compiled.
+   */
+  private boolean emit(final Node node) {
+    if (++this.nodesCount > MAX_NODES) {
+      return false;
+    }
+    if (node instanceof NumberNode n) {
+      this.pushDouble(n.getValue());
+      return true;
+    } else if (node instanceof VariableNode v) {
+      if (node instanceof ParameterNode p) {
+        this.mv.visitVarInsn(DLOAD, this.parameterSlot(p.getSlot()));
+      } else {
+        this.mv.visitVarInsn(ALOAD, 1);
+        this.mv.visitLdcInsn(v.getName());
+        this.mv.visitMethodInsn(INVOKEVIRTUAL, SCOPE_NAME, "getVariable", "(Ljava/lang/String;)D", false);
+      }
+      return true;
+    } else if (node instanceof UnaryOperatorNode u) {
+      return this.emitUnaryOperator(u);
+    } else if (node instanceof BiOperatorNode b) {
+      return this.emitBinaryOperator(b);
+    } else if (node instanceof ConditionalNode c) {
+      return this.emitConditional(c);
+    } else if (node instanceof AggregateNode a) {
+      return this.emitAggregate(a);
+    } else if (node instanceof SharedNode sn) {
+      return this.emitShared(sn);
+    } else if (node instanceof InlineNode i) {
+      return this.emitInline(i);
+    } else if (node instanceof DirectCallNode d) {
+      return this.emitCall(d, d.getFunction());
+    } else if (node instanceof FunctionNode f && node.getID() == FunctionNode.ID) {
+      return this.emitCall(f);
+    }
+    return false;
+  }
+
+  private boolean emitUnaryOperator(final UnaryOperatorNode node) {
+    if (!this.emit(node.getOperand())) {
+      return false;
+    }
+    switch (node.getID()) {
+      case MinusOperatorNode.ID -> this.mv.visitInsn(DNEG);
+      case NotOperatorNode.ID -> {
+        // value == 0 ? 1 : 0
+        this.mv.visitInsn(DCONST_0);
+        this.mv.visitInsn(DCMPL);
+        this.emitBooleanFromInt(IFNE);
+      }
+      default -> {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean emitBinaryOperator(final BiOperatorNode node) {
+    if (node.getID() == AndOperatorNode.ID || node.getID() == OrOperatorNode.ID) {
+      return this.emitLogicalOperator(node);
+    }
+    if (!this.emit(node.getLeft()) || !this.emit(node.getRight())) {
+      return false;
+    }
+    switch (node.getID()) {
+      case AdditionOperatorNode.ID -> this.mv.visitInsn(DADD);
+      case SubtractionOperatorNode.ID -> this.mv.visitInsn(DSUB);
+      case MultiplicationOperatorNode.ID -> this.mv.visitInsn(DMUL);
+      case DivisionOperatorNode.ID -> {
+        this.emitDivisionByZeroCheck();
+        this.mv.visitInsn(DDIV);
+      }
+      case ModuloOperatorNode.ID -> {
+        this.emitDivisionByZeroCheck();
+        this.mv.visitMethodInsn(INVOKESTATIC, "net/darmo_creations/build_utils/Utils", "trueModulo", "(DD)D", false);
+      }
+      case PowerOperatorNode.ID -> this.mv.visitMethodInsn(INVOKESTATIC, MATH_NAME, "pow", "(DD)D", false);
+      case EqualToOperatorNode.ID -> {
+        this.mv.visitInsn(DCMPL);
+        this.emitBooleanFromInt(IFNE);
+      }
+      case NotEqualToOperatorNode.ID -> {
+        this.mv.visitInsn(DCMPL);
+        this.emitBooleanFromInt(IFEQ);
+      }
+      // NaN must yield false: DCMPL pushes -1 and DCMPG pushes 1 for NaN operands
+      case GreaterThanOperatorNode.ID -> {
+        this.mv.visitInsn(DCMPL);
+        this.emitBooleanFromInt(IFLE);
+      }
+      case GreaterThanOrEqualToOperatorNode.ID -> {
+        this.mv.visitInsn(DCMPL);
+        this.emitBooleanFromInt(IFLT);
+      }
+      case LessThanOperatorNode.ID -> {
+        this.mv.visitInsn(DCMPG);
+        this.emitBooleanFromInt(IFGE);
+      }
+      case LessThanOrEqualToOperatorNode.ID -> {
+        this.mv.visitInsn(DCMPG);
+        this.emitBooleanFromInt(IFGT);
+      }
+      default -> {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Emit a short-circuiting “and” or “or” operator, the right operand is only evaluated if needed.
+   */
+  private boolean emitLogicalOperator(final BiOperatorNode node) {
+    Label end = new Label();
+    if (!this.emit(node.getLeft())) {
+      return false;
+    }
+    if (node.getID() == AndOperatorNode.ID) {
+      // left == 0 ? 0 : right
+      Label notZero = new Label();
+      this.mv.visitInsn(DCONST_0);
+      this.mv.visitInsn(DCMPL);
+      this.mv.visitJumpInsn(IFNE, notZero);
+      this.mv.visitInsn(DCONST_0);
+      this.mv.visitJumpInsn(GOTO, end);
+      this.mv.visitLabel(notZero);
+    } else {
+      // left != 0 ? left : right
+      this.mv.visitInsn(DUP2);
+      this.mv.visitInsn(DCONST_0);
+      this.mv.visitInsn(DCMPL);
+      this.mv.visitJumpInsn(IFNE, end);
+      this.mv.visitInsn(POP2);
+    }
+    if (!this.emit(node.getRight())) {
+      return false;
+    }
+    this.mv.visitLabel(end);
+    return true;
+  }
+
+  /**
+   * Emit a conditional, only the selected branch is evaluated.
+   */
+  private boolean emitConditional(final ConditionalNode node) {
+    Label ifFalse = new Label();
+    Label end = new Label();
+    if (!this.emit(node.getCondition())) {
+      return false;
+    }
+    // NaN is not 0, DCMPL pushes -1
+    this.mv.visitInsn(DCONST_0);
+    this.mv.visitInsn(DCMPL);
+    this.mv.visitJumpInsn(IFEQ, ifFalse);
+    if (!this.emit(node.getIfTrue())) {
+      return false;
+    }
+    this.mv.visitJumpInsn(GOTO, end);
+    this.mv.visitLabel(ifFalse);
+    if (!this.emit(node.getIfFalse())) {
+      return false;
+    }
+    this.mv.visitLabel(end);
+    return true;
+  }
+
+  /**
+   * Emit a sum or a product as a loop, other aggregates are evaluated by the interpreter.
+   * The loop variable is stored both in its local variable and in its frame slot,
+   * as nodes evaluated by the interpreter read it from the call stack.
+   */
+  private boolean emitAggregate(final AggregateNode node) {
+    boolean sum = node.getID() == SumNode.ID;
+    if (!sum && node.getID() != ProductNode.ID) {
+      return this.emitInterpreted(node);
+    }
+    List<Node> operands = node.getOperands();
+    // Bounds may contain loops too, they use the next temporary locals
+    int from = this.parameterSlot(this.frameSize) + 8 * this.loopDepth++;
+    int to = from + 2;
+    int accumulator = from + 4;
+    int counter = from + 6;
+    int variable = this.parameterSlot(node.getSlot());
+    if (!this.emit(operands.get(0))) {
+      return false;
+    }
+    this.mv.visitVarInsn(DSTORE, from);
+    if (!this.emit(operands.get(1))) {
+      return false;
+    }
+    this.mv.visitVarInsn(DSTORE, to);
+    this.mv.visitInsn(sum ? DCONST_0 : DCONST_1);
+    this.mv.visitVarInsn(DSTORE, accumulator);
+    this.mv.visitInsn(LCONST_0);
+    this.mv.visitVarInsn(LSTORE, counter);
+
+    Label loop = new Label();
+    Label end = new Label();
+    this.mv.visitLabel(loop);
+    // variable = from + counter, the loop ends once it is greater than to or NaN: DCMPG pushes 1 for NaN
+    this.mv.visitVarInsn(DLOAD, from);
+    this.mv.visitVarInsn(LLOAD, counter);
+    this.mv.visitInsn(L2D);
+    this.mv.visitInsn(DADD);
+    this.mv.visitInsn(DUP2);
+    this.mv.visitVarInsn(DSTORE, variable);
+    this.mv.visitVarInsn(DLOAD, to);
+    this.mv.visitInsn(DCMPG);
+    this.mv.visitJumpInsn(IFGT, end);
+    this.mv.visitVarInsn(ALOAD, 2);
+    this.pushInt(node.getBodyCost());
+    this.mv.visitMethodInsn(INVOKEVIRTUAL, CALL_STACK_NAME, "consume", "(I)V", false);
+    this.mv.visitVarInsn(ALOAD, 2);
+    this.pushInt(node.getSlot());
+    this.mv.visitVarInsn(DLOAD, variable);
+    this.mv.visitMethodInsn(INVOKEVIRTUAL, CALL_STACK_NAME, "setLocal", "(ID)V", false);
+    this.mv.visitVarInsn(DLOAD, accumulator);
+    if (!this.emit(node.getBody())) {
+      return false;
+    }
+    this.mv.visitInsn(sum ? DADD : DMUL);
+    this.mv.visitVarInsn(DSTORE, accumulator);
+    this.mv.visitVarInsn(LLOAD, counter);
+    this.mv.visitInsn(LCONST_1);
+    this.mv.visitInsn(LADD);
+    this.mv.visitVarInsn(LSTORE, counter);
+    this.mv.visitJumpInsn(GOTO, loop);
+    this.mv.visitLabel(end);
+    this.mv.visitVarInsn(DLOAD, accumulator);
+    this.loopDepth--;
+    return true;
+  }
+
+  /**
+   * Emit an occurrence of a shared subexpression: its value is loaded if the flag is set,
+   * otherwise the subexpression is evaluated then stored and the flag is set.
+   */
+  private boolean emitShared(final SharedNode node) {
+    Label compute = new Label();
+    Label end = new Label();
+    int flag = this.parameterSlot(node.getSlot());
+    int value = this.parameterSlot(node.getSlot() + 1);
+    this.mv.visitVarInsn(ILOAD, flag);
+    this.mv.visitJumpInsn(IFEQ, compute);
+    this.mv.visitVarInsn(DLOAD, value);
+    this.mv.visitJumpInsn(GOTO, end);
+    this.mv.visitLabel(compute);
+    if (!this.emit(node.getExpression())) {
+      return false;
+    }
+    this.mv.visitInsn(DUP2);
+    this.mv.visitVarInsn(DSTORE, value);
+    this.mv.visitInsn(ICONST_1);
+    this.mv.visitVarInsn(ISTORE, flag);
+    this.mv.visitLabel(end);
+    return true;
+  }
+
+  /**
+   * Emit an inlined call: the stored arguments are evaluated then stored both in their local variable
+   * and in their frame slot, as nodes evaluated by the interpreter read them from the call stack,
+   * then the cost of the call is consumed and the body is emitted.
+   */
+  private boolean emitInline(final InlineNode node) {
+    List<Node> arguments = node.getArguments();
+    for (int i = 0; i < arguments.size(); i++) {
+      int slot = node.getSlot() + i;
+      if (!this.emit(arguments.get(i))) {
+        return false;
+      }
+      this.mv.visitVarInsn(DSTORE, this.parameterSlot(slot));
+      this.mv.visitVarInsn(ALOAD, 2);
+      this.pushInt(slot);
+      this.mv.visitVarInsn(DLOAD, this.parameterSlot(slot));
+      this.mv.visitMethodInsn(INVOKEVIRTUAL, CALL_STACK_NAME, "setLocal", "(ID)V", false);
+    }
+    this.mv.visitVarInsn(ALOAD, 2);
+    this.pushInt(node.getCost());
+    this.mv.visitMethodInsn(INVOKEVIRTUAL, CALL_STACK_NAME, "consume", "(I)V", false);
+    return this.emit(node.getBody());
+  }
+
+  /**
+   * Emit code that evaluates the given node with the interpreter.
+   */
+  private boolean emitInterpreted(final Node node) {
+    int index = this.nodes.size();
+    this.nodes.add(node);
+    this.mv.visitVarInsn(ALOAD, 0);
+    this.mv.visitFieldInsn(GETFIELD, CLASS_NAME, NODES_FIELD, NODE_ARRAY_DESC);
+    this.pushInt(index);
+    this.mv.visitInsn(AALOAD);
+    this.mv.visitVarInsn(ALOAD, 1);
+    this.mv.visitMethodInsn(INVOKEVIRTUAL, NODE_NAME, "evaluate", "(" + Type.getDescriptor(Scope.class) + ")D", false);
+    return true;
+  }
+
+  private boolean emitCall(final FunctionNode node) {
+    Function function;
+    try {
+      function = this.scope.getFunction(node.getName());
+    } catch (UndefinedFunctionException e) {
+      return false;
+    }
+    return this.emitCall(node, function);
+  }
+
+  /**
+   * Emit a call to the given function with the node’s operands as arguments.
+   */
+  private boolean emitCall(final FunctionNode node, final Function function) {
+    List<Node> operands = node.getOperands();
+    String[] intrinsic = INTRINSICS.get(node.getName());
+    if (function instanceof BuiltinFunction && intrinsic != null
+        && function.getParameterNames().size() == operands.size()) {
+      for (Node operand : operands) {
+        if (!this.emit(operand)) {
+          return false;
+        }
+      }
+      this.mv.visitMethodInsn(INVOKESTATIC, MATH_NAME, intrinsic[0], intrinsic[1], false);
+      if (intrinsic[1].endsWith("J")) {
+        this.mv.visitInsn(L2D);
+      }
+      return true;
+    }
+
+    int index = this.callees.indexOf(function);
+    if (index < 0) {
+      index = this.callees.size();
+      this.callees.add(function);
+    }
+    this.mv.visitVarInsn(ALOAD, 0);
+    this.mv.visitFieldInsn(GETFIELD, CLASS_NAME, CALLEES_FIELD, FUNCTION_ARRAY_DESC);
+    this.pushInt(index);
+    this.mv.visitInsn(AALOAD);
+
+    if (function instanceof BuiltinFunction builtin && builtin.getArity() == operands.size()
+        && (builtin.isUnary() || builtin.isBinary())) {
+      // Apply the builtin directly to the arguments
+      this.mv.visitTypeInsn(CHECKCAST, BUILTIN_FUNCTION_NAME);
+      if (builtin.getCost() > 1) {
+        // Calls to cheap builtins are covered by the cost of the compiled function
+        this.mv.visitVarInsn(ALOAD, 2);
+        this.pushInt(builtin.getCost());
+        this.mv.visitMethodInsn(INVOKEVIRTUAL, CALL_STACK_NAME, "consume", "(I)V", false);
+      }
+      for (Node operand : operands) {
+        if (!this.emit(operand)) {
+          return false;
+        }
+      }
+      this.mv.visitMethodInsn(INVOKEVIRTUAL, BUILTIN_FUNCTION_NAME, "apply", builtin.isUnary() ? "(D)D" : "(DD)D", false);
+      return true;
+    }
+
+    this.mv.visitVarInsn(ALOAD, 1);
+    // Frame index, arguments are then pushed onto the call stack
+    this.mv.visitVarInsn(ALOAD, 2);
+    this.mv.visitMethodInsn(INVOKEVIRTUAL, CALL_STACK_NAME, "getStackPointer", "()I", false);
+    for (Node operand : operands) {
+      this.mv.visitVarInsn(ALOAD, 2);
+      if (!this.emit(operand)) {
+        return false;
+      }
+      this.mv.visitMethodInsn(INVOKEVIRTUAL, CALL_STACK_NAME, "push", "(D)V", false);
+    }
+    this.pushInt(operands.size());
+    this.mv.visitMethodInsn(INVOKEVIRTUAL, FUNCTION_NAME, "call", "(" + Type.getDescriptor(Scope.class) + "II)D", false);
+    return true;
+  }
+
+  /**
+   * Emit code that throws an {@link ArithmeticException} if the double on top of the stack is 0.
+   * The stack is left unchanged.
+   */
+  private void emitDivisionByZeroCheck() {
+    Label ok = new Label();
+    this.mv.visitInsn(DUP2);
+    this.mv.visitInsn(DCONST_0);
+    this.mv.visitInsn(DCMPL);
+    this.mv.visitJumpInsn(IFNE, ok);
+    this.mv.visitTypeInsn(NEW, "java/lang/ArithmeticException");
+    this.mv.visitInsn(DUP);
+    this.mv.visitLdcInsn("division by 0");
+    this.mv.visitMethodInsn(INVOKESPECIAL, "java/lang/ArithmeticException", "<init>", "(Ljava/lang/String;)V", false);
+    this.mv.visitInsn(ATHROW);
+    this.mv.visitLabel(ok);
+  }
+
+  /**
+   * Consume the int on top of the stack and push 0.0 if the given jump instruction
+   * would branch, 1.0 otherwise.
+   */
+  private void emitBooleanFromInt(final int jumpToFalse) {
+    Label isFalse = new Label();
+    Label end = new Label();
+    this.mv.visitJumpInsn(jumpToFalse, isFalse);
+    this.mv.visitInsn(DCONST_1);
+    this.mv.visitJumpInsn(GOTO, end);
+    this.mv.visitLabel(isFalse);
+    this.mv.visitInsn(DCONST_0);
+    this.mv.visitLabel(end);
+  }
+
+  private void pushDouble(final double value) {
+    if (Double.doubleToRawLongBits(value) == 0L) {
+      this.mv.visitInsn(DCONST_0);
+    } else if (value == 1.0) {
+      this.mv.visitInsn(DCONST_1);
+    } else {
+      this.mv.visitLdcInsn(value);
+    }
+  }
+
+  private void pushInt(final int value) {
+    if (value >= -1 && value <= 5) {
+      this.mv.visitInsn(ICONST_0 + value);
+    } else if (value <= Short.MAX_VALUE) {
+      this.mv.visitIntInsn(SIPUSH, value);
+    } else {
+      this.mv.visitLdcInsn(value);
+    }
+  }
+
+  /**
+   * Return the local variable slot holding the frame slot at the given index.
+   * Slots 0 to 2 hold this, the scope and the call stack; doubles take two slots each.
+   */
+  private int parameterSlot(final int index) {
+    return 3 + 2 * index;
+  }
+}
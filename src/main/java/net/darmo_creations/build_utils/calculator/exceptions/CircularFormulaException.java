@@ -0,0 +1,10 @@
+package net.darmo_creations.build_utils.calculator.exceptions;
+
+/**
+ * Error raised when a formula variable is defined with an expression that depends on the variable itself.
+ */
+public class CircularFormulaException extends EvaluationException {
+  public CircularFormulaException(String variableName) {
+    super(variableName);
+  }
+}
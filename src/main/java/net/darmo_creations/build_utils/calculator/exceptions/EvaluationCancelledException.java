@@ -0,0 +1,10 @@
+package net.darmo_creations.build_utils.calculator.exceptions;
+
+/**
+ * Error raised when an evaluation is cancelled before it completes.
+ */
+public class EvaluationCancelledException extends EvaluationException {
+  public EvaluationCancelledException() {
+    super("cancelled");
+  }
+}
@@ -0,0 +1,26 @@
+package net.darmo_creations.build_utils.calculator.exceptions;
+
+/**
+ * Error raised when there was an attempt to delete a function of an imported library.
+ */
+public class LibraryFunctionDeletionAttemptException extends EvaluationException {
+  private final String libraryName;
+
+  /**
+   * Create an exception.
+   *
+   * @param functionName Function’s name.
+   * @param libraryName  Name of the library that defines the function.
+   */
+  public LibraryFunctionDeletionAttemptException(final String functionName, final String libraryName) {
+    super(functionName);
+    this.libraryName = libraryName;
+  }
+
+  /**
+   * Return the name of the library that defines the function.
+   */
+  public String getLibraryName() {
+    return this.libraryName;
+  }
+}
@@ -1,16 +1,33 @@
 package net.darmo_creations.build_utils.calculator.exceptions;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Error raised when the maximum function call depth is reached.
  */
 public class MaxDepthReachedException extends EvaluationException {
+  private final List<String> trace;
+
   /**
    * Create an error.
    *
    * @param depth The depth at which this error was raised.
    */
   public MaxDepthReachedException(final int depth) {
+    this(depth, Collections.emptyList());
+  }
+
+  /**
+   * Create an error.
+   *
+   * @param depth The depth at which this error was raised.
+   * @param trace Names of the functions that were being evaluated, from the outermost to the innermost.
+   */
+  public MaxDepthReachedException(final int depth, final List<String> trace) {
     super("" + depth);
+    this.trace = new ArrayList<>(trace);
   }
 
   /**
@@ -19,4 +36,12 @@ public class MaxDepthReachedException extends EvaluationException {
   public int getDepth() {
     return Integer.parseInt(this.getMessage());
   }
+
+  /**
+   * Return the names of the functions that were being evaluated when this error was raised,
+   * from the outermost to the innermost.
+   */
+  public List<String> getCallTrace() {
+    return new ArrayList<>(this.trace);
+  }
 }
@@ -0,0 +1,22 @@
+package net.darmo_creations.build_utils.calculator.exceptions;
+
+/**
+ * Error raised when an evaluation exhausts its fuel budget.
+ */
+public class OutOfFuelException extends EvaluationException {
+  /**
+   * Create an error.
+   *
+   * @param budget The fuel budget that was exhausted.
+   */
+  public OutOfFuelException(final int budget) {
+    super("" + budget);
+  }
+
+  /**
+   * The fuel budget that was exhausted.
+   */
+  public int getBudget() {
+    return Integer.parseInt(this.getMessage());
+  }
+}
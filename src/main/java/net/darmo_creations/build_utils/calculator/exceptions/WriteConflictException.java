@@ -0,0 +1,11 @@
+package net.darmo_creations.build_utils.calculator.exceptions;
+
+/**
+ * Error raised when changes made to a scope snapshot are committed but a variable or function they write
+ * has been modified since the snapshot was taken.
+ */
+public class WriteConflictException extends EvaluationException {
+  public WriteConflictException(String name) {
+    super(name);
+  }
+}
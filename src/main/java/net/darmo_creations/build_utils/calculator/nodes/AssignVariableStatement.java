@@ -25,6 +25,20 @@ public class AssignVariableStatement extends Statement {
     this.node = Objects.requireNonNull(node);
   }
 
+  /**
+   * Return variable’s name.
+   */
+  public String getVariableName() {
+    return this.variableName;
+  }
+
+  /**
+   * Return the expression {@link Node} tree.
+   */
+  public Node getNode() {
+    return this.node;
+  }
+
   /**
    * Evaluates the expression then stores its value in the variable in the given scope.
    *
@@ -32,7 +46,7 @@ public class AssignVariableStatement extends Statement {
    * @throws ArithmeticException If a math error occured.
    */
   @Override
-  public StatementResult execute(Scope scope) throws EvaluationException, ArithmeticException {
+  protected StatementResult executeImpl(Scope scope) throws EvaluationException, ArithmeticException {
     double value = this.node.evaluate(scope);
     scope.setVariable(this.variableName, value);
     return new StatementResult(String.format(Locale.ENGLISH, "%s <- %f", this.variableName, value), null);
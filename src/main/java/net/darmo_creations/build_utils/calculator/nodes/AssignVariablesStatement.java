@@ -0,0 +1,95 @@
+package net.darmo_creations.build_utils.calculator.nodes;
+
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.Transaction;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
+import net.darmo_creations.build_utils.calculator.nodes.expr.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * A statement that assigns values to several variables at once, e.g. {@code a, b := b, a}.
+ * All expressions are evaluated before any variable is assigned, the assignments are then applied
+ * as a single {@link Transaction}.
+ */
+public class AssignVariablesStatement extends Statement {
+  private final List<String> variableNames;
+  private final List<Node> nodes;
+
+  /**
+   * Create a multiple variables assignment statement.
+   *
+   * @param variableNames Variables’ names.
+   * @param nodes         Expression {@link Node} trees to evaluate then store into the variable at the same index.
+   * @throws IllegalArgumentException If the lists do not have the same size.
+   */
+  public AssignVariablesStatement(final List<String> variableNames, final List<Node> nodes) {
+    if (variableNames.size() != nodes.size()) {
+      throw new IllegalArgumentException("variables and values count mismatch");
+    }
+    this.variableNames = new ArrayList<>(variableNames);
+    this.nodes = new ArrayList<>(nodes);
+  }
+
+  /**
+   * Return variables’ names.
+   */
+  public List<String> getVariableNames() {
+    return Collections.unmodifiableList(this.variableNames);
+  }
+
+  /**
+   * Return the expression {@link Node} trees, in the same order as the variables.
+   */
+  public List<Node> getNodes() {
+    return Collections.unmodifiableList(this.nodes);
+  }
+
+  /**
+   * Evaluates all expressions then stores their values in the variables in the given scope.
+   * If an evaluation fails or the quota of variables would be exceeded, no variable is assigned.
+   *
+   * @throws EvaluationException If an error occured during {@link Node} evaluation.
+   * @throws ArithmeticException If a math error occured.
+   */
+  @Override
+  protected StatementResult executeImpl(Scope scope) throws EvaluationException, ArithmeticException {
+    Transaction transaction = new Transaction();
+    List<String> status = new ArrayList<>(this.nodes.size());
+    for (int i = 0; i < this.nodes.size(); i++) {
+      double value = this.nodes.get(i).evaluate(scope);
+      transaction.setVariable(this.variableNames.get(i), value);
+      status.add(String.format(Locale.ENGLISH, "%s <- %f", this.variableNames.get(i), value));
+    }
+    scope.apply(transaction);
+    return new StatementResult(String.join(", ", status), null);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+    AssignVariablesStatement that = (AssignVariablesStatement) o;
+    return this.variableNames.equals(that.variableNames) && this.nodes.equals(that.nodes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(this.variableNames, this.nodes);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ENGLISH, "%s := %s", String.join(", ", this.variableNames),
+        this.nodes.stream().map(Object::toString).collect(Collectors.joining(", ")));
+  }
+}
@@ -0,0 +1,81 @@
+package net.darmo_creations.build_utils.calculator.nodes;
+
+import net.darmo_creations.build_utils.calculator.FormulaGraph;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.CircularFormulaException;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
+import net.darmo_creations.build_utils.calculator.nodes.expr.Node;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A statement that defines a formula variable, i.e. a variable whose value is recomputed
+ * whenever a variable its expression depends on changes.
+ *
+ * @see FormulaGraph
+ */
+public class DefineFormulaStatement extends Statement {
+  private final String variableName;
+  private final Node node;
+
+  /**
+   * Create a formula definition statement.
+   *
+   * @param variableName Variable’s name.
+   * @param node         Formula’s expression {@link Node} tree.
+   */
+  public DefineFormulaStatement(final String variableName, final Node node) {
+    this.variableName = Objects.requireNonNull(variableName);
+    this.node = Objects.requireNonNull(node);
+  }
+
+  /**
+   * Return variable’s name.
+   */
+  public String getVariableName() {
+    return this.variableName;
+  }
+
+  /**
+   * Return the formula’s expression {@link Node} tree.
+   */
+  public Node getNode() {
+    return this.node;
+  }
+
+  /**
+   * Evaluates the expression, stores its value in the variable then registers the formula in the given scope.
+   *
+   * @throws CircularFormulaException If the expression depends on the variable itself.
+   * @throws EvaluationException      If an error occured during {@link Node} evaluation.
+   * @throws ArithmeticException      If a math error occured.
+   */
+  @Override
+  protected StatementResult executeImpl(Scope scope) throws EvaluationException, ArithmeticException {
+    double value = scope.setFormula(this.variableName, this.node);
+    return new StatementResult(String.format(Locale.ENGLISH, "%s <- %f (%s)", this.variableName, value, this.node), null);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+    DefineFormulaStatement that = (DefineFormulaStatement) o;
+    return this.variableName.equals(that.variableName) && this.node.equals(that.node);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(this.variableName, this.node);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ENGLISH, "%s ::= %s", this.variableName, this.node);
+  }
+}
@@ -1,11 +1,13 @@
 package net.darmo_creations.build_utils.calculator.nodes;
 
+import net.darmo_creations.build_utils.calculator.Optimizer;
 import net.darmo_creations.build_utils.calculator.Scope;
 import net.darmo_creations.build_utils.calculator.UserFunction;
 import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
 import net.darmo_creations.build_utils.calculator.nodes.expr.Node;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -31,13 +33,35 @@ public class DefineFunctionStatement extends Statement {
   }
 
   /**
-   * Defines the function in the given scope.
+   * Return function’s name.
+   */
+  public String getFunctionName() {
+    return this.functionName;
+  }
+
+  /**
+   * Return function’s parameter names.
+   */
+  public List<String> getParameterNames() {
+    return Collections.unmodifiableList(this.parameterNames);
+  }
+
+  /**
+   * Return function’s expression {@link Node} tree, before simplification.
+   */
+  public Node getNode() {
+    return this.node;
+  }
+
+  /**
+   * Defines the function in the given scope. Its body is simplified by the {@link Optimizer} beforehand.
    *
    * @throws EvaluationException If an error occured during {@link Node} evaluation.
    */
   @Override
-  public StatementResult execute(Scope scope) throws EvaluationException {
-    scope.setFunction(new UserFunction(this.functionName, this.parameterNames, this.node));
+  protected StatementResult executeImpl(Scope scope) throws EvaluationException {
+    Node body = Optimizer.optimizeFunction(this.parameterNames, this.node);
+    scope.setFunction(new UserFunction(this.functionName, this.parameterNames, body));
     return new StatementResult(scope.getFunction(this.functionName).toString(), null);
   }
 
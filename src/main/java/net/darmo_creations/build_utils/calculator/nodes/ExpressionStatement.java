@@ -21,6 +21,13 @@ public class ExpressionStatement extends Statement {
     this.node = Objects.requireNonNull(node);
   }
 
+  /**
+   * Return the expression {@link Node} tree.
+   */
+  public Node getNode() {
+    return this.node;
+  }
+
   /**
    * Evaluates the expression then returns its value.
    *
@@ -28,7 +35,7 @@ public class ExpressionStatement extends Statement {
    * @throws ArithmeticException If a math error occured.
    */
   @Override
-  public StatementResult execute(final Scope scope) throws EvaluationException, ArithmeticException {
+  protected StatementResult executeImpl(final Scope scope) throws EvaluationException, ArithmeticException {
     double value = this.node.evaluate(scope);
     return new StatementResult("" + value, value);
   }
@@ -1,18 +1,30 @@
 package net.darmo_creations.build_utils.calculator.nodes;
 
+import net.darmo_creations.build_utils.calculator.CallStack;
 import net.darmo_creations.build_utils.calculator.Scope;
 
 /**
  * A statement can be executed in a given scope.
  */
 public abstract class Statement {
+  /**
+   * Executes this statement. Starts a new evaluation with a full fuel budget, see {@link CallStack#refuel()}.
+   *
+   * @param scope Scope to use.
+   * @return The result of the statement.
+   */
+  public StatementResult execute(final Scope scope) {
+    scope.getCallStack().refuel();
+    return this.executeImpl(scope);
+  }
+
   /**
    * Executes this statement.
    *
    * @param scope Scope to use.
    * @return The result of the statement.
    */
-  public abstract StatementResult execute(Scope scope);
+  protected abstract StatementResult executeImpl(Scope scope);
 
   @Override
   public abstract boolean equals(Object o);
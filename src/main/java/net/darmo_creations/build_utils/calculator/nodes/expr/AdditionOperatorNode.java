@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -24,7 +25,7 @@ public class AdditionOperatorNode extends BiOperatorNode {
    * @param tag The tag to deserialize.
    */
   public AdditionOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("+", tag);
   }
 
   @Override
@@ -32,6 +33,16 @@ public class AdditionOperatorNode extends BiOperatorNode {
     return left + right;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval left, final Interval right) {
+    return left.add(right);
+  }
+
+  @Override
+  protected BiOperatorNode create(final Node left, final Node right) {
+    return new AdditionOperatorNode(left, right);
+  }
+
   @Override
   public int getID() {
     return ID;
@@ -0,0 +1,329 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link Node} representing a builtin that binds a variable then evaluates an expression, its body,
+ * for several values of that variable, e.g. {@code sum(i, 1, 10, i^2)}.
+ * <p>
+ * The body is kept as a tree and evaluated by the aggregate itself, the variable being bound to a slot
+ * of the current {@link CallStack} frame: references to it in the body are resolved to {@link ParameterNode}s.
+ * Each evaluation of the body consumes fuel in proportion to the body’s number of nodes.
+ * <p>
+ * Aggregates created by the parser own their frame, they enter a block on the call stack before being evaluated.
+ * Aggregates in a function’s body or in the body of another aggregate use slots of the enclosing frame instead,
+ * they are resolved again by {@link ParameterNode#resolve(Node, List)}.
+ */
+public abstract class AggregateNode extends OperatorNode {
+  /**
+   * Index of the body in the operands.
+   */
+  public static final int BODY_INDEX = 2;
+
+  private static final String VARIABLE_KEY = "Variable";
+
+  private final String variable;
+  /**
+   * Index of the variable’s slot in the current frame.
+   */
+  private final int slot;
+  /**
+   * Number of slots of the block entered by this aggregate, 0 if it uses the enclosing frame.
+   */
+  private final int frameSize;
+  /**
+   * Number of nodes of the body’s source tree, consumed as fuel by each evaluation of the body.
+   */
+  private final int bodyCost;
+
+  /**
+   * Create an aggregate that owns its frame.
+   *
+   * @param symbol   Aggregate’s name.
+   * @param arity    Aggregate’s number of operands, the variable excluded.
+   * @param variable Name of the variable bound in the body.
+   * @param operands Aggregate’s operands, the body being at index {@link #BODY_INDEX}.
+   */
+  protected AggregateNode(final String symbol, final int arity, final String variable, final List<Node> operands) {
+    this(symbol, arity, variable, resolveOperands(operands, Collections.emptyList(), variable), 0, true);
+  }
+
+  /**
+   * Create an aggregate from an NBT tag.
+   *
+   * @param symbol Aggregate’s name.
+   * @param arity  Aggregate’s number of operands, the variable excluded.
+   * @param tag    The tag to deserialize.
+   */
+  protected AggregateNode(final String symbol, final int arity, final CompoundTag tag) {
+    this(symbol, arity, tag.getString(VARIABLE_KEY), deserializeOperands(tag));
+  }
+
+  /**
+   * Create an aggregate whose operands are already resolved.
+   *
+   * @param symbol   Aggregate’s name.
+   * @param arity    Aggregate’s number of operands, the variable excluded.
+   * @param variable Name of the variable bound in the body.
+   * @param operands Aggregate’s resolved operands.
+   * @param slot     Index of the variable’s slot in the current frame.
+   * @param owner    Whether the aggregate enters its own block.
+   */
+  protected AggregateNode(final String symbol, final int arity, final String variable, final List<Node> operands,
+                          final int slot, final boolean owner) {
+    super(symbol, arity, operands);
+    this.variable = Objects.requireNonNull(variable);
+    this.slot = slot;
+    int[] frameSize = {slot + 1};
+    this.getBody().transform(n -> {
+      if (n instanceof AggregateNode a) {
+        frameSize[0] = Math.max(frameSize[0], a.slot + 1);
+      }
+      return n;
+    });
+    this.frameSize = owner ? frameSize[0] : 0;
+    this.bodyCost = this.getBody().getSourceSize();
+  }
+
+  /**
+   * Resolve the operands of an aggregate, the body being resolved with the variable as an additional local.
+   */
+  private static List<Node> resolveOperands(final List<Node> operands, final List<String> locals, final String variable) {
+    List<String> bodyLocals = new ArrayList<>(locals);
+    bodyLocals.add(variable);
+    List<Node> resolved = new ArrayList<>(operands.size());
+    for (int i = 0; i < operands.size(); i++) {
+      resolved.add(ParameterNode.resolve(operands.get(i), i == BODY_INDEX ? bodyLocals : locals));
+    }
+    return resolved;
+  }
+
+  /**
+   * Return the name of the variable bound in the body.
+   */
+  public String getVariable() {
+    return this.variable;
+  }
+
+  /**
+   * Return the index of the variable’s slot in the current frame.
+   */
+  public int getSlot() {
+    return this.slot;
+  }
+
+  /**
+   * Return the body.
+   */
+  public Node getBody() {
+    return this.operands.get(BODY_INDEX);
+  }
+
+  /**
+   * Return the amount of fuel consumed by each evaluation of the body.
+   */
+  public int getBodyCost() {
+    return this.bodyCost;
+  }
+
+  /**
+   * Return a copy of this aggregate that uses slots of the enclosing frame.
+   *
+   * @param locals Names of the slots of the enclosing frame that are visible to this aggregate, in slot order.
+   * @return The resolved aggregate, its variable being bound to the first slot after the locals.
+   */
+  AggregateNode resolve(final List<String> locals) {
+    return this.create(this.variable, resolveOperands(this.operands, locals, this.variable), locals.size(), false);
+  }
+
+  /**
+   * Return a copy of this aggregate with the given operands whose variable is bound to the given slot
+   * of the enclosing frame.
+   */
+  AggregateNode relocate(final List<Node> operands, final int slot) {
+    return this.create(this.variable, operands, slot, false);
+  }
+
+  /**
+   * Evaluate this aggregate, entering its own block if it is not part of an enclosing frame.
+   */
+  @Override
+  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
+    CallStack stack = scope.getCallStack();
+    if (this.frameSize == 0) {
+      return this.aggregate(scope, stack);
+    }
+    int frame = stack.getStackPointer();
+    int callerFrame = stack.enterBlock(frame, this.frameSize);
+    try {
+      return this.aggregate(scope, stack);
+    } finally {
+      stack.leaveBlock(callerFrame, frame);
+    }
+  }
+
+  /**
+   * Compute the value of this aggregate, the variable’s slot is available in the current frame.
+   *
+   * @param scope Context of the evaluation.
+   * @param stack The scope’s call stack.
+   * @return The aggregate’s value.
+   * @throws EvaluationException If an error occured during {@link Node} evaluation.
+   * @throws ArithmeticException If a math error occured.
+   */
+  protected abstract double aggregate(Scope scope, CallStack stack) throws EvaluationException, ArithmeticException;
+
+  /**
+   * Evaluate the body for the given value of the variable, consuming the body’s cost.
+   *
+   * @param scope Context of the evaluation.
+   * @param stack The scope’s call stack.
+   * @param value The variable’s value.
+   * @return The body’s value.
+   */
+  protected double evaluateBody(final Scope scope, final CallStack stack, final double value) {
+    stack.consume(this.bodyCost);
+    stack.setLocal(this.slot, value);
+    return this.getBody().evaluate(scope);
+  }
+
+  /**
+   * Evaluate this aggregate over intervals, allocating the bounds of its own block
+   * if it is not part of an enclosing frame.
+   */
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    return this.aggregateInterval(scope, this.frameSize == 0 ? locals : new Interval[this.frameSize]);
+  }
+
+  /**
+   * Compute the bounds of this aggregate’s values.
+   *
+   * @param scope  Context of the evaluation.
+   * @param locals Bounds of the slots of the current frame, the variable’s slot included.
+   * @return The bounds of the aggregate’s values.
+   * @throws EvaluationException If an error occured during {@link Node} evaluation.
+   */
+  protected abstract Interval aggregateInterval(Scope scope, Interval[] locals) throws EvaluationException;
+
+  /**
+   * Evaluate the body over intervals for the given bounds of the variable, consuming the body’s cost.
+   *
+   * @param scope  Context of the evaluation.
+   * @param locals Bounds of the slots of the current frame.
+   * @param value  Bounds of the variable.
+   * @return The bounds of the body’s values.
+   */
+  protected Interval evaluateBodyInterval(final Scope scope, final Interval[] locals, final Interval value) {
+    scope.getCallStack().consume(this.bodyCost);
+    locals[this.slot] = value;
+    return this.getBody().evaluateInterval(scope, locals);
+  }
+
+  /**
+   * Bound a fold of the body’s values over the variable taking the values {@code from + i} while they are
+   * not greater than {@code to}, as computed by sums and products. If the bounds of the range are points,
+   * the fold is replicated term by term. Otherwise the body is bounded once over the whole range
+   * and the fold is bounded for each possible number of terms, consuming one unit of fuel per term.
+   *
+   * @param scope    Context of the evaluation.
+   * @param locals   Bounds of the slots of the current frame.
+   * @param initial  Value of the fold for an empty range.
+   * @param operator The folding operation.
+   * @return The bounds of the fold’s values.
+   */
+  protected Interval foldInterval(final Scope scope, final Interval[] locals, final Interval initial,
+                                  final BinaryOperator<Interval> operator) {
+    Interval from = this.operands.get(0).evaluateInterval(scope, locals);
+    Interval to = this.operands.get(1).evaluateInterval(scope, locals);
+    // Ranges with a NaN bound have no terms
+    Interval result = from.mayBeNaN() || to.mayBeNaN() ? initial : Interval.EMPTY;
+    if (!from.hasRange() || !to.hasRange()) {
+      return result;
+    }
+    if (from.isPoint() && to.isPoint()) {
+      Interval value = initial;
+      for (long i = 0; from.getLo() + i <= to.getLo(); i++) {
+        value = operator.apply(value, this.evaluateBodyInterval(scope, locals, Interval.point(from.getLo() + i)));
+      }
+      return value;
+    }
+    if (from.getLo() > to.getHi()) {
+      return initial;
+    }
+    // Below 2^52, one term of slack on each side absorbs the rounding of from + i
+    double minCount = Math.max(0, Math.floor(to.getLo() - from.getHi()));
+    double maxCount = Math.floor(to.getHi() - from.getLo()) + 2;
+    if (!(maxCount <= Integer.MAX_VALUE) || Math.max(Math.abs(from.getLo()), Math.abs(to.getHi())) >= 0x1p52) {
+      return Interval.ENTIRE_OR_NAN;
+    }
+    Interval body = this.evaluateBodyInterval(scope, locals, Interval.of(from.getLo(), to.getHi()));
+    if (minCount == 0) {
+      result = result.hull(initial);
+    }
+    CallStack stack = scope.getCallStack();
+    Interval value = initial;
+    for (long count = 1; count <= maxCount; count++) {
+      stack.consume(1);
+      Interval next = operator.apply(value, body);
+      if (next.equals(value) && count > minCount) {
+        // Further terms leave the bounds unchanged
+        break;
+      }
+      value = next;
+      if (count >= minCount) {
+        result = result.hull(value);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Create an aggregate of the same type.
+   *
+   * @param variable Name of the variable bound in the body.
+   * @param operands Aggregate’s resolved operands.
+   * @param slot     Index of the variable’s slot in the current frame.
+   * @param owner    Whether the aggregate enters its own block.
+   */
+  protected abstract AggregateNode create(String variable, List<Node> operands, int slot, boolean owner);
+
+  @Override
+  public AggregateNode withOperands(final List<Node> operands) {
+    return this.create(this.variable, operands, this.slot, this.frameSize != 0);
+  }
+
+  @Override
+  public CompoundTag writeToNBT() {
+    CompoundTag tag = super.writeToNBT();
+    tag.putString(VARIABLE_KEY, this.variable);
+    return tag;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o) && this.variable.equals(((AggregateNode) o).variable) && this.slot == ((AggregateNode) o).slot;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), this.variable, this.slot);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s(%s, %s)", this.getName(), this.variable,
+        this.operands.stream().map(Object::toString).collect(Collectors.joining(", ")));
+  }
+}
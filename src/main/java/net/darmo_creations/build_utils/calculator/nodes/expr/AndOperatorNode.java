@@ -1,10 +1,14 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
 import net.minecraft.nbt.CompoundTag;
 
 /**
  * A {@link Node} representing the logical "and" operator.
- * If the left operand is 0, 0 is returned; otherwise the right operand is returned.
+ * If the left operand is 0, 0 is returned without evaluating the right operand;
+ * otherwise the right operand is returned.
  */
 public class AndOperatorNode extends BiOperatorNode {
   public static final int ID = 406;
@@ -25,7 +29,21 @@ public class AndOperatorNode extends BiOperatorNode {
    * @param tag The tag to deserialize.
    */
   public AndOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("&", tag);
+  }
+
+  @Override
+  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
+    return this.left.evaluate(scope) == 0 ? 0 : this.right.evaluate(scope);
+  }
+
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    Interval left = this.left.evaluateInterval(scope, locals);
+    if (!left.canBeNonZero()) {
+      return left;
+    }
+    return this.evaluateIntervalImpl(left, this.right.evaluateInterval(scope, locals));
   }
 
   @Override
@@ -33,6 +51,17 @@ public class AndOperatorNode extends BiOperatorNode {
     return left == 0 ? 0 : right;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval left, final Interval right) {
+    Interval result = left.canBeNonZero() ? right : Interval.EMPTY;
+    return left.canBeZero() ? result.hull(Interval.point(0)) : result;
+  }
+
+  @Override
+  protected BiOperatorNode create(final Node left, final Node right) {
+    return new AndOperatorNode(left, right);
+  }
+
   @Override
   public int getID() {
     return ID;
@@ -1,5 +1,8 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
 import net.minecraft.nbt.CompoundTag;
 
 import java.util.Arrays;
@@ -9,6 +12,9 @@ import java.util.List;
  * A {@link Node} representing an operator with two operands.
  */
 public abstract class BiOperatorNode extends OperatorNode {
+  protected final Node left;
+  protected final Node right;
+
   /**
    * Create a binary operator with two operands.
    *
@@ -18,22 +24,60 @@ public abstract class BiOperatorNode extends OperatorNode {
    */
   public BiOperatorNode(final String symbol, final Node left, final Node right) {
     super(symbol, 2, Arrays.asList(left, right));
+    this.left = this.operands.get(0);
+    this.right = this.operands.get(1);
   }
 
   /**
    * Create a binary operator from an NBT tag.
    *
-   * @param tag The tag to deserialize.
+   * @param symbol Operator’s symbol.
+   * @param tag    The tag to deserialize.
+   */
+  public BiOperatorNode(final String symbol, final CompoundTag tag) {
+    super(symbol, 2, tag);
+    this.left = this.operands.get(0);
+    this.right = this.operands.get(1);
+  }
+
+  /**
+   * Return the left operand.
    */
-  public BiOperatorNode(final CompoundTag tag) {
-    super(tag);
+  public Node getLeft() {
+    return this.left;
+  }
+
+  /**
+   * Return the right operand.
+   */
+  public Node getRight() {
+    return this.right;
+  }
+
+  @Override
+  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
+    return this.evaluateImpl(this.left.evaluate(scope), this.right.evaluate(scope));
+  }
+
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    return this.evaluateIntervalImpl(this.left.evaluateInterval(scope, locals), this.right.evaluateInterval(scope, locals));
   }
 
   @Override
-  protected final double evaluateImpl(final List<Double> values) {
-    return this.evaluateImpl(values.get(0), values.get(1));
+  public BiOperatorNode withOperands(final List<Node> operands) {
+    return this.create(operands.get(0), operands.get(1));
   }
 
+  /**
+   * Create an operator of the same type with the given operands.
+   *
+   * @param left  Left operand.
+   * @param right Right operand.
+   * @return The new operator.
+   */
+  protected abstract BiOperatorNode create(final Node left, final Node right);
+
   /**
    * Delegate method that returns the result of the operator.
    *
@@ -43,8 +87,17 @@ public abstract class BiOperatorNode extends OperatorNode {
    */
   protected abstract double evaluateImpl(final double left, final double right);
 
+  /**
+   * Delegate method that returns the bounds of the operator’s result.
+   *
+   * @param left  Bounds of the left operand.
+   * @param right Bounds of the right operand.
+   * @return Bounds of the operator’s result.
+   */
+  protected abstract Interval evaluateIntervalImpl(final Interval left, final Interval right);
+
   @Override
   public String toString() {
-    return String.format("%s %s %s", this.operands.get(0), this.getName(), this.operands.get(1));
+    return String.format("%s %s %s", this.left, this.getName(), this.right);
   }
 }
@@ -0,0 +1,106 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link Node} representing the conditional {@code if(condition, a, b)}.
+ * If the condition is not 0, a is returned; otherwise b is returned.
+ * <p>
+ * Unlike function arguments, only the selected branch is evaluated,
+ * recursive functions can thus use conditionals to stop recursing.
+ */
+public class ConditionalNode extends OperatorNode {
+  public static final int ID = 500;
+
+  private final Node condition;
+  private final Node ifTrue;
+  private final Node ifFalse;
+
+  /**
+   * Create a conditional.
+   *
+   * @param condition The condition.
+   * @param ifTrue    Expression evaluated if the condition is not 0.
+   * @param ifFalse   Expression evaluated if the condition is 0.
+   */
+  public ConditionalNode(final Node condition, final Node ifTrue, final Node ifFalse) {
+    super("if", 3, Arrays.asList(condition, ifTrue, ifFalse));
+    this.condition = this.operands.get(0);
+    this.ifTrue = this.operands.get(1);
+    this.ifFalse = this.operands.get(2);
+  }
+
+  /**
+   * Create a conditional from an NBT tag.
+   *
+   * @param tag The tag to deserialize.
+   */
+  public ConditionalNode(final CompoundTag tag) {
+    super("if", 3, tag);
+    this.condition = this.operands.get(0);
+    this.ifTrue = this.operands.get(1);
+    this.ifFalse = this.operands.get(2);
+  }
+
+  /**
+   * Return the condition.
+   */
+  public Node getCondition() {
+    return this.condition;
+  }
+
+  /**
+   * Return the expression evaluated if the condition is not 0.
+   */
+  public Node getIfTrue() {
+    return this.ifTrue;
+  }
+
+  /**
+   * Return the expression evaluated if the condition is 0.
+   */
+  public Node getIfFalse() {
+    return this.ifFalse;
+  }
+
+  /**
+   * Evaluate the condition then the selected expression only.
+   */
+  @Override
+  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
+    return this.condition.evaluate(scope) != 0 ? this.ifTrue.evaluate(scope) : this.ifFalse.evaluate(scope);
+  }
+
+  /**
+   * Evaluate the condition then the branches it may select, bounds of both branches are merged
+   * if the condition may be either 0 or not.
+   */
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    Interval condition = this.condition.evaluateInterval(scope, locals);
+    Interval result = Interval.EMPTY;
+    if (condition.canBeNonZero()) {
+      result = this.ifTrue.evaluateInterval(scope, locals);
+    }
+    if (condition.canBeZero()) {
+      result = result.hull(this.ifFalse.evaluateInterval(scope, locals));
+    }
+    return result;
+  }
+
+  @Override
+  public ConditionalNode withOperands(final List<Node> operands) {
+    return new ConditionalNode(operands.get(0), operands.get(1), operands.get(2));
+  }
+
+  @Override
+  public int getID() {
+    return ID;
+  }
+}
@@ -0,0 +1,93 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.Function;
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link Node} representing a call to a given function instead of the function with a given name,
+ * used to call the specializations of user functions.
+ * <p>
+ * Direct calls only exist in the optimized bodies of user functions, they are never serialized.
+ */
+public class DirectCallNode extends FunctionNode {
+  public static final int ID = 702;
+
+  private final Function function;
+  private final int sourceSize;
+
+  /**
+   * Create a direct call.
+   *
+   * @param function   The function to call.
+   * @param sourceSize Number of nodes of the call in the source tree, arguments included.
+   * @param operands   Function’s arguments.
+   */
+  public DirectCallNode(final Function function, final int sourceSize, final List<Node> operands) {
+    super(function.getName(), operands);
+    this.function = function;
+    this.sourceSize = sourceSize;
+  }
+
+  /**
+   * Return the called function.
+   */
+  public Function getFunction() {
+    return this.function;
+  }
+
+  /**
+   * Return the number of nodes of the call in the source tree, arguments that have been bound
+   * by the specialization included.
+   */
+  @Override
+  public int getSourceSize() {
+    return this.sourceSize;
+  }
+
+  @Override
+  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
+    return this.call(scope, this.function);
+  }
+
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    return this.function.callInterval(scope, this.evaluateOperandsInterval(scope, locals));
+  }
+
+  @Override
+  public DirectCallNode withOperands(final List<Node> operands) {
+    return new DirectCallNode(this.function, this.sourceSize, operands);
+  }
+
+  /**
+   * Direct calls cannot be serialized.
+   *
+   * @throws UnsupportedOperationException Always.
+   */
+  @Override
+  public CompoundTag writeToNBT() {
+    throw new UnsupportedOperationException("direct calls cannot be serialized");
+  }
+
+  @Override
+  public int getID() {
+    return ID;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o) && this.function == ((DirectCallNode) o).function
+        && this.sourceSize == ((DirectCallNode) o).sourceSize;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), System.identityHashCode(this.function), this.sourceSize);
+  }
+}
@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -24,7 +25,7 @@ public class DivisionOperatorNode extends BiOperatorNode {
    * @param tag The tag to deserialize.
    */
   public DivisionOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("/", tag);
   }
 
   /**
@@ -40,6 +41,16 @@ public class DivisionOperatorNode extends BiOperatorNode {
     return left / right;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval left, final Interval right) {
+    return left.divide(right);
+  }
+
+  @Override
+  protected BiOperatorNode create(final Node left, final Node right) {
+    return new DivisionOperatorNode(left, right);
+  }
+
   @Override
   public int getID() {
     return ID;
@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -25,7 +26,7 @@ public class EqualToOperatorNode extends BiOperatorNode {
    * @param tag The tag to deserialize.
    */
   public EqualToOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("=", tag);
   }
 
   @Override
@@ -33,6 +34,16 @@ public class EqualToOperatorNode extends BiOperatorNode {
     return left == right ? 1 : 0;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval left, final Interval right) {
+    return left.equalTo(right);
+  }
+
+  @Override
+  protected BiOperatorNode create(final Node left, final Node right) {
+    return new EqualToOperatorNode(left, right);
+  }
+
   @Override
   public int getID() {
     return ID;
@@ -1,13 +1,19 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.BuiltinFunction;
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Function;
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.darmo_creations.build_utils.calculator.Scope;
 import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
+import net.darmo_creations.build_utils.calculator.exceptions.UndefinedFunctionException;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
@@ -21,6 +27,15 @@ public class FunctionNode extends Node {
 
   private final String name;
   protected final List<Node> operands;
+  /**
+   * Function resolved during the last evaluation in a global scope. Nodes are shared across threads,
+   * see {@link Resolution}.
+   */
+  private Resolution resolution;
+  /**
+   * Cached hash code, 0 until computed. Trees are immutable and hashed repeatedly when they are hash-consed.
+   */
+  private int hash;
 
   /**
    * Create a function call.
@@ -39,12 +54,18 @@ public class FunctionNode extends Node {
    * @param tag The tag to deserialize.
    */
   public FunctionNode(final CompoundTag tag) {
-    this(tag.getString(NAME_KEY), deserializeOperands(tag.getList(OPERANDS_KEY, new CompoundTag().getId())));
+    this(tag.getString(NAME_KEY), deserializeOperands(tag));
   }
 
-  private static List<Node> deserializeOperands(ListTag tagList) {
+  /**
+   * Deserialize the operands stored in the given tag.
+   *
+   * @param tag The tag of a serialized function {@link Node}.
+   * @return The operands.
+   */
+  protected static List<Node> deserializeOperands(final CompoundTag tag) {
     List<Node> list = new ArrayList<>();
-    tagList.forEach(tag -> list.add(NodeNBTHelper.getNodeForTag((CompoundTag) tag)));
+    tag.getList(OPERANDS_KEY, new CompoundTag().getId()).forEach(t -> list.add(NodeNBTHelper.getNodeForTag((CompoundTag) t)));
     return list;
   }
 
@@ -55,8 +76,52 @@ public class FunctionNode extends Node {
     return this.name;
   }
 
+  /**
+   * Return function’s arguments.
+   */
+  public List<Node> getOperands() {
+    return new ArrayList<>(this.operands);
+  }
+
+  /**
+   * Return a node of the same type and name with the given operands.
+   *
+   * @param operands The new operands.
+   * @return The new node.
+   */
+  public FunctionNode withOperands(final List<Node> operands) {
+    return new FunctionNode(this.name, operands);
+  }
+
+  @Override
+  public int getSourceSize() {
+    int size = 1;
+    for (Node operand : this.operands) {
+      size += operand.getSourceSize();
+    }
+    return size;
+  }
+
+  @Override
+  public Node transform(final UnaryOperator<Node> f) {
+    List<Node> operands = new ArrayList<>(this.operands.size());
+    boolean changed = false;
+    for (Node operand : this.operands) {
+      Node newOperand = operand.transform(f);
+      changed |= newOperand != operand;
+      operands.add(newOperand);
+    }
+    return f.apply(changed ? this.withOperands(operands) : this);
+  }
+
   /**
    * Evaluate the function then return its value.
+   * Unary and binary builtin functions are applied directly to the values of the operands,
+   * only consuming fuel if their cost is greater than 1;
+   * for other functions the arguments are pushed onto the scope’s {@link CallStack}.
+   * <p>
+   * When evaluated in a global scope, the function is resolved once and reused
+   * until a function is defined or deleted in that scope.
    *
    * @return The function’s result.
    * @throws EvaluationException If an error occured during {@link Node} evaluation.
@@ -64,8 +129,91 @@ public class FunctionNode extends Node {
    */
   @Override
   public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
-    return scope.getFunction(this.name).evaluate(scope, this.operands.stream()
-        .map(node -> node.evaluate(scope)).collect(Collectors.toList()));
+    Function function = this.resolveFunction(scope);
+    if (function instanceof BuiltinFunction builtin) {
+      int argumentsCount = this.operands.size();
+      if (argumentsCount == 1 && builtin.isUnary() || argumentsCount == 2 && builtin.isBinary()) {
+        if (builtin.getCost() > 1) {
+          // Calls to cheap builtins are covered by the cost of the function calling them
+          scope.getCallStack().consume(builtin.getCost());
+        }
+        double x = this.operands.get(0).evaluate(scope);
+        return argumentsCount == 1 ? builtin.apply(x) : builtin.apply(x, this.operands.get(1).evaluate(scope));
+      }
+    }
+    return this.call(scope, function);
+  }
+
+  /**
+   * Push the values of the operands onto the scope’s {@link CallStack} then call the given function.
+   *
+   * @param scope    Context of the evaluation.
+   * @param function The function to call.
+   * @return The function’s result.
+   */
+  protected double call(final Scope scope, final Function function) {
+    CallStack stack = scope.getCallStack();
+    int frame = stack.getStackPointer();
+    try {
+      for (Node operand : this.operands) {
+        stack.push(operand.evaluate(scope));
+      }
+    } catch (RuntimeException e) {
+      stack.release(frame);
+      throw e;
+    }
+    return function.call(scope, frame, this.operands.size());
+  }
+
+  /**
+   * Evaluate this call over intervals. Builtins are applied to the bounds of the operands directly,
+   * other functions are called through {@link Function#callInterval(Scope, Interval[])}.
+   */
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    Function function = this.resolveFunction(scope);
+    if (function instanceof BuiltinFunction builtin && this.operands.size() == builtin.getArity()) {
+      if (builtin.getCost() > 1) {
+        scope.getCallStack().consume(builtin.getCost());
+      }
+      return builtin.applyInterval(this.evaluateOperandsInterval(scope, locals));
+    }
+    return function.callInterval(scope, this.evaluateOperandsInterval(scope, locals));
+  }
+
+  /**
+   * Evaluate the operands over intervals.
+   *
+   * @param scope  Context of the evaluation.
+   * @param locals Bounds of the slots of the current frame.
+   * @return The bounds of the operands.
+   */
+  protected Interval[] evaluateOperandsInterval(final Scope scope, final Interval[] locals) {
+    Interval[] arguments = new Interval[this.operands.size()];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = this.operands.get(i).evaluateInterval(scope, locals);
+    }
+    return arguments;
+  }
+
+  /**
+   * Return the function called by this node in the given scope.
+   *
+   * @param scope The scope to resolve the function in.
+   * @return The function.
+   * @throws UndefinedFunctionException If no function with this node’s name exists in the scope.
+   */
+  private Function resolveFunction(final Scope scope) throws UndefinedFunctionException {
+    Resolution resolution = this.resolution;
+    // Versions are unique, a scope’s snapshots share the resolution as long as their definitions do not change
+    if (resolution != null && resolution.version == scope.getFunctionsVersion()) {
+      return resolution.function;
+    }
+    Function function = scope.getFunction(this.name);
+    if (scope.isGlobal()) {
+      this.resolution = new Resolution(scope.getFunctionsVersion(), function);
+    }
+    return function;
   }
 
   @Override
@@ -97,11 +245,30 @@ public class FunctionNode extends Node {
 
   @Override
   public int hashCode() {
-    return Objects.hash(this.name, this.operands);
+    int hash = this.hash;
+    if (hash == 0) {
+      hash = Objects.hash(this.name, this.operands);
+      this.hash = hash;
+    }
+    return hash;
   }
 
   @Override
   public String toString() {
     return String.format("%s(%s)", this.name, this.operands.stream().map(Object::toString).collect(Collectors.joining(", ")));
   }
+
+  /**
+   * A resolved function along with the version of the function definitions it was resolved in.
+   * Immutable so that it can be published by a single write to a plain field and read by any thread.
+   */
+  private static class Resolution {
+    final int version;
+    final Function function;
+
+    Resolution(final int version, final Function function) {
+      this.version = version;
+      this.function = function;
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -25,7 +26,7 @@ public class GreaterThanOperatorNode extends BiOperatorNode {
    * @param tag The tag to deserialize.
    */
   public GreaterThanOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super(">", tag);
   }
 
   @Override
@@ -33,6 +34,16 @@ public class GreaterThanOperatorNode extends BiOperatorNode {
     return left > right ? 1 : 0;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval left, final Interval right) {
+    return right.lessThan(left);
+  }
+
+  @Override
+  protected BiOperatorNode create(final Node left, final Node right) {
+    return new GreaterThanOperatorNode(left, right);
+  }
+
   @Override
   public int getID() {
     return ID;
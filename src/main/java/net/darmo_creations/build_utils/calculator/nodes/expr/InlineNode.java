@@ -0,0 +1,151 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link Node} representing a call to a user function whose body has been inlined in the caller’s body.
+ * <p>
+ * The operands are the arguments that have to be stored, followed by the relocated body of the callee.
+ * Arguments are stored in the slots of the caller’s frame starting at this node’s slot, the body reads them
+ * from there; constant arguments and parameters of the caller are directly substituted in the body instead.
+ * The call consumes the fuel of a regular call but does not enter a frame.
+ * <p>
+ * Inlined calls only exist in the optimized bodies of user functions, they are never serialized.
+ */
+public class InlineNode extends OperatorNode {
+  public static final int ID = 701;
+
+  private final int slot;
+  private final int cost;
+  private final int sourceSize;
+
+  /**
+   * Create an inlined call.
+   *
+   * @param name      Name of the called function.
+   * @param cost       Amount of fuel consumed by the call.
+   * @param sourceSize Number of nodes of the call in the source tree, arguments included.
+   * @param slot      Index of the slot of the first stored argument in the caller’s frame.
+   * @param arguments Arguments to store.
+   * @param body      The callee’s relocated body.
+   */
+  public InlineNode(final String name, final int cost, final int sourceSize, final int slot, final List<Node> arguments,
+                    final Node body) {
+    super(name, arguments.size() + 1, concat(arguments, body));
+    this.slot = slot;
+    this.cost = cost;
+    this.sourceSize = sourceSize;
+  }
+
+  private static List<Node> concat(final List<Node> arguments, final Node body) {
+    List<Node> operands = new ArrayList<>(arguments);
+    operands.add(body);
+    return operands;
+  }
+
+  /**
+   * Return the index of the slot of the first stored argument in the caller’s frame.
+   */
+  public int getSlot() {
+    return this.slot;
+  }
+
+  /**
+   * Return the amount of fuel consumed by the call.
+   */
+  public int getCost() {
+    return this.cost;
+  }
+
+  /**
+   * Return the arguments to store.
+   */
+  public List<Node> getArguments() {
+    return new ArrayList<>(this.operands.subList(0, this.operands.size() - 1));
+  }
+
+  /**
+   * Return the callee’s relocated body.
+   */
+  public Node getBody() {
+    return this.operands.get(this.operands.size() - 1);
+  }
+
+  /**
+   * Return the number of nodes of the call in the source tree, the callee’s body is not part of it.
+   */
+  @Override
+  public int getSourceSize() {
+    return this.sourceSize;
+  }
+
+  /**
+   * Store the arguments, consume the fuel of the call then evaluate the body.
+   */
+  @Override
+  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
+    CallStack stack = scope.getCallStack();
+    int count = this.operands.size() - 1;
+    for (int i = 0; i < count; i++) {
+      stack.setLocal(this.slot + i, this.operands.get(i).evaluate(scope));
+    }
+    stack.consume(this.cost);
+    return this.operands.get(count).evaluate(scope);
+  }
+
+  /**
+   * Store the bounds of the arguments, consume the fuel of the call then evaluate the body over intervals.
+   */
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    int count = this.operands.size() - 1;
+    for (int i = 0; i < count; i++) {
+      locals[this.slot + i] = this.operands.get(i).evaluateInterval(scope, locals);
+    }
+    scope.getCallStack().consume(this.cost);
+    return this.operands.get(count).evaluateInterval(scope, locals);
+  }
+
+  @Override
+  public InlineNode withOperands(final List<Node> operands) {
+    int count = operands.size() - 1;
+    return new InlineNode(this.getName(), this.cost, this.sourceSize, this.slot, operands.subList(0, count), operands.get(count));
+  }
+
+  /**
+   * Inlined calls cannot be serialized.
+   *
+   * @throws UnsupportedOperationException Always.
+   */
+  @Override
+  public CompoundTag writeToNBT() {
+    throw new UnsupportedOperationException("inlined calls cannot be serialized");
+  }
+
+  @Override
+  public int getID() {
+    return ID;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o)) {
+      return false;
+    }
+    InlineNode that = (InlineNode) o;
+    return this.slot == that.slot && this.cost == that.cost && this.sourceSize == that.sourceSize;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), this.slot, this.cost, this.sourceSize);
+  }
+}
@@ -0,0 +1,104 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.List;
+
+/**
+ * A {@link Node} representing {@code integrate(x, a, b, expr, n)}, the integral of expr for x going
+ * from a to b, approximated with Simpson’s rule over n subintervals.
+ * The number of subintervals is rounded down then up to the next even number if it is odd.
+ */
+public class IntegralNode extends AggregateNode {
+  public static final int ID = 602;
+
+  /**
+   * Create an integral.
+   *
+   * @param variable Name of the variable.
+   * @param operands The lower bound, upper bound, expression and number of subintervals.
+   */
+  public IntegralNode(final String variable, final List<Node> operands) {
+    super("integrate", 4, variable, operands);
+  }
+
+  /**
+   * Create an integral from an NBT tag.
+   *
+   * @param tag The tag to deserialize.
+   */
+  public IntegralNode(final CompoundTag tag) {
+    super("integrate", 4, tag);
+  }
+
+  private IntegralNode(final String variable, final List<Node> operands, final int slot, final boolean owner) {
+    super("integrate", 4, variable, operands, slot, owner);
+  }
+
+  /**
+   * Approximate the integral with Simpson’s rule.
+   *
+   * @throws ArithmeticException If the number of subintervals is less than 1 or NaN.
+   */
+  @Override
+  protected double aggregate(final Scope scope, final CallStack stack) {
+    double a = this.operands.get(0).evaluate(scope);
+    double b = this.operands.get(1).evaluate(scope);
+    double n = this.operands.get(3).evaluate(scope);
+    if (!(n >= 1)) {
+      throw new ArithmeticException("integrate needs at least 1 subinterval");
+    }
+    // Fuel runs out long before this limit is reached
+    long count = Math.min((long) n, Integer.MAX_VALUE - 1);
+    if (count % 2 == 1) {
+      count++;
+    }
+    double h = (b - a) / count;
+    double sum = this.evaluateBody(scope, stack, a) + this.evaluateBody(scope, stack, b);
+    for (long i = 1; i < count; i++) {
+      sum += (i % 2 == 1 ? 4 : 2) * this.evaluateBody(scope, stack, a + i * h);
+    }
+    return sum * h / 3;
+  }
+
+  /**
+   * Replicate Simpson’s rule with interval operations if the number of subintervals is a point,
+   * as the sampled points depend on it.
+   */
+  @Override
+  protected Interval aggregateInterval(final Scope scope, final Interval[] locals) {
+    Interval a = this.operands.get(0).evaluateInterval(scope, locals);
+    Interval b = this.operands.get(1).evaluateInterval(scope, locals);
+    Interval n = this.operands.get(3).evaluateInterval(scope, locals);
+    if (!(n.getHi() >= 1)) {
+      return Interval.EMPTY;
+    }
+    if (n.getLo() != n.getHi()) {
+      return Interval.ENTIRE_OR_NAN;
+    }
+    long count = Math.min((long) n.getLo(), Integer.MAX_VALUE - 1);
+    if (count % 2 == 1) {
+      count++;
+    }
+    Interval h = b.subtract(a).divide(Interval.point(count));
+    Interval sum = this.evaluateBodyInterval(scope, locals, a).add(this.evaluateBodyInterval(scope, locals, b));
+    for (long i = 1; i < count; i++) {
+      Interval x = a.add(Interval.point(i).multiply(h));
+      sum = sum.add(Interval.point(i % 2 == 1 ? 4 : 2).multiply(this.evaluateBodyInterval(scope, locals, x)));
+    }
+    return sum.multiply(h).divide(Interval.point(3));
+  }
+
+  @Override
+  protected IntegralNode create(final String variable, final List<Node> operands, final int slot, final boolean owner) {
+    return new IntegralNode(variable, operands, slot, owner);
+  }
+
+  @Override
+  public int getID() {
+    return ID;
+  }
+}
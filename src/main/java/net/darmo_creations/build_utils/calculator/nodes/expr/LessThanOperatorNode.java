@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -25,7 +26,7 @@ public class LessThanOperatorNode extends BiOperatorNode {
    * @param tag The tag to deserialize.
    */
   public LessThanOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("<", tag);
   }
 
   @Override
@@ -33,6 +34,16 @@ public class LessThanOperatorNode extends BiOperatorNode {
     return left < right ? 1 : 0;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval left, final Interval right) {
+    return left.lessThan(right);
+  }
+
+  @Override
+  protected BiOperatorNode create(final Node left, final Node right) {
+    return new LessThanOperatorNode(left, right);
+  }
+
   @Override
   public int getID() {
     return ID;
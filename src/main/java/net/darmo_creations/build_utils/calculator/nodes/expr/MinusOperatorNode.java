@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -23,7 +24,7 @@ public class MinusOperatorNode extends UnaryOperatorNode {
    * @param tag The tag to deserialize.
    */
   public MinusOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("-", tag);
   }
 
   @Override
@@ -31,6 +32,16 @@ public class MinusOperatorNode extends UnaryOperatorNode {
     return -value;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval value) {
+    return value.negate();
+  }
+
+  @Override
+  protected UnaryOperatorNode create(final Node operand) {
+    return new MinusOperatorNode(operand);
+  }
+
   @Override
   public int getID() {
     return ID;
@@ -1,6 +1,7 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
 import net.darmo_creations.build_utils.Utils;
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -25,7 +26,7 @@ public class ModuloOperatorNode extends BiOperatorNode {
    * @param tag The tag to deserialize.
    */
   public ModuloOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("%", tag);
   }
 
   /**
@@ -41,6 +42,16 @@ public class ModuloOperatorNode extends BiOperatorNode {
     return Utils.trueModulo(left, right);
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval left, final Interval right) {
+    return left.modulo(right);
+  }
+
+  @Override
+  protected BiOperatorNode create(final Node left, final Node right) {
+    return new ModuloOperatorNode(left, right);
+  }
+
   @Override
   public int getID() {
     return ID;
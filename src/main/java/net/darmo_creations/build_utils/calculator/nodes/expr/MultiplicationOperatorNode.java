@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -24,7 +25,7 @@ public class MultiplicationOperatorNode extends BiOperatorNode {
    * @param tag The tag to deserialize.
    */
   public MultiplicationOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("*", tag);
   }
 
   @Override
@@ -32,6 +33,16 @@ public class MultiplicationOperatorNode extends BiOperatorNode {
     return left * right;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval left, final Interval right) {
+    return left.multiply(right);
+  }
+
+  @Override
+  protected BiOperatorNode create(final Node left, final Node right) {
+    return new MultiplicationOperatorNode(left, right);
+  }
+
   @Override
   public int getID() {
     return ID;
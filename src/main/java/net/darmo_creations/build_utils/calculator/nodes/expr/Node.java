@@ -1,10 +1,13 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.darmo_creations.build_utils.calculator.Scope;
 import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
 import net.darmo_creations.build_utils.calculator.exceptions.UndefinedVariableException;
 import net.minecraft.nbt.CompoundTag;
 
+import java.util.function.UnaryOperator;
+
 /**
  * A node is the base component of an expression tree.
  */
@@ -21,6 +24,37 @@ public abstract class Node {
    */
   public abstract double evaluate(final Scope scope) throws UndefinedVariableException, ArithmeticException;
 
+  /**
+   * Evaluate this node over intervals: the result contains the value returned by {@link #evaluate(Scope)}
+   * for any values of the locals taken in the given intervals, evaluations that fail or return NaN excepted.
+   *
+   * @param scope  The scope to use.
+   * @param locals Bounds of the slots of the current frame, indexed like the call stack’s locals.
+   * @return The bounds of this node’s values.
+   * @throws EvaluationException If an error occured during evaluation.
+   */
+  public abstract Interval evaluateInterval(final Scope scope, final Interval[] locals);
+
+  /**
+   * Rebuild this tree bottom-up by applying the given function to each node,
+   * operands being transformed before the node they belong to.
+   * Nodes whose operands are left unchanged are not copied.
+   *
+   * @param f The function to apply to each node.
+   * @return The transformed tree.
+   */
+  public Node transform(final UnaryOperator<Node> f) {
+    return f.apply(this);
+  }
+
+  /**
+   * Return the number of nodes of the source tree this node stands for. Nodes introduced by optimizations
+   * count as the nodes they replace, so that fuel consumption does not depend on optimizations.
+   */
+  public int getSourceSize() {
+    return 1;
+  }
+
   /**
    * Serialize this node into an NBT tag.
    *
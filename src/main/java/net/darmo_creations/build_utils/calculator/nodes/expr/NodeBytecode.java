@@ -0,0 +1,346 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Utility class for the compact binary serialization of {@link Node} trees.
+ * <p>
+ * Trees are encoded as postfix bytecode: operands are written before the node they belong to,
+ * they are thus decoded with a simple stack, without recursion. Numbers and names are stored once
+ * in a constant pool and a symbol table and referenced by their index. Subtrees that occur several times
+ * are also stored once then referenced, the decoded tree is thus a DAG sharing them.
+ * <p>
+ * Layout: format version (byte), constants count (varint) then each constant (double),
+ * symbols count (varint) then each symbol (modified UTF-8), then instructions until the end.
+ * Each instruction is an opcode byte possibly followed by varint arguments:
+ * <ul>
+ *   <li>{@code CONST index}: pushes a {@link NumberNode};</li>
+ *   <li>{@code VAR symbol}: pushes a {@link VariableNode};</li>
+ *   <li>{@code CALL symbol count}: pops the arguments then pushes a {@link FunctionNode};</li>
+ *   <li>{@code SAVE}: appends the node on top of the stack to the back-references, without popping it;</li>
+ *   <li>{@code LOAD index}: pushes a back-reference;</li>
+ *   <li>an operator opcode: pops the operands then pushes the {@link OperatorNode};</li>
+ *   <li>an aggregate opcode followed by the symbol of its variable: pops the operands
+ *   then pushes the {@link AggregateNode}.</li>
+ * </ul>
+ * Opcodes are part of the saved data, they must never be changed or reused. The format version must be incremented
+ * whenever opcodes are added, so that older versions of the mod reject data they cannot decode.
+ * Version 2 added back-references, data of version 1 is still decoded.
+ */
+public final class NodeBytecode {
+  private static final int FORMAT_VERSION = 2;
+  /**
+   * First format version with the {@code SAVE} and {@code LOAD} opcodes.
+   */
+  private static final int BACK_REFERENCES_VERSION = 2;
+
+  private static final int CONST = 0x01;
+  private static final int VAR = 0x02;
+  private static final int CALL = 0x03;
+  private static final int SAVE = 0x04;
+  private static final int LOAD = 0x05;
+
+  /**
+   * Operators indexed by their opcode.
+   */
+  private static final Operator[] OPERATORS = new Operator[256];
+  /**
+   * Operator opcodes indexed by node ID.
+   */
+  private static final Map<Integer, Integer> OPCODES = new HashMap<>();
+
+  static {
+    register(0x10, MinusOperatorNode.ID, 1, o -> new MinusOperatorNode(o[0]));
+    register(0x11, NotOperatorNode.ID, 1, o -> new NotOperatorNode(o[0]));
+    register(0x20, AdditionOperatorNode.ID, 2, o -> new AdditionOperatorNode(o[0], o[1]));
+    register(0x21, SubtractionOperatorNode.ID, 2, o -> new SubtractionOperatorNode(o[0], o[1]));
+    register(0x22, MultiplicationOperatorNode.ID, 2, o -> new MultiplicationOperatorNode(o[0], o[1]));
+    register(0x23, DivisionOperatorNode.ID, 2, o -> new DivisionOperatorNode(o[0], o[1]));
+    register(0x24, ModuloOperatorNode.ID, 2, o -> new ModuloOperatorNode(o[0], o[1]));
+    register(0x25, PowerOperatorNode.ID, 2, o -> new PowerOperatorNode(o[0], o[1]));
+    register(0x26, AndOperatorNode.ID, 2, o -> new AndOperatorNode(o[0], o[1]));
+    register(0x27, OrOperatorNode.ID, 2, o -> new OrOperatorNode(o[0], o[1]));
+    register(0x28, EqualToOperatorNode.ID, 2, o -> new EqualToOperatorNode(o[0], o[1]));
+    register(0x29, NotEqualToOperatorNode.ID, 2, o -> new NotEqualToOperatorNode(o[0], o[1]));
+    register(0x2a, GreaterThanOperatorNode.ID, 2, o -> new GreaterThanOperatorNode(o[0], o[1]));
+    register(0x2b, GreaterThanOrEqualToOperatorNode.ID, 2, o -> new GreaterThanOrEqualToOperatorNode(o[0], o[1]));
+    register(0x2c, LessThanOperatorNode.ID, 2, o -> new LessThanOperatorNode(o[0], o[1]));
+    register(0x2d, LessThanOrEqualToOperatorNode.ID, 2, o -> new LessThanOrEqualToOperatorNode(o[0], o[1]));
+    register(0x30, ConditionalNode.ID, 3, o -> new ConditionalNode(o[0], o[1], o[2]));
+    registerAggregate(0x40, SumNode.ID, 3, (v, o) -> new SumNode(v, Arrays.asList(o)));
+    registerAggregate(0x41, ProductNode.ID, 3, (v, o) -> new ProductNode(v, Arrays.asList(o)));
+    registerAggregate(0x42, IntegralNode.ID, 4, (v, o) -> new IntegralNode(v, Arrays.asList(o)));
+    registerAggregate(0x43, SolveNode.ID, 3, (v, o) -> new SolveNode(v, Arrays.asList(o)));
+  }
+
+  private static void register(final int opcode, final int nodeID, final int arity, final Function<Node[], Node> factory) {
+    OPERATORS[opcode] = new Operator(arity, false, (variable, operands) -> factory.apply(operands));
+    OPCODES.put(nodeID, opcode);
+  }
+
+  private static void registerAggregate(final int opcode, final int nodeID, final int arity,
+                                        final BiFunction<String, Node[], Node> factory) {
+    OPERATORS[opcode] = new Operator(arity, true, factory);
+    OPCODES.put(nodeID, opcode);
+  }
+
+  /**
+   * Encode the given tree.
+   *
+   * @param node The tree to encode.
+   * @return The bytecode.
+   * @throws IllegalArgumentException If the tree contains a node type that has no opcode.
+   */
+  public static byte[] encode(final Node node) {
+    Encoder encoder = new Encoder();
+    encoder.count(node);
+    encoder.emit(node);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(encoder.code.size() + 8 * encoder.constants.size() + 16);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(FORMAT_VERSION);
+      writeVarInt(out, encoder.constants.size());
+      for (double constant : encoder.constants.keySet()) {
+        out.writeDouble(constant);
+      }
+      writeVarInt(out, encoder.symbols.size());
+      for (String symbol : encoder.symbols.keySet()) {
+        out.writeUTF(symbol);
+      }
+      encoder.code.writeTo(out);
+    } catch (IOException e) {
+      // Cannot happen with an in-memory stream
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode a tree encoded by {@link #encode(Node)}.
+   *
+   * @param bytes The bytecode.
+   * @return The tree.
+   * @throws IllegalArgumentException If the bytecode is malformed.
+   */
+  public static Node decode(final byte[] bytes) {
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      int version = in.readUnsignedByte();
+      if (version < 1 || version > FORMAT_VERSION) {
+        throw new IllegalArgumentException("Unsupported bytecode version: " + version);
+      }
+      double[] constants = new double[readCount(in, bytes.length / 8)];
+      for (int i = 0; i < constants.length; i++) {
+        constants[i] = in.readDouble();
+      }
+      String[] symbols = new String[readCount(in, bytes.length / 2)];
+      for (int i = 0; i < symbols.length; i++) {
+        symbols[i] = in.readUTF();
+      }
+      Node[] stack = new Node[16];
+      int size = 0;
+      List<Node> references = new ArrayList<>();
+      int opcode;
+      while ((opcode = in.read()) >= 0) {
+        if ((opcode == SAVE || opcode == LOAD) && version < BACK_REFERENCES_VERSION) {
+          throw new IllegalArgumentException("Undefined opcode in version " + version + ": " + opcode);
+        }
+        Node node;
+        switch (opcode) {
+          case SAVE -> {
+            references.add(stack[checkOperands(size, 1) - 1]);
+            continue;
+          }
+          case LOAD -> node = references.get(readCount(in, references.size() - 1));
+          case CONST -> node = new NumberNode(constants[readVarInt(in)]);
+          case VAR -> node = new VariableNode(symbols[readVarInt(in)]);
+          case CALL -> {
+            String name = symbols[readVarInt(in)];
+            int count = readCount(in, size);
+            size -= count;
+            node = new FunctionNode(name, Arrays.asList(Arrays.copyOfRange(stack, size, size + count)));
+          }
+          default -> {
+            Operator operator = OPERATORS[opcode];
+            if (operator == null) {
+              throw new IllegalArgumentException("Undefined opcode: " + opcode);
+            }
+            String variable = operator.binds ? symbols[readVarInt(in)] : null;
+            size -= checkOperands(size, operator.arity);
+            node = operator.factory.apply(variable, Arrays.copyOfRange(stack, size, size + operator.arity));
+          }
+        }
+        if (size == stack.length) {
+          stack = Arrays.copyOf(stack, 2 * size);
+        }
+        stack[size++] = node;
+      }
+      if (size != 1) {
+        throw new IllegalArgumentException("Malformed bytecode: " + size + " nodes left on the stack");
+      }
+      return stack[0];
+    } catch (IOException | ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Malformed bytecode", e);
+    }
+  }
+
+  /**
+   * Check that the stack holds enough operands.
+   *
+   * @return The number of operands.
+   */
+  private static int checkOperands(final int size, final int count) {
+    if (count > size) {
+      throw new IllegalArgumentException("Malformed bytecode: stack underflow");
+    }
+    return count;
+  }
+
+  /**
+   * Read a count, the data cannot hold more elements than the given maximum.
+   */
+  private static int readCount(final DataInput in, final int max) throws IOException {
+    int count = readVarInt(in);
+    if (count < 0 || count > max) {
+      throw new IllegalArgumentException("Malformed bytecode: invalid count " + count);
+    }
+    return count;
+  }
+
+  private static void writeVarInt(final DataOutput out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte(value & 0x7f | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(final DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed bytecode: varint too long");
+  }
+
+  /**
+   * Accumulates the constant pool, symbol table, back-references and instructions of a tree.
+   */
+  private static class Encoder {
+    final Map<Double, Integer> constants = new LinkedHashMap<>();
+    final Map<String, Integer> symbols = new LinkedHashMap<>();
+    /**
+     * Number of occurrences of each non-leaf subtree, occurrences nested in a repeated subtree
+     * are only counted once.
+     */
+    final Map<Node, Integer> occurrences = new HashMap<>();
+    /**
+     * Back-reference indices of the repeated subtrees that have been emitted.
+     */
+    final Map<Node, Integer> references = new HashMap<>();
+    final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(this.code);
+
+    void count(Node node) {
+      node = unwrap(node);
+      if (node instanceof FunctionNode f && this.occurrences.merge(node, 1, Integer::sum) == 1) {
+        f.getOperands().forEach(this::count);
+      }
+    }
+
+    void emit(Node node) {
+      node = unwrap(node);
+      try {
+        Integer reference = this.references.get(node);
+        if (reference != null) {
+          this.out.writeByte(LOAD);
+          writeVarInt(this.out, reference);
+        } else {
+          this.emitNode(node);
+          if (this.occurrences.getOrDefault(node, 0) > 1) {
+            this.out.writeByte(SAVE);
+            this.references.put(node, this.references.size());
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Shared subexpressions are computed again when their tree is deserialized.
+     */
+    static Node unwrap(Node node) {
+      while (node instanceof SharedNode s) {
+        node = s.getExpression();
+      }
+      return node;
+    }
+
+    void emitNode(final Node node) {
+      try {
+        if (node instanceof NumberNode n) {
+          this.out.writeByte(CONST);
+          // Double keys compare bit patterns, NaN and -0 are thus kept as is
+          writeVarInt(this.out, this.constants.computeIfAbsent(n.getValue(), k -> this.constants.size()));
+        } else if (node instanceof VariableNode v) {
+          // Parameters and aggregate variables are resolved again when their tree is deserialized
+          this.out.writeByte(VAR);
+          writeVarInt(this.out, this.symbol(v.getName()));
+        } else if (node instanceof FunctionNode f) {
+          List<Node> operands = f.getOperands();
+          operands.forEach(this::emit);
+          if (node.getID() == FunctionNode.ID) {
+            this.out.writeByte(CALL);
+            writeVarInt(this.out, this.symbol(f.getName()));
+            writeVarInt(this.out, operands.size());
+          } else {
+            Integer opcode = OPCODES.get(node.getID());
+            if (opcode == null) {
+              throw new IllegalArgumentException("No opcode for node ID: " + node.getID());
+            }
+            this.out.writeByte(opcode);
+            if (node instanceof AggregateNode a) {
+              writeVarInt(this.out, this.symbol(a.getVariable()));
+            }
+          }
+        } else {
+          throw new IllegalArgumentException("No opcode for node ID: " + node.getID());
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    int symbol(final String name) {
+      return this.symbols.computeIfAbsent(name, k -> this.symbols.size());
+    }
+  }
+
+  /**
+   * An operator’s arity and the function that creates it from its variable, if it binds one, and its operands.
+   */
+  private static class Operator {
+    final int arity;
+    /**
+     * Whether the opcode is followed by the symbol of a variable.
+     */
+    final boolean binds;
+    final BiFunction<String, Node[], Node> factory;
+
+    Operator(final int arity, final boolean binds, final BiFunction<String, Node[], Node> factory) {
+      this.arity = arity;
+      this.binds = binds;
+      this.factory = factory;
+    }
+  }
+
+  private NodeBytecode() {
+  }
+}
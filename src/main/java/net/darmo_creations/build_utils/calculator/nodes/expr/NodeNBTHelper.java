@@ -1,6 +1,8 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.minecraft.nbt.ByteArrayTag;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -8,6 +10,9 @@ import java.util.function.Function;
 
 /**
  * Utility class for deserializing {@link Node}s from NBT tags.
+ * <p>
+ * Trees are saved as a single {@link ByteArrayTag} holding their {@link NodeBytecode},
+ * trees saved by previous versions as nested {@link CompoundTag}s are still read.
  */
 public final class NodeNBTHelper {
   private static final Map<Integer, Function<CompoundTag, Node>> NODE_PROVIDERS = new HashMap<>();
@@ -32,6 +37,11 @@ public final class NodeNBTHelper {
     NODE_PROVIDERS.put(GreaterThanOrEqualToOperatorNode.ID, GreaterThanOrEqualToOperatorNode::new);
     NODE_PROVIDERS.put(LessThanOperatorNode.ID, LessThanOperatorNode::new);
     NODE_PROVIDERS.put(LessThanOrEqualToOperatorNode.ID, LessThanOrEqualToOperatorNode::new);
+    NODE_PROVIDERS.put(ConditionalNode.ID, ConditionalNode::new);
+    NODE_PROVIDERS.put(SumNode.ID, SumNode::new);
+    NODE_PROVIDERS.put(ProductNode.ID, ProductNode::new);
+    NODE_PROVIDERS.put(IntegralNode.ID, IntegralNode::new);
+    NODE_PROVIDERS.put(SolveNode.ID, SolveNode::new);
   }
 
   /**
@@ -49,6 +59,34 @@ public final class NodeNBTHelper {
     return NODE_PROVIDERS.get(tagID).apply(tag);
   }
 
+  /**
+   * Serialize the given tree into a compact tag.
+   *
+   * @param node The tree to serialize.
+   * @return The tag.
+   * @see NodeBytecode#encode(Node)
+   */
+  public static Tag writeNode(final Node node) {
+    return new ByteArrayTag(NodeBytecode.encode(node));
+  }
+
+  /**
+   * Return the tree serialized in the given tag, either by {@link #writeNode(Node)}
+   * or by {@link Node#writeToNBT()}.
+   *
+   * @param tag The tag to deserialize.
+   * @return The tree.
+   * @throws IllegalArgumentException If the tag does not hold a valid tree.
+   */
+  public static Node readNode(final Tag tag) {
+    if (tag instanceof ByteArrayTag bytes) {
+      return NodeBytecode.decode(bytes.getAsByteArray());
+    } else if (tag instanceof CompoundTag compound) {
+      return getNodeForTag(compound);
+    }
+    throw new IllegalArgumentException("Invalid node tag: " + tag);
+  }
+
   private NodeNBTHelper() {
   }
 }
@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.minecraft.nbt.CompoundTag;
 
 /**
@@ -23,7 +24,7 @@ public class NotOperatorNode extends UnaryOperatorNode {
    * @param tag The tag to deserialize.
    */
   public NotOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("!", tag);
   }
 
   @Override
@@ -31,6 +32,16 @@ public class NotOperatorNode extends UnaryOperatorNode {
     return value == 0 ? 1 : 0;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval value) {
+    return value.not();
+  }
+
+  @Override
+  protected UnaryOperatorNode create(final Node operand) {
+    return new NotOperatorNode(operand);
+  }
+
   @Override
   public int getID() {
     return ID;
@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.darmo_creations.build_utils.calculator.Scope;
 import net.minecraft.nbt.CompoundTag;
 
@@ -33,6 +34,13 @@ public class NumberNode extends Node {
     this(tag.getDouble(VALUE_KEY));
   }
 
+  /**
+   * Return the number held by this node.
+   */
+  public double getValue() {
+    return this.value;
+  }
+
   /**
    * Return the value of this node.
    *
@@ -43,6 +51,11 @@ public class NumberNode extends Node {
     return this.value;
   }
 
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    return Interval.point(this.value);
+  }
+
   @Override
   public CompoundTag writeToNBT() {
     CompoundTag tag = super.writeToNBT();
@@ -6,11 +6,12 @@ import net.darmo_creations.build_utils.calculator.exceptions.SyntaxErrorExceptio
 import net.minecraft.nbt.CompoundTag;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * A {@link Node} representing an operator. Operators are special kinds of functions
  * that use an infixed symbol instead of a prefixed name.
+ * <p>
+ * Operators are evaluated directly by their subclasses, not through the scope’s functions.
  */
 public abstract class OperatorNode extends FunctionNode {
   /**
@@ -29,12 +30,15 @@ public abstract class OperatorNode extends FunctionNode {
   }
 
   /**
-   * Create an operator from an NBT tag.
+   * Create an operator from an NBT tag. The symbol stored in the tag is ignored.
    *
-   * @param tag The tag to deserialize.
+   * @param symbol Operator’s symbol.
+   * @param arity  Operator’s arity, i.e. its number of operands.
+   * @param tag    The tag to deserialize.
+   * @throws SyntaxErrorException If the number of operands does not match the arity.
    */
-  public OperatorNode(final CompoundTag tag) {
-    super(tag);
+  public OperatorNode(final String symbol, final int arity, final CompoundTag tag) throws SyntaxErrorException {
+    this(symbol, arity, deserializeOperands(tag));
   }
 
   /**
@@ -45,15 +49,5 @@ public abstract class OperatorNode extends FunctionNode {
    * @throws ArithmeticException If a math error occured.
    */
   @Override
-  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
-    return this.evaluateImpl(this.operands.stream().map(node -> node.evaluate(scope)).collect(Collectors.toList()));
-  }
-
-  /**
-   * Delegate method that returns the result of the operator.
-   *
-   * @param values Values of the operands.
-   * @return Operator’s result.
-   */
-  protected abstract double evaluateImpl(final List<Double> values);
+  public abstract double evaluate(final Scope scope) throws EvaluationException, ArithmeticException;
 }
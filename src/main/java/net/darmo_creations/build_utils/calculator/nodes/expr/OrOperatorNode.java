@@ -1,10 +1,14 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
 import net.minecraft.nbt.CompoundTag;
 
 /**
  * A {@link Node} representing the logical "or" operator.
- * If the left operand is not 0, it is returned; otherwise the right value is returned.
+ * If the left operand is not 0, it is returned without evaluating the right operand;
+ * otherwise the right value is returned.
  */
 public class OrOperatorNode extends BiOperatorNode {
   public static final int ID = 407;
@@ -16,7 +20,7 @@ public class OrOperatorNode extends BiOperatorNode {
    * @param right The right operand.
    */
   public OrOperatorNode(final Node left, final Node right) {
-    super("&", left, right);
+    super("|", left, right);
   }
 
   /**
@@ -25,7 +29,22 @@ public class OrOperatorNode extends BiOperatorNode {
    * @param tag The tag to deserialize.
    */
   public OrOperatorNode(final CompoundTag tag) {
-    super(tag);
+    super("|", tag);
+  }
+
+  @Override
+  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
+    double left = this.left.evaluate(scope);
+    return left != 0 ? left : this.right.evaluate(scope);
+  }
+
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    Interval left = this.left.evaluateInterval(scope, locals);
+    if (!left.canBeZero()) {
+      return left;
+    }
+    return this.evaluateIntervalImpl(left, this.right.evaluateInterval(scope, locals));
   }
 
   @Override
@@ -33,6 +52,19 @@ public class OrOperatorNode extends BiOperatorNode {
     return left != 0 ? left : right;
   }
 
+  @Override
+  protected Interval evaluateIntervalImpl(final Interval left, final Interval right) {
+    if (!left.canBeZero()) {
+      return left;
+    }
+    return left.canBeNonZero() ? left.hull(right) : right;
+  }
+
+  @Override
+  protected BiOperatorNode create(final Node left, final Node right) {
+    return new OrOperatorNode(left, right);
+  }
+
   @Override
   public int getID() {
     return ID;
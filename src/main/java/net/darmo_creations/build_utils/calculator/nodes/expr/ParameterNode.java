@@ -0,0 +1,118 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link Node} representing a reference to a function parameter or to the variable of an {@link AggregateNode},
+ * resolved to a slot of the current frame. It is serialized as a plain {@link VariableNode} and resolved again
+ * when the tree is deserialized.
+ */
+public class ParameterNode extends VariableNode {
+  private final int slot;
+
+  /**
+   * Create a parameter {@link Node}.
+   *
+   * @param name Parameter’s name.
+   * @param slot Index of the parameter’s slot in the function’s frame.
+   */
+  public ParameterNode(final String name, final int slot) {
+    super(name);
+    this.slot = slot;
+  }
+
+  /**
+   * Replace all references to the given locals by {@link ParameterNode}s bound to their frame slot.
+   * The variables of nested {@link AggregateNode}s are bound to the slots following the locals,
+   * shadowing locals with the same name. References to names that are not locals are resolved
+   * in the global scope when evaluated.
+   *
+   * @param node   The tree to resolve.
+   * @param locals Names of the slots of the current frame, in slot order.
+   * @return The resolved tree.
+   */
+  public static Node resolve(final Node node, final List<String> locals) {
+    if (node instanceof VariableNode v) {
+      int slot = locals.lastIndexOf(v.getName());
+      if (slot < 0) {
+        return node instanceof ParameterNode ? new VariableNode(v.getName()) : node;
+      }
+      return node instanceof ParameterNode p && p.slot == slot ? node : new ParameterNode(v.getName(), slot);
+    } else if (node instanceof AggregateNode a) {
+      return a.resolve(locals);
+    } else if (node instanceof FunctionNode f) {
+      List<Node> operands = f.getOperands();
+      boolean changed = false;
+      for (int i = 0; i < operands.size(); i++) {
+        Node operand = operands.get(i);
+        Node resolved = resolve(operand, locals);
+        changed |= resolved != operand;
+        operands.set(i, resolved);
+      }
+      return changed ? f.withOperands(operands) : node;
+    }
+    return node;
+  }
+
+  /**
+   * Move a resolved function body to another frame: references to the function’s parameters are replaced
+   * by the given nodes and the variables of its aggregates are moved to the slots starting at the given offset.
+   *
+   * @param node       The resolved body.
+   * @param parameters Nodes replacing each parameter.
+   * @param offset     Index of the slot of the first aggregate variable in the new frame.
+   * @return The relocated body.
+   */
+  public static Node relocate(final Node node, final List<Node> parameters, final int offset) {
+    if (node instanceof ParameterNode p) {
+      return p.slot < parameters.size()
+          ? parameters.get(p.slot)
+          : new ParameterNode(p.getName(), p.slot - parameters.size() + offset);
+    } else if (node instanceof FunctionNode f) {
+      List<Node> operands = f.getOperands();
+      operands.replaceAll(operand -> relocate(operand, parameters, offset));
+      if (node instanceof AggregateNode a) {
+        return a.relocate(operands, a.getSlot() - parameters.size() + offset);
+      }
+      return f.withOperands(operands);
+    }
+    return node;
+  }
+
+  /**
+   * Return the index of the parameter’s slot in the function’s frame.
+   */
+  public int getSlot() {
+    return this.slot;
+  }
+
+  /**
+   * Return the value of the parameter in the current frame of the scope’s {@link CallStack}.
+   *
+   * @return The parameter’s value.
+   */
+  @Override
+  public double evaluate(final Scope scope) {
+    return scope.getCallStack().getLocal(this.slot);
+  }
+
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    return locals[this.slot];
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o) && this.slot == ((ParameterNode) o).slot;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), this.slot);
+  }
+}
@@ -0,0 +1,69 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.List;
+
+/**
+ * A {@link Node} representing {@code prod(i, from, to, expr)}, the product of expr
+ * for i going from {@code from} to {@code to} by steps of 1.
+ * The product is 1 if {@code from} is greater than {@code to}.
+ */
+public class ProductNode extends AggregateNode {
+  public static final int ID = 601;
+
+  /**
+   * Create the product.
+   *
+   * @param variable Name of the variable.
+   * @param operands The lower bound, upper bound and expression.
+   */
+  public ProductNode(final String variable, final List<Node> operands) {
+    super("prod", 3, variable, operands);
+  }
+
+  /**
+   * Create the product from an NBT tag.
+   *
+   * @param tag The tag to deserialize.
+   */
+  public ProductNode(final CompoundTag tag) {
+    super("prod", 3, tag);
+  }
+
+  private ProductNode(final String variable, final List<Node> operands, final int slot, final boolean owner) {
+    super("prod", 3, variable, operands, slot, owner);
+  }
+
+  /**
+   * Return the product of the body’s values.
+   */
+  @Override
+  protected double aggregate(final Scope scope, final CallStack stack) {
+    double from = this.operands.get(0).evaluate(scope);
+    double to = this.operands.get(1).evaluate(scope);
+    double product = 1;
+    for (long i = 0; from + i <= to; i++) {
+      product *= this.evaluateBody(scope, stack, from + i);
+    }
+    return product;
+  }
+
+  @Override
+  protected Interval aggregateInterval(final Scope scope, final Interval[] locals) {
+    return this.foldInterval(scope, locals, Interval.point(1), Interval::multiply);
+  }
+
+  @Override
+  protected ProductNode create(final String variable, final List<Node> operands, final int slot, final boolean owner) {
+    return new ProductNode(variable, operands, slot, owner);
+  }
+
+  @Override
+  public int getID() {
+    return ID;
+  }
+}
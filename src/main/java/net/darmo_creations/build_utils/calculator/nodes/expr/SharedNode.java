@@ -0,0 +1,122 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link Node} wrapping a subexpression that occurs several times in a function’s body.
+ * All occurrences share two slots of the function’s frame: a flag then the value of the subexpression.
+ * The subexpression is evaluated by the first occurrence evaluated during a call, other occurrences reuse its value.
+ * <p>
+ * It is serialized as its subexpression, sharing is computed again when the function is deserialized.
+ */
+public class SharedNode extends Node {
+  public static final int ID = 700;
+
+  private final Node expression;
+  private final int slot;
+
+  /**
+   * Create a shared subexpression.
+   *
+   * @param expression The subexpression.
+   * @param slot       Index of the flag slot in the function’s frame, the value is stored in the next slot.
+   */
+  public SharedNode(final Node expression, final int slot) {
+    this.expression = Objects.requireNonNull(expression);
+    this.slot = slot;
+  }
+
+  /**
+   * Return the subexpression.
+   */
+  public Node getExpression() {
+    return this.expression;
+  }
+
+  /**
+   * Return the index of the flag slot in the function’s frame, the value is stored in the next slot.
+   */
+  public int getSlot() {
+    return this.slot;
+  }
+
+  /**
+   * Return the value of the subexpression, evaluating it if no other occurrence has been evaluated
+   * in the current frame of the scope’s {@link CallStack}.
+   */
+  @Override
+  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
+    CallStack stack = scope.getCallStack();
+    if (stack.getLocal(this.slot) != 0) {
+      return stack.getLocal(this.slot + 1);
+    }
+    double value = this.expression.evaluate(scope);
+    stack.setLocal(this.slot + 1, value);
+    stack.setLocal(this.slot, 1);
+    return value;
+  }
+
+  /**
+   * Return the bounds of the subexpression, evaluated again for each occurrence.
+   */
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    return this.expression.evaluateInterval(scope, locals);
+  }
+
+  @Override
+  public Node transform(final UnaryOperator<Node> f) {
+    Node expression = this.expression.transform(f);
+    return f.apply(expression != this.expression ? new SharedNode(expression, this.slot) : this);
+  }
+
+  /**
+   * Return the size of the subexpression, as each occurrence stands for a copy of it.
+   */
+  @Override
+  public int getSourceSize() {
+    return this.expression.getSourceSize();
+  }
+
+  /**
+   * Serialize the subexpression.
+   */
+  @Override
+  public CompoundTag writeToNBT() {
+    return this.expression.writeToNBT();
+  }
+
+  @Override
+  public int getID() {
+    return ID;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+    SharedNode that = (SharedNode) o;
+    return this.slot == that.slot && this.expression.equals(that.expression);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(this.expression, this.slot);
+  }
+
+  @Override
+  public String toString() {
+    return this.expression.toString();
+  }
+}
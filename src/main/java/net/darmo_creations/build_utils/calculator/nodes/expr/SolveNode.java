@@ -0,0 +1,111 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.List;
+
+/**
+ * A {@link Node} representing {@code solve(x, lo, hi, expr)}, a value of x between lo and hi for which expr is 0,
+ * found by bisection. The values of expr at lo and hi must have opposite signs, unless one of them is 0.
+ */
+public class SolveNode extends AggregateNode {
+  public static final int ID = 603;
+
+  /**
+   * Create a solver.
+   *
+   * @param variable Name of the variable.
+   * @param operands The lower bound, upper bound and expression.
+   */
+  public SolveNode(final String variable, final List<Node> operands) {
+    super("solve", 3, variable, operands);
+  }
+
+  /**
+   * Create a solver from an NBT tag.
+   *
+   * @param tag The tag to deserialize.
+   */
+  public SolveNode(final CompoundTag tag) {
+    super("solve", 3, tag);
+  }
+
+  private SolveNode(final String variable, final List<Node> operands, final int slot, final boolean owner) {
+    super("solve", 3, variable, operands, slot, owner);
+  }
+
+  /**
+   * Halve the interval until its bounds are adjacent doubles, then return the bound closest to a root.
+   *
+   * @throws ArithmeticException If the values of the expression at the bounds do not have opposite signs.
+   */
+  @Override
+  protected double aggregate(final Scope scope, final CallStack stack) {
+    double lo = this.operands.get(0).evaluate(scope);
+    double hi = this.operands.get(1).evaluate(scope);
+    double fLo = this.evaluateBody(scope, stack, lo);
+    if (fLo == 0) {
+      return lo;
+    }
+    double fHi = this.evaluateBody(scope, stack, hi);
+    if (fHi == 0) {
+      return hi;
+    }
+    if (!(fLo < 0 && fHi > 0 || fLo > 0 && fHi < 0)) {
+      throw new ArithmeticException("solve needs values of opposite signs at the bounds");
+    }
+    while (true) {
+      double mid = lo + (hi - lo) / 2;
+      if (mid == lo || mid == hi) {
+        return Math.abs(fLo) <= Math.abs(fHi) ? lo : hi;
+      }
+      double fMid = this.evaluateBody(scope, stack, mid);
+      if (fMid == 0) {
+        return mid;
+      } else if (Double.isNaN(fMid)) {
+        throw new ArithmeticException("solve found no root, the expression is NaN at " + mid);
+      } else if (fMid < 0 == fLo < 0) {
+        lo = mid;
+        fLo = fMid;
+      } else {
+        hi = mid;
+        fHi = fMid;
+      }
+    }
+  }
+
+  /**
+   * Return the hull of the bounds if the expression may be 0 between them, as the result is always
+   * one of the bounds or a point between them; the solver fails otherwise.
+   */
+  @Override
+  protected Interval aggregateInterval(final Scope scope, final Interval[] locals) {
+    Interval bounds = this.operands.get(0).evaluateInterval(scope, locals)
+        .hull(this.operands.get(1).evaluateInterval(scope, locals));
+    if (bounds.isEmpty()) {
+      return Interval.EMPTY;
+    }
+    if (!this.evaluateBodyInterval(scope, locals, bounds).canBeZero()) {
+      // Values of the same sign or NaN at the bounds and NaN values found while halving all fail
+      return Interval.EMPTY;
+    }
+    if (bounds.hasRange() && Double.isInfinite(bounds.getHi() - bounds.getLo())) {
+      // The middle of bounds this far apart overflows
+      return Interval.ENTIRE_OR_NAN;
+    }
+    return bounds;
+  }
+
+  @Override
+  protected SolveNode create(final String variable, final List<Node> operands, final int slot, final boolean owner) {
+    return new SolveNode(variable, operands, slot, owner);
+  }
+
+  @Override
+  public int getID() {
+    return ID;
+  }
+}
@@ -0,0 +1,69 @@
+package net.darmo_creations.build_utils.calculator.nodes.expr;
+
+import net.darmo_creations.build_utils.calculator.CallStack;
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.List;
+
+/**
+ * A {@link Node} representing {@code sum(i, from, to, expr)}, the sum of expr
+ * for i going from {@code from} to {@code to} by steps of 1.
+ * The sum is 0 if {@code from} is greater than {@code to}.
+ */
+public class SumNode extends AggregateNode {
+  public static final int ID = 600;
+
+  /**
+   * Create the sum.
+   *
+   * @param variable Name of the variable.
+   * @param operands The lower bound, upper bound and expression.
+   */
+  public SumNode(final String variable, final List<Node> operands) {
+    super("sum", 3, variable, operands);
+  }
+
+  /**
+   * Create the sum from an NBT tag.
+   *
+   * @param tag The tag to deserialize.
+   */
+  public SumNode(final CompoundTag tag) {
+    super("sum", 3, tag);
+  }
+
+  private SumNode(final String variable, final List<Node> operands, final int slot, final boolean owner) {
+    super("sum", 3, variable, operands, slot, owner);
+  }
+
+  /**
+   * Return the sum of the body’s values.
+   */
+  @Override
+  protected double aggregate(final Scope scope, final CallStack stack) {
+    double from = this.operands.get(0).evaluate(scope);
+    double to = this.operands.get(1).evaluate(scope);
+    double sum = 0;
+    for (long i = 0; from + i <= to; i++) {
+      sum += this.evaluateBody(scope, stack, from + i);
+    }
+    return sum;
+  }
+
+  @Override
+  protected Interval aggregateInterval(final Scope scope, final Interval[] locals) {
+    return this.foldInterval(scope, locals, Interval.point(0), Interval::add);
+  }
+
+  @Override
+  protected SumNode create(final String variable, final List<Node> operands, final int slot, final boolean owner) {
+    return new SumNode(variable, operands, slot, owner);
+  }
+
+  @Override
+  public int getID() {
+    return ID;
+  }
+}
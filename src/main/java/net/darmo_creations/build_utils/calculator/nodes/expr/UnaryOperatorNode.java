@@ -1,5 +1,8 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.exceptions.EvaluationException;
 import net.minecraft.nbt.CompoundTag;
 
 import java.util.Collections;
@@ -9,6 +12,8 @@ import java.util.List;
  * A {@link Node} representing an operator with one operand.
  */
 public abstract class UnaryOperatorNode extends OperatorNode {
+  protected final Node operand;
+
   /**
    * Create a unary operator.
    *
@@ -17,22 +22,50 @@ public abstract class UnaryOperatorNode extends OperatorNode {
    */
   public UnaryOperatorNode(final String symbol, final Node operand) {
     super(symbol, 1, Collections.singletonList(operand));
+    this.operand = this.operands.get(0);
   }
 
   /**
    * Create a unary operator from an NBT tag.
    *
-   * @param tag The tag to deserialize.
+   * @param symbol Operator’s symbol.
+   * @param tag    The tag to deserialize.
+   */
+  public UnaryOperatorNode(final String symbol, final CompoundTag tag) {
+    super(symbol, 1, tag);
+    this.operand = this.operands.get(0);
+  }
+
+  /**
+   * Return the operand.
    */
-  public UnaryOperatorNode(final CompoundTag tag) {
-    super(tag);
+  public Node getOperand() {
+    return this.operand;
+  }
+
+  @Override
+  public double evaluate(final Scope scope) throws EvaluationException, ArithmeticException {
+    return this.evaluateImpl(this.operand.evaluate(scope));
+  }
+
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) {
+    return this.evaluateIntervalImpl(this.operand.evaluateInterval(scope, locals));
   }
 
   @Override
-  protected final double evaluateImpl(final List<Double> values) {
-    return this.evaluateImpl(values.get(0));
+  public UnaryOperatorNode withOperands(final List<Node> operands) {
+    return this.create(operands.get(0));
   }
 
+  /**
+   * Create an operator of the same type with the given operand.
+   *
+   * @param operand Operator’s operand.
+   * @return The new operator.
+   */
+  protected abstract UnaryOperatorNode create(final Node operand);
+
   /**
    * Delegate method that returns the result of the operator.
    *
@@ -41,13 +74,20 @@ public abstract class UnaryOperatorNode extends OperatorNode {
    */
   protected abstract double evaluateImpl(final double value);
 
+  /**
+   * Delegate method that returns the bounds of the operator’s result.
+   *
+   * @param value Bounds of the operand.
+   * @return Bounds of the operator’s result.
+   */
+  protected abstract Interval evaluateIntervalImpl(final Interval value);
+
   @Override
   public String toString() {
-    Node operand = this.operands.get(0);
-    if (operand instanceof OperatorNode) {
-      return String.format("%s(%s)", this.getName(), operand);
+    if (this.operand instanceof OperatorNode) {
+      return String.format("%s(%s)", this.getName(), this.operand);
     } else {
-      return this.getName() + this.operands.get(0);
+      return this.getName() + this.operand;
     }
   }
 }
@@ -1,5 +1,6 @@
 package net.darmo_creations.build_utils.calculator.nodes.expr;
 
+import net.darmo_creations.build_utils.calculator.Interval;
 import net.darmo_creations.build_utils.calculator.Scope;
 import net.darmo_creations.build_utils.calculator.exceptions.UndefinedVariableException;
 import net.minecraft.nbt.CompoundTag;
@@ -15,6 +16,10 @@ public class VariableNode extends Node {
   private static final String NAME_KEY = "Name";
 
   private final String name;
+  /**
+   * Reference to the variable resolved during the last evaluation in a global scope.
+   */
+  private Resolution resolution;
 
   /**
    * Create a variable {@link Node}.
@@ -34,15 +39,40 @@ public class VariableNode extends Node {
     this(tag.getString(NAME_KEY));
   }
 
+  /**
+   * Return variable’s name.
+   */
+  public String getName() {
+    return this.name;
+  }
+
   /**
    * Return the value of the associated variable.
+   * When evaluated in a global scope, the variable is resolved once and its reference is reused
+   * until a variable is defined or deleted in that scope.
    *
    * @return The variable’s value.
    * @throws UndefinedVariableException If no variable or constant with this name exists in the given scope.
    */
   @Override
   public double evaluate(final Scope scope) throws UndefinedVariableException {
-    return scope.getVariable(this.name);
+    Resolution resolution = this.resolution;
+    if (resolution != null && resolution.scope == scope && resolution.version == scope.getVariablesVersion()) {
+      return resolution.reference.getValue();
+    }
+    Scope.VariableReference reference = scope.resolveVariable(this.name);
+    if (scope.isGlobal()) {
+      this.resolution = new Resolution(scope, scope.getVariablesVersion(), reference);
+    }
+    return reference.getValue();
+  }
+
+  /**
+   * Return the variable’s value, global variables do not depend on the locals.
+   */
+  @Override
+  public Interval evaluateInterval(final Scope scope, final Interval[] locals) throws UndefinedVariableException {
+    return Interval.point(this.evaluate(scope));
   }
 
   @Override
@@ -77,4 +107,20 @@ public class VariableNode extends Node {
   public String toString() {
     return this.name;
   }
+
+  /**
+   * A resolved variable reference along with the scope and version of its variable definitions it was resolved in.
+   * Immutable so that it can be published by a single write to a plain field and read by any thread.
+   */
+  private static class Resolution {
+    final Scope scope;
+    final int version;
+    final Scope.VariableReference reference;
+
+    Resolution(final Scope scope, final int version, final Scope.VariableReference reference) {
+      this.scope = scope;
+      this.version = version;
+      this.reference = reference;
+    }
+  }
 }
@@ -1,10 +1,15 @@
 package net.darmo_creations.build_utils.commands;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.ArgumentType;
+import com.mojang.brigadier.arguments.DoubleArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.exceptions.Dynamic2CommandExceptionType;
 import com.mojang.brigadier.exceptions.Dynamic3CommandExceptionType;
 import com.mojang.brigadier.exceptions.DynamicCommandExceptionType;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
@@ -12,12 +17,17 @@ import com.mojang.brigadier.tree.LiteralCommandNode;
 import net.darmo_creations.build_utils.BuildUtils;
 import net.darmo_creations.build_utils.calculator.Calculator;
 import net.darmo_creations.build_utils.calculator.Function;
+import net.darmo_creations.build_utils.calculator.FunctionLibrary;
+import net.darmo_creations.build_utils.calculator.Scope;
+import net.darmo_creations.build_utils.calculator.UserFunction;
 import net.darmo_creations.build_utils.calculator.exceptions.*;
 import net.darmo_creations.build_utils.calculator.nodes.StatementResult;
+import net.darmo_creations.build_utils.calculator.nodes.expr.Node;
 import net.darmo_creations.build_utils.commands.argument_types.CalculatorVariableNameArgument;
 import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
 import net.minecraft.network.chat.*;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.player.Player;
@@ -26,6 +36,13 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -50,6 +67,12 @@ public class CalculatorCommand {
   private static final DynamicCommandExceptionType DEL_BUILTIN_FUNC_ERROR = new DynamicCommandExceptionType(
       funcName -> new TranslatableComponent("commands.calculator.error.delete_builtin_function", funcName)
   );
+  private static final Dynamic2CommandExceptionType DEL_LIBRARY_FUNC_ERROR = new Dynamic2CommandExceptionType(
+      (funcName, libraryName) -> new TranslatableComponent("commands.calculator.error.delete_library_function", funcName, libraryName)
+  );
+  private static final DynamicCommandExceptionType UNDEF_LIBRARY_ERROR = new DynamicCommandExceptionType(
+      libraryName -> new TranslatableComponent("commands.calculator.error.undefined_library", libraryName)
+  );
   private static final DynamicCommandExceptionType MAX_DECLARATIONS_ERROR = new DynamicCommandExceptionType(
       nb -> new TranslatableComponent("commands.calculator.error.max_declaration_quota_reached", nb)
   );
@@ -62,16 +85,61 @@ public class CalculatorCommand {
   private static final DynamicCommandExceptionType MAX_DEPTH_ERROR = new DynamicCommandExceptionType(
       depth -> new TranslatableComponent("commands.calculator.error.max_depth_reached", depth)
   );
+  private static final DynamicCommandExceptionType CIRCULAR_FORMULA_ERROR = new DynamicCommandExceptionType(
+      varName -> new TranslatableComponent("commands.calculator.error.circular_formula", varName)
+  );
+  private static final DynamicCommandExceptionType WRITE_CONFLICT_ERROR = new DynamicCommandExceptionType(
+      name -> new TranslatableComponent("commands.calculator.error.write_conflict", name)
+  );
+  private static final DynamicCommandExceptionType OUT_OF_FUEL_ERROR = new DynamicCommandExceptionType(
+      budget -> new TranslatableComponent("commands.calculator.error.out_of_fuel", budget)
+  );
+  private static final SimpleCommandExceptionType CANCELLED_ERROR = new SimpleCommandExceptionType(
+      new TranslatableComponent("commands.calculator.error.cancelled")
+  );
+  private static final SimpleCommandExceptionType BUSY_ERROR = new SimpleCommandExceptionType(
+      new TranslatableComponent("commands.calculator.error.busy")
+  );
   private static final DynamicCommandExceptionType MATH_ERROR = new DynamicCommandExceptionType(
       message -> new TranslatableComponent("commands.calculator.error.math_error", message)
   );
 
+  private static final Dynamic2CommandExceptionType TABLE_RANGE_ERROR = new Dynamic2CommandExceptionType(
+      (from, to) -> new TranslatableComponent("commands.calculator.error.table_range", from, to)
+  );
+  private static final DynamicCommandExceptionType TABLE_SIZE_ERROR = new DynamicCommandExceptionType(
+      max -> new TranslatableComponent("commands.calculator.error.table_size", max)
+  );
+  private static final Dynamic2CommandExceptionType TABLE_PAGE_ERROR = new Dynamic2CommandExceptionType(
+      (page, pagesCount) -> new TranslatableComponent("commands.calculator.error.table_page", page, pagesCount)
+  );
+
+  /**
+   * Maximum number of values in a table.
+   */
+  public static final int MAX_TABLE_SIZE = 10000;
+  /**
+   * Number of values per page of a table.
+   */
+  public static final int TABLE_PAGE_SIZE = 10;
+
   private static final Style BUILTINS_STYLE = Style.EMPTY.withColor(ChatFormatting.AQUA);
 
   public static final String VAR_SCOPE_ARG = "var_scope";
   public static final String EXPRESSION_ARG = "expression";
   public static final String TYPE_ARG = "type";
   public static final String LIST_TYPE_ARG = "list_type";
+  public static final String FUNCTION_ARG = "function";
+  public static final String X_FROM_ARG = "x_from";
+  public static final String X_TO_ARG = "x_to";
+  public static final String X_STEP_ARG = "x_step";
+  public static final String Z_FROM_ARG = "z_from";
+  public static final String Z_TO_ARG = "z_to";
+  public static final String Z_STEP_ARG = "z_step";
+  public static final String PAGE_ARG = "page";
+  public static final String OPTION_ARG = "option";
+  public static final String OPTION_VALUE_ARG = "option_value";
+  public static final String LIBRARY_ARG = "library";
 
   /**
    * Register this command in the given dispatcher.
@@ -111,6 +179,25 @@ public class CalculatorCommand {
             .then(Commands.argument(VAR_SCOPE_ARG, EnumArgument.enumArgument(VariableScope.class))
                 .then(Commands.argument(LIST_TYPE_ARG, EnumArgument.enumArgument(StructureTypes.class))
                     .executes(context -> list(context, global)))))
+        // Sample a function over a range or a grid
+        .then(buildTable(global))
+        // Cancel calculations in progress
+        .then(Commands.literal("cancel")
+            .executes(context -> cancel(context, global)))
+        // Show memoization statistics
+        .then(Commands.literal("stats")
+            .executes(context -> stats(context, global)))
+        // Publish, import or list function libraries
+        .then(buildLibrary(global))
+        // Get or set options, only operators can set them
+        .then(Commands.literal("option")
+            .then(Commands.literal("get")
+                .then(Commands.argument(OPTION_ARG, EnumArgument.enumArgument(CalculatorOption.class))
+                    .executes(context -> {
+                      getOption(context, global);
+                      return 1;
+                    })))
+            .then(buildOptions(Commands.literal("set").requires(commandSource -> commandSource.hasPermission(2)), global)))
         // Evaluate expression
         .then(Commands.argument(EXPRESSION_ARG, StringArgumentType.greedyString())
             .executes(context -> {
@@ -119,6 +206,93 @@ public class CalculatorCommand {
             }));
   }
 
+  /**
+   * Build the “table” subcommand: {@code table <function> <x_from> <x_to> <x_step> [z <z_from> <z_to> <z_step>] [<page>]}.
+   */
+  private static ArgumentBuilder<CommandSourceStack, ?> buildTable(final boolean global) {
+    ArgumentBuilder<CommandSourceStack, ?> zStep = Commands.argument(Z_STEP_ARG, DoubleArgumentType.doubleArg(Double.MIN_VALUE))
+        .executes(context -> table(context, global, true, 1))
+        .then(Commands.argument(PAGE_ARG, IntegerArgumentType.integer(1))
+            .executes(context -> table(context, global, true, IntegerArgumentType.getInteger(context, PAGE_ARG))));
+    ArgumentBuilder<CommandSourceStack, ?> xStep = Commands.argument(X_STEP_ARG, DoubleArgumentType.doubleArg(Double.MIN_VALUE))
+        .executes(context -> table(context, global, false, 1))
+        .then(Commands.argument(PAGE_ARG, IntegerArgumentType.integer(1))
+            .executes(context -> table(context, global, false, IntegerArgumentType.getInteger(context, PAGE_ARG))))
+        .then(Commands.literal("z")
+            .then(buildRange(Z_FROM_ARG, Z_TO_ARG, zStep)));
+    return Commands.literal("table")
+        .then(Commands.argument(FUNCTION_ARG, StringArgumentType.word())
+            .suggests((context, builder) -> SharedSuggestionProvider.suggest(
+                getCalculator(context, global).getRight().getFunctions().stream().map(Function::getName), builder))
+            .then(buildRange(X_FROM_ARG, X_TO_ARG, xStep)));
+  }
+
+  /**
+   * Build the “library” subcommand: {@code library list}, then {@code library (publish|delete) <library>}
+   * for the global calculator or {@code library import <library>} and {@code library detach} for player calculators.
+   */
+  private static ArgumentBuilder<CommandSourceStack, ?> buildLibrary(final boolean global) {
+    ArgumentBuilder<CommandSourceStack, ?> root = Commands.literal("library")
+        .then(Commands.literal("list")
+            .executes(CalculatorCommand::listLibraries));
+    if (global) {
+      return root
+          .then(Commands.literal("publish")
+              .then(Commands.argument(LIBRARY_ARG, StringArgumentType.word())
+                  .executes(context -> {
+                    publishLibrary(context);
+                    return 1;
+                  })))
+          .then(Commands.literal("delete")
+              .then(Commands.argument(LIBRARY_ARG, StringArgumentType.word())
+                  .suggests((context, builder) -> SharedSuggestionProvider.suggest(
+                      BuildUtils.CALCULATORS_MANAGER.getLibraryNames(), builder))
+                  .executes(context -> {
+                    deleteLibrary(context);
+                    return 1;
+                  })));
+    }
+    return root
+        .then(Commands.literal("import")
+            .then(Commands.argument(LIBRARY_ARG, StringArgumentType.word())
+                .suggests((context, builder) -> SharedSuggestionProvider.suggest(
+                    BuildUtils.CALCULATORS_MANAGER.getLibraryNames(), builder))
+                .executes(context -> {
+                  importLibrary(context);
+                  return 1;
+                })))
+        .then(Commands.literal("detach")
+            .executes(context -> {
+              detachLibrary(context);
+              return 1;
+            }));
+  }
+
+  /**
+   * Build the “from” and “to” arguments of a range, followed by the given “step” argument.
+   */
+  private static ArgumentBuilder<CommandSourceStack, ?> buildRange(final String fromArg, final String toArg,
+                                                                  final ArgumentBuilder<CommandSourceStack, ?> step) {
+    return Commands.argument(fromArg, DoubleArgumentType.doubleArg())
+        .then(Commands.argument(toArg, DoubleArgumentType.doubleArg())
+            .then(step));
+  }
+
+  /**
+   * Build the options from {@link CalculatorOption#values()}.
+   */
+  private static ArgumentBuilder<CommandSourceStack, ?> buildOptions(ArgumentBuilder<CommandSourceStack, ?> root, boolean global) {
+    for (CalculatorOption option : CalculatorOption.values()) {
+      root = root.then(Commands.literal(option.name())
+          .then(Commands.argument(OPTION_VALUE_ARG, option.getArgumentType())
+              .executes(context -> {
+                setOption(context, global, option);
+                return 1;
+              })));
+    }
+    return root;
+  }
+
   /**
    * Return a calculator and its associated player’s name from the given context.
    *
@@ -188,6 +362,8 @@ public class CalculatorCommand {
       throw DEL_BUILTIN_CONST_ERROR.create(varName);
     } catch (UndefinedFunctionException e) {
       throw UNDEF_FUNC_ERROR.create(varName);
+    } catch (LibraryFunctionDeletionAttemptException e) {
+      throw DEL_LIBRARY_FUNC_ERROR.create(varName, e.getLibraryName());
     } catch (BuiltinFunctionDeletionAttemptException e) {
       throw DEL_BUILTIN_FUNC_ERROR.create(varName);
     }
@@ -221,11 +397,11 @@ public class CalculatorCommand {
       case variables:
         switch (variableScope) {
           case all -> {
-            list = listVariables(calculator.getBuiltinConstants(), true);
-            list.addAll(listVariables(calculator.getVariables(), false));
+            list = listVariables(calculator.getBuiltinConstants(), Collections.emptyMap(), true);
+            list.addAll(listVariables(calculator.getVariables(), calculator.getFormulas(), false));
           }
-          case custom -> list = listVariables(calculator.getVariables(), false);
-          case builtin -> list = listVariables(calculator.getBuiltinConstants(), true);
+          case custom -> list = listVariables(calculator.getVariables(), calculator.getFormulas(), false);
+          case builtin -> list = listVariables(calculator.getBuiltinConstants(), Collections.emptyMap(), true);
         }
         break;
       case functions:
@@ -256,7 +432,163 @@ public class CalculatorCommand {
   }
 
   /**
-   * Evaluates a statement then displays its result. If the statement is a single expression,
+   * List the published libraries.
+   *
+   * @param context Context of the command.
+   * @return The number of libraries.
+   */
+  private static int listLibraries(final CommandContext<CommandSourceStack> context) {
+    List<String> names = BuildUtils.CALCULATORS_MANAGER.getLibraryNames();
+    BaseComponent message = new TranslatableComponent("commands.calculator.feedback.library.list");
+    for (String name : names) {
+      int size = BuildUtils.CALCULATORS_MANAGER.getLibrary(name).map(l -> l.getFunctions().size()).orElse(0);
+      message.append("\n").append(new TranslatableComponent("commands.calculator.feedback.library.list_item", name, size));
+    }
+    context.getSource().sendSuccess(message, true);
+    return names.size();
+  }
+
+  /**
+   * Publish the functions of the global calculator as a library.
+   *
+   * @param context Context of the command.
+   */
+  private static void publishLibrary(final CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+    // Only players may use the calculator commands
+    getCalculator(context, true);
+    String name = StringArgumentType.getString(context, LIBRARY_ARG);
+    FunctionLibrary library = BuildUtils.CALCULATORS_MANAGER.publishLibrary(name);
+    context.getSource().sendSuccess(new TranslatableComponent(
+        "commands.calculator.global.feedback.library.published", name, library.getFunctions().size()), true);
+  }
+
+  /**
+   * Delete a library.
+   *
+   * @param context Context of the command.
+   */
+  private static void deleteLibrary(final CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+    getCalculator(context, true);
+    String name = StringArgumentType.getString(context, LIBRARY_ARG);
+    if (!BuildUtils.CALCULATORS_MANAGER.deleteLibrary(name)) {
+      throw UNDEF_LIBRARY_ERROR.create(name);
+    }
+    context.getSource().sendSuccess(new TranslatableComponent("commands.calculator.global.feedback.library.deleted", name), true);
+  }
+
+  /**
+   * Import a library in the player’s calculator.
+   *
+   * @param context Context of the command.
+   */
+  private static void importLibrary(final CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+    Pair<String, Calculator> data = getCalculator(context, false);
+    String name = StringArgumentType.getString(context, LIBRARY_ARG);
+    FunctionLibrary library = BuildUtils.CALCULATORS_MANAGER.getLibrary(name)
+        .orElseThrow(() -> UNDEF_LIBRARY_ERROR.create(name));
+    data.getRight().importLibrary(library);
+    context.getSource().sendSuccess(new TranslatableComponent(
+        "commands.calculator.player.feedback.library.imported", name, data.getLeft()), true);
+  }
+
+  /**
+   * Remove the library imported by the player’s calculator.
+   *
+   * @param context Context of the command.
+   */
+  private static void detachLibrary(final CommandContext<CommandSourceStack> context) throws CommandSyntaxException {
+    Pair<String, Calculator> data = getCalculator(context, false);
+    TranslatableComponent component;
+    if (data.getRight().removeLibrary()) {
+      component = new TranslatableComponent("commands.calculator.player.feedback.library.detached", data.getLeft());
+    } else {
+      component = new TranslatableComponent("commands.calculator.player.feedback.library.none", data.getLeft());
+    }
+    context.getSource().sendSuccess(component, true);
+  }
+
+  /**
+   * Cancel all calculations of the given calculator that are in progress.
+   *
+   * @param context Context of the command.
+   * @param global  Whether to use the global or player calculator.
+   * @return The number of cancelled calculations.
+   */
+  private static int cancel(final CommandContext<CommandSourceStack> context, final boolean global) throws CommandSyntaxException {
+    Pair<String, Calculator> data = getCalculator(context, global);
+    int count = data.getRight().cancelEvaluations();
+    TranslatableComponent component;
+    if (global) {
+      component = new TranslatableComponent("commands.calculator.global.feedback.cancel", count);
+    } else {
+      component = new TranslatableComponent("commands.calculator.player.feedback.cancel", count, data.getLeft());
+    }
+    context.getSource().sendSuccess(component, true);
+    return count;
+  }
+
+  /**
+   * Show the memoization cache statistics of user functions.
+   *
+   * @param context Context of the command.
+   * @param global  Whether to use the global or player calculator.
+   * @return The number of listed functions.
+   */
+  private static int stats(final CommandContext<CommandSourceStack> context, final boolean global) throws CommandSyntaxException {
+    Pair<String, Calculator> data = getCalculator(context, global);
+    Calculator calculator = data.getRight();
+    List<Component> list = calculator.getFunctions().stream()
+        .filter(f -> f instanceof UserFunction)
+        .sorted(Comparator.comparing(Function::getName))
+        .map(f -> calculator.getMemoCache((UserFunction) f)
+            .<Component>map(cache -> new TextComponent(String.format("%s: %s", f.getName(), cache)))
+            .orElseGet(() -> new TranslatableComponent("commands.calculator.feedback.stats.not_memoized", f.getName())))
+        .collect(Collectors.toList());
+
+    BaseComponent message;
+    if (global) {
+      message = new TranslatableComponent("commands.calculator.global.feedback.stats");
+    } else {
+      message = new TranslatableComponent("commands.calculator.player.feedback.stats", data.getLeft());
+    }
+    for (Component str : list) {
+      message.append("\n").append(str);
+    }
+    context.getSource().sendSuccess(message, true);
+    return list.size();
+  }
+
+  /**
+   * Get the value of an option of the given calculator.
+   *
+   * @param context Context of the command.
+   * @param global  Whether to use the global or player calculator.
+   */
+  private static void getOption(final CommandContext<CommandSourceStack> context, final boolean global)
+      throws CommandSyntaxException {
+    Calculator calculator = getCalculator(context, global).getRight();
+    CalculatorOption option = context.getArgument(OPTION_ARG, CalculatorOption.class);
+    context.getSource().sendSuccess(new TextComponent(option.getValueRepresentation(calculator)), true);
+  }
+
+  /**
+   * Set an option of the given calculator.
+   *
+   * @param context Context of the command.
+   * @param global  Whether to use the global or player calculator.
+   * @param option  The option to set the value of.
+   */
+  private static void setOption(final CommandContext<CommandSourceStack> context, final boolean global,
+                                final CalculatorOption option) throws CommandSyntaxException {
+    Calculator calculator = getCalculator(context, global).getRight();
+    Object value = option.getArgument(context, OPTION_VALUE_ARG);
+    option.setValue(calculator, value);
+    context.getSource().sendSuccess(
+        new TranslatableComponent("commands.calculator.feedback.option_set", option, value), true);
+  }
+
+  /**
+   * Evaluates a statement on a worker thread then displays its result. If the statement is a single expression,
    * its value is stored in a variable named “_“.
    *
    * @param context Context of the command.
@@ -265,51 +597,198 @@ public class CalculatorCommand {
   private static void evaluate(final CommandContext<CommandSourceStack> context, final boolean global) throws CommandSyntaxException {
     String expression = StringArgumentType.getString(context, EXPRESSION_ARG);
     Calculator calculator = getCalculator(context, global).getRight();
-    StatementResult result = null;
-    CommandSyntaxException exception = null;
+    CommandSourceStack source = context.getSource();
 
+    CompletableFuture<StatementResult> future;
     try {
-      result = calculator.evaluate(expression);
-    } catch (MaxDefinitionsException e) {
-      exception = MAX_DECLARATIONS_ERROR.create(e.getNumber());
-    } catch (SyntaxErrorException e) {
-      exception = SYNTAX_ERROR.create();
-    } catch (UndefinedVariableException e) {
-      exception = UNDEF_VAR_ERROR.create(e.getMessage());
-    } catch (UndefinedFunctionException e) {
-      exception = UNDEF_FUNC_ERROR.create(e.getMessage());
-    } catch (InvalidFunctionArguments e) {
-      exception = INVALID_PARAMS_ERROR.create(e.getFunctionName(), e.getExpected(), e.getActual());
-    } catch (MaxDepthReachedException e) {
-      exception = MAX_DEPTH_ERROR.create(e.getDepth());
-    } catch (ArithmeticException e) {
-      exception = MATH_ERROR.create(e.getMessage());
+      future = calculator.evaluateAsync(expression, source.getServer());
+    } catch (RejectedExecutionException e) {
+      throw BUSY_ERROR.create();
     }
 
     // Display what the player just typed
-    context.getSource().sendSuccess(new TextComponent("$ " + expression), true);
-    if (exception != null) {
-      throw exception;
-    } else {
-      //noinspection ConstantConditions
-      context.getSource().sendSuccess(new TextComponent(result.getStatus())
+    source.sendSuccess(new TextComponent("$ " + expression), true);
+    whenEvaluated(source, future, result -> {
+      source.sendSuccess(new TextComponent(result.getStatus())
           .setStyle(Style.EMPTY.withColor(ChatFormatting.GREEN)), true);
       // Store result in a special variable
       result.getValue().ifPresent(v -> calculator.setVariable("_", v));
+    });
+  }
+
+  /**
+   * Sample a function over a range or a grid on a worker thread then display a page of the results.
+   * Only the samples of the displayed page are evaluated.
+   *
+   * @param context Context of the command.
+   * @param global  Whether to use the global or player calculator.
+   * @param grid    Whether the function takes two parameters sampled over a grid.
+   * @param page    The page to display, starting from 1.
+   * @return The number of results that will be displayed.
+   */
+  private static int table(final CommandContext<CommandSourceStack> context, final boolean global, final boolean grid,
+                           final int page) throws CommandSyntaxException {
+    String functionName = StringArgumentType.getString(context, FUNCTION_ARG);
+    Calculator calculator = getCalculator(context, global).getRight();
+    CommandSourceStack source = context.getSource();
+    double[] xs = getRange(context, X_FROM_ARG, X_TO_ARG, X_STEP_ARG, 1);
+    double[] zs = grid ? getRange(context, Z_FROM_ARG, Z_TO_ARG, Z_STEP_ARG, xs.length) : null;
+
+    int size = grid ? xs.length * zs.length : xs.length;
+    int pagesCount = (size + TABLE_PAGE_SIZE - 1) / TABLE_PAGE_SIZE;
+    if (page > pagesCount) {
+      throw TABLE_PAGE_ERROR.create(page, pagesCount);
     }
+    int start = (page - 1) * TABLE_PAGE_SIZE;
+    int end = Math.min(start + TABLE_PAGE_SIZE, size);
+
+    CompletableFuture<double[]> future;
+    try {
+      future = grid
+          ? calculator.evaluateFunctionAsync(functionName, xs, zs, start, end, source.getServer())
+          : calculator.evaluateFunctionAsync(functionName, Arrays.copyOfRange(xs, start, end), source.getServer());
+    } catch (RejectedExecutionException e) {
+      throw BUSY_ERROR.create();
+    }
+
+    whenEvaluated(source, future, results -> {
+      BaseComponent message = new TranslatableComponent("commands.calculator.feedback.table", functionName, page, pagesCount);
+      for (int i = start; i < end; i++) {
+        String arguments = grid
+            ? String.format(Locale.ENGLISH, "%f, %f", xs[i / zs.length], zs[i % zs.length])
+            : String.format(Locale.ENGLISH, "%f", xs[i]);
+        message.append("\n").append(String.format(Locale.ENGLISH, "%s(%s) = %f", functionName, arguments, results[i - start]));
+      }
+      source.sendSuccess(message, true);
+    });
+    return end - start;
+  }
+
+  /**
+   * Handle the result of an asynchronous evaluation on the server thread.
+   * Errors are reported to the command source.
+   *
+   * @param source    Source of the command.
+   * @param future    The evaluation’s result.
+   * @param onSuccess Action to perform with the result if the evaluation succeeded.
+   */
+  private static <T> void whenEvaluated(final CommandSourceStack source, final CompletableFuture<T> future,
+                                        final Consumer<T> onSuccess) {
+    future.whenCompleteAsync((result, error) -> {
+      Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+      if (cause == null) {
+        try {
+          onSuccess.accept(result);
+        } catch (EvaluationException | ArithmeticException e) {
+          cause = e;
+        }
+      }
+      if (cause instanceof RejectedExecutionException) {
+        // Queued evaluations may be rejected once their turn comes
+        source.sendFailure(ComponentUtils.fromMessage(BUSY_ERROR.create().getRawMessage()));
+        return;
+      }
+      if (cause instanceof EvaluationException || cause instanceof SyntaxErrorException || cause instanceof ArithmeticException) {
+        try {
+          source.sendFailure(ComponentUtils.fromMessage(getEvaluationError((RuntimeException) cause).getRawMessage()));
+          return;
+        } catch (RuntimeException e) {
+          // No command equivalent, reported below
+        }
+      }
+      if (cause != null) {
+        BuildUtils.LOGGER.error("Unexpected calculator error", cause);
+        source.sendFailure(new TranslatableComponent("commands.calculator.error.unexpected"));
+      }
+    }, source.getServer());
+  }
+
+  /**
+   * Build the values of a range from the given arguments.
+   *
+   * @param context    Command’s context.
+   * @param fromArg    Name of the argument holding the first value.
+   * @param toArg      Name of the argument holding the upper bound, included if reached.
+   * @param stepArg    Name of the argument holding the difference between two values.
+   * @param multiplier Number of values the table already contains for each value of this range.
+   * @return The values.
+   * @throws CommandSyntaxException If the bounds are inverted or the table would be too big.
+   */
+  private static double[] getRange(final CommandContext<CommandSourceStack> context, final String fromArg,
+                                   final String toArg, final String stepArg, final int multiplier)
+      throws CommandSyntaxException {
+    double from = DoubleArgumentType.getDouble(context, fromArg);
+    double to = DoubleArgumentType.getDouble(context, toArg);
+    double step = DoubleArgumentType.getDouble(context, stepArg);
+    if (to < from) {
+      throw TABLE_RANGE_ERROR.create(from, to);
+    }
+    // Tolerate rounding errors so that the upper bound is included when it is a multiple of the step
+    double count = Math.floor((to - from) / step + 1e-9) + 1;
+    if (count * multiplier > MAX_TABLE_SIZE) {
+      throw TABLE_SIZE_ERROR.create(MAX_TABLE_SIZE);
+    }
+    double[] values = new double[(int) count];
+    for (int i = 0; i < values.length; i++) {
+      // Multiply rather than accumulate to avoid drifting
+      values[i] = from + i * step;
+    }
+    return values;
+  }
+
+  /**
+   * Convert an exception raised by a calculator into the corresponding command exception.
+   *
+   * @param e The exception.
+   * @return The command exception.
+   * @throws RuntimeException The given exception if it has no command equivalent.
+   */
+  private static CommandSyntaxException getEvaluationError(final RuntimeException e) {
+    if (e instanceof MaxDefinitionsException ex) {
+      return MAX_DECLARATIONS_ERROR.create(ex.getNumber());
+    } else if (e instanceof SyntaxErrorException) {
+      return SYNTAX_ERROR.create();
+    } else if (e instanceof UndefinedVariableException) {
+      return UNDEF_VAR_ERROR.create(e.getMessage());
+    } else if (e instanceof UndefinedFunctionException) {
+      return UNDEF_FUNC_ERROR.create(e.getMessage());
+    } else if (e instanceof InvalidFunctionArguments ex) {
+      return INVALID_PARAMS_ERROR.create(ex.getFunctionName(), ex.getExpected(), ex.getActual());
+    } else if (e instanceof MaxDepthReachedException ex) {
+      return MAX_DEPTH_ERROR.create(ex.getDepth());
+    } else if (e instanceof CircularFormulaException) {
+      return CIRCULAR_FORMULA_ERROR.create(e.getMessage());
+    } else if (e instanceof OutOfFuelException ex) {
+      return OUT_OF_FUEL_ERROR.create(ex.getBudget());
+    } else if (e instanceof EvaluationCancelledException) {
+      return CANCELLED_ERROR.create();
+    } else if (e instanceof WriteConflictException) {
+      return WRITE_CONFLICT_ERROR.create(e.getMessage());
+    } else if (e instanceof ArithmeticException) {
+      return MATH_ERROR.create(e.getMessage());
+    }
+    throw e;
   }
 
   /**
    * Generate a list of text components for a mapping of variables.
    *
    * @param variables The variables to format.
+   * @param formulas  Expressions of the formula variables among the given variables.
    * @param builtin   Whether the variables are builtin; modifies styling.
    * @return The list of text components.
    */
-  private static List<Component> listVariables(final Map<String, Double> variables, final boolean builtin) {
+  private static List<Component> listVariables(final Map<String, Double> variables, final Map<String, Node> formulas,
+                                               final boolean builtin) {
     return variables.entrySet().stream()
         .sorted(Map.Entry.comparingByKey())
-        .map(e -> getTextComponent(String.format(Locale.ENGLISH, "%s = %f", e.getKey(), e.getValue()), builtin))
+        .map(e -> {
+          String text = String.format(Locale.ENGLISH, "%s = %f", e.getKey(), e.getValue());
+          if (formulas.containsKey(e.getKey())) {
+            text += String.format(Locale.ENGLISH, " (::= %s)", formulas.get(e.getKey()));
+          }
+          return getTextComponent(text, builtin);
+        })
         .collect(Collectors.toList());
   }
 
@@ -362,4 +841,74 @@ public class CalculatorCommand {
   public enum VariableScope {
     all, builtin, custom
   }
+
+  /**
+   * Enumeration of available calculator options.
+   */
+  private enum CalculatorOption {
+    maxCallDepth(
+        calculator -> "" + calculator.getMaxCallDepth(),
+        (calculator, value) -> calculator.setMaxCallDepth((Integer) value),
+        () -> IntegerArgumentType.integer(1, Scope.MAX_ALLOWED_CALL_DEPTH),
+        IntegerArgumentType::getInteger
+    ),
+    fuelBudget(
+        calculator -> "" + calculator.getFuelBudget(),
+        (calculator, value) -> calculator.setFuelBudget((Integer) value),
+        () -> IntegerArgumentType.integer(1, Scope.MAX_ALLOWED_FUEL),
+        IntegerArgumentType::getInteger
+    );
+
+    private final java.util.function.Function<Calculator, String> getter;
+    private final BiConsumer<Calculator, Object> setter;
+    private final Supplier<ArgumentType<?>> argumentTypeSupplier;
+    private final BiFunction<CommandContext<?>, String, ?> argGetter;
+
+    CalculatorOption(final java.util.function.Function<Calculator, String> getter,
+                     final BiConsumer<Calculator, Object> setter,
+                     final Supplier<ArgumentType<?>> argumentTypeSupplier,
+                     final BiFunction<CommandContext<?>, String, ?> argGetter) {
+      this.getter = getter;
+      this.setter = setter;
+      this.argumentTypeSupplier = argumentTypeSupplier;
+      this.argGetter = argGetter;
+    }
+
+    /**
+     * Return the argument type for this option.
+     */
+    public ArgumentType<?> getArgumentType() {
+      return this.argumentTypeSupplier.get();
+    }
+
+    /**
+     * Return the value of the given argument.
+     *
+     * @param context Command’s context.
+     * @param name    Argument’s name.
+     * @return Argument’s value.
+     */
+    public Object getArgument(final CommandContext<?> context, final String name) {
+      return this.argGetter.apply(context, name);
+    }
+
+    /**
+     * Return the string representation of this option’s value for the given calculator.
+     *
+     * @param calculator The calculator to get the option value from.
+     */
+    public String getValueRepresentation(final Calculator calculator) {
+      return this.getter.apply(calculator);
+    }
+
+    /**
+     * Set the value of an option for the given calculator.
+     *
+     * @param calculator The calculator to set the option of.
+     * @param value      New value.
+     */
+    public void setValue(Calculator calculator, final Object value) {
+      this.setter.accept(calculator, value);
+    }
+  }
 }
@@ -8,6 +8,7 @@ import net.minecraft.core.BlockPos;
 import net.minecraft.core.Vec3i;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtUtils;
+import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.Style;
 import net.minecraft.network.chat.TextComponent;
 import net.minecraft.world.InteractionResult;
@@ -17,6 +18,11 @@ import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.context.UseOnContext;
 import net.minecraft.world.level.Level;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Item used to measure lengths, areas and volumes.
  * <p>
@@ -53,26 +59,28 @@ public class ItemRuler extends Item {
           "Selected second position: " + Utils.blockPosToString(pos))
           .setStyle(Style.EMPTY.withColor(ChatFormatting.DARK_AQUA)));
 
-      Calculator calculator = BuildUtils.CALCULATORS_MANAGER.getOrCreatePlayerData(player);
-      // Declare variables storing the positions in the player’s calculator
-      calculator.setVariable("ruler_x1", data.position.getX());
-      calculator.setVariable("ruler_y1", data.position.getY());
-      calculator.setVariable("ruler_z1", data.position.getZ());
-      calculator.setVariable("ruler_x2", pos.getX());
-      calculator.setVariable("ruler_y2", pos.getY());
-      calculator.setVariable("ruler_z2", pos.getZ());
-
       Vec3i lengths = Utils.getLengths(data.position, pos);
       int lengthX = lengths.getX();
       int lengthY = lengths.getY();
       int lengthZ = lengths.getZ();
-      Utils.sendMessage(world, player, new TextComponent(
+      List<Component> messages = new ArrayList<>();
+      // Variables to declare in the player’s calculator, in declaration order
+      Map<String, Integer> variables = new LinkedHashMap<>();
+      // Declare variables storing the positions
+      variables.put("ruler_x1", data.position.getX());
+      variables.put("ruler_y1", data.position.getY());
+      variables.put("ruler_z1", data.position.getZ());
+      variables.put("ruler_x2", pos.getX());
+      variables.put("ruler_y2", pos.getY());
+      variables.put("ruler_z2", pos.getZ());
+
+      messages.add(new TextComponent(
           String.format("Size (XYZ): %d x %d x %d", lengthX, lengthY, lengthZ))
           .setStyle(Style.EMPTY.withColor(ChatFormatting.GREEN)));
       // Declare variables storing the lengths
-      calculator.setVariable("ruler_lx", lengthX);
-      calculator.setVariable("ruler_ly", lengthY);
-      calculator.setVariable("ruler_lz", lengthZ);
+      variables.put("ruler_lx", lengthX);
+      variables.put("ruler_ly", lengthY);
+      variables.put("ruler_lz", lengthZ);
 
       // Do not display any area if at least two dimensions have a length of 1 (single line of blocks selected)
       if (lengthX + lengthY != 2 && lengthX + lengthZ != 2 && lengthY + lengthZ != 2) {
@@ -90,28 +98,33 @@ public class ItemRuler extends Item {
           } else {
             area = areaY;
           }
-          Utils.sendMessage(world, player, new TextComponent(
+          messages.add(new TextComponent(
               String.format("Area: %d", area))
               .setStyle(Style.EMPTY.withColor(ChatFormatting.DARK_GREEN)));
           // Declare variables storing the area
-          calculator.setVariable("ruler_area", area);
+          variables.put("ruler_area", area);
         } else {
-          Utils.sendMessage(world, player, new TextComponent(
+          messages.add(new TextComponent(
               String.format("Areas (XYZ): %d, %d, %d", areaX, areaY, areaZ))
               .setStyle(Style.EMPTY.withColor(ChatFormatting.DARK_GREEN)));
           // Declare variables storing the areas
-          calculator.setVariable("ruler_ax", areaX);
-          calculator.setVariable("ruler_ay", areaY);
-          calculator.setVariable("ruler_az", areaZ);
+          variables.put("ruler_ax", areaX);
+          variables.put("ruler_ay", areaY);
+          variables.put("ruler_az", areaZ);
         }
       }
 
       int volume = Utils.getVolume(data.position, pos);
-      Utils.sendMessage(world, player, new TextComponent(
+      messages.add(new TextComponent(
           String.format("Volume: %d", volume))
           .setStyle(Style.EMPTY.withColor(ChatFormatting.GOLD)));
       // Declare variables storing the volume
-      calculator.setVariable("ruler_vol", volume);
+      variables.put("ruler_vol", volume);
+
+      Calculator calculator = BuildUtils.CALCULATORS_MANAGER.getOrCreatePlayerData(player);
+      // Declare all variables in the player’s calculator at once, messages are only sent once they are declared
+      calculator.batch(tx -> variables.forEach(tx::setVariable));
+      messages.forEach(message -> Utils.sendMessage(world, player, message));
 
       data.position = null;
     }
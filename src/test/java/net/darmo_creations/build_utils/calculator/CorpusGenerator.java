@@ -0,0 +1,172 @@
+package net.darmo_creations.build_utils.calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random statements for differential tests of {@link Parser} against {@link ReferenceParser}.
+ * <p>
+ * Generated statements are valid in the grammar supported by both parsers. Mutated statements are obtained
+ * by deleting, duplicating, swapping or inserting tokens, they may be valid or not. Names that are keywords
+ * in some calls ({@code if}, aggregates) are never generated as the reference grammar does not know them.
+ * Tokens are separated by random whitespace, possibly none, so that adjacent tokens may be lexed differently
+ * from how they were generated, both parsers receiving the same text.
+ */
+public class CorpusGenerator {
+  private static final String[] NAMES = {"x", "y", "f", "g", "ab_1", "_t", "X2", "pi", "trueish"};
+  private static final String[] NUMBERS = {"0", "1", "2", "10", "0.5", "3.", "1.25", "007"};
+  private static final String[] UNARY_OPERATORS = {"-", "+", "!"};
+  private static final String[] BINARY_OPERATORS = {"+", "-", "*", "/", "%", "^", "&", "|", "=", "!=", ">", ">=", "<", "<="};
+  private static final String[] SEPARATORS = {" ", " ", "", "  ", "\t", "\n"};
+  /**
+   * Tokens inserted by mutations, unknown characters included.
+   */
+  private static final String[] VOCABULARY = {
+      "(", ")", ",", ":=", "+", "-", "*", "/", "%", "^", "=", "!=", ">", ">=", "<", "<=", "!", "&", "|",
+      "true", "false", "x", "f", "1", "2.5", ".", ":", "#"
+  };
+
+  private final Random random;
+
+  /**
+   * Create a generator.
+   *
+   * @param seed Seed of the random generator, the same seed generates the same statements.
+   */
+  public CorpusGenerator(final long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Generate a valid statement: an expression, a variable assignment or a function definition.
+   */
+  public String nextStatement() {
+    return this.join(this.nextTokens());
+  }
+
+  /**
+   * Generate a valid expression.
+   */
+  public String nextExpression() {
+    List<String> tokens = new ArrayList<>();
+    this.addExpression(tokens, 4);
+    return this.join(tokens);
+  }
+
+  /**
+   * Return a random name that is never a keyword.
+   */
+  public String nextName() {
+    return this.pick(NAMES);
+  }
+
+  /**
+   * Generate a valid statement then apply between 1 and 3 random mutations to its tokens.
+   */
+  public String nextMutatedStatement() {
+    List<String> tokens = this.nextTokens();
+    int mutations = 1 + this.random.nextInt(3);
+    for (int i = 0; i < mutations; i++) {
+      int index = this.random.nextInt(tokens.size());
+      switch (this.random.nextInt(4)) {
+        case 0 -> {
+          if (tokens.size() > 1) {
+            tokens.remove(index);
+          }
+        }
+        case 1 -> tokens.add(index, tokens.get(index));
+        case 2 -> {
+          if (index + 1 < tokens.size()) {
+            tokens.add(index + 1, tokens.remove(index));
+          }
+        }
+        default -> tokens.add(index, this.pick(VOCABULARY));
+      }
+    }
+    return this.join(tokens);
+  }
+
+  private List<String> nextTokens() {
+    List<String> tokens = new ArrayList<>();
+    switch (this.random.nextInt(4)) {
+      case 0 -> {
+        tokens.add(this.pick(NAMES));
+        tokens.add(":=");
+      }
+      case 1 -> {
+        tokens.add(this.pick(NAMES));
+        tokens.add("(");
+        int parameters = 1 + this.random.nextInt(3);
+        for (int i = 0; i < parameters; i++) {
+          if (i > 0) {
+            tokens.add(",");
+          }
+          tokens.add(this.pick(NAMES));
+        }
+        tokens.add(")");
+        tokens.add(":=");
+      }
+      default -> {
+      }
+    }
+    this.addExpression(tokens, 4);
+    return tokens;
+  }
+
+  /**
+   * Add the tokens of a random expression.
+   *
+   * @param tokens List to add tokens to.
+   * @param depth  Maximum nesting depth of the expression.
+   */
+  private void addExpression(final List<String> tokens, final int depth) {
+    int kind = depth == 0 ? this.random.nextInt(3) : this.random.nextInt(7);
+    switch (kind) {
+      case 0 -> tokens.add(this.pick(NAMES));
+      case 1 -> tokens.add(this.pick(NUMBERS));
+      case 2 -> tokens.add(this.random.nextBoolean() ? "true" : "false");
+      case 3 -> {
+        tokens.add(this.pick(UNARY_OPERATORS));
+        this.addExpression(tokens, depth - 1);
+      }
+      case 4 -> {
+        tokens.add("(");
+        this.addExpression(tokens, depth - 1);
+        tokens.add(")");
+      }
+      case 5 -> {
+        tokens.add(this.pick(NAMES));
+        tokens.add("(");
+        int arguments = 1 + this.random.nextInt(3);
+        for (int i = 0; i < arguments; i++) {
+          if (i > 0) {
+            tokens.add(",");
+          }
+          this.addExpression(tokens, depth - 1);
+        }
+        tokens.add(")");
+      }
+      default -> {
+        this.addExpression(tokens, depth - 1);
+        tokens.add(this.pick(BINARY_OPERATORS));
+        this.addExpression(tokens, depth - 1);
+      }
+    }
+  }
+
+  private String join(final List<String> tokens) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < tokens.size(); i++) {
+      if (i > 0) {
+        sb.append(this.pick(SEPARATORS));
+      }
+      sb.append(tokens.get(i));
+    }
+    return sb.toString();
+  }
+
+  private String pick(final String[] values) {
+    return values[this.random.nextInt(values.length)];
+  }
+}
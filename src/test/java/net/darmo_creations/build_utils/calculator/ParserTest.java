@@ -0,0 +1,218 @@
+package net.darmo_creations.build_utils.calculator;
+
+import net.darmo_creations.build_utils.calculator.exceptions.SyntaxErrorException;
+import net.darmo_creations.build_utils.calculator.nodes.AssignVariableStatement;
+import net.darmo_creations.build_utils.calculator.nodes.AssignVariablesStatement;
+import net.darmo_creations.build_utils.calculator.nodes.DefineFormulaStatement;
+import net.darmo_creations.build_utils.calculator.nodes.DefineFunctionStatement;
+import net.darmo_creations.build_utils.calculator.nodes.ExpressionStatement;
+import net.darmo_creations.build_utils.calculator.nodes.Statement;
+import net.darmo_creations.build_utils.calculator.nodes.expr.*;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link Parser}, mostly differential tests against {@link ReferenceParser}, the ANTLR-generated parser
+ * it replaced. Trees are compared before simplification, through their NBT serialization. Constructs added since
+ * are checked against trees built from the reference trees of their operands.
+ */
+class ParserTest {
+  private static final long SEED = 20220101L;
+  private static final int STATEMENTS = 50_000;
+
+  @Test
+  void validStatementsGiveSameTrees() {
+    CorpusGenerator generator = new CorpusGenerator(SEED);
+    for (int i = 0; i < STATEMENTS; i++) {
+      String statement = generator.nextStatement();
+      Statement expected = ReferenceParser.parse(statement);
+      assertEquals(toNBT(expected), toNBT(Parser.parseUnoptimized(statement)), statement);
+    }
+  }
+
+  /**
+   * Statements accepted by the reference parser must give the same trees, other statements must be rejected
+   * unless they assign several variables or define a formula, which the reference grammar does not support.
+   */
+  @Test
+  void mutatedStatementsGiveSameTreesOrErrors() {
+    CorpusGenerator generator = new CorpusGenerator(SEED);
+    for (int i = 0; i < STATEMENTS; i++) {
+      String statement = generator.nextMutatedStatement();
+      Optional<Statement> expected = tryParse(statement, true);
+      Optional<Statement> actual = tryParse(statement, false);
+      if (expected.isPresent()) {
+        assertTrue(actual.isPresent(), statement);
+        assertEquals(toNBT(expected.get()), toNBT(actual.get()), statement);
+      } else {
+        assertTrue(actual.isEmpty() || actual.get() instanceof AssignVariablesStatement
+            || actual.get() instanceof DefineFormulaStatement, statement);
+      }
+    }
+  }
+
+  @Test
+  void unknownCharactersAreRejected() {
+    for (String statement : new String[]{".", "1 : 2", "x := #", "1.5.2", "a ::"}) {
+      assertThrows(SyntaxErrorException.class, () -> Parser.parse(statement), statement);
+      assertThrows(SyntaxErrorException.class, () -> ReferenceParser.parse(statement), statement);
+    }
+  }
+
+  @Test
+  void formulaDefinitionsGiveSameTrees() {
+    CorpusGenerator generator = new CorpusGenerator(SEED);
+    for (int i = 0; i < STATEMENTS / 10; i++) {
+      String name = generator.nextName();
+      String expression = generator.nextExpression();
+      String statement = name + " ::= " + expression;
+      assertEquals(toNBT(new DefineFormulaStatement(name, reference(expression))),
+          toNBT(Parser.parseUnoptimized(statement)), statement);
+    }
+  }
+
+  @Test
+  void multipleAssignmentsGiveSameTrees() {
+    CorpusGenerator generator = new CorpusGenerator(SEED);
+    for (int i = 0; i < STATEMENTS / 10; i++) {
+      int count = 2 + i % 3;
+      List<String> names = new ArrayList<>();
+      while (names.size() < count) {
+        String name = generator.nextName();
+        if (!names.contains(name)) {
+          names.add(name);
+        }
+      }
+      List<String> expressions = new ArrayList<>();
+      List<Node> nodes = new ArrayList<>();
+      for (int j = 0; j < count; j++) {
+        expressions.add(generator.nextExpression());
+        nodes.add(reference(expressions.get(j)));
+      }
+      String statement = String.join(", ", names) + " := " + String.join(", ", expressions);
+      assertEquals(toNBT(new AssignVariablesStatement(names, nodes)), toNBT(Parser.parseUnoptimized(statement)), statement);
+    }
+    for (String statement : new String[]{"a, b := 1", "a, b := 1, 2, 3", "a, := 1, 2", "a, b := 1,", "a, 1 := 1, 2"}) {
+      assertThrows(SyntaxErrorException.class, () -> Parser.parse(statement), statement);
+    }
+  }
+
+  @Test
+  void conditionalsGiveConditionalNodes() {
+    CorpusGenerator generator = new CorpusGenerator(SEED);
+    for (int i = 0; i < STATEMENTS / 10; i++) {
+      String condition = generator.nextExpression();
+      String ifTrue = generator.nextExpression();
+      String ifFalse = generator.nextExpression();
+      String statement = String.format("1 + if(%s, %s, %s)", condition, ifTrue, ifFalse);
+      Node expected = new AdditionOperatorNode(new NumberNode(1),
+          new ConditionalNode(reference(condition), reference(ifTrue), reference(ifFalse)));
+      assertEquals(toNBT(new ExpressionStatement(expected)), toNBT(Parser.parseUnoptimized(statement)), statement);
+    }
+  }
+
+  @Test
+  void aggregatesGiveAggregateNodes() {
+    String[] names = {"sum", "prod", "integrate", "solve"};
+    List<BiFunction<String, List<Node>, Node>> factories =
+        List.of(SumNode::new, ProductNode::new, IntegralNode::new, SolveNode::new);
+    int[] arities = {3, 3, 4, 3};
+    CorpusGenerator generator = new CorpusGenerator(SEED);
+    for (int i = 0; i < STATEMENTS / 10; i++) {
+      int k = i % names.length;
+      String variable = generator.nextName();
+      List<String> operands = new ArrayList<>();
+      List<Node> nodes = new ArrayList<>();
+      for (int j = 0; j < arities[k]; j++) {
+        operands.add(generator.nextExpression());
+        nodes.add(reference(operands.get(j)));
+      }
+      String statement = String.format("%s(%s, %s)", names[k], variable, String.join(", ", operands));
+      Node expected = factories.get(k).apply(variable, nodes);
+      assertEquals(toNBT(new ExpressionStatement(expected)), toNBT(Parser.parseUnoptimized(statement)), statement);
+    }
+  }
+
+  /**
+   * {@code if} and aggregate names are only keywords in calls with the right number of arguments
+   * and, for aggregates, a name as first argument. Other uses are parsed like the reference parser does.
+   */
+  @Test
+  void keywordsAreContextual() {
+    for (String statement : new String[]{"if(x, y)", "if(x, y, z, t)", "sum(i, 1, 2)", "sum(1, 2, 3, 4)",
+        "integrate(x, 1, 2, 3)", "solve(x + 1, 2, 3, 4)", "if + sum * prod", "if := 1", "if(x) := x",
+        "sum(a, b) := a + b", "solve(a, b, c) := a"}) {
+      assertEquals(toNBT(ReferenceParser.parse(statement)), toNBT(Parser.parseUnoptimized(statement)), statement);
+    }
+    for (String statement : new String[]{"if(a, b, c) := a", "sum(a, b, c, d) := a", "integrate(a, b, c, d, e) := a",
+        "solve(a, b, c, d) := a"}) {
+      assertThrows(SyntaxErrorException.class, () -> Parser.parse(statement), statement);
+    }
+  }
+
+  @Test
+  void repeatedAssignmentTargetsAreRejected() {
+    for (String statement : new String[]{"q, q := 1, 2", "a, b, a := 1, 2, 3"}) {
+      assertThrows(SyntaxErrorException.class, () -> Parser.parse(statement), statement);
+    }
+    assertTrue(Parser.parse("a, b := b, a") instanceof AssignVariablesStatement);
+  }
+
+  private static Optional<Statement> tryParse(final String statement, final boolean reference) {
+    try {
+      return Optional.of(reference ? ReferenceParser.parse(statement) : Parser.parseUnoptimized(statement));
+    } catch (SyntaxErrorException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Return the tree of an expression parsed by the reference parser.
+   */
+  private static Node reference(final String expression) {
+    return ((ExpressionStatement) ReferenceParser.parse(expression)).getNode();
+  }
+
+  /**
+   * Serialize a statement into its NBT string representation.
+   * The string is compared rather than the tag as {@code NaN} numbers are never equal to themselves.
+   */
+  private static String toNBT(final Statement statement) {
+    CompoundTag tag = new CompoundTag();
+    tag.putString("Type", statement.getClass().getSimpleName());
+    if (statement instanceof ExpressionStatement s) {
+      tag.put("Node", NodeNBTHelper.writeNode(s.getNode()));
+    } else if (statement instanceof AssignVariableStatement s) {
+      tag.putString("Name", s.getVariableName());
+      tag.put("Node", NodeNBTHelper.writeNode(s.getNode()));
+    } else if (statement instanceof DefineFormulaStatement s) {
+      tag.putString("Name", s.getVariableName());
+      tag.put("Node", NodeNBTHelper.writeNode(s.getNode()));
+    } else if (statement instanceof AssignVariablesStatement s) {
+      ListTag names = new ListTag();
+      s.getVariableNames().forEach(name -> names.add(StringTag.valueOf(name)));
+      tag.put("Names", names);
+      ListTag nodes = new ListTag();
+      s.getNodes().forEach(node -> nodes.add(NodeNBTHelper.writeNode(node)));
+      tag.put("Nodes", nodes);
+    } else if (statement instanceof DefineFunctionStatement s) {
+      tag.putString("Name", s.getFunctionName());
+      ListTag parameters = new ListTag();
+      s.getParameterNames().forEach(name -> parameters.add(StringTag.valueOf(name)));
+      tag.put("Parameters", parameters);
+      tag.put("Node", NodeNBTHelper.writeNode(s.getNode()));
+    } else {
+      fail("unexpected statement: " + statement);
+    }
+    return tag.toString();
+  }
+}
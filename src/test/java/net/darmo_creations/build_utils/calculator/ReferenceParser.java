@@ -0,0 +1,170 @@
+package net.darmo_creations.build_utils.calculator;
+
+import net.darmo_creations.build_utils.calculator.antlr4_parser.CalculatorBaseVisitor;
+import net.darmo_creations.build_utils.calculator.antlr4_parser.CalculatorLexer;
+import net.darmo_creations.build_utils.calculator.antlr4_parser.CalculatorParser;
+import net.darmo_creations.build_utils.calculator.exceptions.SyntaxErrorException;
+import net.darmo_creations.build_utils.calculator.nodes.AssignVariableStatement;
+import net.darmo_creations.build_utils.calculator.nodes.DefineFunctionStatement;
+import net.darmo_creations.build_utils.calculator.nodes.ExpressionStatement;
+import net.darmo_creations.build_utils.calculator.nodes.Statement;
+import net.darmo_creations.build_utils.calculator.nodes.expr.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * The ANTLR-generated parser that {@link Parser} replaced, kept as a reference for differential tests.
+ * It only supports the original grammar: variable assignments, function definitions and expressions
+ * made of operators, function calls, variables, numbers and booleans.
+ * <p>
+ * Statements are built like {@link Parser} does but their expressions are never simplified,
+ * they are to be compared with those returned by {@link Parser#parseUnoptimized(String)}.
+ */
+public final class ReferenceParser {
+  /**
+   * Parses the given expression.
+   *
+   * @param expression The expression to parse.
+   * @return The corresponding statement.
+   * @throws SyntaxErrorException If any syntax error was encountered, unknown characters included.
+   */
+  public static Statement parse(final String expression) throws SyntaxErrorException {
+    CalculatorLexer lexer = new CalculatorLexer(CharStreams.fromString(expression));
+    lexer.removeErrorListeners();
+    lexer.addErrorListener(ErrorListener.INSTANCE);
+    CalculatorParser parser = new CalculatorParser(new CommonTokenStream(lexer));
+    parser.removeErrorListeners();
+    parser.addErrorListener(ErrorListener.INSTANCE);
+    return new StatementVisitor().visit(parser.start());
+  }
+
+  private ReferenceParser() {
+  }
+
+  /**
+   * Visitor for “start” and “statement” grammar rules. Generates a {@link Statement}.
+   */
+  private static class StatementVisitor extends CalculatorBaseVisitor<Statement> {
+    @Override
+    public Statement visitStart(CalculatorParser.StartContext ctx) {
+      return this.visit(ctx.statement());
+    }
+
+    @Override
+    public Statement visitExpression(CalculatorParser.ExpressionContext ctx) {
+      return new ExpressionStatement(this.visitExpression(ctx.exp()));
+    }
+
+    @Override
+    public Statement visitVariableDef(CalculatorParser.VariableDefContext ctx) {
+      return new AssignVariableStatement(ctx.var.getText(), this.visitExpression(ctx.expr));
+    }
+
+    @Override
+    public Statement visitFunctionDef(CalculatorParser.FunctionDefContext ctx) {
+      List<String> parameters = ctx.ID().stream().skip(1).map(ParseTree::getText).collect(Collectors.toList());
+      return new DefineFunctionStatement(ctx.fname.getText(), parameters, this.visitExpression(ctx.expr));
+    }
+
+    /**
+     * Generate Node tree for the given expression tree.
+     */
+    private Node visitExpression(ParseTree expression) {
+      return new ExpressionVisitor().visit(expression);
+    }
+  }
+
+  /**
+   * Visitor for “exp” grammar rule. Generates a {@link Node} tree.
+   */
+  private static class ExpressionVisitor extends CalculatorBaseVisitor<Node> {
+    private static final Map<String, java.util.function.Function<Node, OperatorNode>> UNARY_OPERATORS = new HashMap<>();
+    private static final Map<String, BiFunction<Node, Node, OperatorNode>> BINARY_OPERATORS = new HashMap<>();
+
+    static {
+      UNARY_OPERATORS.put("-", MinusOperatorNode::new);
+      UNARY_OPERATORS.put("!", NotOperatorNode::new);
+
+      BINARY_OPERATORS.put("*", MultiplicationOperatorNode::new);
+      BINARY_OPERATORS.put("/", DivisionOperatorNode::new);
+      BINARY_OPERATORS.put("%", ModuloOperatorNode::new);
+      BINARY_OPERATORS.put("+", AdditionOperatorNode::new);
+      BINARY_OPERATORS.put("-", SubtractionOperatorNode::new);
+      BINARY_OPERATORS.put("^", PowerOperatorNode::new);
+      BINARY_OPERATORS.put("&", AndOperatorNode::new);
+      BINARY_OPERATORS.put("|", OrOperatorNode::new);
+      BINARY_OPERATORS.put("=", EqualToOperatorNode::new);
+      BINARY_OPERATORS.put("!=", NotEqualToOperatorNode::new);
+      BINARY_OPERATORS.put(">", GreaterThanOperatorNode::new);
+      BINARY_OPERATORS.put(">=", GreaterThanOrEqualToOperatorNode::new);
+      BINARY_OPERATORS.put("<", LessThanOperatorNode::new);
+      BINARY_OPERATORS.put("<=", LessThanOrEqualToOperatorNode::new);
+    }
+
+    @Override
+    public Node visitParentheses(CalculatorParser.ParenthesesContext ctx) {
+      return this.visit(ctx.expr);
+    }
+
+    @Override
+    public Node visitOperator(CalculatorParser.OperatorContext ctx) {
+      Node left = this.visit(ctx.left);
+      Node right = this.visit(ctx.right);
+      String operator = ctx.operator.getText();
+      return BINARY_OPERATORS.get(operator).apply(left, right);
+    }
+
+    @Override
+    public Node visitUnaryOperator(CalculatorParser.UnaryOperatorContext ctx) {
+      String operator = ctx.operator.getText();
+      Node operand = this.visit(ctx.operand);
+      if (operator.equals("+")) {
+        return operand;
+      } else {
+        return UNARY_OPERATORS.get(operator).apply(operand);
+      }
+    }
+
+    @Override
+    public Node visitFunction(CalculatorParser.FunctionContext ctx) {
+      String name = ctx.name.getText();
+      List<Node> arguments = ctx.exp().stream().map(this::visit).collect(Collectors.toList());
+      return new FunctionNode(name, arguments);
+    }
+
+    @Override
+    public Node visitVariable(CalculatorParser.VariableContext ctx) {
+      return new VariableNode(ctx.getText());
+    }
+
+    @Override
+    public Node visitNumber(CalculatorParser.NumberContext ctx) {
+      return new NumberNode(Double.parseDouble(ctx.getText()));
+    }
+
+    @Override
+    public Node visitBoolean(CalculatorParser.BooleanContext ctx) {
+      String value = ctx.value.getText();
+      return new NumberNode(value.equals("true") ? 1 : 0);
+    }
+  }
+
+  /**
+   * Error listener that throws syntax errors instead of logging them, for both the lexer and the parser.
+   */
+  private static class ErrorListener extends BaseErrorListener {
+    static final ErrorListener INSTANCE = new ErrorListener();
+
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+                            String msg, RecognitionException e) {
+      throw new SyntaxErrorException(msg);
+    }
+  }
+}